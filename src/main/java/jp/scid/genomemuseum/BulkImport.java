@@ -0,0 +1,305 @@
+package jp.scid.genomemuseum;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jp.scid.bio.store.ConnectionBuilder;
+import jp.scid.bio.store.SequenceLibrary;
+import jp.scid.genomemuseum.model.ExhibitRecord;
+import jp.scid.genomemuseum.model.ExhibitRecordStore;
+import jp.scid.genomemuseum.model.ImportMetrics;
+import jp.scid.genomemuseum.model.ImportQuarantine;
+import jp.scid.genomemuseum.model.LibraryFileDeleter;
+import jp.scid.genomemuseum.model.LibraryFileStore;
+import jp.scid.genomemuseum.model.MonitoredConnectionPool;
+import jp.scid.genomemuseum.model.SequenceFileWalker;
+import jp.scid.genomemuseum.model.SequenceFileWalker.FileHandler;
+import jp.scid.genomemuseum.model.SequenceImportEngine;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportListener;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportTask;
+
+/**
+ * Imports sequence files into a library from the command line, without the display.
+ *
+ * <pre>
+ * java jp.scid.genomemuseum.BulkImport --database &lt;path&gt; [options] &lt;file or directory&gt;...
+ * </pre>
+ *
+ * The database path is the one of the application, which is {@code schema} in its
+ * local storage directory. Files are imported by the same pipeline as the application,
+ * and no AWT or Swing class is loaded. Imported files are copied into the files directory,
+ * which is {@code Files} next to the database unless {@code --files} is given.
+ */
+public class BulkImport {
+    private final static String USAGE = "usage: BulkImport --database <path> [--files <directory>] [--box <id>]"
+            + " [--threads <count>] [--batch-size <count>] [--full-scan] <file or directory>...";
+    private final static String FILES_DIRECTORY_NAME = "Files";
+    private final static long SHUTDOWN_TIMEOUT = 60;
+
+    private final File database;
+    private final List<File> roots;
+    private File filesDirectory;
+    private Long boxId = null;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = SequenceImportEngine.DEFAULT_BATCH_SIZE;
+    private boolean headerScan = true;
+
+    private final List<ImportTask> tasks = new CopyOnWriteArrayList<ImportTask>();
+
+    public BulkImport(File database, List<File> roots) {
+        if (database == null) throw new IllegalArgumentException("database must not be null");
+        if (roots == null) throw new IllegalArgumentException("roots must not be null");
+
+        this.database = database;
+        this.roots = roots;
+        filesDirectory = new File(database.getAbsoluteFile().getParentFile(), FILES_DIRECTORY_NAME);
+    }
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+
+        BulkImport importer;
+        try {
+            importer = parseArguments(args);
+        }
+        catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        int failed;
+        try {
+            failed = importer.run(System.out);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+            return;
+        }
+        System.exit(failed > 0 ? 1 : 0);
+    }
+
+    static BulkImport parseArguments(String[] args) {
+        File database = null;
+        File filesDirectory = null;
+        Long boxId = null;
+        Integer threads = null;
+        Integer batchSize = null;
+        boolean headerScan = true;
+        List<File> roots = new ArrayList<File>();
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--database")) {
+                database = new File(optionValue(args, ++i, arg));
+            }
+            else if (arg.equals("--files")) {
+                filesDirectory = new File(optionValue(args, ++i, arg));
+            }
+            else if (arg.equals("--box")) {
+                boxId = Long.valueOf(optionValue(args, ++i, arg));
+            }
+            else if (arg.equals("--threads")) {
+                threads = Integer.valueOf(optionValue(args, ++i, arg));
+            }
+            else if (arg.equals("--batch-size")) {
+                batchSize = Integer.valueOf(optionValue(args, ++i, arg));
+            }
+            else if (arg.equals("--full-scan")) {
+                headerScan = false;
+            }
+            else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("unknown option " + arg);
+            }
+            else {
+                roots.add(new File(arg));
+            }
+        }
+
+        if (database == null) throw new IllegalArgumentException("--database is required");
+        if (roots.isEmpty()) throw new IllegalArgumentException("no file to import");
+
+        BulkImport importer = new BulkImport(database, roots);
+        if (filesDirectory != null) {
+            importer.setFilesDirectory(filesDirectory);
+        }
+        importer.setBoxId(boxId);
+        if (threads != null) {
+            importer.setThreads(threads);
+        }
+        if (batchSize != null) {
+            importer.setBatchSize(batchSize);
+        }
+        importer.setHeaderScan(headerScan);
+        return importer;
+    }
+
+    private static String optionValue(String[] args, int index, String option) {
+        if (index >= args.length) throw new IllegalArgumentException(option + " needs a value");
+        return args[index];
+    }
+
+    public void setFilesDirectory(File filesDirectory) {
+        if (filesDirectory == null) throw new IllegalArgumentException("filesDirectory must not be null");
+        this.filesDirectory = filesDirectory;
+    }
+
+    public void setBoxId(Long boxId) {
+        this.boxId = boxId;
+    }
+
+    public void setThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public void setHeaderScan(boolean headerScan) {
+        this.headerScan = headerScan;
+    }
+
+    /**
+     * Imports the files and prints the failures and the statistics.
+     *
+     * @return the count of files which failed
+     */
+    public int run(PrintStream out) throws SQLException, IOException, InterruptedException {
+        ConnectionBuilder connbuilder = new ConnectionBuilder();
+        connbuilder.databaseUser("genomemuseum");
+        connbuilder.databaseNamespace(database.getPath() + ";AUTO_SERVER=TRUE" + MonitoredConnectionPool.LOCK_SETTINGS);
+        MonitoredConnectionPool connectionPool = new MonitoredConnectionPool(connbuilder.build());
+
+        try {
+            // creates the tables of the library if the database is new
+            Connection connection = connectionPool.getConnection();
+            try {
+                SequenceLibrary.create(connection);
+            }
+            finally {
+                connection.close();
+            }
+
+            ExhibitRecordStore store = new ExhibitRecordStore(connectionPool);
+            store.prepareSchema();
+
+            int failed = importFiles(store, out);
+            out.printf("connections: %s%n", connectionPool.snapshot());
+            return failed;
+        }
+        finally {
+            connectionPool.dispose();
+        }
+    }
+
+    private int importFiles(ExhibitRecordStore store, PrintStream out) throws IOException, InterruptedException {
+        final SequenceImportEngine engine = new SequenceImportEngine(
+                SequenceImportEngine.newParseExecutor(threads), Executors.newSingleThreadScheduledExecutor());
+        engine.setRecordStore(store);
+        engine.setQuarantine(new ImportQuarantine(store.getDataSource()));
+        engine.setFileStore(new LibraryFileStore(filesDirectory));
+        // copies replaced by changed files are deleted
+        LibraryFileDeleter fileDeleter = new LibraryFileDeleter(filesDirectory);
+        engine.setFileDeleter(fileDeleter);
+        engine.setBatchSize(batchSize);
+        engine.setHeaderScan(headerScan);
+        engine.addImportListener(new ImportListener() {
+            @Override
+            public void importSubmitted(ImportTask task) {
+                tasks.add(task);
+            }
+
+            @Override
+            public void importFinished(ImportTask task) {
+                // waited by the main thread
+            }
+
+            @Override
+            public void batchStored(List<ExhibitRecord> records) {
+                // counted by the metrics
+            }
+        });
+
+        try {
+            // waits while the queue of the engine is full
+            new SequenceFileWalker(roots, new FileHandler() {
+                @Override
+                public void fileFound(File file) {
+                    tasks.add(engine.submit(file, boxId));
+                }
+            }).call();
+
+            int failed = awaitTasks(out, engine.getMetrics());
+            // lets the failures be recorded to the quarantine
+            engine.shutdown(SHUTDOWN_TIMEOUT, TimeUnit.SECONDS);
+            return failed;
+        }
+        finally {
+            engine.shutdownNow();
+            fileDeleter.shutdown();
+        }
+    }
+
+    /**
+     * Waits the tasks, including the members of archives submitted while waiting.
+     */
+    private int awaitTasks(PrintStream out, ImportMetrics metrics) throws InterruptedException {
+        int failed = 0;
+        int duplicates = 0;
+        int quarantined = 0;
+        int unsupported = 0;
+
+        for (int i = 0; i < tasks.size(); i++) {
+            ImportTask task = tasks.get(i);
+            try {
+                task.get();
+                if (task.isDuplicate()) {
+                    duplicates++;
+                }
+                else if (task.isQuarantined()) {
+                    quarantined++;
+                }
+                else if (task.isUnsupported()) {
+                    unsupported++;
+                }
+            }
+            catch (ExecutionException e) {
+                failed++;
+                System.err.println("failed: " + task.getSourceUri() + ": " + e.getCause());
+            }
+        }
+
+        printStatistics(out, metrics.snapshot(0), duplicates, quarantined, unsupported, failed);
+        return failed;
+    }
+
+    static void printStatistics(PrintStream out, ImportMetrics.Snapshot metrics, int duplicates, int quarantined,
+            int unsupported, int failed) {
+        double seconds = Math.max(metrics.getElapsedMillis(), 1) / 1000d;
+
+        out.printf("%d files, %d records stored, %d duplicates, %d known failures, %d not sequence files, "
+                + "%d failed in %.1f s%n", metrics.getFiles(), metrics.getRecords(), duplicates, quarantined,
+                unsupported, failed, seconds);
+        out.printf("%.1f files/s, %.1f records/s, %.2f MB/s%n", metrics.getFiles() / seconds,
+                metrics.getRecords() / seconds, metrics.getBytes() / seconds / (1024 * 1024));
+        out.printf("read %d ms, parse %d ms, write %d ms%n",
+                metrics.getReadMillis(), metrics.getParseMillis(), metrics.getWriteMillis());
+        for (ImportMetrics.FileTime slowest: metrics.getSlowestFiles()) {
+            out.printf("  slow: %s%n", slowest);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package jp.scid.genomemuseum.gui;
+
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
+
+import jp.scid.genomemuseum.model.ExhibitPager;
+import jp.scid.genomemuseum.model.ExhibitRecord;
+import jp.scid.genomemuseum.model.GeneticSequenceTableFormat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Table model of the exhibits of the library, which reads only the pages shown.
+ *
+ * The rows of a page not read yet have no value. The page is read in background,
+ * and its rows are updated when it is read.
+ */
+class ExhibitPageTableModel extends AbstractTableModel {
+    private final static Logger logger = LoggerFactory.getLogger(ExhibitPageTableModel.class);
+
+    private final ExhibitPager pager;
+    private final GeneticSequenceTableFormat tableFormat;
+
+    private int rowCount = 0;
+    /** incremented when the rows are read again, to ignore the pages of the rows before */
+    private int generation = 0;
+    private final Set<Integer> loadingPages = new HashSet<Integer>();
+    private CountTask countTask = null;
+
+    public ExhibitPageTableModel(ExhibitPager pager, GeneticSequenceTableFormat tableFormat) {
+        if (pager == null) throw new IllegalArgumentException("pager must not be null");
+        if (tableFormat == null) throw new IllegalArgumentException("tableFormat must not be null");
+
+        this.pager = pager;
+        this.tableFormat = tableFormat;
+    }
+
+    public ExhibitPager getPager() {
+        return pager;
+    }
+
+    /**
+     * Counts the rows of the query of the pager again.
+     *
+     * The pages and the count which the pager keeps are used;
+     * call {@link ExhibitPager#invalidate()} before if the exhibits are changed.
+     */
+    public void reload() {
+        generation++;
+        loadingPages.clear();
+
+        if (countTask != null) {
+            countTask.cancel(false);
+        }
+        countTask = new CountTask(generation);
+        countTask.execute();
+    }
+
+    /**
+     * @return the record of the row, or {@code null} if its page is not read yet.
+     */
+    public ExhibitRecord getRecord(int rowIndex) {
+        int pageSize = pager.getPageSize();
+        List<ExhibitRecord> page = pager.getCachedPage(rowIndex / pageSize);
+        if (page == null) {
+            loadPage(rowIndex / pageSize);
+            return null;
+        }
+        int index = rowIndex % pageSize;
+        return index < page.size() ? page.get(index) : null;
+    }
+
+    private void loadPage(int pageIndex) {
+        if (loadingPages.add(pageIndex)) {
+            new PageTask(pageIndex, generation).execute();
+        }
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return tableFormat.getColumnCount();
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return tableFormat.getColumnName(column);
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        return tableFormat.getColumnClass(columnIndex);
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        ExhibitRecord record = getRecord(rowIndex);
+        if (record == null) {
+            return null;
+        }
+        return tableFormat.getColumnValue(record, columnIndex);
+    }
+
+    /**
+     * Counts the rows.
+     */
+    private class CountTask extends SwingWorker<Integer, Void> {
+        private final int taskGeneration;
+
+        public CountTask(int taskGeneration) {
+            this.taskGeneration = taskGeneration;
+        }
+
+        @Override
+        protected Integer doInBackground() throws SQLException {
+            return pager.count();
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || taskGeneration != generation) {
+                return;
+            }
+            countTask = null;
+
+            try {
+                rowCount = get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                logger.warn("fail to count the exhibits", e.getCause());
+                rowCount = 0;
+            }
+            fireTableDataChanged();
+        }
+    }
+
+    /**
+     * Reads a page.
+     */
+    private class PageTask extends SwingWorker<List<ExhibitRecord>, Void> {
+        private final int pageIndex;
+        private final int taskGeneration;
+
+        public PageTask(int pageIndex, int taskGeneration) {
+            this.pageIndex = pageIndex;
+            this.taskGeneration = taskGeneration;
+        }
+
+        @Override
+        protected List<ExhibitRecord> doInBackground() throws SQLException {
+            return pager.getPage(pageIndex);
+        }
+
+        @Override
+        protected void done() {
+            if (taskGeneration != generation) {
+                return;
+            }
+            loadingPages.remove(pageIndex);
+
+            try {
+                get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                logger.warn("fail to read the exhibits", e.getCause());
+                return;
+            }
+
+            int pageSize = pager.getPageSize();
+            int firstRow = pageIndex * pageSize;
+            int lastRow = Math.min(firstRow + pageSize, rowCount) - 1;
+            if (firstRow <= lastRow) {
+                fireTableRowsUpdated(firstRow, lastRow);
+            }
+        }
+    }
+}
@@ -2,25 +2,46 @@ package jp.scid.genomemuseum.gui;
 
 import static java.lang.String.*;
 
+import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.text.MessageFormat;
 import java.util.Collection;
+import java.util.List;
+import java.util.ResourceBundle;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
+import javax.swing.AbstractButton;
+import javax.swing.Action;
 import javax.swing.DefaultBoundedRangeModel;
 import javax.swing.JComponent;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JProgressBar;
+import javax.swing.Timer;
+import javax.sql.DataSource;
 
 import jp.scid.bio.store.SequenceLibrary;
 import jp.scid.bio.store.sequence.GeneticSequence;
 import jp.scid.bio.store.sequence.ImportableSequenceSource;
 import jp.scid.genomemuseum.gui.NcbiEntryListController.SequenceFileImportable;
+import jp.scid.genomemuseum.model.ExhibitRecordStore;
+import jp.scid.genomemuseum.model.FolderWatcher;
 import jp.scid.genomemuseum.model.GeneticSequenceFileLoadingManager;
+import jp.scid.genomemuseum.model.ImportJournal;
+import jp.scid.genomemuseum.model.ImportMetrics;
+import jp.scid.genomemuseum.model.ImportQuarantine;
+import jp.scid.genomemuseum.model.LibraryFileDeleter;
+import jp.scid.genomemuseum.model.LibraryFileStore;
+import jp.scid.genomemuseum.model.SequenceImportEngine;
+import jp.scid.gui.control.ActionManager;
 import jp.scid.gui.control.BooleanModelBindings;
 import jp.scid.gui.control.StringModelBindings;
 import jp.scid.gui.model.BeanPropertyAdapter;
@@ -28,27 +49,62 @@ import jp.scid.gui.model.MutableValueModel;
 import jp.scid.gui.model.ValueModel;
 import jp.scid.gui.model.ValueModels;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 public class FileLoadingTaskController implements PropertyChangeListener, SequenceFileImportable {
+    private final static Logger logger = LoggerFactory.getLogger(FileLoadingTaskController.class);
+    private final static ResourceBundle resource =
+            ResourceBundle.getBundle(FileLoadingTaskController.class.getName());
+    /** milliseconds between samplings of the import metrics */
+    private final static int METRICS_INTERVAL = 1000;
+    /** count of the quarantined files retried at the same time */
+    private final static int RETRY_CONCURRENCY = 2;
+    
     private GeneticSequenceFileLoadingManager loadingManager;
-    private final ExecutorService taskExecutor;
+    private final SequenceImportEngine importEngine;
     private final DefaultBoundedRangeModel progressModel = new DefaultBoundedRangeModel();
     
     private final MutableValueModel<Boolean> isIndeterminate;
     private final MutableValueModel<String> progressMessage;
+    private final Timer metricsTimer;
+    private ImportMetrics.Snapshot metrics = null;
+    
+    private final Action retryQuarantinedAction;
+    private final Action watchFolderAction;
+    private final Action unwatchFolderAction;
+    
+    private FolderWatcher folderWatcher = null;
     
     private SequenceLibrary sequenceLibrary;
     
     public FileLoadingTaskController() {
-        taskExecutor = Executors.newFixedThreadPool(1);
+        importEngine = new SequenceImportEngine();
         
-        setLoadingManager(new GeneticSequenceFileLoadingManager(taskExecutor));
+        setLoadingManager(new GeneticSequenceFileLoadingManager(importEngine));
         
         isIndeterminate = ValueModels.newBooleanModel(false);
         progressMessage = ValueModels.newValueModel("");
+        
+        metricsTimer = new Timer(METRICS_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                metrics = loadingManager.snapshotMetrics();
+                updateProgressMessage();
+            }
+        });
+        
+        ActionManager actionManager = new ActionManager(this);
+        retryQuarantinedAction = actionManager.getAction("retryQuarantined");
+        watchFolderAction = actionManager.getAction("watchFolder");
+        unwatchFolderAction = actionManager.getAction("unwatchFolder");
     }
 
     public void shutdownNow() {
-        taskExecutor.shutdownNow();
+        if (folderWatcher != null) {
+            folderWatcher.stop();
+        }
+        loadingManager.shutdownNow();
     }
     
     @Override
@@ -61,10 +117,161 @@ public class FileLoadingTaskController implements PropertyChangeListener, Sequen
         this.sequenceLibrary = sequenceLibrary;
     }
     
+    public void setDataSource(DataSource dataSource) {
+        ExhibitRecordStore store = null;
+        ImportJournal journal = null;
+        ImportQuarantine quarantine = null;
+        if (dataSource != null) {
+            store = new ExhibitRecordStore(dataSource);
+            try {
+                store.prepareSchema();
+            }
+            catch (SQLException e) {
+                logger.error("fail to create import tables", e);
+            }
+            catch (IOException e) {
+                logger.error("fail to read import tables script", e);
+            }
+            journal = new ImportJournal(dataSource);
+            quarantine = new ImportQuarantine(dataSource);
+        }
+        importEngine.setRecordStore(store);
+        importEngine.setJournal(journal);
+        importEngine.setQuarantine(quarantine);
+        
+        if (folderWatcher != null) {
+            folderWatcher.stop();
+        }
+        folderWatcher = store == null ? null : new FolderWatcher(dataSource, store, loadingManager);
+    }
+    
+    /**
+     * Sets the store which imported files are copied into.
+     */
+    public void setLibraryFileStore(LibraryFileStore fileStore) {
+        importEngine.setFileStore(fileStore);
+    }
+    
+    /**
+     * Sets the deleter of the copies which are replaced by changed files.
+     */
+    public void setLibraryFileDeleter(LibraryFileDeleter fileDeleter) {
+        importEngine.setFileDeleter(fileDeleter);
+    }
+    
+    /**
+     * Imports the files changed in the watched folders since the last run, and starts watching them.
+     */
+    public void startWatching() {
+        if (folderWatcher == null) {
+            return;
+        }
+        try {
+            folderWatcher.start();
+        }
+        catch (IOException e) {
+            logger.error("fail to watch folders", e);
+        }
+    }
+    
+    /**
+     * Chooses a folder whose files are imported automatically into the library.
+     */
+    public void watchFolder() {
+        if (folderWatcher == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle(resource.getString("watchFolder.dialog.Title"));
+        if (chooser.showOpenDialog(null) == JFileChooser.APPROVE_OPTION) {
+            folderWatcher.watch(chooser.getSelectedFile(), null);
+        }
+    }
+    
+    /**
+     * Chooses a watched folder to stop watching.
+     */
+    public void unwatchFolder() {
+        if (folderWatcher == null) {
+            return;
+        }
+        List<FolderWatcher.WatchedFolder> folders = folderWatcher.getWatchedFolders();
+        if (folders.isEmpty()) {
+            return;
+        }
+        Object selected = JOptionPane.showInputDialog(null, resource.getString("unwatchFolder.dialog.Message"),
+                null, JOptionPane.QUESTION_MESSAGE, null, folders.toArray(), folders.get(0));
+        if (selected != null) {
+            folderWatcher.unwatch(((FolderWatcher.WatchedFolder) selected).getDirectory());
+        }
+    }
+    
+    /**
+     * Asks whether to import again the files which the last run did not finish.
+     * The journal is cleared in either case.
+     */
+    public void askResumingImports(Component parent) {
+        ImportJournal journal = importEngine.getJournal();
+        if (journal == null) {
+            return;
+        }
+        
+        List<ImportJournal.Entry> entries;
+        try {
+            entries = journal.findUnfinished();
+            journal.clear();
+        }
+        catch (SQLException e) {
+            logger.error("fail to read the import journal", e);
+            return;
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+        
+        String message = MessageFormat.format(resource.getString("resume.alert.Message"), entries.size());
+        String[] options = new String[] {
+            resource.getString("resume.alert.OptionOk"),
+            resource.getString("resume.alert.OptionNo"),
+        };
+        int result = JOptionPane.showOptionDialog(parent, message, null,
+                JOptionPane.YES_NO_OPTION,
+                JOptionPane.QUESTION_MESSAGE, null, options, options[0]);
+        if (result == JOptionPane.YES_OPTION) {
+            loadingManager.executeUnfinished(entries);
+        }
+    }
+    
+    /**
+     * Imports again the files which failed to be parsed.
+     */
+    public void retryQuarantined() {
+        if (importEngine.getQuarantine() == null) {
+            return;
+        }
+        loadingManager.executeRetry(RETRY_CONCURRENCY);
+    }
+    
     public void executeLoading(Collection<File> files, ImportableSequenceSource dest) {
         loadingManager.executeLoading(files, dest);
     }
     
+    /**
+     * Imports the files and the files in the directories, while walking the trees.
+     */
+    public Future<Integer> executeWalking(Collection<File> roots, ImportableSequenceSource dest) {
+        return loadingManager.executeWalking(roots, dest);
+    }
+    
+    public void cancelWalking() {
+        loadingManager.cancelWalking();
+    }
+    
+    public GeneticSequenceFileLoadingManager getLoadingManager() {
+        return loadingManager;
+    }
+    
     public void setLoadingManager(GeneticSequenceFileLoadingManager loadingManager) {
         if (this.loadingManager != null) {
             this.loadingManager.removePropertyChangeListener(this);
@@ -84,11 +291,25 @@ public class FileLoadingTaskController implements PropertyChangeListener, Sequen
             updateIndeterminate();
             updateProgressMessage();
         }
-        else if ("success".equals(evt.getPropertyName())) {
-            progressModel.setValue((Integer) evt.getNewValue());
+        else if ("success".equals(evt.getPropertyName())
+                || "skipped".equals(evt.getPropertyName())
+                || "quarantined".equals(evt.getPropertyName())
+                || "unsupported".equals(evt.getPropertyName())
+                || "failed".equals(evt.getPropertyName())) {
+            // files skipped or failed are finished, but not imported
+            progressModel.setValue(loadingManager.getFinished());
             updateIndeterminate();
             updateProgressMessage();
         }
+        else if ("inProgress".equals(evt.getPropertyName())) {
+            if (Boolean.TRUE.equals(evt.getNewValue())) {
+                metrics = null;
+                metricsTimer.start();
+            }
+            else {
+                metricsTimer.stop();
+            }
+        }
     }
     
     private void updateIndeterminate() {
@@ -98,6 +319,30 @@ public class FileLoadingTaskController implements PropertyChangeListener, Sequen
     
     private void updateProgressMessage() {
         String message = format("%d / %d...", progressModel.getValue(), progressModel.getMaximum());
+        int skipped = loadingManager.getSkipped();
+        if (skipped > 0) {
+            message = format("%s (%d skipped)", message, skipped);
+        }
+        int quarantined = loadingManager.getQuarantined();
+        if (quarantined > 0) {
+            message = format("%s (%d known failures)", message, quarantined);
+        }
+        int unsupported = loadingManager.getUnsupported();
+        if (unsupported > 0) {
+            message = format("%s (%d not sequence files)", message, unsupported);
+        }
+        int failed = loadingManager.getFailed();
+        if (failed > 0) {
+            message = format("%s (%d failed)", message, failed);
+        }
+        if (metrics != null) {
+            message = format("%s %.1f files/s, %.2f MB/s", message,
+                    metrics.getFilesPerSecond(), metrics.getMegabytesPerSecond());
+            long eta = metrics.getEtaSeconds();
+            if (eta >= 0) {
+                message = format("%s, %d:%02d left", message, eta / 60, eta % 60);
+            }
+        }
         progressMessage.set(message);
     }
 
@@ -122,5 +367,17 @@ public class FileLoadingTaskController implements PropertyChangeListener, Sequen
         public void bindContentPane(JComponent pane) {
             new BooleanModelBindings(conentePaneVisible).bindToComponentVisibled(pane);
         }
+        
+        public void bindRetryQuarantinedButton(AbstractButton button) {
+            button.setAction(retryQuarantinedAction);
+        }
+        
+        public void bindWatchFolderButton(AbstractButton button) {
+            button.setAction(watchFolderAction);
+        }
+        
+        public void bindUnwatchFolderButton(AbstractButton button) {
+            button.setAction(unwatchFolderAction);
+        }
     }
 }
@@ -1,6 +1,9 @@
 package jp.scid.genomemuseum.gui;
 
+import java.io.File;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.swing.AbstractButton;
@@ -16,11 +19,19 @@ import javax.swing.tree.TreePath;
 
 import jp.scid.bio.store.folder.CollectionType;
 import jp.scid.bio.store.folder.Folder;
+import jp.scid.bio.store.folder.FolderRecordBasicFolder;
 import jp.scid.bio.store.folder.FoldersContainer;
 import jp.scid.bio.store.remote.RemoteSource;
+import jp.scid.bio.store.sequence.FolderContentGeneticSequence;
+import jp.scid.bio.store.sequence.GeneticSequence;
 import jp.scid.bio.store.sequence.GeneticSequenceSource;
+import jp.scid.bio.store.sequence.ImportableSequenceSource;
+import jp.scid.genomemuseum.model.CollectionBoxStore;
+import jp.scid.genomemuseum.model.GroupBoxStore;
 import jp.scid.genomemuseum.model.MuseumTreeSource;
 import jp.scid.genomemuseum.model.NodeListTreeModel;
+import jp.scid.genomemuseum.model.SmartBoxCondition;
+import jp.scid.genomemuseum.model.SmartBoxStore;
 import jp.scid.genomemuseum.view.MainView.ContentsMode;
 import jp.scid.gui.control.ActionManager;
 import jp.scid.gui.control.BooleanModelBindings;
@@ -43,6 +54,7 @@ public class FolderTreeController implements TreeSelectionListener {
     private final Action groupFolderAddAction;
     private final Action filterFolderAddAction;
     private final Action folderRemoveAction;
+    private final Action smartConditionEditAction;
     
     private ValueModel<Object> selectedNodeObject;
     private SimpleValueModel<GeneticSequenceSource> selectedSequenceSource;
@@ -50,6 +62,13 @@ public class FolderTreeController implements TreeSelectionListener {
     
     private MuseumTreeSource treeSource;
     
+    private FileLoadingTaskController taskController = null;
+    
+    private SmartBoxStore smartBoxStore = null;
+    private GroupBoxStore groupBoxStore = null;
+    private CollectionBoxStore collectionBoxStore = null;
+    private final SmartConditionEditor smartConditionEditor = new SmartConditionEditor();
+    
     public FolderTreeController() {
         treeModel = new NodeListTreeModel();
         selectionModel = new SourceSelectionModel();
@@ -64,12 +83,55 @@ public class FolderTreeController implements TreeSelectionListener {
         groupFolderAddAction = actionManager.getAction("addGroupFolder");
         filterFolderAddAction = actionManager.getAction("addFilterFolder");
         folderRemoveAction = actionManager.getAction("remove");
+        smartConditionEditAction = actionManager.getAction("editSmartCondition");
+        smartConditionEditAction.setEnabled(false);
         
         ValueModel<Boolean> hasSelection =
                 ValueModels.newInstanceCheckModel(selectedNodeObject, Folder.class);
         new BooleanModelBindings(hasSelection).bindToActionEnabled(folderRemoveAction);
     }
     
+    public void setFileLoadingTaskController(FileLoadingTaskController taskController) {
+        this.taskController = taskController;
+    }
+    
+    public void setSmartBoxStore(SmartBoxStore smartBoxStore) {
+        this.smartBoxStore = smartBoxStore;
+    }
+    
+    /**
+     * Sets the store whose subtrees are forgotten when a box is added, moved or removed.
+     */
+    public void setGroupBoxStore(GroupBoxStore groupBoxStore) {
+        this.groupBoxStore = groupBoxStore;
+    }
+    
+    /**
+     * Sets the store which copies the sequences into collection boxes by the database.
+     */
+    public void setCollectionBoxStore(CollectionBoxStore collectionBoxStore) {
+        this.collectionBoxStore = collectionBoxStore;
+    }
+    
+    private void boxChanged(Long boxId) {
+        if (groupBoxStore != null && boxId != null) {
+            groupBoxStore.boxChanged(boxId);
+        }
+    }
+    
+    /**
+     * Imports the files dropped on the folder. Directories are walked and archives are expanded.
+     * 
+     * @return {@code false} if no task controller is set.
+     */
+    public boolean importFiles(List<File> files, ImportableSequenceSource dest) {
+        if (taskController == null) {
+            return false;
+        }
+        taskController.executeWalking(files, dest);
+        return true;
+    }
+    
     public void setModel(MuseumTreeSource treeSource) {
         treeModel.setTreeSource(treeSource);
         this.treeSource = treeSource;
@@ -110,7 +172,63 @@ public class FolderTreeController implements TreeSelectionListener {
     public void addFilterFolder() {
         logger.debug("FolderTreeController#addFilterFolder");
         TreePath path = addFolder(CollectionType.FILTER);
+        
+        if (smartBoxStore != null && path != null) {
+            Folder folder = (Folder) ((DefaultMutableTreeNode) path.getLastPathComponent()).getUserObject();
+            try {
+                smartBoxStore.saveCondition(folder.id(), new SmartBoxCondition());
+            }
+            catch (SQLException e) {
+                logger.error("fail to save the condition of the smart box", e);
+            }
+        }
         startEditingAtPath(path);
+        
+        if (smartConditionEditAction.isEnabled()) {
+            editSmartCondition();
+        }
+    }
+    
+    /**
+     * Edits the condition of the selected smart box by the dialog.
+     */
+    public void editSmartCondition() {
+        logger.debug("FolderTreeController#editSmartCondition");
+        Long boxId = getSelectedSmartBoxId();
+        if (boxId == null) {
+            return;
+        }
+        
+        try {
+            SmartBoxCondition condition = smartBoxStore.findCondition(boxId);
+            SmartBoxCondition edited = smartConditionEditor.showDialog(null, condition);
+            if (edited != null) {
+                smartBoxStore.saveCondition(boxId, edited);
+            }
+        }
+        catch (SQLException e) {
+            logger.error("fail to edit the condition of the smart box", e);
+        }
+    }
+    
+    /**
+     * @return the id of the selected folder if it has the condition of a smart box, or {@code null}.
+     */
+    private Long getSelectedSmartBoxId() {
+        DefaultMutableTreeNode selectedTreeNode = getSelectedTreeNode();
+        if (smartBoxStore == null || selectedTreeNode == null
+                || !(selectedTreeNode.getUserObject() instanceof Folder)) {
+            return null;
+        }
+        
+        Long boxId = ((Folder) selectedTreeNode.getUserObject()).id();
+        try {
+            return boxId != null && smartBoxStore.findCondition(boxId) != null ? boxId : null;
+        }
+        catch (SQLException e) {
+            logger.warn("fail to read the condition of the smart box", e);
+            return null;
+        }
     }
 
     private void startEditingAtPath(TreePath path) {
@@ -139,6 +257,7 @@ public class FolderTreeController implements TreeSelectionListener {
         
         Folder child = treeSource.createFolder(type, parentId);
         child.save();
+        boxChanged(parentId);
         
         int[] indexPath = treeSource.getIndexPath(child);
         TreePath path = treeModel.getPathOfIndex(indexPath);
@@ -155,13 +274,81 @@ public class FolderTreeController implements TreeSelectionListener {
         
         Folder folder = (Folder) objectPath[objectPath.length - 1];
         
+        boxChanged(folder.id());
         treeSource.removeFolder(folder);
         folder.delete();
     }
 
+    /**
+     * Copies the exhibits of the box, the boxes under the group box, or the exhibits matching
+     * the smart box into the collection box by one statement.
+     * 
+     * @return {@code false} if they cannot be copied by the store,
+     *         and should be added by {@link FolderRecordBasicFolder#addAllSequences}.
+     */
+    boolean copyContents(Folder source, Folder dest) {
+        if (collectionBoxStore == null) {
+            return false;
+        }
+        
+        try {
+            SmartBoxCondition condition;
+            if (source instanceof FolderRecordBasicFolder) {
+                collectionBoxStore.copyBoxItems(dest.id(), Collections.singleton(source.id()));
+            }
+            else if (source instanceof FoldersContainer && groupBoxStore != null) {
+                collectionBoxStore.copyBoxItems(dest.id(), groupBoxStore.findSubtreeIds(source.id()));
+            }
+            else if (smartBoxStore != null && (condition = smartBoxStore.findCondition(source.id())) != null) {
+                collectionBoxStore.addMatchingExhibits(dest.id(), condition);
+            }
+            else {
+                return false;
+            }
+        }
+        catch (SQLException e) {
+            logger.error("fail to copy the contents of the box", e);
+            return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Adds the sequences of the library into the collection box by one statement.
+     * 
+     * @return {@code false} if they cannot be added by the store, such as the items of boxes.
+     */
+    boolean addSequences(List<GeneticSequence> sequences, Folder dest) {
+        if (collectionBoxStore == null) {
+            return false;
+        }
+        
+        List<Long> exhibitIds = new ArrayList<Long>(sequences.size());
+        for (GeneticSequence sequence: sequences) {
+            if (sequence instanceof FolderContentGeneticSequence) {
+                return false;
+            }
+            exhibitIds.add(sequence.id());
+        }
+        
+        try {
+            collectionBoxStore.addExhibits(dest.id(), exhibitIds);
+        }
+        catch (SQLException e) {
+            logger.error("fail to add the sequences to the box", e);
+            return false;
+        }
+        return true;
+    }
+    
     boolean moveTo(Folder folder, FoldersContainer destParent) {
         Long parentId = destParent instanceof Folder ? ((Folder) destParent).id() : null;
-        return treeSource.changeParent(folder, parentId);
+        boolean changed = treeSource.changeParent(folder, parentId);
+        if (changed) {
+            boxChanged(folder.id());
+            boxChanged(parentId);
+        }
+        return changed;
     }
     
     boolean moveTo(FoldersContainer destParent) {
@@ -193,6 +380,8 @@ public class FolderTreeController implements TreeSelectionListener {
         
         ContentsMode newMode = nodeObj instanceof RemoteSource ? ContentsMode.NCBI : ContentsMode.LOCAL;
         selectedMode.set(newMode);
+        
+        smartConditionEditAction.setEnabled(getSelectedSmartBoxId() != null);
     }
     
     private void selectAnyNode() {
@@ -237,6 +426,10 @@ public class FolderTreeController implements TreeSelectionListener {
         button.setAction(filterFolderAddAction);
     }
     
+    public void bindSmartConditionEditButton(AbstractButton button) {
+        button.setAction(smartConditionEditAction);
+    }
+    
     public void bindFolderRemoveButton(AbstractButton button) {
         Icon icon = button.getIcon();
         button.setAction(folderRemoveAction);
@@ -59,7 +59,9 @@ public class FolderTreeTransferHandler extends TransferHandler {
         }
         else if (targetObject instanceof FolderRecordBasicFolder) {
             FolderRecordBasicFolder dest = ((FolderRecordBasicFolder) targetObject);
-            dest.addAllSequences(folder.getGeneticSequences());
+            if (!treeController.copyContents(folder, (Folder) dest)) {
+                dest.addAllSequences(folder.getGeneticSequences());
+            }
             return true;
         }
         
@@ -76,6 +78,9 @@ public class FolderTreeTransferHandler extends TransferHandler {
         FolderRecordBasicFolder dest = ((FolderRecordBasicFolder) getTargetNodeObject(support));
         
         GeneticSequenceList seqList = GeneticSequenceListTransferHandler.getTransferGeneticSequenceList(support);
+        if (treeController.addSequences(seqList, (Folder) dest)) {
+            return true;
+        }
         return !dest.addAllSequences(seqList).isEmpty();
     }
     
@@ -88,9 +93,8 @@ public class FolderTreeTransferHandler extends TransferHandler {
     public boolean importFile(TransferSupport support) {
         List<File> fileList = GeneticSequenceListTransferHandler.getTransferFile(support);
         ImportableSequenceSource target = (ImportableSequenceSource) getTargetNodeObject(support);
-//        taskController.executeLoading(fileList, target);
         
-        return false;
+        return treeController.importFiles(fileList, target);
     }
     
     @Override
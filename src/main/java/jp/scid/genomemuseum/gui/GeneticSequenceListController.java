@@ -1,26 +1,63 @@
 package jp.scid.genomemuseum.gui;
 
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
 import java.io.File;
 import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.net.URI;
+import java.sql.SQLException;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.DefaultListSelectionModel;
 import javax.swing.JOptionPane;
 import javax.swing.JTable;
 import javax.swing.ListModel;
+import javax.swing.ListSelectionModel;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.TableColumnModelEvent;
+import javax.swing.event.TableColumnModelListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.JTableHeader;
+import javax.swing.table.TableColumnModel;
+import javax.swing.table.TableModel;
 
+import jp.scid.bio.store.SequenceLibrary;
+import jp.scid.bio.store.folder.Folder;
+import jp.scid.bio.store.folder.FoldersContainer;
 import jp.scid.bio.store.sequence.FolderContentGeneticSequence;
 import jp.scid.bio.store.sequence.GeneticSequence;
 import jp.scid.bio.store.sequence.GeneticSequenceSource;
 import jp.scid.bio.store.sequence.ImportableSequenceSource;
+import jp.scid.genomemuseum.model.CollectionBoxStore;
+import jp.scid.genomemuseum.model.ExhibitPager;
+import jp.scid.genomemuseum.model.ExhibitRecord;
+import jp.scid.genomemuseum.model.ExhibitRecordStore;
+import jp.scid.genomemuseum.model.ExhibitSearchIndex;
 import jp.scid.genomemuseum.model.GeneticSequenceTableFormat;
+import jp.scid.genomemuseum.model.GroupBoxStore;
+import jp.scid.genomemuseum.model.LibraryFileDeleter;
+import jp.scid.genomemuseum.model.SequenceFileWalker;
+import jp.scid.genomemuseum.model.SmartBoxCondition;
+import jp.scid.genomemuseum.model.SmartBoxStore;
+import jp.scid.genomemuseum.model.TableViewPropertyStore;
+import jp.scid.genomemuseum.model.TableViewPropertyStore.Property;
+import jp.scid.genomemuseum.model.SequenceFileWalker.FileHandler;
 import jp.scid.gui.control.BooleanModelBindings;
+import jp.scid.gui.model.SimpleValueModel;
 import jp.scid.gui.model.ValueModel;
 import jp.scid.gui.model.ValueModels;
 import jp.scid.gui.model.connector.ValueConnector;
@@ -33,6 +70,8 @@ import ca.odell.glazedlists.EventList;
 import ca.odell.glazedlists.TextFilterator;
 import ca.odell.glazedlists.event.ListEvent;
 import ca.odell.glazedlists.event.ListEventListener;
+import ca.odell.glazedlists.matchers.AbstractMatcherEditor;
+import ca.odell.glazedlists.matchers.Matcher;
 import ca.odell.glazedlists.swing.DefaultEventListModel;
 
 public class GeneticSequenceListController extends ListController<GeneticSequence> {
@@ -47,14 +86,149 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
     private FileLoadingTaskController taskController;
 
     private final ValueModel<GeneticSequence> selectedElement;
+    
+    private ExhibitSearchIndex searchIndex = null;
+    private final IdMatcherEditor indexMatcherEditor = new IdMatcherEditor();
+    /** the running search, whose result is shown */
+    private SearchTask searchTask = null;
+    private String searchText = "";
+    
+    /** the rows of the library, read a page at a time */
+    private ExhibitPageTableModel pageTableModel = null;
+    private final ListSelectionModel pageSelectionModel = new DefaultListSelectionModel();
+    private final SimpleValueModel<ExhibitRecord> selectedRecord = new SimpleValueModel<ExhibitRecord>();
+    /** the table bound, whose model is changed to the pages for the library */
+    private JTable table = null;
+    private TableModel eventTableModel = null;
+    private boolean orderChangeScheduled = false;
+    
+    private TableViewPropertyStore viewPropertyStore = null;
+    private TableHeaderClickHandler.Binder sortBinder = null;
+    /** {@code true} while the view property is applied, not to save it or read the rows again */
+    private boolean restoringView = false;
+    /** the ranges of the rows to select when the rows of the pages are counted */
+    private String pendingSelectedRows = null;
+    
+    private SmartBoxStore smartBoxStore = null;
+    /** the condition of the smart box shown, or {@code null} if the model is not a smart box */
+    private SmartBoxCondition shownCondition = null;
+    
+    private GroupBoxStore groupBoxStore = null;
+    /** the boxes under the group box shown, or {@code null} if the model is not a group box */
+    private Set<Long> shownBoxIds = null;
+    
+    /** deletes the exhibits of the library at once, or {@code null} to delete each sequence */
+    private ExhibitRecordStore recordStore = null;
+    private LibraryFileDeleter fileDeleter = null;
+    private CollectionBoxStore collectionBoxStore = null;
 
     private final ChangeListener sequenceSourceChangeListener = new ChangeListener() {
         @Override
         public void stateChanged(ChangeEvent e) {
+            exhibitsChanged();
+        }
+    };
+    
+    private final ChangeListener smartBoxConditionListener = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            shownCondition = findCondition(model);
+            updateTableModel();
             fetch();
         }
     };
     
+    private final ChangeListener groupBoxListener = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            Set<Long> boxIds = findSubtreeIds(model);
+            if (boxIds == null ? shownBoxIds == null : boxIds.equals(shownBoxIds)) {
+                return;
+            }
+            shownBoxIds = boxIds;
+            updateTableModel();
+            fetch();
+        }
+    };
+    
+    private final PropertyChangeListener headerOrderListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            String name = evt.getPropertyName();
+            if (!"JTableHeader.selectedColumn".equals(name) && !"JTableHeader.sortDirection".equals(name)) {
+                return;
+            }
+            // the column and the direction are changed by a click
+            if (!restoringView && !orderChangeScheduled) {
+                orderChangeScheduled = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        orderChangeScheduled = false;
+                        if (isPaged()) {
+                            updatePageOrder();
+                            reloadPages();
+                        }
+                        saveViewProperty();
+                    }
+                });
+            }
+        }
+    };
+    
+    private final TableModelListener pageRowsListener = new TableModelListener() {
+        @Override
+        public void tableChanged(TableModelEvent e) {
+            // the page of the selected row is read
+            if (selectedRecord.get() == null) {
+                updateSelectedRecord();
+            }
+            // the rows are counted
+            if (pendingSelectedRows != null && e.getLastRow() == Integer.MAX_VALUE) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        restoreSelection();
+                    }
+                });
+            }
+        }
+    };
+    
+    private final TableColumnModelListener columnMoveListener = new TableColumnModelListener() {
+        @Override
+        public void columnMoved(TableColumnModelEvent e) {
+            if (e.getFromIndex() != e.getToIndex()) {
+                saveViewProperty();
+            }
+        }
+        
+        @Override
+        public void columnAdded(TableColumnModelEvent e) {
+        }
+        
+        @Override
+        public void columnRemoved(TableColumnModelEvent e) {
+        }
+        
+        @Override
+        public void columnMarginChanged(ChangeEvent e) {
+        }
+        
+        @Override
+        public void columnSelectionChanged(ListSelectionEvent e) {
+        }
+    };
+    
+    private final PropertyChangeListener importFinishedListener = new PropertyChangeListener() {
+        @Override
+        public void propertyChange(PropertyChangeEvent evt) {
+            if (Boolean.FALSE.equals(evt.getNewValue())) {
+                exhibitsChanged();
+            }
+        }
+    };
+    
     public GeneticSequenceListController(EventList<GeneticSequence> source) {
         super(source);
         transferHandler = new GeneticSequenceListTransferHandler(this);
@@ -66,6 +240,18 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         EventListSingleSelectAdapter<GeneticSequence> selectAdapter = new EventListSingleSelectAdapter<GeneticSequence>();
         selectAdapter.setSource(selectionModel.getSelected());
         selectedElement = selectAdapter.getTargetModel();
+        
+        pageSelectionModel.addListSelectionListener(new ListSelectionListener() {
+            @Override
+            public void valueChanged(ListSelectionEvent e) {
+                if (!e.getValueIsAdjusting()) {
+                    updateSelectedRecord();
+                }
+                if (isPaged()) {
+                    removeAction.setEnabled(canRemovePages());
+                }
+            }
+        });
     }
     
     public GeneticSequenceListController() {
@@ -76,9 +262,49 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         return selectedElement;
     }
     
+    /**
+     * @return the record selected in the pages of the library
+     */
+    public ValueModel<ExhibitRecord> getSelectedExhibitRecord() {
+        return selectedRecord;
+    }
+    
+    private void updateSelectedRecord() {
+        ExhibitRecord record = null;
+        int index = pageSelectionModel.getMinSelectionIndex();
+        if (pageTableModel != null && index >= 0 && index == pageSelectionModel.getMaxSelectionIndex()) {
+            record = pageTableModel.getRecord(index);
+        }
+        selectedRecord.set(record);
+    }
+    
+    /**
+     * Loads the sequences, and searches the index again for the sequences which are added.
+     */
+    @Override
+    public void fetch() {
+        super.fetch();
+        if (isPaged()) {
+            reloadPages();
+        }
+        else if (searchIndex != null && !searchText.trim().isEmpty()) {
+            refilter(searchText);
+        }
+    }
+    
+    /**
+     * Forgets the pages and the counts of the smart boxes, and loads the sequences again.
+     */
+    private void exhibitsChanged() {
+        if (pageTableModel != null) {
+            pageTableModel.getPager().invalidate();
+        }
+        fetch();
+    }
+    
     @Override
     protected List<GeneticSequence> retrieve() {
-        if (model == null) {
+        if (model == null || isPaged()) {
             return super.retrieve();
         }
         return new ArrayList<GeneticSequence>(model.getGeneticSequences());
@@ -107,26 +333,49 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         return true;
     }
     
+    /**
+     * Imports the files, and the files in the directories recursively.
+     */
     public void importFiles(Collection<File> files) {
-        ImportableSequenceSource dest = (ImportableSequenceSource) this.model;
+        final ImportableSequenceSource dest = (ImportableSequenceSource) this.model;
         if (taskController != null) {
-            taskController.executeLoading(files, dest);
+            taskController.executeWalking(files, dest);
+            return;
         }
-        else try {
-            for (File file: files) {
-                dest.importSequence(file);
+        
+        SequenceFileWalker walker = new SequenceFileWalker(files, new FileHandler() {
+            @Override
+            public void fileFound(File file) {
+                try {
+                    dest.importSequence(file);
+                }
+                catch (IOException e) {
+                    logger.error("fail to import sequence file", e);
+                }
+                catch (ParseException e) {
+                    logger.warn("fail to import sequence file", e);
+                }
             }
+        });
+        try {
+            walker.call();
         }
         catch (IOException e) {
-            logger.error("fail to import sequence file", e);
-        }
-        catch (ParseException e) {
-            logger.warn("fail to import sequence file", e);
+            logger.error("fail to walk files", e);
         }
     }
     
+    /**
+     * Removes the selected sequences. The exhibits of the library are deleted at once
+     * in background if the record store is set, and the list is loaded again after that.
+     */
     @Override
     public List<GeneticSequence> remove() {
+        if (isPaged()) {
+            removePages();
+            return Collections.emptyList();
+        }
+        
         List<GeneticSequence> selections = selectionModel.getSelected();
         boolean removeLibfile = false;
         
@@ -138,16 +387,59 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
             removeLibfile = result == JOptionPane.OK_OPTION;
         }
         
+        List<Long> exhibitIds = new ArrayList<Long>();
         for (GeneticSequence sequence: selections) {
+            // the items of the boxes are removed from the boxes
+            if (recordStore != null && !(sequence instanceof FolderContentGeneticSequence)) {
+                exhibitIds.add(sequence.id());
+                continue;
+            }
             if (removeLibfile) {
                 sequence.deleteFileFromLibrary();
             }
             sequence.delete();
         }
+        if (!exhibitIds.isEmpty()) {
+            new DeleteTask(exhibitIds, removeLibfile).execute();
+        }
         selections.clear();
+        if (pageTableModel != null) {
+            pageTableModel.getPager().invalidate();
+        }
         return selections;
     }
     
+    boolean canRemovePages() {
+        return recordStore != null && shownBoxIds == null && !pageSelectionModel.isSelectionEmpty();
+    }
+    
+    /**
+     * Deletes the exhibits of the selected rows, whose pages are not read yet too.
+     * The ids and the files of the rows are read by the task in background.
+     */
+    private void removePages() {
+        if (!canRemovePages()) {
+            return;
+        }
+        
+        List<int[]> rowRanges = new ArrayList<int[]>();
+        int last = pageSelectionModel.getMaxSelectionIndex();
+        for (int first = pageSelectionModel.getMinSelectionIndex(); first <= last; first++) {
+            if (!pageSelectionModel.isSelectedIndex(first)) {
+                continue;
+            }
+            int end = first;
+            while (end < last && pageSelectionModel.isSelectedIndex(end + 1)) {
+                end++;
+            }
+            rowRanges.add(new int[] {first, end - first + 1});
+            first = end;
+        }
+        
+        pageSelectionModel.clearSelection();
+        new DeleteTask(pageTableModel.getPager(), rowRanges).execute();
+    }
+    
     private static int askLibraryFileRemove() {
         String message = resource.getString("remove.alert.Message");
         String[] options = new String[] {
@@ -171,8 +463,51 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         return false;
     }
     
+    /**
+     * Deletes the exhibits of the library by a statement for many of them, instead of each sequence.
+     * 
+     * @param recordStore the store, or {@code null} to delete each sequence.
+     */
+    public void setExhibitRecordStore(ExhibitRecordStore recordStore) {
+        this.recordStore = recordStore;
+    }
+    
+    /**
+     * @param fileDeleter the deleter of the files of the removed exhibits,
+     *        or {@code null} not to delete them with the bulk delete.
+     */
+    public void setLibraryFileDeleter(LibraryFileDeleter fileDeleter) {
+        this.fileDeleter = fileDeleter;
+    }
+    
+    /**
+     * Loads the sequences again when the store adds exhibits to a collection box.
+     */
+    public void setCollectionBoxStore(CollectionBoxStore store) {
+        if (collectionBoxStore != null) {
+            collectionBoxStore.removeChangeListener(sequenceSourceChangeListener);
+        }
+        
+        collectionBoxStore = store;
+        
+        if (store != null) {
+            store.addChangeListener(sequenceSourceChangeListener);
+        }
+    }
+    
     public void setFileLoadingTaskController(FileLoadingTaskController taskController) {
+        if (this.taskController != null) {
+            this.taskController.getLoadingManager()
+                    .removePropertyChangeListener("inProgress", importFinishedListener);
+        }
+        
         this.taskController = taskController;
+        
+        if (taskController != null) {
+            // records imported by the engine are not notified from the sequence source
+            taskController.getLoadingManager()
+                    .addPropertyChangeListener("inProgress", importFinishedListener);
+        }
     }
     
     // model
@@ -182,18 +517,406 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
 
     public void setModel(GeneticSequenceSource newModel) {
         logger.debug("set list model: {}", newModel);
+        saveViewProperty();
         
         if (this.model != null) {
             this.model.removeSequencesChangeListener(sequenceSourceChangeListener);
         }
         
         this.model = newModel;
+        shownCondition = findCondition(newModel);
+        shownBoxIds = findSubtreeIds(newModel);
         
         if (newModel != null) {
             newModel.addSequencesChangeListener(sequenceSourceChangeListener);
         }
         
+        updateTableModel();
+        restoreViewProperty();
         fetch();
+        if (!isPaged()) {
+            restoreSelection();
+        }
+    }
+    
+    /**
+     * Keeps the columns, the order and the selection of the table of each box,
+     * and applies them when the box is shown again.
+     * 
+     * @param store the store, or {@code null} not to keep them.
+     */
+    public void setTableViewPropertyStore(TableViewPropertyStore store) {
+        viewPropertyStore = store;
+    }
+    
+    private static Long viewPropertyKey(GeneticSequenceSource source) {
+        if (source instanceof SequenceLibrary) {
+            return TableViewPropertyStore.LIBRARY_BOX_ID;
+        }
+        else if (source instanceof Folder) {
+            return ((Folder) source).id();
+        }
+        return null;
+    }
+    
+    /**
+     * Saves the columns, the order and the selection of the table for the model shown.
+     * They are written to the database later.
+     */
+    public void saveViewProperty() {
+        Long key = viewPropertyKey(model);
+        if (viewPropertyStore == null || table == null || key == null || restoringView) {
+            return;
+        }
+        
+        TableColumnModel columnModel = table.getColumnModel();
+        List<String> columns = new ArrayList<String>(columnModel.getColumnCount());
+        for (int i = 0; i < columnModel.getColumnCount(); i++) {
+            columns.add(String.valueOf(columnModel.getColumn(i).getIdentifier()));
+        }
+        
+        String orderStatement = "";
+        JTableHeader header = table.getTableHeader();
+        Object column = header.getClientProperty("JTableHeader.selectedColumn");
+        Object direction = header.getClientProperty("JTableHeader.sortDirection");
+        if (column instanceof Integer && direction != null && (Integer) column < columnModel.getColumnCount()) {
+            orderStatement = columnModel.getColumn((Integer) column).getIdentifier() + " " + direction;
+        }
+        
+        String selectedRows = pendingSelectedRows != null
+                ? pendingSelectedRows : formatRows(table.getSelectionModel());
+        viewPropertyStore.save(key, new Property(columns, orderStatement, selectedRows));
+    }
+    
+    /**
+     * Applies the columns and the order saved for the model before its rows are read,
+     * so that the rows are sorted once when they are read.
+     */
+    private void restoreViewProperty() {
+        pendingSelectedRows = null;
+        Long key = viewPropertyKey(model);
+        if (viewPropertyStore == null || table == null || key == null) {
+            return;
+        }
+        
+        Property property;
+        try {
+            property = viewPropertyStore.find(key);
+        }
+        catch (SQLException e) {
+            logger.warn("fail to read the table view property", e);
+            return;
+        }
+        
+        restoringView = true;
+        try {
+            if (property != null) {
+                moveColumns(property.getColumns());
+            }
+            if (sortBinder != null) {
+                // the rows of the last model are not sorted again
+                clearRows();
+                String direction = property != null && property.isDescending() ? "descending" : "ascending";
+                sortBinder.applyOrder(property != null ? property.getOrderColumn() : null, direction);
+            }
+            if (isPaged()) {
+                updatePageOrder();
+            }
+        }
+        finally {
+            restoringView = false;
+        }
+        
+        if (property != null && !property.getSelectedRows().isEmpty()) {
+            pendingSelectedRows = property.getSelectedRows();
+        }
+    }
+    
+    private void moveColumns(List<String> identifiers) {
+        TableColumnModel columnModel = table.getColumnModel();
+        int position = 0;
+        for (String identifier: identifiers) {
+            for (int i = position; i < columnModel.getColumnCount(); i++) {
+                if (identifier.equals(String.valueOf(columnModel.getColumn(i).getIdentifier()))) {
+                    columnModel.moveColumn(i, position++);
+                    break;
+                }
+            }
+        }
+    }
+    
+    private void clearRows() {
+        base.getReadWriteLock().writeLock().lock();
+        try {
+            base.clear();
+        }
+        finally {
+            base.getReadWriteLock().writeLock().unlock();
+        }
+    }
+    
+    private void restoreSelection() {
+        String rows = pendingSelectedRows;
+        pendingSelectedRows = null;
+        if (rows == null || table == null) {
+            return;
+        }
+        
+        ListSelectionModel selection = table.getSelectionModel();
+        int rowCount = table.getModel().getRowCount();
+        selection.setValueIsAdjusting(true);
+        try {
+            selection.clearSelection();
+            for (String range: rows.split(",")) {
+                String[] ends = range.trim().split("-");
+                try {
+                    int first = Integer.parseInt(ends[0]);
+                    int last = Math.min(Integer.parseInt(ends[ends.length - 1]), rowCount - 1);
+                    if (first <= last) {
+                        selection.addSelectionInterval(first, last);
+                    }
+                }
+                catch (NumberFormatException e) {
+                    logger.debug("ignore the invalid rows {}", range);
+                }
+            }
+        }
+        finally {
+            selection.setValueIsAdjusting(false);
+        }
+    }
+    
+    /**
+     * @return the ranges of the selected rows, such as {@code 0-4,9}.
+     */
+    static String formatRows(ListSelectionModel selection) {
+        StringBuilder rows = new StringBuilder();
+        if (selection.isSelectionEmpty()) {
+            return "";
+        }
+        int last = selection.getMaxSelectionIndex();
+        for (int first = selection.getMinSelectionIndex(); first <= last; first++) {
+            if (!selection.isSelectedIndex(first)) {
+                continue;
+            }
+            int end = first;
+            while (end < last && selection.isSelectedIndex(end + 1)) {
+                end++;
+            }
+            if (rows.length() > 0) {
+                rows.append(',');
+            }
+            rows.append(first);
+            if (end > first) {
+                rows.append('-').append(end);
+            }
+            first = end;
+        }
+        return rows.toString();
+    }
+    
+    /**
+     * Reads the exhibits of the library a page at a time as the table is scrolled,
+     * instead of loading all sequences of the library. The rows are sorted and searched
+     * by the database.
+     * 
+     * @param pager the pager, or {@code null} to load all sequences.
+     */
+    public void setExhibitPager(ExhibitPager pager) {
+        pageSelectionModel.clearSelection();
+        if (pageTableModel != null) {
+            pageTableModel.removeTableModelListener(pageRowsListener);
+        }
+        
+        pageTableModel = pager != null ? new ExhibitPageTableModel(pager, new GeneticSequenceTableFormat()) : null;
+        
+        if (pageTableModel != null) {
+            pageTableModel.addTableModelListener(pageRowsListener);
+        }
+        updateTableModel();
+        fetch();
+    }
+    
+    boolean isPaged() {
+        return pageTableModel != null
+                && (model instanceof SequenceLibrary || shownCondition != null || shownBoxIds != null);
+    }
+    
+    /**
+     * Shows the exhibits in all boxes under a group box by the pages of the library.
+     * 
+     * @param store the store, or {@code null} to show the contents of the group boxes.
+     */
+    public void setGroupBoxStore(GroupBoxStore store) {
+        if (groupBoxStore != null) {
+            groupBoxStore.removeChangeListener(groupBoxListener);
+        }
+        
+        groupBoxStore = store;
+        
+        if (store != null) {
+            store.addChangeListener(groupBoxListener);
+        }
+        groupBoxListener.stateChanged(new ChangeEvent(this));
+    }
+    
+    private Set<Long> findSubtreeIds(GeneticSequenceSource source) {
+        if (groupBoxStore == null || !(source instanceof Folder && source instanceof FoldersContainer)) {
+            return null;
+        }
+        try {
+            return groupBoxStore.findSubtreeIds(((Folder) source).id());
+        }
+        catch (SQLException e) {
+            logger.warn("fail to read the boxes of the group box", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Shows the exhibits matching the conditions of the smart boxes by the pages of the library.
+     * 
+     * @param store the store, or {@code null} to show the contents of the smart boxes.
+     */
+    public void setSmartBoxStore(SmartBoxStore store) {
+        if (smartBoxStore != null) {
+            smartBoxStore.removeChangeListener(smartBoxConditionListener);
+        }
+        
+        smartBoxStore = store;
+        
+        if (store != null) {
+            store.addChangeListener(smartBoxConditionListener);
+        }
+        smartBoxConditionListener.stateChanged(new ChangeEvent(this));
+    }
+    
+    private SmartBoxCondition findCondition(GeneticSequenceSource source) {
+        if (smartBoxStore == null || !(source instanceof Folder)) {
+            return null;
+        }
+        try {
+            return smartBoxStore.findCondition(((Folder) source).id());
+        }
+        catch (SQLException e) {
+            logger.warn("fail to read the condition of the smart box", e);
+            return null;
+        }
+    }
+    
+    private void reloadPages() {
+        pageSelectionModel.clearSelection();
+        pageTableModel.reload();
+    }
+    
+    /**
+     * Shows the pages in the table for the library, or the loaded sequences for the others.
+     */
+    private void updateTableModel() {
+        boolean paged = isPaged();
+        if (paged) {
+            if (shownBoxIds != null) {
+                pageTableModel.getPager().setBoxes(shownBoxIds);
+            }
+            else {
+                pageTableModel.getPager().setCondition(shownCondition);
+            }
+            pageTableModel.getPager().setSearchText(searchText);
+        }
+        
+        if (table == null) {
+            return;
+        }
+        TableModel tableModel = paged ? pageTableModel : eventTableModel;
+        if (table.getModel() == tableModel) {
+            return;
+        }
+        
+        pageSelectionModel.clearSelection();
+        table.setModel(tableModel);
+        table.setSelectionModel(paged ? pageSelectionModel : selectionModel);
+        if (paged) {
+            updatePageOrder();
+        }
+        removeAction.setEnabled(paged ? canRemovePages() : !selectionModel.isSelectionEmpty());
+    }
+    
+    /**
+     * Sorts the pages by the column which the header shows.
+     */
+    private void updatePageOrder() {
+        JTableHeader header = table.getTableHeader();
+        Object column = header.getClientProperty("JTableHeader.selectedColumn");
+        Object direction = header.getClientProperty("JTableHeader.sortDirection");
+        
+        String columnName = null;
+        if (column instanceof Integer && direction != null
+                && (Integer) column < table.getColumnModel().getColumnCount()) {
+            int modelIndex = table.convertColumnIndexToModel((Integer) column);
+            columnName = pageTableModel.getColumnName(modelIndex);
+        }
+        pageTableModel.getPager().setOrder(columnName, "descending".equals(direction));
+    }
+    
+    void bindPagedTable(JTable table) {
+        if (this.table != null) {
+            this.table.getTableHeader().removePropertyChangeListener(headerOrderListener);
+            this.table.getColumnModel().removeColumnModelListener(columnMoveListener);
+        }
+        
+        this.table = table;
+        eventTableModel = table.getModel();
+        table.getTableHeader().addPropertyChangeListener(headerOrderListener);
+        table.getColumnModel().addColumnModelListener(columnMoveListener);
+        updateTableModel();
+    }
+    
+    public ExhibitSearchIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    /**
+     * Searches the text in the full-text index of the database, instead of the loaded sequences.
+     * 
+     * @param searchIndex the index, or {@code null} to filter the loaded sequences.
+     */
+    public void setSearchIndex(ExhibitSearchIndex searchIndex) {
+        this.searchIndex = searchIndex;
+        if (searchTask != null) {
+            searchTask.cancel(false);
+            searchTask = null;
+        }
+        indexMatcherEditor.setIds(null);
+        setFilterMatcherEditor(searchIndex != null ? indexMatcherEditor : null);
+    }
+    
+    /**
+     * Filters by the ids found in the search index off the event dispatch thread,
+     * if the index is set.
+     */
+    @Override
+    public void refilter(String text) {
+        searchText = text;
+        if (isPaged()) {
+            pageTableModel.getPager().setSearchText(text);
+            reloadPages();
+            return;
+        }
+        if (searchIndex == null) {
+            super.refilter(text);
+            return;
+        }
+        
+        if (searchTask != null) {
+            searchTask.cancel(false);
+        }
+        if (text.trim().isEmpty()) {
+            searchTask = null;
+            indexMatcherEditor.setIds(null);
+            return;
+        }
+        searchTask = new SearchTask(searchIndex, text);
+        searchTask.execute();
     }
     
     @Override
@@ -215,7 +938,8 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         public void bindTable(JTable table) {
             bindTable(table, tableFormat);
             bindTableTransferHandler(table);
-            bindSortableTableHeader(table.getTableHeader(), tableFormat);
+            sortBinder = bindSortableTableHeader(table.getTableHeader(), tableFormat);
+            bindPagedTable(table);
         }
     }
     
@@ -232,6 +956,152 @@ public class GeneticSequenceListController extends ListController<GeneticSequenc
         }
     }
     
+    /**
+     * Searches the index for the ids of the matching sequences.
+     */
+    private class SearchTask extends SwingWorker<Set<Long>, Void> {
+        private final ExhibitSearchIndex index;
+        private final String text;
+        
+        public SearchTask(ExhibitSearchIndex index, String text) {
+            this.index = index;
+            this.text = text;
+        }
+        
+        @Override
+        protected Set<Long> doInBackground() throws SQLException {
+            return index.search(text);
+        }
+        
+        @Override
+        protected void done() {
+            if (searchTask != this || isCancelled()) {
+                return;
+            }
+            searchTask = null;
+            
+            try {
+                indexMatcherEditor.setIds(get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                logger.warn("fail to search the index, filter the loaded sequences", e.getCause());
+                setSearchIndex(null);
+                GeneticSequenceListController.super.refilter(text);
+            }
+        }
+    }
+    
+    /**
+     * Deletes the exhibits in one transaction, and the files of them which are stored in the library.
+     * The list is loaded once after all exhibits are deleted.
+     */
+    private class DeleteTask extends SwingWorker<Set<URI>, Void> {
+        private final ExhibitPager pager;
+        private final List<int[]> rowRanges;
+        private List<Long> exhibitIds;
+        private volatile boolean deleteFiles;
+        
+        public DeleteTask(List<Long> exhibitIds, boolean deleteFiles) {
+            this.pager = null;
+            this.rowRanges = Collections.emptyList();
+            this.exhibitIds = exhibitIds;
+            this.deleteFiles = deleteFiles;
+        }
+        
+        /**
+         * Deletes the exhibits of the rows of the pager. The user is asked whether the files
+         * are deleted if the exhibits have files stored in the library.
+         * 
+         * @param rowRanges the first row and the count of rows of each range
+         */
+        public DeleteTask(ExhibitPager pager, List<int[]> rowRanges) {
+            this.pager = pager;
+            this.rowRanges = rowRanges;
+            this.exhibitIds = null;
+            this.deleteFiles = false;
+        }
+        
+        @Override
+        protected Set<URI> doInBackground() throws SQLException, InterruptedException {
+            if (pager != null) {
+                exhibitIds = new ArrayList<Long>();
+                for (int[] range: rowRanges) {
+                    exhibitIds.addAll(pager.readIds(range[0], range[1]));
+                }
+                Set<URI> files = recordStore.findExhibitFiles(exhibitIds);
+                if (fileDeleter != null && fileDeleter.containsStored(files) && !askDeleteFiles()) {
+                    return Collections.emptySet();
+                }
+            }
+            return recordStore.deleteAll(exhibitIds);
+        }
+        
+        /**
+         * Asks on the event dispatch thread whether the files in the library are deleted.
+         * 
+         * @return {@code false} if the deletion is cancelled.
+         */
+        private boolean askDeleteFiles() throws InterruptedException {
+            final int[] result = {JOptionPane.CANCEL_OPTION};
+            try {
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        result[0] = askLibraryFileRemove();
+                    }
+                });
+            }
+            catch (InvocationTargetException e) {
+                logger.error("fail to ask to remove the files", e.getCause());
+                return false;
+            }
+            deleteFiles = result[0] == JOptionPane.OK_OPTION;
+            return result[0] != JOptionPane.CANCEL_OPTION;
+        }
+        
+        @Override
+        protected void done() {
+            try {
+                Set<URI> files = get();
+                if (deleteFiles && fileDeleter != null) {
+                    fileDeleter.deleteLater(files);
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                logger.error("fail to delete the exhibits", e.getCause());
+            }
+            exhibitsChanged();
+        }
+    }
+    
+    /**
+     * Matches the sequences whose ids are found by the search index.
+     */
+    private static class IdMatcherEditor extends AbstractMatcherEditor<GeneticSequence> {
+        /**
+         * @param ids the ids to match, or {@code null} to match all.
+         */
+        public void setIds(final Set<Long> ids) {
+            if (ids == null) {
+                fireMatchAll();
+                return;
+            }
+            fireChanged(new Matcher<GeneticSequence>() {
+                @Override
+                public boolean matches(GeneticSequence item) {
+                    return ids.contains(item.id());
+                }
+            });
+        }
+    }
+    
     static class EventListSingleSelectAdapter<E> extends ValueConnector<E, EventList<E>> implements ListEventListener<E> {
         @Override
         public void listChanged(ListEvent<E> listChanges) {
@@ -19,7 +19,6 @@ import javax.swing.TransferHandler;
 
 import jp.scid.bio.store.sequence.GeneticSequence;
 
-import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,29 +44,11 @@ public class GeneticSequenceListTransferHandler extends TransferHandler {
         return false;
     }
 
-    private boolean importFiles(Collection<File> base) throws IOException {
-        List<File> files = new LinkedList<File>();
-        
-        for (File file: base) {
-            if (file.isDirectory()) {
-                Collection<File> children = FileUtils.listFiles(file, null, true);
-                files.addAll(children);
-            }
-            else {
-                files.add(file);
-            }
-        }
+    private boolean importFiles(Collection<File> base) {
+        // directories are walked by the loading task, not to block the EDT
+        controller.importFiles(base);
         
-        for (Iterator<File> it = files.iterator(); it.hasNext();) {
-            File file = it.next();
-            if (file.isHidden()) {
-                it.remove();
-            }
-        }
-        
-        controller.importFiles(files);
-        
-        return !files.isEmpty();
+        return !base.isEmpty();
     }
     
     @Override
@@ -84,10 +65,6 @@ public class GeneticSequenceListTransferHandler extends TransferHandler {
             try {
                 return importFiles(files);
             }
-            catch (IOException e) {
-                logger.error("cannot import files", e);
-                return false;
-            }
             catch (RuntimeException e) {
                 logger.error("cannot import files", e);
             }
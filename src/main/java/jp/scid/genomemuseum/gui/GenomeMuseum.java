@@ -14,12 +14,22 @@ import javax.swing.JMenuBar;
 
 import jp.scid.bio.store.ConnectionBuilder;
 import jp.scid.bio.store.SequenceLibrary;
+import jp.scid.genomemuseum.model.CollectionBoxStore;
+import jp.scid.genomemuseum.model.ExhibitRecordStore;
+import jp.scid.genomemuseum.model.ExhibitPager;
+import jp.scid.genomemuseum.model.ExhibitSearchIndex;
+import jp.scid.genomemuseum.model.GroupBoxStore;
+import jp.scid.genomemuseum.model.LibraryBackup;
+import jp.scid.genomemuseum.model.LibraryFileDeleter;
+import jp.scid.genomemuseum.model.LibraryFileStore;
+import jp.scid.genomemuseum.model.MonitoredConnectionPool;
 import jp.scid.genomemuseum.model.MuseumTreeSource;
+import jp.scid.genomemuseum.model.SmartBoxStore;
+import jp.scid.genomemuseum.model.TableViewPropertyStore;
 import jp.scid.genomemuseum.view.MainMenuBar;
 import jp.scid.genomemuseum.view.MainView;
 import jp.scid.gui.BeanPropertyBinding;
 
-import org.h2.jdbcx.JdbcConnectionPool;
 import org.jdesktop.application.Application;
 import org.jdesktop.application.ProxyActions;
 import org.slf4j.Logger;
@@ -31,7 +41,9 @@ public class GenomeMuseum extends Application {
     private static final String DATABASE_LOCAL_DIRECTORY = "schema";
     private static final String LOCAL_FILES_DIRECTORY_NAME = "Files";
     
-    private JdbcConnectionPool connectionPool;
+    private MonitoredConnectionPool connectionPool;
+    private LibraryFileDeleter libraryFileDeleter = null;
+    private TableViewPropertyStore tableViewPropertyStore = null;
     
     private MainFrameController mainFrameController;
     private GeneticSequenceListController geneticSequenceListController;
@@ -40,6 +52,7 @@ public class GenomeMuseum extends Application {
     private FolderTreeController folderDirectoryTreeController;
     private FileOpenHandler fileOpenHandler;
     private final FileLoadingTaskController fileLoadingTaskController;
+    private final LibraryBackupController libraryBackupController;
     
     // actions
     public GenomeMuseum() {
@@ -51,6 +64,7 @@ public class GenomeMuseum extends Application {
         fileOpenHandler = new FileOpenHandler(geneticSequenceListController);
         fileLoadingTaskController = new FileLoadingTaskController();
         contentViewerController = new MuseumExhibitContentViewer();
+        libraryBackupController = new LibraryBackupController();
         
         ncbiEntryListController = new NcbiEntryListController();
         ncbiEntryListController.setFileImporter(fileLoadingTaskController);
@@ -69,10 +83,11 @@ public class GenomeMuseum extends Application {
                 new File(getContext().getLocalStorage().getDirectory(),
                         DATABASE_LOCAL_DIRECTORY);
         databasePath.getParentFile().mkdirs();
-        String namespace = databasePath.getPath() + ";AUTO_SERVER=TRUE";
+        // reads of the display wait the batches of the imports
+        String namespace = databasePath.getPath() + ";AUTO_SERVER=TRUE" + MonitoredConnectionPool.LOCK_SETTINGS;
         connbuilder.databaseNamespace(namespace);
         
-        connectionPool = connbuilder.build();
+        connectionPool = new MonitoredConnectionPool(connbuilder.build());
         logger.info("database stores at {}", databasePath);
     }
     
@@ -92,6 +107,7 @@ public class GenomeMuseum extends Application {
         fileOpenHandler.bindOpenMenu(mainMenuBar.open);
         
         geneticSequenceListController.setFileLoadingTaskController(fileLoadingTaskController);
+        folderDirectoryTreeController.setFileLoadingTaskController(fileLoadingTaskController);
         BeanPropertyBinding.bind(geneticSequenceListController, "model",
                 folderDirectoryTreeController.getSelectedSequenceSource());
         
@@ -105,11 +121,19 @@ public class GenomeMuseum extends Application {
         folderDirectoryTreeController.bindGroupFolderAddButton(mainView.addListBox);
         folderDirectoryTreeController.bindFilterFolderAddButton(mainView.addSmartBox);
         folderDirectoryTreeController.bindFolderRemoveButton(mainView.removeBoxButton);
+        folderDirectoryTreeController.bindSmartConditionEditButton(mainView.editSmartCondition);
+        mainView.boxFunctionsButton.setEnabled(true);
         
         FileLoadingTaskController.Bindings taskBindings = fileLoadingTaskController.new Bindings();
         taskBindings.bindContentPane(mainView.activityPane);
         taskBindings.bindProgressBar(mainView.fileLoadingProgress);
         taskBindings.bindStatusLabel(mainView.fileLoadingStatus);
+        taskBindings.bindRetryQuarantinedButton(mainMenuBar.retryFailedImports);
+        taskBindings.bindWatchFolderButton(mainMenuBar.watchFolder);
+        taskBindings.bindUnwatchFolderButton(mainMenuBar.unwatchFolder);
+        
+        libraryBackupController.setParent(mainFrame);
+        libraryBackupController.new Bindings().bindBackupButton(mainMenuBar.backupLibrary);
         
         // Remote Source
         NcbiEntryListController.Binding ncbiBindings = ncbiEntryListController.new Binding();
@@ -139,6 +163,26 @@ public class GenomeMuseum extends Application {
         logger.info("sequence files store at {}", filesDir);
         
         fileLoadingTaskController.setSequenceLibrary(sequenceLibrary);
+        fileLoadingTaskController.setDataSource(connectionPool);
+        // imported files are copied into the files store of the library
+        fileLoadingTaskController.setLibraryFileStore(new LibraryFileStore(filesDir));
+        
+        // the order of the rows of each box is applied before its rows are read
+        tableViewPropertyStore = new TableViewPropertyStore(connectionPool);
+        geneticSequenceListController.setTableViewPropertyStore(tableViewPropertyStore);
+        
+        // the conditions of the smart boxes are read before the boxes are selected
+        SmartBoxStore smartBoxStore = new SmartBoxStore(connectionPool);
+        folderDirectoryTreeController.setSmartBoxStore(smartBoxStore);
+        geneticSequenceListController.setSmartBoxStore(smartBoxStore);
+        // the contents of a group box are resolved by a recursive query
+        GroupBoxStore groupBoxStore = new GroupBoxStore(connectionPool);
+        folderDirectoryTreeController.setGroupBoxStore(groupBoxStore);
+        geneticSequenceListController.setGroupBoxStore(groupBoxStore);
+        // sequences are copied into collection boxes by the database
+        CollectionBoxStore collectionBoxStore = new CollectionBoxStore(connectionPool);
+        folderDirectoryTreeController.setCollectionBoxStore(collectionBoxStore);
+        geneticSequenceListController.setCollectionBoxStore(collectionBoxStore);
         
         // tree model
         MuseumTreeSource treeSource = new MuseumTreeSource();
@@ -147,11 +191,32 @@ public class GenomeMuseum extends Application {
         folderDirectoryTreeController.setModel(treeSource);
         
         // selection
+        ExhibitRecordStore recordStore = new ExhibitRecordStore(connectionPool);
+        contentViewerController.setRecordStore(recordStore);
+        // removed exhibits are deleted at once, and their files in background
+        libraryFileDeleter = new LibraryFileDeleter(filesDir);
+        geneticSequenceListController.setExhibitRecordStore(recordStore);
+        geneticSequenceListController.setLibraryFileDeleter(libraryFileDeleter);
+        fileLoadingTaskController.setLibraryFileDeleter(libraryFileDeleter);
+        // snapshots are taken while the library is used
+        libraryBackupController.setLibraryBackup(new LibraryBackup(connectionPool, libraryFileDeleter));
+        // the index is created by the schema migration
+        geneticSequenceListController.setSearchIndex(new ExhibitSearchIndex(connectionPool));
+        // the library is read a page at a time
+        geneticSequenceListController.setExhibitPager(new ExhibitPager(connectionPool));
         contentViewerController.setModel(geneticSequenceListController.getSelectedGeneticSequence());
+        contentViewerController.setRecordModel(geneticSequenceListController.getSelectedExhibitRecord());
         
         showMainFrame();
+        
+        fileLoadingTaskController.askResumingImports(mainFrameController.getView());
+        fileLoadingTaskController.startWatching();
     }
 
+    /**
+     * Opens the pool and borrows the connection which the sequence library keeps.
+     * The other models borrow connections from the pool for each unit of work.
+     */
     private Connection getConnection() {
         openConnectionPool();
         Connection connection;
@@ -176,11 +241,20 @@ public class GenomeMuseum extends Application {
 
     @Override
     protected void shutdown() {
+        // the journal is written before the connections are closed
+        fileLoadingTaskController.shutdownNow();
+        if (libraryFileDeleter != null) {
+            libraryFileDeleter.shutdown();
+        }
+        if (tableViewPropertyStore != null) {
+            geneticSequenceListController.saveViewProperty();
+            tableViewPropertyStore.shutdown();
+        }
+        
         if (connectionPool != null) {
+            logger.info("connection pool: {}", connectionPool.snapshot());
             connectionPool.dispose();
         }
-        
-        fileLoadingTaskController.shutdownNow();
     }
     
     JFrame createMainFrame(JComponent contentPane, JMenuBar menuBar) {
@@ -0,0 +1,113 @@
+package jp.scid.genomemuseum.gui;
+
+import java.awt.Component;
+import java.io.File;
+import java.text.MessageFormat;
+import java.util.ResourceBundle;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.AbstractButton;
+import javax.swing.Action;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
+
+import jp.scid.genomemuseum.model.LibraryBackup;
+import jp.scid.gui.control.ActionManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes snapshots of the library into a directory which the user chooses, while the library is used.
+ */
+public class LibraryBackupController {
+    private final static Logger logger = LoggerFactory.getLogger(LibraryBackupController.class);
+    private final static ResourceBundle resource =
+            ResourceBundle.getBundle(LibraryBackupController.class.getName());
+
+    private final Action backupLibraryAction;
+
+    private LibraryBackup libraryBackup = null;
+    private File backupDirectory = null;
+    private Component parent = null;
+
+    public LibraryBackupController() {
+        ActionManager actionManager = new ActionManager(this);
+        backupLibraryAction = actionManager.getAction("backupLibrary");
+        backupLibraryAction.setEnabled(false);
+    }
+
+    public void setLibraryBackup(LibraryBackup libraryBackup) {
+        this.libraryBackup = libraryBackup;
+        backupLibraryAction.setEnabled(libraryBackup != null);
+    }
+
+    public void setParent(Component parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Chooses the backup directory and takes a snapshot in background.
+     */
+    public void backupLibrary() {
+        if (libraryBackup == null) {
+            return;
+        }
+        JFileChooser chooser = new JFileChooser(backupDirectory);
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setDialogTitle(resource.getString("backupLibrary.dialog.Title"));
+        if (chooser.showSaveDialog(parent) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        backupDirectory = chooser.getSelectedFile();
+
+        backupLibraryAction.setEnabled(false);
+        new BackupTask(backupDirectory).execute();
+    }
+
+    private class BackupTask extends SwingWorker<LibraryBackup.Snapshot, Void> {
+        private final File directory;
+
+        public BackupTask(File directory) {
+            this.directory = directory;
+        }
+
+        @Override
+        protected LibraryBackup.Snapshot doInBackground() throws Exception {
+            return libraryBackup.backup(directory);
+        }
+
+        @Override
+        protected void done() {
+            backupLibraryAction.setEnabled(true);
+
+            LibraryBackup.Snapshot snapshot;
+            try {
+                snapshot = get();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (ExecutionException e) {
+                logger.error("fail to back up the library", e.getCause());
+                JOptionPane.showMessageDialog(parent,
+                        MessageFormat.format(resource.getString("backupLibrary.failed.Message"),
+                                e.getCause().getLocalizedMessage()),
+                        null, JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+
+            JOptionPane.showMessageDialog(parent,
+                    MessageFormat.format(resource.getString("backupLibrary.done.Message"),
+                            snapshot.getDirectory(), snapshot.getCopiedCount(), snapshot.getLinkedCount()));
+        }
+    }
+
+    public class Bindings {
+        public void bindBackupButton(AbstractButton button) {
+            button.setAction(backupLibraryAction);
+        }
+    }
+}
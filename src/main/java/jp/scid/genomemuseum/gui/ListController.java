@@ -43,6 +43,7 @@ import ca.odell.glazedlists.TextFilterator;
 import ca.odell.glazedlists.gui.AdvancedTableFormat;
 import ca.odell.glazedlists.gui.TableFormat;
 import ca.odell.glazedlists.impl.filter.StringTextFilterator;
+import ca.odell.glazedlists.matchers.MatcherEditor;
 import ca.odell.glazedlists.matchers.SearchEngineTextMatcherEditor;
 import ca.odell.glazedlists.swing.DefaultEventSelectionModel;
 import ca.odell.glazedlists.swing.DefaultEventTableModel;
@@ -278,6 +279,15 @@ public abstract class ListController<E> {
         matcherEditor.setFilterator(filterator);
     }
     
+    /**
+     * Filters the list by the matcher editor instead of the text matcher editor.
+     * 
+     * @param editor the matcher editor, or {@code null} to filter by the text again.
+     */
+    protected void setFilterMatcherEditor(MatcherEditor<E> editor) {
+        filterList.setMatcherEditor(editor != null ? editor : matcherEditor);
+    }
+    
     // factories
     SearchEngineTextMatcherEditor<E> createTextMatcherEditor() {
         return new SearchEngineTextMatcherEditor<E>(createTextFilterator());
@@ -4,8 +4,13 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
+import java.sql.SQLException;
+import java.text.ParseException;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JOptionPane;
 import javax.swing.JTextArea;
@@ -17,6 +22,10 @@ import javax.swing.text.DefaultCaret;
 import javax.swing.text.PlainDocument;
 
 import jp.scid.bio.store.sequence.GeneticSequence;
+import jp.scid.genomemuseum.model.ExhibitRecord;
+import jp.scid.genomemuseum.model.ExhibitRecordStore;
+import jp.scid.genomemuseum.model.SequenceFileParser;
+import jp.scid.genomemuseum.model.SequenceRecordReader;
 import jp.scid.genomemuseum.view.FileContentView;
 import jp.scid.gui.model.ValueModel;
 import jp.scid.motifviewer.gui.MotifViewerController;
@@ -31,8 +40,15 @@ public class MuseumExhibitContentViewer {
     private PlainDocument document = new PlainDocument();
     
     private GeneticSequence sequence = null;
+    /** the record shown instead of a sequence */
+    private ExhibitRecord record = null;
     
     private ValueModel<GeneticSequence> model;
+    private ValueModel<ExhibitRecord> recordModel;
+    
+    private ExhibitRecordStore recordStore = null;
+    
+    private ContentLoader contentLoader = null;
     
     private final ChangeListener modelListener = new ChangeListener() {
         @Override
@@ -41,6 +57,13 @@ public class MuseumExhibitContentViewer {
         }
     };
     
+    private final ChangeListener recordModelListener = new ChangeListener() {
+        @Override
+        public void stateChanged(ChangeEvent e) {
+            setExhibitRecord(recordModel.get());
+        }
+    };
+    
     // Controller
     private final MotifViewerController motifViewerController;
     
@@ -65,12 +88,44 @@ public class MuseumExhibitContentViewer {
         setGeneticSequence(model.get());
     }
     
+    /**
+     * Shows the record of the model, which is selected from the pages of the library.
+     */
+    public void setRecordModel(ValueModel<ExhibitRecord> newModel) {
+        if (this.recordModel != null) {
+            this.recordModel.removeValueChangeListener(recordModelListener);
+        }
+        
+        this.recordModel = newModel;
+        
+        if (newModel != null) {
+            newModel.addValueChangeListener(recordModelListener);
+        }
+    }
+    
+    /**
+     * Sets the store to find the range of the record in the file, so that only the record is read.
+     */
+    public void setRecordStore(ExhibitRecordStore recordStore) {
+        this.recordStore = recordStore;
+    }
+    
+    /**
+     * Shows the sequence. The file content and the residues are read in background.
+     */
     public void setGeneticSequence(GeneticSequence sequence) {
         this.sequence = sequence;
+        this.record = null;
         
-        if (sequence != null) {
-            setSequence(sequence.sequence());
-        }
+        reload();
+    }
+    
+    /**
+     * Shows the record, which has the location in the file.
+     */
+    public void setExhibitRecord(ExhibitRecord record) {
+        this.record = record;
+        this.sequence = null;
         
         reload();
     }
@@ -94,11 +149,53 @@ public class MuseumExhibitContentViewer {
     }
     
     // contentText
-    Reader getContentReader() throws IOException {
+    Reader getContentReader(GeneticSequence sequence, ExhibitRecord location) throws IOException {
+        if (location != null) {
+            InputStream source = SequenceRecordReader.openRecord(
+                    location.getFileUri(), location.getFileOffset(), location.getFileLength());
+            return new InputStreamReader(source);
+        }
         File file = sequence.getFile();
         return new FileReader(file);
     }
     
+    /**
+     * @return the location of the record in the file, or {@code null} to read the whole file
+     */
+    ExhibitRecord findRecordLocation(GeneticSequence sequence) {
+        if (recordStore == null || sequence.id() == null) {
+            return null;
+        }
+        try {
+            ExhibitRecord location = recordStore.findRecordLocation(sequence.id());
+            if (location == null || location.getFile() == null || !location.getFile().isFile()) {
+                return null;
+            }
+            return location;
+        }
+        catch (SQLException e) {
+            logger.warn("fail to find the record location", e);
+            return null;
+        }
+    }
+    
+    String readSequence(GeneticSequence sequence, ExhibitRecord location) throws IOException {
+        if (location == null) {
+            return sequence.sequence();
+        }
+        InputStream source = SequenceRecordReader.openRecord(
+                location.getFileUri(), location.getFileOffset(), location.getFileLength());
+        try {
+            return new SequenceFileParser().readSequence(source);
+        }
+        catch (ParseException e) {
+            throw new IOException(e);
+        }
+        finally {
+            source.close();
+        }
+    }
+    
     void appendDocumentString(String text) throws BadLocationException {
         int offset = document.getLength();
         document.insertString(offset, text, null);
@@ -106,10 +203,19 @@ public class MuseumExhibitContentViewer {
     
     // Actions
     public void reload() {
+        if (contentLoader != null) {
+            contentLoader.cancel(true);
+        }
         clearContent();
+        setSequence("");
         
-        ContentLoader task = new ContentLoader();
-        task.execute();
+        if (sequence == null && (record == null || record.getFile() == null || !record.getFile().isFile())) {
+            contentLoader = null;
+            return;
+        }
+        
+        contentLoader = sequence != null ? new ContentLoader(sequence) : new ContentLoader(record);
+        contentLoader.execute();
     }
     
     // Bindings
@@ -126,13 +232,30 @@ public class MuseumExhibitContentViewer {
         ((DefaultCaret) textArea.getCaret()).setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
     }
 
-    class ContentLoader extends SwingWorker<Void, String> {
+    /**
+     * Loads the file content and then the residues of the sequence.
+     */
+    class ContentLoader extends SwingWorker<String, String> {
         private final int bufferSize = 8196;
+        private final GeneticSequence target;
+        private final ExhibitRecord targetRecord;
+        
+        public ContentLoader(GeneticSequence target) {
+            this.target = target;
+            this.targetRecord = null;
+        }
+        
+        public ContentLoader(ExhibitRecord targetRecord) {
+            this.target = null;
+            this.targetRecord = targetRecord;
+        }
 
         @Override
-        protected Void doInBackground() throws Exception {
+        protected String doInBackground() throws Exception {
+            ExhibitRecord location = target != null ? findRecordLocation(target) : targetRecord;
+            
             // load String
-            BufferedReader contentReader = new BufferedReader(getContentReader(), bufferSize);
+            BufferedReader contentReader = new BufferedReader(getContentReader(target, location), bufferSize);
             try {
                 char[] cbuf = new char[bufferSize];
                 int read;
@@ -146,11 +269,33 @@ public class MuseumExhibitContentViewer {
                 contentReader.close();
             }
             
-            return null;
+            if (isCancelled()) {
+                return null;
+            }
+            return readSequence(target, location);
+        }
+        
+        @Override
+        protected void done() {
+            if (isCancelled() || contentLoader != this) {
+                return;
+            }
+            try {
+                setSequence(get());
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e) {
+                logger.error("Fail to load sequence", e.getCause());
+            }
         }
         
         @Override
         protected void process(List<String> chunks) {
+            if (isCancelled()) {
+                return;
+            }
             StringBuilder sb = new StringBuilder(bufferSize * chunks.size());
             
             for (String string: chunks) {
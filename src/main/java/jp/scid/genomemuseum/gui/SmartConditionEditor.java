@@ -0,0 +1,215 @@
+package jp.scid.genomemuseum.gui;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ResourceBundle;
+
+import javax.swing.BoxLayout;
+import javax.swing.DefaultComboBoxModel;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JButton;
+import javax.swing.JComboBox;
+import javax.swing.JList;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.SwingUtilities;
+
+import jp.scid.genomemuseum.model.SmartBoxCondition;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Field;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Operator;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Rule;
+
+/**
+ * Dialog to edit the rules of the condition of a smart box.
+ */
+class SmartConditionEditor {
+    private final static ResourceBundle resource =
+            ResourceBundle.getBundle(SmartConditionEditor.class.getName());
+
+    private final JComboBox matchCombo = new JComboBox(new Object[] {
+        resource.getString("matchAll.text"), resource.getString("matchAny.text"),
+    });
+    private final JPanel rulesPane = new JPanel();
+    private final JButton addRuleButton = new JButton(resource.getString("addRule.text"));
+    private final JPanel contentPane = new JPanel(new BorderLayout(0, 6));
+
+    private final List<RuleRow> rows = new ArrayList<RuleRow>();
+
+    public SmartConditionEditor() {
+        rulesPane.setLayout(new BoxLayout(rulesPane, BoxLayout.PAGE_AXIS));
+
+        JPanel matchPane = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        matchPane.add(matchCombo);
+        JPanel addPane = new JPanel(new FlowLayout(FlowLayout.LEADING));
+        addPane.add(addRuleButton);
+
+        contentPane.add(matchPane, BorderLayout.NORTH);
+        contentPane.add(rulesPane, BorderLayout.CENTER);
+        contentPane.add(addPane, BorderLayout.SOUTH);
+
+        addRuleButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                addRow(new Rule(Field.NAME, Operator.CONTAINS, ""));
+                packDialog();
+            }
+        });
+    }
+
+    /**
+     * Shows the condition, until valid rules are made or the dialog is cancelled.
+     *
+     * @return the edited condition, or {@code null} if cancelled.
+     */
+    public SmartBoxCondition showDialog(Component parent, SmartBoxCondition condition) {
+        setCondition(condition);
+
+        while (true) {
+            int result = JOptionPane.showConfirmDialog(parent, contentPane, resource.getString("dialog.Title"),
+                    JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+            if (result != JOptionPane.OK_OPTION) {
+                return null;
+            }
+
+            try {
+                return getCondition();
+            }
+            catch (IllegalArgumentException e) {
+                String message = MessageFormat.format(resource.getString("invalid.Message"), e.getMessage());
+                JOptionPane.showMessageDialog(parent, message, null, JOptionPane.WARNING_MESSAGE);
+            }
+        }
+    }
+
+    void setCondition(SmartBoxCondition condition) {
+        matchCombo.setSelectedIndex(condition.isMatchAll() ? 0 : 1);
+
+        rows.clear();
+        rulesPane.removeAll();
+        for (Rule rule: condition.getRules()) {
+            addRow(rule);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if a value is not a number or a date for the field.
+     */
+    SmartBoxCondition getCondition() {
+        List<Rule> rules = new ArrayList<Rule>(rows.size());
+        for (RuleRow row: rows) {
+            rules.add(row.getRule());
+        }
+        return new SmartBoxCondition(matchCombo.getSelectedIndex() == 0, rules);
+    }
+
+    private void addRow(Rule rule) {
+        final RuleRow row = new RuleRow(rule);
+        row.removeButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                rows.remove(row);
+                rulesPane.remove(row.pane);
+                packDialog();
+            }
+        });
+
+        rows.add(row);
+        rulesPane.add(row.pane);
+    }
+
+    private void packDialog() {
+        rulesPane.revalidate();
+        Window window = SwingUtilities.getWindowAncestor(contentPane);
+        if (window != null) {
+            window.pack();
+        }
+    }
+
+    /**
+     * Components of a rule.
+     */
+    private static class RuleRow implements ActionListener {
+        final JComboBox fieldCombo = new JComboBox(Field.values());
+        final JComboBox operatorCombo = new JComboBox();
+        final JTextField valueField = new JTextField(16);
+        final JButton removeButton = new JButton(resource.getString("removeRule.text"));
+        final JPanel pane = new JPanel(new FlowLayout(FlowLayout.LEADING));
+
+        public RuleRow(Rule rule) {
+            fieldCombo.setRenderer(new LabelRenderer("field."));
+            operatorCombo.setRenderer(new LabelRenderer("operator."));
+
+            fieldCombo.setSelectedItem(rule.getField());
+            updateOperators();
+            operatorCombo.setSelectedItem(rule.getOperator());
+            valueField.setText(rule.getValue());
+            fieldCombo.addActionListener(this);
+
+            pane.add(fieldCombo);
+            pane.add(operatorCombo);
+            pane.add(valueField);
+            pane.add(removeButton);
+        }
+
+        /**
+         * Lists the operators which compare the field.
+         */
+        private void updateOperators() {
+            Field field = (Field) fieldCombo.getSelectedItem();
+            Object selected = operatorCombo.getSelectedItem();
+
+            DefaultComboBoxModel model = new DefaultComboBoxModel();
+            for (Operator operator: Operator.values()) {
+                if (operator.appliesTo(field)) {
+                    model.addElement(operator);
+                }
+            }
+            if (selected != null && model.getIndexOf(selected) >= 0) {
+                model.setSelectedItem(selected);
+            }
+            operatorCombo.setModel(model);
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            updateOperators();
+        }
+
+        Rule getRule() {
+            return new Rule((Field) fieldCombo.getSelectedItem(), (Operator) operatorCombo.getSelectedItem(),
+                    valueField.getText());
+        }
+    }
+
+    /**
+     * Shows the label of the field or the operator in the resource.
+     */
+    private static class LabelRenderer extends DefaultListCellRenderer {
+        private final String keyPrefix;
+
+        public LabelRenderer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList list, Object value, int index,
+                boolean isSelected, boolean cellHasFocus) {
+            Object label = value;
+            if (value instanceof Field) {
+                label = resource.getString(keyPrefix + ((Field) value).getIdentifier());
+            }
+            else if (value instanceof Operator) {
+                label = resource.getString(keyPrefix + ((Operator) value).getIdentifier());
+            }
+            return super.getListCellRendererComponent(list, label, index, isSelected, cellHasFocus);
+        }
+    }
+}
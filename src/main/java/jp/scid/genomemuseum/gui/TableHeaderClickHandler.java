@@ -1,6 +1,5 @@
 package jp.scid.genomemuseum.gui;
 
-import java.awt.Component;
 import java.awt.Cursor;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
@@ -54,6 +53,22 @@ public class TableHeaderClickHandler<E> {
         sortedList.setComparator(comparator);
     }
     
+    /**
+     * Sorts by the column in the order without a click, such as to restore the order.
+     * 
+     * @param column the column, or {@code null} not to sort.
+     */
+    public void applyOrder(TableColumn column, JTableHeader header, String orderStatement) {
+        Comparator<? super E> comparator = null;
+        if (column != null) {
+            updateOrderStatement(column.getIdentifier(), header, orderStatement);
+            comparator = getComparator(column, orderStatement);
+        }
+        
+        updateSortingColumn(header, comparator == null ? null : column.getIdentifier());
+        sortedList.setComparator(comparator);
+    }
+    
     public String getOrderStatement(Object columnIdentifier, JTableHeader header, boolean columnSelected) {
         String columnStatement = getOrderStatement(columnIdentifier, header);
         
@@ -165,12 +180,19 @@ public class TableHeaderClickHandler<E> {
     protected static interface Binder {
         void release();
         
+        /**
+         * Sorts by the column in the order, and shows it on the header.
+         * 
+         * @param columnIdentifier the identifier of the column, or {@code null} not to sort.
+         */
+        void applyOrder(Object columnIdentifier, String orderStatement);
+        
         TableHeaderClickHandler<?> getHandler();
     }
     
     static class BinderImpl implements Binder, MouseListener {
         private final TableHeaderClickHandler<?> handler;
-        private final Component target;
+        private final JTableHeader target;
         
         public BinderImpl(TableHeaderClickHandler<?> handler, JTableHeader target) {
             this.handler = handler;
@@ -180,6 +202,20 @@ public class TableHeaderClickHandler<E> {
         public void release() {
             target.removeMouseListener(this);
         }
+        
+        public void applyOrder(Object columnIdentifier, String orderStatement) {
+            TableColumn column = null;
+            if (columnIdentifier != null) {
+                TableColumnModel columnModel = target.getColumnModel();
+                for (int i = 0; i < columnModel.getColumnCount(); i++) {
+                    if (columnIdentifier.equals(columnModel.getColumn(i).getIdentifier())) {
+                        column = columnModel.getColumn(i);
+                    }
+                }
+            }
+            handler.applyOrder(column, target, orderStatement);
+            updateSortClientProperties(target);
+        }
 
         public void bind() {
             target.addMouseListener(this);
@@ -0,0 +1,123 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Adds exhibits to a collection box by one {@code INSERT ... SELECT} statement,
+ * instead of inserting an item of {@code COLLECTION_BOX_ITEM} for each sequence.
+ *
+ * Exhibits which are already in the box are not added again.
+ */
+public class CollectionBoxStore {
+    /** the condition of the exhibits not in the box of the last parameter */
+    final static String NOT_IN_BOX_CONDITION =
+            "%s NOT IN (SELECT exhibit_id FROM COLLECTION_BOX_ITEM WHERE box_id = ?)";
+    final static String COPY_BOX_ITEMS_SQL = "INSERT INTO COLLECTION_BOX_ITEM (exhibit_id, box_id) "
+            + "SELECT DISTINCT exhibit_id, CAST(? AS bigint) FROM COLLECTION_BOX_ITEM "
+            + "WHERE box_id IN (SELECT * FROM TABLE(x BIGINT = ?)) AND "
+            + String.format(NOT_IN_BOX_CONDITION, "exhibit_id");
+    final static String ADD_EXHIBITS_SQL = "INSERT INTO COLLECTION_BOX_ITEM (exhibit_id, box_id) "
+            + "SELECT id, CAST(? AS bigint) FROM MUSEUM_EXHIBIT "
+            + "WHERE id IN (SELECT * FROM TABLE(x BIGINT = ?)) AND "
+            + String.format(NOT_IN_BOX_CONDITION, "id");
+    /** to be formatted with the condition of a smart box */
+    final static String ADD_MATCHING_EXHIBITS_SQL = "INSERT INTO COLLECTION_BOX_ITEM (exhibit_id, box_id) "
+            + "SELECT id, CAST(? AS bigint) FROM MUSEUM_EXHIBIT WHERE (%s) AND "
+            + String.format(NOT_IN_BOX_CONDITION, "id");
+
+    private final DataSource dataSource;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+    public CollectionBoxStore(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Adds the exhibits in the boxes, such as a box and the boxes under a group box.
+     *
+     * @return the count of the added items
+     */
+    public int copyBoxItems(long destBoxId, Collection<Long> sourceBoxIds) throws SQLException {
+        List<Object> parameters = new ArrayList<Object>(3);
+        parameters.add(destBoxId);
+        parameters.add(sourceBoxIds.toArray());
+        parameters.add(destBoxId);
+        return executeInsert(COPY_BOX_ITEMS_SQL, parameters);
+    }
+
+    /**
+     * @return the count of the added items
+     */
+    public int addExhibits(long destBoxId, Collection<Long> exhibitIds) throws SQLException {
+        List<Object> parameters = new ArrayList<Object>(3);
+        parameters.add(destBoxId);
+        parameters.add(exhibitIds.toArray());
+        parameters.add(destBoxId);
+        return executeInsert(ADD_EXHIBITS_SQL, parameters);
+    }
+
+    /**
+     * Adds the exhibits which match the condition of a smart box.
+     *
+     * @return the count of the added items
+     */
+    public int addMatchingExhibits(long destBoxId, SmartBoxCondition condition) throws SQLException {
+        List<Object> parameters = new ArrayList<Object>();
+        parameters.add(destBoxId);
+        String clause = condition.compile(parameters);
+        parameters.add(destBoxId);
+        return executeInsert(String.format(ADD_MATCHING_EXHIBITS_SQL, clause), parameters);
+    }
+
+    private int executeInsert(String sql, List<Object> parameters) throws SQLException {
+        int count;
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+                count = statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        if (count > 0) {
+            fireStateChanged();
+        }
+        return count;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener: listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package jp.scid.genomemuseum.model;
+
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import jp.scid.genomemuseum.model.GeneticSequenceTableFormat.Column;
+
+/**
+ * Reads the exhibits of the library a page at a time, in the order of a column.
+ *
+ * A page is read by keyset pagination, which starts after the sort value and the id of the
+ * last row of the page before it, so that the rows before the page are not read again.
+ * A page far from the pages read starts from the nearest of them with an offset.
+ *
+ * Pages and counts are kept for each order, search and condition, so that a list shown
+ * before is shown again without reading, until {@link #invalidate()} is called because
+ * exhibits are inserted or deleted. Only the last {@code cachedPages} pages read are kept.
+ */
+public class ExhibitPager {
+    public final static int DEFAULT_PAGE_SIZE = 200;
+    public final static int DEFAULT_CACHED_PAGES = 20;
+    /** count of the queries whose counts and page keys are kept */
+    private final static int CACHED_QUERIES = 16;
+
+    final static String SELECT_SQL = "SELECT id, name, sequence_length, accession, namespace, version, "
+            + "definition, source_text, organism, date, sequence_unit, molecule_type, file_type, file_uri, "
+            + "file_offset, file_length, %s FROM MUSEUM_EXHIBIT";
+    final static String COUNT_SQL = "SELECT COUNT(*) FROM MUSEUM_EXHIBIT";
+    /** the condition of the exhibits in boxes, formatted with the placeholders of the box ids */
+    final static String BOX_CONTENTS_CONDITION =
+            "id IN (SELECT exhibit_id FROM COLLECTION_BOX_ITEM WHERE box_id IN (%s))";
+    /** the sort value of the rows which have no date */
+    final static String DATE_SORT_EXPRESSION = "COALESCE(date, DATE '0001-01-01')";
+
+    private final DataSource dataSource;
+    private final int pageSize;
+
+    // guarded by this
+    private Query query = new Query(null, false, "", null, Collections.<Object>emptyList());
+    /** incremented when the caches are cleared, not to keep the pages read before */
+    private int generation = 0;
+    private final Map<PageKey, List<ExhibitRecord>> pages;
+    private final Map<Query, QueryCache> queries;
+
+    public ExhibitPager(DataSource dataSource) {
+        this(dataSource, DEFAULT_PAGE_SIZE, DEFAULT_CACHED_PAGES);
+    }
+
+    public ExhibitPager(DataSource dataSource, int pageSize, final int cachedPages) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        if (pageSize < 1) throw new IllegalArgumentException("pageSize must be positive");
+        if (cachedPages < 1) throw new IllegalArgumentException("cachedPages must be positive");
+
+        this.dataSource = dataSource;
+        this.pageSize = pageSize;
+        pages = new LinkedHashMap<PageKey, List<ExhibitRecord>>(cachedPages * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PageKey, List<ExhibitRecord>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+        queries = new LinkedHashMap<Query, QueryCache>(CACHED_QUERIES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Query, QueryCache> eldest) {
+                return size() > CACHED_QUERIES;
+            }
+        };
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    /**
+     * Sorts the exhibits by the column, and then by the id.
+     *
+     * @param columnName the name of the column of {@link GeneticSequenceTableFormat},
+     *        or {@code null} to sort by the id.
+     */
+    public synchronized void setOrder(String columnName, boolean descending) {
+        query = new Query(sortExpression(columnName), descending, query.searchText,
+                query.conditionClause, query.conditionParameters);
+    }
+
+    /**
+     * Reads only the exhibits which have all words of the text in the full-text index.
+     *
+     * @param text the words, or an empty text to read all exhibits.
+     */
+    public synchronized void setSearchText(String text) {
+        if (text == null) throw new IllegalArgumentException("text must not be null");
+        query = new Query(query.sortExpression, query.descending, text.trim(),
+                query.conditionClause, query.conditionParameters);
+    }
+
+    /**
+     * Reads only the exhibits which match the condition of a smart box.
+     * This replaces the boxes set by {@link #setBoxes(Collection)}.
+     *
+     * @param condition the condition, or {@code null} to read all exhibits.
+     */
+    public synchronized void setCondition(SmartBoxCondition condition) {
+        String clause = null;
+        List<Object> parameters = new ArrayList<Object>();
+        if (condition != null) {
+            clause = condition.compile(parameters);
+        }
+        query = new Query(query.sortExpression, query.descending, query.searchText, clause, parameters);
+    }
+
+    /**
+     * Reads only the exhibits which are contained in any of the boxes, such as the boxes under a group box.
+     * This replaces the condition of a smart box.
+     *
+     * @param boxIds the ids of the boxes, or {@code null} to read all exhibits.
+     */
+    public synchronized void setBoxes(Collection<Long> boxIds) {
+        String clause = null;
+        List<Object> parameters = new ArrayList<Object>();
+        if (boxIds != null) {
+            StringBuilder placeholders = new StringBuilder();
+            for (Long boxId: boxIds) {
+                placeholders.append(placeholders.length() == 0 ? "?" : ", ?");
+                parameters.add(boxId);
+            }
+            clause = boxIds.isEmpty() ? "FALSE" : String.format(BOX_CONTENTS_CONDITION, placeholders);
+        }
+        query = new Query(query.sortExpression, query.descending, query.searchText, clause, parameters);
+    }
+
+    /**
+     * Forgets the pages and the counts read, to read the exhibits inserted or deleted.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        pages.clear();
+        queries.clear();
+    }
+
+    static String sortExpression(String columnName) {
+        if (columnName == null) {
+            return null;
+        }
+        for (Column column: Column.values()) {
+            if (column.getName().equals(columnName)) {
+                switch (column) {
+                case ID: return null;
+                case DATE: return DATE_SORT_EXPRESSION;
+                default: return column.name();
+                }
+            }
+        }
+        throw new IllegalArgumentException("unknown column " + columnName);
+    }
+
+    private QueryCache queryCache(Query query) {
+        QueryCache cache = queries.get(query);
+        if (cache == null) {
+            cache = new QueryCache();
+            queries.put(query, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * @return the count of the exhibits to read
+     */
+    public int count() throws SQLException {
+        Query query;
+        int generation;
+        synchronized (this) {
+            query = this.query;
+            generation = this.generation;
+            Integer count = queryCache(query).count;
+            if (count != null) {
+                return count;
+            }
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        String sql = COUNT_SQL + query.whereClause(parameters);
+
+        int count;
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                setParameters(statement, parameters);
+                ResultSet result = statement.executeQuery();
+                try {
+                    count = result.next() ? result.getInt(1) : 0;
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        synchronized (this) {
+            if (generation == this.generation) {
+                queryCache(query).count = count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the page if it is kept, or {@code null}.
+     */
+    public synchronized List<ExhibitRecord> getCachedPage(int pageIndex) {
+        return pages.get(new PageKey(query, pageIndex));
+    }
+
+    /**
+     * Reads the page, or returns it if it is kept.
+     *
+     * @return the rows of the page, which are fewer than the page size for the last page.
+     */
+    public List<ExhibitRecord> getPage(int pageIndex) throws SQLException {
+        if (pageIndex < 0) throw new IllegalArgumentException("pageIndex must not be negative");
+
+        Query query;
+        int generation;
+        Map.Entry<Integer, Key> start;
+        synchronized (this) {
+            query = this.query;
+            generation = this.generation;
+            List<ExhibitRecord> page = pages.get(new PageKey(query, pageIndex));
+            if (page != null) {
+                return page;
+            }
+            start = queryCache(query).lastKeys.lowerEntry(pageIndex);
+        }
+
+        int offset;
+        Key after;
+        if (start == null) {
+            offset = pageIndex * pageSize;
+            after = null;
+        }
+        else {
+            offset = (pageIndex - start.getKey() - 1) * pageSize;
+            after = start.getValue();
+        }
+
+        List<ExhibitRecord> rows = new ArrayList<ExhibitRecord>(pageSize);
+        Key last = readRows(query, after, offset, rows);
+        List<ExhibitRecord> page = Collections.unmodifiableList(rows);
+
+        synchronized (this) {
+            // exhibits are inserted or deleted while reading
+            if (generation == this.generation) {
+                pages.put(new PageKey(query, pageIndex), page);
+                if (last != null) {
+                    queryCache(query).lastKeys.put(pageIndex, last);
+                }
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Reads the ids of the rows in the current order, including the rows of the pages not read.
+     *
+     * @return the ids of the rows from the first row, which are fewer than the count at the last row.
+     */
+    public List<Long> readIds(int firstRow, int rowCount) throws SQLException {
+        Query query;
+        synchronized (this) {
+            query = this.query;
+        }
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder sql = new StringBuilder("SELECT id FROM MUSEUM_EXHIBIT");
+        sql.append(query.whereClause(parameters)).append(" ORDER BY ");
+        String direction = query.descending ? " DESC" : " ASC";
+        if (query.sortExpression != null) {
+            sql.append(query.sortExpression).append(direction).append(", ");
+        }
+        sql.append("id").append(direction).append(" LIMIT ? OFFSET ?");
+        parameters.add(rowCount);
+        parameters.add(firstRow);
+
+        List<Long> ids = new ArrayList<Long>(rowCount);
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            try {
+                setParameters(statement, parameters);
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return ids;
+    }
+
+    private Key readRows(Query query, Key after, int offset, List<ExhibitRecord> rows) throws SQLException {
+        String keyExpression = query.sortExpression == null ? "id" : query.sortExpression;
+        String direction = query.descending ? " DESC" : " ASC";
+        String comparison = query.descending ? " < ?" : " > ?";
+
+        List<Object> parameters = new ArrayList<Object>();
+        StringBuilder sql = new StringBuilder(String.format(SELECT_SQL, keyExpression));
+        String where = query.whereClause(parameters);
+        sql.append(where);
+        if (after != null) {
+            sql.append(where.isEmpty() ? " WHERE " : " AND ");
+            if (query.sortExpression == null) {
+                sql.append("id").append(comparison);
+            }
+            else {
+                sql.append("(").append(keyExpression).append(comparison).append(" OR (")
+                        .append(keyExpression).append(" = ? AND id").append(comparison).append("))");
+                parameters.add(after.value);
+                parameters.add(after.value);
+            }
+            parameters.add(after.id);
+        }
+        sql.append(" ORDER BY ");
+        if (query.sortExpression != null) {
+            sql.append(keyExpression).append(direction).append(", ");
+        }
+        sql.append("id").append(direction).append(" LIMIT ? OFFSET ?");
+        parameters.add(pageSize);
+        parameters.add(offset);
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql.toString());
+            try {
+                setParameters(statement, parameters);
+                ResultSet result = statement.executeQuery();
+                try {
+                    Key last = null;
+                    while (result.next()) {
+                        ExhibitRecord record = toRecord(result);
+                        rows.add(record);
+                        last = new Key(result.getObject(17), record.getId());
+                    }
+                    return last;
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static void setParameters(PreparedStatement statement, List<Object> parameters) throws SQLException {
+        for (int i = 0; i < parameters.size(); i++) {
+            statement.setObject(i + 1, parameters.get(i));
+        }
+    }
+
+    private static ExhibitRecord toRecord(ResultSet result) throws SQLException {
+        ExhibitRecord record = new ExhibitRecord();
+        record.setId(result.getLong(1));
+        record.setName(result.getString(2));
+        record.setSequenceLength(result.getInt(3));
+        record.setAccession(result.getString(4));
+        record.setNamespace(result.getString(5));
+        record.setVersion(result.getInt(6));
+        record.setDefinition(result.getString(7));
+        record.setSourceText(result.getString(8));
+        record.setOrganism(result.getString(9));
+        record.setDate(result.getDate(10));
+        record.setSequenceUnit(result.getInt(11));
+        record.setMoleculeType(result.getString(12));
+        record.setFileType(SequenceFileFormat.fromCode(result.getInt(13)));
+        String uri = result.getString(14);
+        record.setFileUri(uri == null || uri.isEmpty() ? null : URI.create(uri));
+        record.setFileOffset(result.getLong(15));
+        record.setFileLength(result.getLong(16));
+        return record;
+    }
+
+    /**
+     * The order, the search and the condition of the exhibits to read.
+     */
+    private static class Query {
+        final String sortExpression;
+        final boolean descending;
+        final String searchText;
+        final String conditionClause;
+        final List<Object> conditionParameters;
+
+        public Query(String sortExpression, boolean descending, String searchText,
+                String conditionClause, List<Object> conditionParameters) {
+            this.sortExpression = sortExpression;
+            this.descending = descending;
+            this.searchText = searchText;
+            this.conditionClause = conditionClause;
+            this.conditionParameters = conditionParameters;
+        }
+
+        /**
+         * @return the {@code WHERE} clause, or an empty text if all exhibits are read.
+         */
+        String whereClause(List<Object> parameters) {
+            List<String> conditions = new ArrayList<String>(2);
+            String searchCondition = ExhibitSearchIndex.matchingCondition(searchText, parameters);
+            if (searchCondition != null) {
+                conditions.add(searchCondition);
+            }
+            if (conditionClause != null) {
+                conditions.add("(" + conditionClause + ")");
+                parameters.addAll(conditionParameters);
+            }
+
+            StringBuilder clause = new StringBuilder();
+            for (int i = 0; i < conditions.size(); i++) {
+                clause.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+            }
+            return clause.toString();
+        }
+
+        @Override
+        public int hashCode() {
+            int result = sortExpression == null ? 0 : sortExpression.hashCode();
+            result = 31 * result + (descending ? 1 : 0);
+            result = 31 * result + searchText.hashCode();
+            result = 31 * result + (conditionClause == null ? 0 : conditionClause.hashCode());
+            result = 31 * result + conditionParameters.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Query)) return false;
+            Query other = (Query) obj;
+            return (sortExpression == null ? other.sortExpression == null : sortExpression.equals(other.sortExpression))
+                    && descending == other.descending
+                    && searchText.equals(other.searchText)
+                    && (conditionClause == null ? other.conditionClause == null : conditionClause.equals(other.conditionClause))
+                    && conditionParameters.equals(other.conditionParameters);
+        }
+    }
+
+    private static class PageKey {
+        final Query query;
+        final int pageIndex;
+
+        public PageKey(Query query, int pageIndex) {
+            this.query = query;
+            this.pageIndex = pageIndex;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * query.hashCode() + pageIndex;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PageKey)) return false;
+            PageKey other = (PageKey) obj;
+            return pageIndex == other.pageIndex && query.equals(other.query);
+        }
+    }
+
+    /**
+     * The count and the keys of the last rows of the pages read of a query.
+     */
+    private static class QueryCache {
+        Integer count = null;
+        final TreeMap<Integer, Key> lastKeys = new TreeMap<Integer, Key>();
+    }
+
+    /**
+     * The sort value and the id of a row.
+     */
+    private static class Key {
+        final Object value;
+        final long id;
+
+        public Key(Object value, long id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+}
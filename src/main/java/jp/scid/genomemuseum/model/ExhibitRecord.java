@@ -0,0 +1,183 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.net.URI;
+import java.util.Date;
+
+/**
+ * A row of {@code MUSEUM_EXHIBIT} read from a sequence file by the importer.
+ */
+public class ExhibitRecord {
+    public final static int SEQUENCE_UNIT_UNKNOWN = 0;
+    public final static int SEQUENCE_UNIT_BASE = 1;
+    public final static int SEQUENCE_UNIT_AMINO_ACID = 2;
+
+    private Long id = null;
+    private String name = "";
+    private int sequenceLength = 0;
+    private String accession = "";
+    private String namespace = "";
+    private int version = 0;
+    private String definition = "";
+    private String sourceText = "";
+    private String organism = "";
+    private Date date = null;
+    private int sequenceUnit = SEQUENCE_UNIT_UNKNOWN;
+    private String moleculeType = "";
+    private SequenceFileFormat fileType = SequenceFileFormat.UNKNOWN;
+    private URI fileUri = null;
+    private long fileOffset = 0;
+    private long fileLength = 0;
+
+    public ExhibitRecord() {
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    public void setSequenceLength(int sequenceLength) {
+        this.sequenceLength = sequenceLength;
+    }
+
+    public String getAccession() {
+        return accession;
+    }
+
+    public void setAccession(String accession) {
+        this.accession = accession;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public void setNamespace(String namespace) {
+        this.namespace = namespace;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public String getDefinition() {
+        return definition;
+    }
+
+    public void setDefinition(String definition) {
+        this.definition = definition;
+    }
+
+    public String getSourceText() {
+        return sourceText;
+    }
+
+    public void setSourceText(String sourceText) {
+        this.sourceText = sourceText;
+    }
+
+    public String getOrganism() {
+        return organism;
+    }
+
+    public void setOrganism(String organism) {
+        this.organism = organism;
+    }
+
+    public Date getDate() {
+        return date;
+    }
+
+    public void setDate(Date date) {
+        this.date = date;
+    }
+
+    public int getSequenceUnit() {
+        return sequenceUnit;
+    }
+
+    public void setSequenceUnit(int sequenceUnit) {
+        this.sequenceUnit = sequenceUnit;
+    }
+
+    public String getMoleculeType() {
+        return moleculeType;
+    }
+
+    public void setMoleculeType(String moleculeType) {
+        this.moleculeType = moleculeType;
+    }
+
+    public SequenceFileFormat getFileType() {
+        return fileType;
+    }
+
+    public void setFileType(SequenceFileFormat fileType) {
+        this.fileType = fileType;
+    }
+
+    public URI getFileUri() {
+        return fileUri;
+    }
+
+    public void setFileUri(URI fileUri) {
+        this.fileUri = fileUri;
+    }
+
+    /**
+     * @return the byte offset of this record in the file
+     */
+    public long getFileOffset() {
+        return fileOffset;
+    }
+
+    public void setFileOffset(long fileOffset) {
+        this.fileOffset = fileOffset;
+    }
+
+    /**
+     * @return the byte length of this record in the file, or {@code 0} if the record is the whole file.
+     */
+    public long getFileLength() {
+        return fileLength;
+    }
+
+    public void setFileLength(long fileLength) {
+        this.fileLength = fileLength;
+    }
+
+    /**
+     * @return the file which this record is read from, which is the archive file for a member of an archive.
+     */
+    public File getFile() {
+        if (fileUri == null || !"file".equals(fileUri.getScheme())) {
+            return null;
+        }
+        return SequenceFileArchives.toFile(fileUri);
+    }
+
+    @Override
+    public String toString() {
+        return "ExhibitRecord: " + (name.isEmpty() ? fileUri : name);
+    }
+}
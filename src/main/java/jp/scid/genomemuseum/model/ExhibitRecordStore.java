@@ -0,0 +1,942 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.IOException;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+/**
+ * Writes imported {@link ExhibitRecord}s into {@code MUSEUM_EXHIBIT}.
+ *
+ * A connection is borrowed from the data source for each unit of work.
+ */
+public class ExhibitRecordStore {
+    final static String INSERT_EXHIBIT_SQL = "INSERT INTO MUSEUM_EXHIBIT "
+            + "(name, sequence_length, accession, namespace, version, definition, source_text, "
+            + "organism, date, sequence_unit, molecule_type, file_type, file_uri, file_offset, file_length) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    final static String INSERT_EXHIBIT_WITH_ID_SQL = "INSERT INTO MUSEUM_EXHIBIT "
+            + "(name, sequence_length, accession, namespace, version, definition, source_text, "
+            + "organism, date, sequence_unit, molecule_type, file_type, file_uri, file_offset, file_length, id) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    final static String IDENTITY_SEQUENCE_SQL = "SELECT TABLE_SCHEMA, SEQUENCE_NAME FROM INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_NAME = 'MUSEUM_EXHIBIT' AND COLUMN_NAME = 'ID'";
+    final static String INSERT_BOX_ITEM_SQL =
+            "INSERT INTO COLLECTION_BOX_ITEM (exhibit_id, box_id) VALUES (?, ?)";
+    final static String INSERT_DIGEST_SQL = "INSERT INTO SEQUENCE_FILE_DIGEST "
+            + "(exhibit_id, digest, file_size, last_modified, file_uri, content_digest) VALUES (?, ?, ?, ?, ?, ?)";
+    final static String FIND_STORED_FILE_SQL = "SELECT exhibit_id, digest, file_size, last_modified "
+            + "FROM SEQUENCE_FILE_DIGEST WHERE file_uri = ?";
+    final static String FIND_STORED_CONTENT_SQL = "SELECT exhibit_id FROM SEQUENCE_FILE_DIGEST "
+            + "WHERE file_size = ? AND content_digest = ?";
+    final static String FIND_REPLACED_SQL = "SELECT exhibit_id, file_uri FROM SEQUENCE_FILE_DIGEST "
+            + "WHERE file_uri = ? AND (file_size <> ? OR last_modified <> ?)";
+    final static String FIND_REPLACED_MEMBERS_SQL = "SELECT exhibit_id, file_uri FROM SEQUENCE_FILE_DIGEST "
+            + "WHERE file_uri LIKE ? ESCAPE '\\' AND (file_size <> ? OR last_modified <> ?)";
+    final static String FIND_DIGEST_SQL =
+            "SELECT digest, exhibit_id FROM SEQUENCE_FILE_DIGEST WHERE digest IN (SELECT * FROM TABLE(x VARCHAR = ?))";
+    final static String FIND_LOCATION_SQL =
+            "SELECT file_type, file_uri, file_offset, file_length FROM MUSEUM_EXHIBIT WHERE id = ?";
+    final static String FIND_FILES_IN_SQL = "SELECT DISTINCT file_uri, file_size, last_modified "
+            + "FROM SEQUENCE_FILE_DIGEST WHERE file_uri LIKE ? ESCAPE '\\'";
+    final static String FIND_MISSING_FILES_IN_SQL = "SELECT DISTINCT file_uri FROM SEQUENCE_FILE_DIGEST "
+            + "WHERE missing AND file_uri LIKE ? ESCAPE '\\'";
+    final static String SET_MISSING_SQL = "UPDATE SEQUENCE_FILE_DIGEST SET missing = ? "
+            + "WHERE (file_uri = ? OR file_uri LIKE ? ESCAPE '\\' OR file_uri LIKE ? ESCAPE '\\') AND missing <> ?";
+    final static String UPDATE_EXHIBIT_FILE_SQL =
+            "UPDATE MUSEUM_EXHIBIT SET file_uri = ?, file_offset = ?, file_length = ? WHERE id = ?";
+    final static String UPDATE_DIGEST_FILE_SQL = "UPDATE SEQUENCE_FILE_DIGEST "
+            + "SET file_size = ?, last_modified = ?, content_digest = ?, missing = FALSE "
+            + "WHERE exhibit_id = ? AND file_uri = ?";
+    final static String FIND_EXHIBIT_FILES_SQL = "SELECT DISTINCT file_uri FROM MUSEUM_EXHIBIT "
+            + "WHERE id IN (SELECT * FROM TABLE(x BIGINT = ?)) AND file_uri <> ''";
+    final static String DELETE_EXHIBITS_SQL =
+            "DELETE FROM MUSEUM_EXHIBIT WHERE id IN (SELECT * FROM TABLE(x BIGINT = ?))";
+    final static String FIND_REFERRED_FILES_SQL = "SELECT DISTINCT file_uri FROM MUSEUM_EXHIBIT "
+            + "WHERE file_uri IN (SELECT * FROM TABLE(x VARCHAR = ?))";
+    final static String FIND_REFERRED_MEMBER_SQL =
+            "SELECT file_uri FROM MUSEUM_EXHIBIT WHERE file_uri LIKE ? ESCAPE '\\' LIMIT 1";
+    /** count of the ids bound to a statement of the bulk delete */
+    final static int DELETE_BATCH_SIZE = 1000;
+
+    private final DataSource dataSource;
+
+    /** name of the sequence which generates {@code MUSEUM_EXHIBIT.id}, empty if not found */
+    private volatile String identitySequence = null;
+
+    public ExhibitRecordStore(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * Upgrades the schema of the library to the latest version, which has the tables and the
+     * columns used by the importer.
+     *
+     * @see SchemaMigrator
+     */
+    public void prepareSchema() throws SQLException, IOException {
+        new SchemaMigrator(dataSource).migrate();
+    }
+
+    /**
+     * Finds the exhibits imported from the location, which have the size and the modified time
+     * of the file when they were imported.
+     *
+     * @return the digests keyed by the exhibit ids, which is empty if the file is not imported yet.
+     */
+    public Map<Long, FileDigest> findStoredDigests(URI fileUri) throws SQLException {
+        Map<Long, FileDigest> digests = new LinkedHashMap<Long, FileDigest>();
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_STORED_FILE_SQL);
+            try {
+                statement.setString(1, fileUri.toString());
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        FileDigest digest = new FileDigest(fileUri, result.getLong(3), result.getLong(4));
+                        digest.setDigest(result.getString(2));
+                        digests.put(result.getLong(1), digest);
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return digests;
+    }
+
+    /**
+     * Finds the exhibits imported from a file of the same content, which may be at another location.
+     *
+     * @param contentDigest the hash of the whole file
+     * @return the ids of the exhibits, which is empty if no file of the content is imported.
+     */
+    public List<Long> findExhibitIdsByContent(long fileSize, String contentDigest) throws SQLException {
+        if (contentDigest == null) throw new IllegalArgumentException("contentDigest must not be null");
+
+        List<Long> exhibitIds = new ArrayList<Long>();
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_STORED_CONTENT_SQL);
+            try {
+                statement.setLong(1, fileSize);
+                statement.setString(2, contentDigest);
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        exhibitIds.add(result.getLong(1));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return exhibitIds;
+    }
+
+    /**
+     * Finds the exhibits imported from an old version of the file, whose size or modified time differs.
+     *
+     * @param members {@code true} to find the exhibits of the members of the archive,
+     *        which have the size and the modified time of the archive.
+     * @return the locations, which are the members for an archive, keyed by the exhibit ids
+     */
+    public Map<Long, URI> findReplacedExhibits(FileDigest file, boolean members) throws SQLException {
+        Map<Long, URI> exhibits = new LinkedHashMap<Long, URI>();
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement =
+                    connection.prepareStatement(members ? FIND_REPLACED_MEMBERS_SQL : FIND_REPLACED_SQL);
+            try {
+                String uri = file.getFileUri().toString();
+                statement.setString(1, members ? escapeLike(uri) + "#%" : uri);
+                statement.setLong(2, file.getFileSize());
+                statement.setLong(3, file.getLastModified());
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        exhibits.put(result.getLong(1), URI.create(result.getString(2)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return exhibits;
+    }
+
+    /**
+     * Finds where the exhibit is read from.
+     *
+     * @return the record which has the id, the file type, the file uri, the offset and the length,
+     *         or {@code null} if the exhibit does not exist.
+     */
+    public ExhibitRecord findRecordLocation(long exhibitId) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_LOCATION_SQL);
+            try {
+                statement.setLong(1, exhibitId);
+                ResultSet result = statement.executeQuery();
+                try {
+                    if (!result.next()) {
+                        return null;
+                    }
+                    ExhibitRecord record = new ExhibitRecord();
+                    record.setId(exhibitId);
+                    record.setFileType(SequenceFileFormat.fromCode(result.getInt(1)));
+                    String uri = result.getString(2);
+                    record.setFileUri(uri == null || uri.isEmpty() ? null : URI.create(uri));
+                    record.setFileOffset(result.getLong(3));
+                    record.setFileLength(result.getLong(4));
+                    return record;
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Finds the files imported from the directory and its subdirectories.
+     *
+     * @return the locations, sizes and modified times of the files and archive members,
+     *         which can be more than one for a file which is changed after it is imported.
+     */
+    public List<FileDigest> findStoredFiles(URI directory) throws SQLException {
+        List<FileDigest> files = new ArrayList<FileDigest>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_FILES_IN_SQL);
+            try {
+                statement.setString(1, escapeLike(directoryPrefix(directory)) + "%");
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        files.add(new FileDigest(URI.create(result.getString(1)),
+                                result.getLong(2), result.getLong(3)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return files;
+    }
+
+    /**
+     * @return the files and archive members in the directory which are marked missing.
+     */
+    public Set<URI> findMissingFiles(URI directory) throws SQLException {
+        Set<URI> files = new HashSet<URI>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_MISSING_FILES_IN_SQL);
+            try {
+                statement.setString(1, escapeLike(directoryPrefix(directory)) + "%");
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        files.add(URI.create(result.getString(1)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return files;
+    }
+
+    /**
+     * Marks the exhibits imported from the file, the members of the archive or the files in
+     * the directory as missing, or not missing. The exhibits are kept.
+     *
+     * @return the count of the changed rows
+     */
+    public int setMissing(URI fileUri, boolean missing) throws SQLException {
+        String uri = fileUri.toString();
+        if (uri.endsWith("/")) {
+            uri = uri.substring(0, uri.length() - 1);
+        }
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(SET_MISSING_SQL);
+            try {
+                statement.setBoolean(1, missing);
+                statement.setString(2, uri);
+                statement.setString(3, escapeLike(uri) + "#%");
+                statement.setString(4, escapeLike(uri) + "/%");
+                statement.setBoolean(5, missing);
+                return statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the files which the exhibits are read from
+     */
+    public Set<URI> findExhibitFiles(Collection<Long> exhibitIds) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            return findExhibitFiles(connection, new ArrayList<Long>(exhibitIds));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static Set<URI> findExhibitFiles(Connection connection, List<Long> exhibitIds) throws SQLException {
+        Set<URI> files = new HashSet<URI>();
+        PreparedStatement statement = connection.prepareStatement(FIND_EXHIBIT_FILES_SQL);
+        try {
+            for (int from = 0; from < exhibitIds.size(); from += DELETE_BATCH_SIZE) {
+                statement.setObject(1, batchOf(exhibitIds, from));
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        files.add(URI.create(result.getString(1)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return files;
+    }
+
+    /**
+     * Deletes the exhibits by a statement for each {@value #DELETE_BATCH_SIZE} ids in one transaction.
+     * The box items and the digests of the exhibits are deleted by the foreign keys.
+     *
+     * @return the files which the deleted exhibits were read from and no other exhibit is read from.
+     *         The archive of a member is returned when no member of it is read from.
+     */
+    public Set<URI> deleteAll(Collection<Long> exhibitIds) throws SQLException {
+        if (exhibitIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Long> ids = new ArrayList<Long>(exhibitIds);
+
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                Set<URI> files = findExhibitFiles(connection, ids);
+
+                PreparedStatement statement = connection.prepareStatement(DELETE_EXHIBITS_SQL);
+                try {
+                    for (int from = 0; from < ids.size(); from += DELETE_BATCH_SIZE) {
+                        statement.setObject(1, batchOf(ids, from));
+                        statement.executeUpdate();
+                    }
+                }
+                finally {
+                    statement.close();
+                }
+
+                Set<URI> unreferred = findUnreferredFiles(connection, files);
+                connection.commit();
+                return unreferred;
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the files, or the archives of the members, which no exhibit is read from
+     */
+    public Set<URI> findUnreferredFiles(Collection<URI> exhibitFiles) throws SQLException {
+        if (exhibitFiles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Connection connection = dataSource.getConnection();
+        try {
+            return findUnreferredFiles(connection, new HashSet<URI>(exhibitFiles));
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static Set<URI> findUnreferredFiles(Connection connection, Set<URI> exhibitFiles)
+            throws SQLException {
+        Set<URI> files = new HashSet<URI>();
+        Set<URI> archives = new HashSet<URI>();
+        for (URI uri: exhibitFiles) {
+            String value = uri.toString();
+            int fragment = value.indexOf('#');
+            if (fragment < 0) {
+                files.add(uri);
+            }
+            else {
+                URI archive = URI.create(value.substring(0, fragment));
+                files.add(archive);
+                archives.add(archive);
+            }
+        }
+        files.removeAll(findReferredFiles(connection, files));
+
+        archives.retainAll(files);
+        if (!archives.isEmpty()) {
+            PreparedStatement statement = connection.prepareStatement(FIND_REFERRED_MEMBER_SQL);
+            try {
+                for (URI archive: archives) {
+                    statement.setString(1, escapeLike(archive.toString()) + "#%");
+                    ResultSet result = statement.executeQuery();
+                    try {
+                        if (result.next()) {
+                            files.remove(archive);
+                        }
+                    }
+                    finally {
+                        result.close();
+                    }
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        return files;
+    }
+
+    private static Set<URI> findReferredFiles(Connection connection, Set<URI> files) throws SQLException {
+        Set<URI> referred = new HashSet<URI>();
+        List<String> uris = new ArrayList<String>(files.size());
+        for (URI file: files) {
+            uris.add(file.toString());
+        }
+
+        PreparedStatement statement = connection.prepareStatement(FIND_REFERRED_FILES_SQL);
+        try {
+            for (int from = 0; from < uris.size(); from += DELETE_BATCH_SIZE) {
+                statement.setObject(1, batchOf(uris, from));
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        referred.add(URI.create(result.getString(1)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return referred;
+    }
+
+    /**
+     * @return the elements of the list from the index, at most {@value #DELETE_BATCH_SIZE}
+     */
+    private static Object[] batchOf(List<?> list, int from) {
+        return list.subList(from, Math.min(from + DELETE_BATCH_SIZE, list.size())).toArray();
+    }
+
+    private static String directoryPrefix(URI directory) {
+        String prefix = directory.toString();
+        return prefix.endsWith("/") ? prefix : prefix + "/";
+    }
+
+    static String escapeLike(String value) {
+        return value.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    /**
+     * @return exhibit ids keyed by the digests which are already stored.
+     */
+    public Map<String, Long> findExhibitIdsByDigest(Collection<String> digests) throws SQLException {
+        Map<String, Long> found = new HashMap<String, Long>();
+        if (digests.isEmpty()) {
+            return found;
+        }
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_DIGEST_SQL);
+            try {
+                statement.setObject(1, digests.toArray());
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        found.put(result.getString(1), result.getLong(2));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return found;
+    }
+
+    /**
+     * Inserts the record and sets the generated id to it.
+     *
+     * @param boxId the id of the collection box which the record is added to, or {@code null}.
+     */
+    public void insert(ExhibitRecord record, Long boxId) throws SQLException {
+        insert(record, boxId, null);
+    }
+
+    /**
+     * Inserts the record with the digest of the file which the record is read from.
+     *
+     * @param digest the digest of the source file, or {@code null}.
+     */
+    public void insert(ExhibitRecord record, Long boxId, FileDigest digest) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement =
+                    connection.prepareStatement(INSERT_EXHIBIT_SQL, PreparedStatement.RETURN_GENERATED_KEYS);
+            try {
+                bindExhibit(statement, record);
+                statement.executeUpdate();
+                record.setId(getGeneratedKey(statement));
+            }
+            finally {
+                statement.close();
+            }
+
+            if (boxId != null) {
+                insertBoxItem(connection, record.getId(), boxId);
+            }
+            if (digest != null) {
+                insertDigests(connection, Collections.singletonList(record), Collections.singletonList(digest));
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Inserts all records of the batch in one transaction and sets the generated ids to them.
+     * The exhibits replaced by the records of the batch are updated in the same transaction.
+     *
+     * The ids are allocated at once from the identity sequence of {@code MUSEUM_EXHIBIT},
+     * so that the rows can be sent as one JDBC batch.
+     */
+    public void insertAll(InsertBatch batch) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                if (batch.size() > 0) {
+                    List<Long> ids = allocateIds(connection, batch.size());
+                    if (ids.isEmpty()) {
+                        insertEach(connection, batch.records);
+                    }
+                    else {
+                        insertBatch(connection, batch.records, ids);
+                    }
+                    insertBoxItems(connection, batch);
+                    insertDigests(connection, batch.records, batch.digests);
+                }
+                updateReplaced(connection, batch);
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                for (ExhibitRecord record: batch.records) {
+                    record.setId(null);
+                }
+                for (ExhibitRecord record: batch.replacingRecords) {
+                    record.setId(null);
+                }
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private List<Long> allocateIds(Connection connection, int count) throws SQLException {
+        String sequence = getIdentitySequence(connection);
+        if (sequence.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<Long> ids = new ArrayList<Long>(count);
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(
+                    "SELECT NEXT VALUE FOR " + sequence + " FROM SYSTEM_RANGE(1, " + count + ")");
+            try {
+                while (result.next()) {
+                    ids.add(result.getLong(1));
+                }
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return ids;
+    }
+
+    private String getIdentitySequence(Connection connection) throws SQLException {
+        if (identitySequence == null) {
+            String name = "";
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(IDENTITY_SEQUENCE_SQL);
+                try {
+                    if (result.next() && result.getString(2) != null) {
+                        name = result.getString(1) + "." + result.getString(2);
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+            identitySequence = name;
+        }
+        return identitySequence;
+    }
+
+    private static void insertBatch(Connection connection, List<ExhibitRecord> records, List<Long> ids)
+            throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT_EXHIBIT_WITH_ID_SQL);
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                bindExhibit(statement, records.get(i));
+                statement.setLong(16, ids.get(i));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+        finally {
+            statement.close();
+        }
+
+        for (int i = 0; i < records.size(); i++) {
+            records.get(i).setId(ids.get(i));
+        }
+    }
+
+    private static void insertEach(Connection connection, List<ExhibitRecord> records) throws SQLException {
+        PreparedStatement statement =
+                connection.prepareStatement(INSERT_EXHIBIT_SQL, PreparedStatement.RETURN_GENERATED_KEYS);
+        try {
+            for (ExhibitRecord record: records) {
+                bindExhibit(statement, record);
+                statement.executeUpdate();
+                record.setId(getGeneratedKey(statement));
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static void insertBoxItems(Connection connection, InsertBatch batch) throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                Long boxId = batch.boxIds.get(i);
+                if (boxId == null) {
+                    continue;
+                }
+                if (statement == null) {
+                    statement = connection.prepareStatement(INSERT_BOX_ITEM_SQL);
+                }
+                statement.setLong(1, batch.records.get(i).getId());
+                statement.setLong(2, boxId);
+                statement.addBatch();
+            }
+            if (statement != null) {
+                statement.executeBatch();
+            }
+        }
+        finally {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
+    private static void insertDigests(Connection connection, List<ExhibitRecord> records, List<FileDigest> digests)
+            throws SQLException {
+        PreparedStatement statement = null;
+        try {
+            for (int i = 0; i < records.size(); i++) {
+                FileDigest digest = digests.get(i);
+                if (digest == null || digest.getDigest() == null) {
+                    continue;
+                }
+                if (statement == null) {
+                    statement = connection.prepareStatement(INSERT_DIGEST_SQL);
+                }
+                statement.setLong(1, records.get(i).getId());
+                statement.setString(2, digest.getDigest());
+                statement.setLong(3, digest.getFileSize());
+                statement.setLong(4, digest.getLastModified());
+                statement.setString(5, digest.getFileUri().toString());
+                statement.setString(6, digest.getContentDigest());
+                statement.addBatch();
+            }
+            if (statement != null) {
+                statement.executeBatch();
+            }
+        }
+        finally {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
+    /**
+     * Lets the replaced exhibits read the records of the new version of the file.
+     */
+    private static void updateReplaced(Connection connection, InsertBatch batch) throws SQLException {
+        if (batch.replacedIds.isEmpty()) {
+            return;
+        }
+
+        PreparedStatement exhibitStatement = connection.prepareStatement(UPDATE_EXHIBIT_FILE_SQL);
+        try {
+            for (int i = 0; i < batch.replacedIds.size(); i++) {
+                ExhibitRecord record = batch.replacingRecords.get(i);
+                exhibitStatement.setString(1, record.getFileUri() == null ? "" : record.getFileUri().toString());
+                exhibitStatement.setLong(2, record.getFileOffset());
+                exhibitStatement.setLong(3, record.getFileLength());
+                exhibitStatement.setLong(4, batch.replacedIds.get(i));
+                exhibitStatement.addBatch();
+            }
+            exhibitStatement.executeBatch();
+        }
+        finally {
+            exhibitStatement.close();
+        }
+
+        PreparedStatement digestStatement = connection.prepareStatement(UPDATE_DIGEST_FILE_SQL);
+        try {
+            for (int i = 0; i < batch.replacedIds.size(); i++) {
+                FileDigest digest = batch.replacingDigests.get(i);
+                digestStatement.setLong(1, digest.getFileSize());
+                digestStatement.setLong(2, digest.getLastModified());
+                digestStatement.setString(3, digest.getContentDigest());
+                digestStatement.setLong(4, batch.replacedIds.get(i));
+                digestStatement.setString(5, digest.getFileUri().toString());
+                digestStatement.addBatch();
+            }
+            digestStatement.executeBatch();
+        }
+        finally {
+            digestStatement.close();
+        }
+
+        for (int i = 0; i < batch.replacedIds.size(); i++) {
+            batch.replacingRecords.get(i).setId(batch.replacedIds.get(i));
+        }
+    }
+
+    static void bindExhibit(PreparedStatement statement, ExhibitRecord record) throws SQLException {
+        statement.setString(1, record.getName());
+        statement.setInt(2, record.getSequenceLength());
+        statement.setString(3, record.getAccession());
+        statement.setString(4, record.getNamespace());
+        statement.setInt(5, record.getVersion());
+        statement.setString(6, record.getDefinition());
+        statement.setString(7, record.getSourceText());
+        statement.setString(8, record.getOrganism());
+        if (record.getDate() == null) {
+            statement.setNull(9, Types.DATE);
+        }
+        else {
+            statement.setDate(9, new java.sql.Date(record.getDate().getTime()));
+        }
+        statement.setInt(10, record.getSequenceUnit());
+        statement.setString(11, record.getMoleculeType());
+        statement.setInt(12, record.getFileType().code());
+        statement.setString(13, record.getFileUri() == null ? "" : record.getFileUri().toString());
+        statement.setLong(14, record.getFileOffset());
+        statement.setLong(15, record.getFileLength());
+    }
+
+    static void insertBoxItem(Connection connection, long exhibitId, long boxId) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT_BOX_ITEM_SQL);
+        try {
+            statement.setLong(1, exhibitId);
+            statement.setLong(2, boxId);
+            statement.executeUpdate();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static Long getGeneratedKey(PreparedStatement statement) throws SQLException {
+        ResultSet keys = statement.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getLong(1) : null;
+        }
+        finally {
+            keys.close();
+        }
+    }
+
+    /**
+     * Records written by {@link ExhibitRecordStore#insertAll(InsertBatch)} in one transaction.
+     */
+    public static class InsertBatch {
+        private final List<ExhibitRecord> records = new ArrayList<ExhibitRecord>();
+        private final List<Long> boxIds = new ArrayList<Long>();
+        private final List<FileDigest> digests = new ArrayList<FileDigest>();
+        private final List<Long> replacedIds = new ArrayList<Long>();
+        private final List<ExhibitRecord> replacingRecords = new ArrayList<ExhibitRecord>();
+        private final List<FileDigest> replacingDigests = new ArrayList<FileDigest>();
+
+        public InsertBatch() {
+        }
+
+        /**
+         * @param boxId the collection box which the record is added to, or {@code null}.
+         */
+        public void add(ExhibitRecord record, Long boxId) {
+            add(record, boxId, null);
+        }
+
+        /**
+         * @param digest the digest of the source file, or {@code null}.
+         */
+        public void add(ExhibitRecord record, Long boxId, FileDigest digest) {
+            records.add(record);
+            boxIds.add(boxId);
+            digests.add(digest);
+        }
+
+        /**
+         * Lets the exhibit read the record of the new version of its file, instead of inserting the record.
+         *
+         * @param digest the digest of the new version of the file.
+         */
+        public void replace(long exhibitId, ExhibitRecord record, FileDigest digest) {
+            if (record == null) throw new IllegalArgumentException("record must not be null");
+            if (digest == null) throw new IllegalArgumentException("digest must not be null");
+
+            replacedIds.add(exhibitId);
+            replacingRecords.add(record);
+            replacingDigests.add(digest);
+        }
+
+        /**
+         * @return the count of the records to insert
+         */
+        public int size() {
+            return records.size();
+        }
+
+        public boolean isEmpty() {
+            return records.isEmpty() && replacedIds.isEmpty();
+        }
+    }
+}
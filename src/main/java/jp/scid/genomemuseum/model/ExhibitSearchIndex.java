@@ -0,0 +1,213 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+/**
+ * Full-text index of {@code MUSEUM_EXHIBIT}, made by the native full-text search of H2.
+ *
+ * The index is kept by the triggers of the table, so exhibits inserted, updated or deleted
+ * by any connection are searched at once. Words are matched as whole words ignoring case,
+ * except the last word, which is matched as the beginning of a word while it is typed.
+ * An exhibit must have all words of the query.
+ */
+public class ExhibitSearchIndex {
+    /** the columns which the text filter of the list searched */
+    public final static String INDEXED_COLUMNS =
+            "ACCESSION,DEFINITION,MOLECULE_TYPE,NAME,NAMESPACE,ORGANISM,SOURCE_TEXT";
+
+    final static String INIT_ALIAS_SQL = "CREATE ALIAS IF NOT EXISTS FT_INIT FOR \"org.h2.fulltext.FullText.init\"";
+    final static String INIT_SQL = "CALL FT_INIT()";
+    final static String TABLE_SCHEMA_SQL =
+            "SELECT TABLE_SCHEMA FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'MUSEUM_EXHIBIT'";
+    final static String INDEX_EXISTS_SQL =
+            "SELECT COUNT(*) FROM FT.INDEXES WHERE SCHEMA = ? AND TABLE = 'MUSEUM_EXHIBIT'";
+    final static String CREATE_INDEX_SQL = "CALL FT_CREATE_INDEX(?, 'MUSEUM_EXHIBIT', ?)";
+    /** splits the text into the words, as the index splits the values */
+    final static Pattern WORD_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+    /** condition of a query of {@code MUSEUM_EXHIBIT}, followed by the condition of the word */
+    final static String WORD_CONDITION_HEAD = "id IN (SELECT CAST(SUBSTRING(R.KEY, LOCATE('=', R.KEY) + 1) AS bigint) "
+            + "FROM FT.WORDS W, FT.MAP M, FT.ROWS R, FT.INDEXES I WHERE ";
+    final static String WORD_CONDITION_TAIL = " AND M.WORDID = W.ID AND R.ID = M.ROWID "
+            + "AND I.ID = R.INDEXID AND I.TABLE = 'MUSEUM_EXHIBIT')";
+    final static String WHOLE_WORD_CONDITION = WORD_CONDITION_HEAD + "W.NAME = ?" + WORD_CONDITION_TAIL;
+    final static String PREFIX_WORD_CONDITION = WORD_CONDITION_HEAD + "W.NAME LIKE ? ESCAPE '\\'" + WORD_CONDITION_TAIL;
+
+    private final DataSource dataSource;
+
+    public ExhibitSearchIndex(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Creates the index and indexes the stored exhibits, if the index does not exist.
+     */
+    static void createIndex(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute(INIT_ALIAS_SQL);
+            statement.execute(INIT_SQL);
+        }
+        finally {
+            statement.close();
+        }
+
+        String schema = tableSchema(connection);
+        if (indexExists(connection, schema)) {
+            return;
+        }
+        PreparedStatement create = connection.prepareStatement(CREATE_INDEX_SQL);
+        try {
+            create.setString(1, schema);
+            create.setString(2, INDEXED_COLUMNS);
+            create.execute();
+        }
+        finally {
+            create.close();
+        }
+    }
+
+    private static String tableSchema(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(TABLE_SCHEMA_SQL);
+            try {
+                if (!result.next()) {
+                    throw new SQLException("MUSEUM_EXHIBIT does not exist");
+                }
+                return result.getString(1);
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static boolean indexExists(Connection connection, String schema) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(INDEX_EXISTS_SQL);
+        try {
+            query.setString(1, schema);
+            ResultSet result = query.executeQuery();
+            try {
+                return result.next() && result.getInt(1) > 0;
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    /**
+     * Makes the condition of a query of {@code MUSEUM_EXHIBIT}, which matches the exhibits
+     * having all words of the text.
+     *
+     * @param parameters the list which the parameters of the condition are added to
+     * @return the condition, or {@code null} if the text has no words.
+     */
+    static String matchingCondition(String text, List<Object> parameters) {
+        List<String> words = words(text);
+        if (words.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder condition = new StringBuilder();
+        for (int i = 0; i < words.size(); i++) {
+            if (i > 0) {
+                condition.append(" AND ");
+            }
+            if (i < words.size() - 1) {
+                condition.append(WHOLE_WORD_CONDITION);
+                parameters.add(words.get(i));
+            }
+            else {
+                condition.append(PREFIX_WORD_CONDITION);
+                parameters.add(ExhibitRecordStore.escapeLike(words.get(i)) + "%");
+            }
+        }
+        return condition.toString();
+    }
+
+    /**
+     * @return the words of the text in upper case, which the index holds.
+     */
+    static List<String> words(String text) {
+        List<String> words = new ArrayList<String>();
+        for (String word: WORD_SEPARATOR.split(text)) {
+            if (!word.isEmpty()) {
+                words.add(word.toUpperCase(Locale.ENGLISH));
+            }
+        }
+        return words;
+    }
+
+    /**
+     * @return the ids of the exhibits which have all words of the text.
+     */
+    public Set<Long> search(String text) throws SQLException {
+        return search(text, 0);
+    }
+
+    /**
+     * @param limit the maximum count of the ids, or {@code 0} for all
+     * @return the ids of the exhibits which have all words of the text.
+     */
+    public Set<Long> search(String text, int limit) throws SQLException {
+        if (text == null) throw new IllegalArgumentException("text must not be null");
+        if (limit < 0) throw new IllegalArgumentException("limit must not be negative");
+
+        Set<Long> ids = new HashSet<Long>();
+        List<Object> parameters = new ArrayList<Object>();
+        String condition = matchingCondition(text, parameters);
+        if (condition == null) {
+            return ids;
+        }
+        String sql = "SELECT id FROM MUSEUM_EXHIBIT WHERE " + condition;
+        if (limit > 0) {
+            sql += " LIMIT " + limit;
+        }
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                for (int i = 0; i < parameters.size(); i++) {
+                    statement.setObject(i + 1, parameters.get(i));
+                }
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,98 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.net.URI;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Identity of an imported file, kept in {@code SEQUENCE_FILE_DIGEST}.
+ *
+ * The size and the modified time are the fast precheck which does not read the file.
+ * The digest is the hash of the content of a record, and the content digest is the hash of
+ * the whole file, which finds a copy of the file at another location.
+ */
+public class FileDigest {
+    public final static String ALGORITHM = "SHA-1";
+
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final URI fileUri;
+    private final long fileSize;
+    private final long lastModified;
+    private String digest = null;
+    private String contentDigest = null;
+
+    public FileDigest(URI fileUri, long fileSize, long lastModified) {
+        if (fileUri == null) throw new IllegalArgumentException("fileUri must not be null");
+
+        this.fileUri = fileUri;
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+    }
+
+    public static FileDigest of(File file) {
+        return new FileDigest(file.toURI(), file.length(), file.lastModified());
+    }
+
+    public static MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public URI getFileUri() {
+        return fileUri;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * @return hex string of the content hash, or {@code null} if the content is not read yet.
+     */
+    public String getDigest() {
+        return digest;
+    }
+
+    public void setDigest(String digest) {
+        this.digest = digest;
+    }
+
+    public void setDigest(MessageDigest messageDigest) {
+        setDigest(toHexString(messageDigest.digest()));
+    }
+
+    /**
+     * @return hex string of the hash of the whole file, or {@code null} if it is not read.
+     */
+    public String getContentDigest() {
+        return contentDigest;
+    }
+
+    public void setContentDigest(String contentDigest) {
+        this.contentDigest = contentDigest;
+    }
+
+    static String toHexString(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0f];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0f];
+        }
+        return new String(chars);
+    }
+
+    @Override
+    public String toString() {
+        return "FileDigest: " + fileUri + " " + digest;
+    }
+}
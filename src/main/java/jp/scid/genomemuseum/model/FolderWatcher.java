@@ -0,0 +1,680 @@
+package jp.scid.genomemuseum.model;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports the files which are added to or changed in the watched folders, kept in {@code WATCHED_FOLDER}.
+ *
+ * When a folder starts to be watched, its files are compared with the files stored in
+ * {@code SEQUENCE_FILE_DIGEST} only by their sizes and modified times, so only new or changed
+ * files are parsed, and the stored files which are not in the folder any more are marked missing.
+ * Members of an archive have the size and the modified time of the archive. A file is
+ * imported again if any exhibit of it was imported from another version.
+ *
+ * While watching, a file is imported after no event of it comes for {@link #QUIET_PERIOD}
+ * milliseconds and its size and modified time are not changed, so a file which is still
+ * written is not read. The events are handled on one thread, which owns the pending files.
+ */
+public class FolderWatcher {
+    private final static Logger logger = LoggerFactory.getLogger(FolderWatcher.class);
+
+    /** milliseconds without events before a changed file is imported */
+    public final static long QUIET_PERIOD = 2000;
+    /** milliseconds between the checks of the pending files */
+    private final static long CHECK_INTERVAL = 500;
+
+    final static String FIND_ALL_SQL = "SELECT folder_path, box_id FROM WATCHED_FOLDER ORDER BY id";
+    final static String MERGE_SQL = "MERGE INTO WATCHED_FOLDER (folder_path, box_id) KEY (folder_path) VALUES (?, ?)";
+    final static String DELETE_SQL = "DELETE FROM WATCHED_FOLDER WHERE folder_path = ?";
+
+    private final DataSource dataSource;
+    private final ExhibitRecordStore store;
+    private final GeneticSequenceFileLoadingManager loadingManager;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final List<WatchedFolder> folders = new CopyOnWriteArrayList<WatchedFolder>();
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<WatchKey, Path>();
+    // accessed on the scheduler
+    private final Map<Path, PendingFile> pendingFiles = new HashMap<Path, PendingFile>();
+
+    private volatile WatchService watchService = null;
+
+    private final Runnable checkCommand = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                importQuietFiles();
+            }
+            catch (RuntimeException e) {
+                logger.error("fail to import the changed files", e);
+            }
+        }
+    };
+
+    public FolderWatcher(DataSource dataSource, ExhibitRecordStore store,
+            GeneticSequenceFileLoadingManager loadingManager) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        if (store == null) throw new IllegalArgumentException("store must not be null");
+        if (loadingManager == null) throw new IllegalArgumentException("loadingManager must not be null");
+
+        this.dataSource = dataSource;
+        this.store = store;
+        this.loadingManager = loadingManager;
+    }
+
+    /**
+     * Starts watching the folders which are saved, after scanning them.
+     * A stopped watcher cannot be started again.
+     */
+    public synchronized void start() throws IOException {
+        if (watchService != null) {
+            return;
+        }
+        final WatchService service = FileSystems.getDefault().newWatchService();
+        watchService = service;
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pollEvents(service);
+            }
+        }, "FolderWatcher");
+        thread.setDaemon(true);
+        thread.start();
+
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (WatchedFolder folder: findFolders()) {
+                        startWatching(folder);
+                    }
+                }
+                catch (SQLException e) {
+                    logger.error("fail to read the watched folders", e);
+                }
+            }
+        });
+        scheduler.scheduleWithFixedDelay(checkCommand, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops watching. Files which are pending are imported when the folders are scanned next time.
+     */
+    public synchronized void stop() {
+        scheduler.shutdownNow();
+
+        WatchService service = watchService;
+        if (service != null) {
+            try {
+                service.close();
+            }
+            catch (IOException e) {
+                logger.warn("fail to close the watch service", e);
+            }
+        }
+    }
+
+    /**
+     * Saves the folder and starts watching it, after importing the files which are not imported yet.
+     *
+     * @param boxId the collection box which the records are added to, or {@code null}.
+     */
+    public void watch(File directory, Long boxId) {
+        if (directory == null) throw new IllegalArgumentException("directory must not be null");
+        if (!directory.isDirectory()) throw new IllegalArgumentException(directory + " is not a directory");
+
+        final WatchedFolder folder = new WatchedFolder(directory.toPath().toAbsolutePath().normalize(), boxId);
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    saveFolder(folder);
+                }
+                catch (SQLException e) {
+                    logger.error("fail to save the watched folder " + folder.getDirectory(), e);
+                    return;
+                }
+                WatchedFolder watched = findWatchedFolder(folder.path);
+                if (watched != null) {
+                    folders.remove(watched);
+                }
+                startWatching(folder);
+            }
+        });
+    }
+
+    /**
+     * Stops watching the folder. The imported exhibits are kept.
+     */
+    public void unwatch(File directory) {
+        if (directory == null) throw new IllegalArgumentException("directory must not be null");
+
+        final Path path = directory.toPath().toAbsolutePath().normalize();
+        scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+                WatchedFolder folder = findWatchedFolder(path);
+                if (folder == null) {
+                    return;
+                }
+                try {
+                    deleteFolder(folder);
+                }
+                catch (SQLException e) {
+                    logger.error("fail to delete the watched folder " + path, e);
+                    return;
+                }
+                folders.remove(folder);
+                stopWatching(folder);
+            }
+        });
+    }
+
+    /**
+     * @return the folders which are watched now
+     */
+    public List<WatchedFolder> getWatchedFolders() {
+        return Collections.unmodifiableList(new ArrayList<WatchedFolder>(folders));
+    }
+
+    private void startWatching(WatchedFolder folder) {
+        folders.add(folder);
+        Map<String, File> files = registerTree(folder.path);
+        try {
+            reconcile(folder, files);
+        }
+        catch (SQLException e) {
+            logger.error("fail to compare the folder " + folder.path + " with the library", e);
+        }
+    }
+
+    private void stopWatching(WatchedFolder folder) {
+        for (Iterator<Map.Entry<WatchKey, Path>> it = watchedDirectories.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<WatchKey, Path> entry = it.next();
+            // a directory can be in another watched folder
+            if (entry.getValue().startsWith(folder.path) && folderOf(entry.getValue()) == null) {
+                entry.getKey().cancel();
+                it.remove();
+            }
+        }
+        for (Iterator<PendingFile> it = pendingFiles.values().iterator(); it.hasNext();) {
+            if (it.next().folder == folder) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Registers the directory and its subdirectories to the watch service.
+     *
+     * @return the files in the directories keyed by their uris
+     */
+    private Map<String, File> registerTree(final Path root) {
+        final Map<String, File> files = new LinkedHashMap<String, File>();
+        if (!Files.isDirectory(root)) {
+            logger.warn("watched folder {} does not exist", root);
+            return files;
+        }
+
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    if (!dir.equals(root) && SequenceFileWalker.isHidden(dir)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    WatchService service = watchService;
+                    if (service != null) {
+                        watchedDirectories.put(dir.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY), dir);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile() && !SequenceFileWalker.isHidden(file)) {
+                        File found = file.toFile();
+                        files.put(found.toURI().toString(), found);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    logger.warn("cannot visit file {}: {}", file, exc.getLocalizedMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            logger.error("fail to watch the folder " + root, e);
+        }
+        return files;
+    }
+
+    /**
+     * Imports the files which are new or changed since they were imported, and marks the
+     * stored files which are not in the folder as missing.
+     */
+    void reconcile(WatchedFolder folder, Map<String, File> files) throws SQLException {
+        URI directory = folder.path.toFile().toURI();
+
+        Map<String, List<FileDigest>> storedFiles = new HashMap<String, List<FileDigest>>();
+        for (FileDigest stored: store.findStoredFiles(directory)) {
+            String uri = fileUriOf(stored.getFileUri());
+            List<FileDigest> versions = storedFiles.get(uri);
+            if (versions == null) {
+                versions = new ArrayList<FileDigest>(1);
+                storedFiles.put(uri, versions);
+            }
+            versions.add(stored);
+        }
+        Set<String> missingFiles = fileUrisOf(store.findMissingFiles(directory));
+
+        List<File> changed = new ArrayList<File>();
+        List<URI> found = new ArrayList<URI>();
+        for (Map.Entry<String, File> entry: files.entrySet()) {
+            List<FileDigest> versions = storedFiles.remove(entry.getKey());
+            if (versions == null || !isStored(versions, entry.getValue())) {
+                changed.add(entry.getValue());
+            }
+            if (missingFiles.contains(entry.getKey())) {
+                found.add(entry.getValue().toURI());
+            }
+        }
+        List<URI> removed = new ArrayList<URI>();
+        for (String uri: storedFiles.keySet()) {
+            if (!missingFiles.contains(uri)) {
+                removed.add(URI.create(uri));
+            }
+        }
+
+        logger.info("folder {}: {} files, {} new or changed, {} missing",
+                new Object[]{folder.path, files.size(), changed.size(), removed.size()});
+        markMissing(found, false);
+        markMissing(removed, true);
+        if (!changed.isEmpty()) {
+            loadingManager.executeFiles(changed, folder.boxId);
+        }
+    }
+
+    private static boolean isStored(List<FileDigest> versions, File file) {
+        long size = file.length();
+        long lastModified = file.lastModified();
+        for (FileDigest stored: versions) {
+            if (stored.getFileSize() != size || stored.getLastModified() != lastModified) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the uri of the file, without the entry name of an archive member
+     */
+    static String fileUriOf(URI uri) {
+        String value = uri.toString();
+        int fragment = value.indexOf('#');
+        return fragment < 0 ? value : value.substring(0, fragment);
+    }
+
+    private static Set<String> fileUrisOf(Collection<URI> uris) {
+        Set<String> files = new HashSet<String>(uris.size());
+        for (URI uri: uris) {
+            files.add(fileUriOf(uri));
+        }
+        return files;
+    }
+
+    /**
+     * Updates the missing flags on the writer thread of the engine.
+     */
+    private void markMissing(final Collection<URI> files, final boolean missing) {
+        if (files.isEmpty()) {
+            return;
+        }
+        try {
+            loadingManager.getEngine().submitWrite(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    try {
+                        for (URI file: files) {
+                            store.setMissing(file, missing);
+                        }
+                    }
+                    catch (SQLException e) {
+                        logger.warn("fail to mark the files missing", e);
+                    }
+                    return null;
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            logger.info("missing files are not marked because the import is stopped");
+        }
+    }
+
+    private void pollEvents(WatchService service) {
+        for (;;) {
+            WatchKey key;
+            try {
+                key = service.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            catch (ClosedWatchServiceException e) {
+                return;
+            }
+
+            final List<WatchEvent<?>> events = key.pollEvents();
+            final Path dir = watchedDirectories.get(key);
+            if (dir != null) {
+                try {
+                    scheduler.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            handleEvents(dir, events);
+                        }
+                    });
+                }
+                catch (RejectedExecutionException e) {
+                    return;
+                }
+            }
+            if (!key.reset()) {
+                // the directory is deleted
+                watchedDirectories.remove(key);
+            }
+        }
+    }
+
+    private void handleEvents(Path dir, List<WatchEvent<?>> events) {
+        long now = System.currentTimeMillis();
+        List<URI> deleted = new ArrayList<URI>();
+
+        for (WatchEvent<?> event: events) {
+            if (event.kind() == OVERFLOW) {
+                // events are lost, so the whole folder is compared again
+                WatchedFolder folder = folderOf(dir);
+                if (folder != null) {
+                    folders.remove(folder);
+                    startWatching(folder);
+                }
+                continue;
+            }
+
+            Path child = dir.resolve((Path) event.context());
+            WatchedFolder folder = folderOf(child);
+            if (folder == null) {
+                continue;
+            }
+
+            if (event.kind() == ENTRY_DELETE) {
+                pendingFiles.remove(child);
+                deleted.add(child.toFile().toURI());
+            }
+            else if (Files.isDirectory(child)) {
+                if (event.kind() == ENTRY_CREATE && !SequenceFileWalker.isHidden(child)) {
+                    // files can be created before the directory is registered
+                    for (File file: registerTree(child).values()) {
+                        addPending(file.toPath(), folder, now);
+                    }
+                }
+            }
+            else if (Files.isRegularFile(child) && !SequenceFileWalker.isHidden(child)) {
+                addPending(child, folder, now);
+            }
+        }
+        markMissing(deleted, true);
+    }
+
+    private void addPending(Path path, WatchedFolder folder, long now) {
+        PendingFile pending = pendingFiles.get(path);
+        if (pending == null) {
+            pending = new PendingFile(folder);
+            pendingFiles.put(path, pending);
+        }
+        File file = path.toFile();
+        pending.lastEvent = now;
+        pending.size = file.length();
+        pending.lastModified = file.lastModified();
+    }
+
+    /**
+     * Imports the pending files which have no event in the quiet period and are not changed.
+     */
+    private void importQuietFiles() {
+        if (pendingFiles.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Map<WatchedFolder, List<File>> quietFiles = new LinkedHashMap<WatchedFolder, List<File>>();
+
+        for (Iterator<Map.Entry<Path, PendingFile>> it = pendingFiles.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Path, PendingFile> entry = it.next();
+            PendingFile pending = entry.getValue();
+            if (now - pending.lastEvent < QUIET_PERIOD) {
+                continue;
+            }
+            File file = entry.getKey().toFile();
+            if (!file.isFile()) {
+                it.remove();
+                continue;
+            }
+            if (file.length() != pending.size || file.lastModified() != pending.lastModified) {
+                // written without events
+                pending.lastEvent = now;
+                pending.size = file.length();
+                pending.lastModified = file.lastModified();
+                continue;
+            }
+            it.remove();
+
+            List<File> files = quietFiles.get(pending.folder);
+            if (files == null) {
+                files = new ArrayList<File>();
+                quietFiles.put(pending.folder, files);
+            }
+            files.add(file);
+        }
+
+        for (Map.Entry<WatchedFolder, List<File>> entry: quietFiles.entrySet()) {
+            WatchedFolder folder = entry.getKey();
+            List<File> files = entry.getValue();
+            try {
+                // files put back after being removed are not missing
+                Set<String> missingFiles = fileUrisOf(store.findMissingFiles(folder.path.toFile().toURI()));
+                List<URI> found = new ArrayList<URI>();
+                for (File file: files) {
+                    if (missingFiles.contains(file.toURI().toString())) {
+                        found.add(file.toURI());
+                    }
+                }
+                markMissing(found, false);
+            }
+            catch (SQLException e) {
+                logger.warn("fail to find missing files in " + folder.path, e);
+            }
+            logger.debug("import {} changed files in {}", files.size(), folder.path);
+            loadingManager.executeFiles(files, folder.boxId);
+        }
+    }
+
+    private WatchedFolder findWatchedFolder(Path path) {
+        for (WatchedFolder folder: folders) {
+            if (folder.path.equals(path)) {
+                return folder;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the innermost watched folder which contains the path, or {@code null}
+     */
+    private WatchedFolder folderOf(Path path) {
+        WatchedFolder found = null;
+        for (WatchedFolder folder: folders) {
+            if (path.startsWith(folder.path)
+                    && (found == null || folder.path.getNameCount() > found.path.getNameCount())) {
+                found = folder;
+            }
+        }
+        return found;
+    }
+
+    List<WatchedFolder> findFolders() throws SQLException {
+        List<WatchedFolder> found = new ArrayList<WatchedFolder>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_ALL_SQL);
+            try {
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        long boxId = result.getLong(2);
+                        Long box = result.wasNull() ? null : boxId;
+                        found.add(new WatchedFolder(new File(result.getString(1)).toPath(), box));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return found;
+    }
+
+    private void saveFolder(WatchedFolder folder) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(MERGE_SQL);
+            try {
+                statement.setString(1, folder.path.toString());
+                if (folder.boxId == null) {
+                    statement.setNull(2, Types.BIGINT);
+                }
+                else {
+                    statement.setLong(2, folder.boxId);
+                }
+                statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private void deleteFolder(WatchedFolder folder) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(DELETE_SQL);
+            try {
+                statement.setString(1, folder.path.toString());
+                statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * A folder whose files are imported automatically.
+     */
+    public static class WatchedFolder {
+        private final Path path;
+        private final Long boxId;
+
+        WatchedFolder(Path path, Long boxId) {
+            this.path = path;
+            this.boxId = boxId;
+        }
+
+        public File getDirectory() {
+            return path.toFile();
+        }
+
+        /**
+         * @return the collection box which the records are added to, or {@code null}.
+         */
+        public Long getBoxId() {
+            return boxId;
+        }
+
+        @Override
+        public String toString() {
+            return path.toString();
+        }
+    }
+
+    /**
+     * A changed file waiting for the quiet period.
+     */
+    private static class PendingFile {
+        final WatchedFolder folder;
+        long lastEvent;
+        long size;
+        long lastModified;
+
+        PendingFile(WatchedFolder folder) {
+            this.folder = folder;
+        }
+    }
+}
@@ -1,54 +1,357 @@
 package jp.scid.genomemuseum.model;
 
+import java.awt.EventQueue;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import javax.swing.SwingWorker;
+import javax.swing.Timer;
 
-import jp.scid.bio.store.sequence.GeneticSequence;
+import jp.scid.bio.store.folder.Folder;
 import jp.scid.bio.store.sequence.ImportableSequenceSource;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportListener;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportTask;
+import jp.scid.genomemuseum.model.SequenceImportEngine.Priority;
+import jp.scid.genomemuseum.model.SequenceFileWalker.FileHandler;
 
 import org.jdesktop.application.AbstractBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/**
+ * Runs imports and counts their progress.
+ *
+ * The counters change on the import threads, but their property changes are
+ * coalesced and fired on the event dispatch thread at most once per
+ * {@link #PROGRESS_INTERVAL} milliseconds. The last values are fired before
+ * {@code inProgress} becomes {@code false}.
+ */
 public class GeneticSequenceFileLoadingManager extends AbstractBean {
-    private final Executor executor;
-    
-    private final Set<Future<?>> runningTasks = Collections.synchronizedSet(new HashSet<Future<?>>());
+    private final static Logger logger = LoggerFactory.getLogger(GeneticSequenceFileLoadingManager.class);
+    /** milliseconds between the property changes of the counters */
+    public final static int PROGRESS_INTERVAL = 30;
+    /** count of the skipped files logged when an import finishes */
+    private final static int LOGGED_SKIPPED_FILES = 10;
+
+    private final SequenceImportEngine engine;
+    private final ExecutorService walkExecutor;
     
-    private boolean inProgress = false;
-    private int executed = 0;
-    private int success = 0;
+    private final Set<Future<?>> runningWalks = Collections.synchronizedSet(new HashSet<Future<?>>());
+
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger executed = new AtomicInteger(0);
+    private final AtomicInteger success = new AtomicInteger(0);
+    private final AtomicInteger stored = new AtomicInteger(0);
+    private final List<File> skippedFiles = Collections.synchronizedList(new ArrayList<File>());
+    private final AtomicInteger quarantined = new AtomicInteger(0);
+    private final AtomicInteger unsupported = new AtomicInteger(0);
+    private final AtomicInteger failed = new AtomicInteger(0);
+
+    private final AtomicBoolean progressScheduled = new AtomicBoolean(false);
+    private final Timer progressTimer;
+    private final Runnable progressCommand = new Runnable() {
+        @Override
+        public void run() {
+            fireProgress();
+        }
+    };
+    // values last fired, accessed only on the event dispatch thread
+    private int firedExecuted = 0;
+    private int firedSuccess = 0;
+    private int firedStored = 0;
+    private int firedSkipped = 0;
+    private int firedQuarantined = 0;
+    private int firedUnsupported = 0;
+    private int firedFailed = 0;
+
+    private final ImportListener importListener = new ImportListener() {
+        @Override
+        public void importSubmitted(ImportTask task) {
+            addFuture();
+        }
+        
+        @Override
+        public void importFinished(ImportTask task) {
+            removeFuture(task);
+        }
+        
+        @Override
+        public void batchStored(List<ExhibitRecord> records) {
+            stored.addAndGet(records.size());
+            progressChanged();
+        }
+    };
+
+    public GeneticSequenceFileLoadingManager(SequenceImportEngine engine) {
+        if (engine == null) throw new IllegalArgumentException("engine must not be null");
+        this.engine = engine;
+        walkExecutor = Executors.newSingleThreadExecutor();
+
+        progressTimer = new Timer(PROGRESS_INTERVAL, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                fireProgress();
+            }
+        });
+        progressTimer.setRepeats(false);
+
+        engine.addImportListener(importListener);
+    }
+
+    public SequenceImportEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the counters of the current import, which are cleared when an import starts.
+     */
+    public ImportMetrics getMetrics() {
+        return engine.getMetrics();
+    }
+
+    /**
+     * Samples the metrics of the current import.
+     * The remaining time is estimated from the count of the tasks running.
+     */
+    public ImportMetrics.Snapshot snapshotMetrics() {
+        return engine.getMetrics().snapshot(running.get());
+    }
+
+    /**
+     * Imports the files added by the user, before the files of bulk imports which are waiting.
+     *
+     * This manager is kept in progress until all files are submitted, so that files which
+     * finish while the others are submitted do not end the import.
+     */
+    public List<Future<Integer>> executeLoading(Collection<File> files, ImportableSequenceSource dest) {
+        Long boxId = dest instanceof Folder ? ((Folder) dest).id() : null;
+
+        List<Future<Integer>> futures = new ArrayList<Future<Integer>>(files.size());
+
+        startRunning();
+        try {
+            for (File file: files) {
+                addFuture();
+                futures.add(engine.submit(file, boxId, Priority.INTERACTIVE));
+            }
+        }
+        finally {
+            finishRunning();
+        }
+
+        return futures;
+    }
+
+    /**
+     * Imports again the files which the journal recorded as not finished.
+     * 
+     * The files are submitted off the calling thread as a bulk import.
+     * 
+     * @return the count of the files submitted; files which do not exist any more are not.
+     */
+    public Future<Integer> executeUnfinished(final List<ImportJournal.Entry> entries) {
+        Callable<Integer> resume = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int count = 0;
+                for (ImportJournal.Entry entry: entries) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    if (!entry.getFile().exists()) {
+                        logger.info("unfinished file {} does not exist", entry.getFile());
+                        continue;
+                    }
+                    addFuture();
+                    engine.submit(entry.getFile(), entry.getBoxId());
+                    count++;
+                }
+                return count;
+            }
+        };
+        
+        return executeInBackground(resume);
+    }
+
+    /**
+     * Walks the directory trees off the calling thread and imports each file as it is found.
+     * 
+     * The walk keeps this manager in progress until it finishes, so the executed count
+     * grows while files are discovered. Files in the roots are imported as added by the user,
+     * and files found in the directories as a bulk import, which waits while the queue is full.
+     *
+     * @return the count of the files submitted
+     */
+    public Future<Integer> executeWalking(Collection<File> roots, ImportableSequenceSource dest) {
+        final Long boxId = dest instanceof Folder ? ((Folder) dest).id() : null;
+        final List<File> files = new ArrayList<File>(roots.size());
+        List<File> directories = new ArrayList<File>(roots.size());
+        for (File root: roots) {
+            if (root.isFile()) {
+                files.add(root);
+            }
+            else {
+                directories.add(root);
+            }
+        }
+
+        final SequenceFileWalker walker = new SequenceFileWalker(directories, new FileHandler() {
+            @Override
+            public void fileFound(File file) {
+                addFuture();
+                engine.submit(file, boxId);
+            }
+        });
+        Callable<Integer> walk = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                for (File file: files) {
+                    addFuture();
+                    engine.submit(file, boxId, Priority.INTERACTIVE);
+                }
+                return files.size() + walker.call();
+            }
+        };
+
+        return executeInBackground(walk);
+    }
     
-    public GeneticSequenceFileLoadingManager(Executor executor) {
-        this.executor = executor;
+    /**
+     * Imports the files as a bulk import, submitting them off the calling thread.
+     * 
+     * @param boxId the collection box which the records are added to, or {@code null}.
+     * @return the count of the files submitted
+     */
+    public Future<Integer> executeFiles(Collection<File> files, final Long boxId) {
+        final List<File> submitting = new ArrayList<File>(files);
+        Callable<Integer> submit = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                int count = 0;
+                for (File file: submitting) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break;
+                    }
+                    addFuture();
+                    engine.submit(file, boxId);
+                    count++;
+                }
+                return count;
+            }
+        };
+        
+        return executeInBackground(submit);
     }
     
-    public List<Future<GeneticSequence>> executeLoading(Collection<File> files, ImportableSequenceSource dest) {
-        if (!isRunnning()) {
-            resetCount();
-        }
+    /**
+     * Imports again the quarantined files which are tried less than {@link ImportQuarantine#MAX_ATTEMPTS} times.
+     * 
+     * At most {@code concurrency} files are retried at the same time, so that files which
+     * are slow to fail do not occupy all parsing threads.
+     * 
+     * @return the count of the files retried
+     */
+    public Future<Integer> executeRetry(final int concurrency) {
+        if (concurrency < 1) throw new IllegalArgumentException("concurrency must be positive");
+        final ImportQuarantine quarantine = engine.getQuarantine();
+        if (quarantine == null) throw new IllegalStateException("quarantine is not set to the engine");
         
-        List<Future<GeneticSequence>> futures = new ArrayList<Future<GeneticSequence>>(files.size());
+        Callable<Integer> retry = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                // members of an archive are retried by importing the archive
+                Map<File, Long> files = new LinkedHashMap<File, Long>();
+                for (ImportQuarantine.Failure failure: quarantine.findRetryable()) {
+                    File file = SequenceFileArchives.toFile(failure.getFileUri());
+                    if (file.exists() && !files.containsKey(file)) {
+                        files.put(file, failure.getBoxId());
+                    }
+                }
+                
+                Queue<Future<Integer>> inFlight = new LinkedList<Future<Integer>>();
+                for (Map.Entry<File, Long> entry: files.entrySet()) {
+                    if (inFlight.size() >= concurrency) {
+                        awaitQuietly(inFlight.poll());
+                    }
+                    addFuture();
+                    inFlight.add(engine.retry(entry.getKey(), entry.getValue()));
+                }
+                while (!inFlight.isEmpty()) {
+                    awaitQuietly(inFlight.poll());
+                }
+                return files.size();
+            }
+        };
         
-        for (File file: files) {
-            LoadingTask task = new LoadingTask(file, dest);
-            execute(task);
-            futures.add(task);
+        return executeInBackground(retry);
+    }
+    
+    private static void awaitQuietly(Future<?> future) throws InterruptedException {
+        try {
+            future.get();
+        }
+        catch (ExecutionException e) {
+            // counted as a failure by the listener
         }
+    }
+    
+    /**
+     * Runs the command on the walking thread, keeping this manager in progress until it finishes.
+     */
+    private Future<Integer> executeInBackground(Callable<Integer> command) {
+        FutureTask<Integer> future = new FutureTask<Integer>(command) {
+            @Override
+            protected void done() {
+                runningWalks.remove(this);
+                finishRunning();
+            }
+        };
         
-        return futures;
+        startRunning();
+        runningWalks.add(future);
+        walkExecutor.execute(future);
+        return future;
+    }
+    
+    /**
+     * Stops the running directory walks. Files already found are still imported.
+     */
+    public void cancelWalking() {
+        List<Future<?>> walks;
+        synchronized (runningWalks) {
+            walks = new ArrayList<Future<?>>(runningWalks);
+        }
+        for (Future<?> walk: walks) {
+            walk.cancel(true);
+        }
     }
     
+    public void shutdownNow() {
+        walkExecutor.shutdownNow();
+        engine.shutdownNow();
+    }
+    
+    /**
+     * Executes the command on the writer thread of the engine.
+     */
     public <V> Future<V> execute(final Callable<V> command) {
         final FutureTask<V> future = new FutureTask<V>(command) {
             @Override
@@ -56,111 +359,205 @@ public class GeneticSequenceFileLoadingManager extends AbstractBean {
                 removeFuture(this);
             }
         };
-        
-        addFuture(future);
-        executor.execute(future);
+
+        addFuture();
+        engine.execute(future);
         return future;
     }
 
-    private void addFuture(FutureTask<?> future) {
-        runningTasks.add(future);
-        setExecuted(executed + 1);
-        setInProgress(true);
+    private void addFuture() {
+        startRunning();
+        executed.incrementAndGet();
+        progressChanged();
     }
 
-    private void removeFuture(FutureTask<?> future) {
-        runningTasks.remove(future);
-        setInProgress(!runningTasks.isEmpty());
-        
+    private void removeFuture(Future<?> future) {
         if (!future.isCancelled()) try {
             future.get();
-            setSuccess(success + 1);
+            if (future instanceof ImportTask && ((ImportTask) future).isDuplicate()) {
+                skippedFiles.add(((ImportTask) future).getFile());
+            }
+            else if (future instanceof ImportTask && ((ImportTask) future).isQuarantined()) {
+                quarantined.incrementAndGet();
+            }
+            else if (future instanceof ImportTask && ((ImportTask) future).isUnsupported()) {
+                unsupported.incrementAndGet();
+            }
+            else {
+                success.incrementAndGet();
+            }
+            progressChanged();
         }
         catch (InterruptedException ignore) {
             // ignore
         }
         catch (ExecutionException e) {
-            e.printStackTrace();
+            logger.warn("fail to import sequence file", e.getCause());
+            failed.incrementAndGet();
+            progressChanged();
+        }
+
+        finishRunning();
+    }
+    
+    private void startRunning() {
+        if (running.getAndIncrement() == 0) {
+            resetCount();
+            setInProgress(true);
         }
     }
     
+    private void finishRunning() {
+        if (running.decrementAndGet() == 0) {
+            logSkippedFiles();
+            logger.info("import finished. {}", snapshotMetrics());
+            flushProgress();
+            setInProgress(false);
+        }
+    }
+
+    private void logSkippedFiles() {
+        List<File> logged;
+        int count;
+        synchronized (skippedFiles) {
+            count = skippedFiles.size();
+            logged = new ArrayList<File>(skippedFiles.subList(0, Math.min(count, LOGGED_SKIPPED_FILES)));
+        }
+        if (count > LOGGED_SKIPPED_FILES) {
+            logger.info("{} files are skipped as duplicates: {} and {} more",
+                    new Object[] {count, logged, count - LOGGED_SKIPPED_FILES});
+        }
+        else if (count > 0) {
+            logger.info("{} files are skipped as duplicates: {}", count, logged);
+        }
+    }
+
     public boolean isInProgress() {
-        return inProgress;
+        return running.get() > 0;
     }
 
     private void setInProgress(boolean inProgress) {
-        firePropertyChange("inProgress", this.inProgress, this.inProgress = inProgress);
+        firePropertyChange("inProgress", !inProgress, inProgress);
     }
 
     public int getExecuted() {
-        return executed;
+        return executed.get();
     }
 
-    private void setExecuted(int executed) {
-        firePropertyChange("executed", this.executed, this.executed = executed);
+    /**
+     * @return the count of files which are imported, not counting the skipped and the failed.
+     */
+    public int getSuccess() {
+        return success.get();
     }
 
-    public int getSuccess() {
-        return success;
+    /**
+     * @return the count of files which are finished, imported or not.
+     */
+    public int getFinished() {
+        return success.get() + skippedFiles.size() + quarantined.get() + unsupported.get() + failed.get();
     }
 
-    private void setSuccess(int success) {
-        firePropertyChange("success", this.success, this.success = success);
+    /**
+     * @return the count of records which are written into the library by the batches.
+     */
+    public int getStored() {
+        return stored.get();
     }
     
-    private boolean isRunnning() {
-        return !runningTasks.isEmpty();
+    /**
+     * @return the count of files which were not imported because the same content is in the library.
+     */
+    public int getSkipped() {
+        return skippedFiles.size();
     }
-    
-    private void resetCount() {
-        setExecuted(0);
-        setSuccess(0);
+
+    /**
+     * @return the count of files which were not read because they failed before and are not changed.
+     */
+    public int getQuarantined() {
+        return quarantined.get();
     }
-    
-    private void execute(LoadingTask task) {
-        runningTasks.add(task);
-        setInProgress(true);
-        setExecuted(executed + 1);
-        executor.execute(task);
+
+    /**
+     * @return the count of files which were not imported because they are not sequence files.
+     */
+    public int getUnsupported() {
+        return unsupported.get();
     }
-    
-    private void finished(LoadingTask task) {
-        runningTasks.remove(task);
-        
-        if (!task.isCancelled()) {
-            setSuccess(success + 1);
+
+    /**
+     * @return the count of files which failed since the current import started.
+     */
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return the files skipped as duplicates since the current import started.
+     */
+    public List<File> getSkippedFiles() {
+        synchronized (skippedFiles) {
+            return Collections.unmodifiableList(new ArrayList<File>(skippedFiles));
         }
-        setInProgress(isRunnning());
     }
     
-    class LoadingTask extends SwingWorker<GeneticSequence, Void> {
-        private final File file;
-        private final ImportableSequenceSource dest;
-        
-        public LoadingTask(File file, ImportableSequenceSource dest) {
-            this.file = file;
-            this.dest = dest;
+    private void resetCount() {
+        engine.getMetrics().reset();
+        executed.set(0);
+        success.set(0);
+        stored.set(0);
+        skippedFiles.clear();
+        quarantined.set(0);
+        unsupported.set(0);
+        failed.set(0);
+        progressChanged();
+    }
+
+    /**
+     * Schedules the property changes of the counters, unless they are scheduled already.
+     */
+    private void progressChanged() {
+        if (progressScheduled.compareAndSet(false, true)) {
+            progressTimer.restart();
         }
+    }
 
-        @Override
-        protected GeneticSequence doInBackground() throws Exception {
-            return dest.importSequence(file);
+    /**
+     * Fires the current values before the events fired after this call.
+     */
+    private void flushProgress() {
+        if (EventQueue.isDispatchThread()) {
+            fireProgress();
         }
-        
-        @Override
-        protected void done() {
-            finished(this);
-            try {
-                if (!isCancelled()) get();
-            }
-            catch (InterruptedException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
-            catch (ExecutionException e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            }
+        else {
+            EventQueue.invokeLater(progressCommand);
         }
     }
+
+    private void fireProgress() {
+        progressScheduled.set(false);
+
+        int oldExecuted = firedExecuted;
+        firedExecuted = executed.get();
+        firePropertyChange("executed", oldExecuted, firedExecuted);
+        int oldSuccess = firedSuccess;
+        firedSuccess = success.get();
+        firePropertyChange("success", oldSuccess, firedSuccess);
+        int oldStored = firedStored;
+        firedStored = stored.get();
+        firePropertyChange("stored", oldStored, firedStored);
+        int oldSkipped = firedSkipped;
+        firedSkipped = skippedFiles.size();
+        firePropertyChange("skipped", oldSkipped, firedSkipped);
+        int oldQuarantined = firedQuarantined;
+        firedQuarantined = quarantined.get();
+        firePropertyChange("quarantined", oldQuarantined, firedQuarantined);
+        int oldUnsupported = firedUnsupported;
+        firedUnsupported = unsupported.get();
+        firePropertyChange("unsupported", oldUnsupported, firedUnsupported);
+        int oldFailed = firedFailed;
+        firedFailed = failed.get();
+        firePropertyChange("failed", oldFailed, firedFailed);
+    }
 }
@@ -17,78 +17,143 @@ public class GeneticSequenceTableFormat implements AdvancedTableFormat<GeneticSe
             public Long getValue(GeneticSequence e) {
                 return e.id();
             }
+            
+            @Override
+            public Long getValue(ExhibitRecord e) {
+                return e.getId();
+            }
         },
         NAME("name") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.name();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getName();
+            }
         },
         SEQUENCE_LENGTH("sequenceLength", Integer.class) {
             @Override
             public Integer getValue(GeneticSequence e) {
                 return e.length();
             }
+            
+            @Override
+            public Integer getValue(ExhibitRecord e) {
+                return e.getSequenceLength();
+            }
         },
         ACCESSION("accession") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.accession();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getAccession();
+            }
         },
         NAMESPACE("namespace") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.namespace();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getNamespace();
+            }
         },
         VERSION("version", Integer.class) {
             @Override
             public Integer getValue(GeneticSequence e) {
                 return e.version();
             }
+            
+            @Override
+            public Integer getValue(ExhibitRecord e) {
+                return e.getVersion();
+            }
         },
         DEFINITION("definition") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.definition();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getDefinition();
+            }
         },
         SOURCE_TEXT("sourceText") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.source();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getSourceText();
+            }
         },
         ORGANISM("organism") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.organism();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getOrganism();
+            }
         },
         DATE("date", Date.class) {
             @Override
             public Date getValue(GeneticSequence e) {
                 return e.date();
             }
+            
+            @Override
+            public Date getValue(ExhibitRecord e) {
+                return e.getDate();
+            }
         },
         SEQUENCE_UNIT("sequenceUnit", SequenceUnit.class) {
             @Override
             public SequenceUnit getValue(GeneticSequence e) {
                 return e.sequenceUnit();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return unitName(e.getSequenceUnit());
+            }
         },
         MOLECULE_TYPE("moleculeType") {
             @Override
             public String getValue(GeneticSequence e) {
                 return e.moleculeType();
             }
+            
+            @Override
+            public String getValue(ExhibitRecord e) {
+                return e.getMoleculeType();
+            }
         },
         FILE_URI("fileUri") {
             @Override
             public File getValue(GeneticSequence e) {
                 return e.getFile();
             }
+            
+            @Override
+            public File getValue(ExhibitRecord e) {
+                return e.getFile();
+            }
         },
         ;
         
@@ -110,6 +175,16 @@ public class GeneticSequenceTableFormat implements AdvancedTableFormat<GeneticSe
         
         public abstract Object getValue(GeneticSequence e); 
         
+        public abstract Object getValue(ExhibitRecord e);
+        
+        static String unitName(int sequenceUnit) {
+            switch (sequenceUnit) {
+            case ExhibitRecord.SEQUENCE_UNIT_BASE: return "BASE";
+            case ExhibitRecord.SEQUENCE_UNIT_AMINO_ACID: return "AMINO_ACID";
+            default: return null;
+            }
+        }
+        
         @SuppressWarnings("unchecked")
         @Override
         public int compare(GeneticSequence o1, GeneticSequence o2) {
@@ -164,6 +239,13 @@ public class GeneticSequenceTableFormat implements AdvancedTableFormat<GeneticSe
         return getColumn(column).getValue(baseObject);
     }
 
+    /**
+     * @return the value of the column of the record read from the table
+     */
+    public Object getColumnValue(ExhibitRecord record, int column) {
+        return getColumn(column).getValue(record);
+    }
+
     @Override
     public Class<?> getColumnClass(int column) {
         return getColumn(column).getColumnClass();
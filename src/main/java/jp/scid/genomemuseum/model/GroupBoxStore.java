@@ -0,0 +1,134 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Resolves the boxes under group boxes by a recursive query of {@code BOX_TREE_NODE}.
+ *
+ * The boxes of a whole subtree are read by one query instead of a query for each level.
+ * They are kept for each group until a box in the subtree, or the group itself, is changed.
+ */
+public class GroupBoxStore {
+    /** the id is written in the query, because H2 does not bind parameters in recursive queries */
+    final static String SUBTREE_SQL = "WITH RECURSIVE SUBTREE(id) AS ("
+            + "SELECT id FROM BOX_TREE_NODE WHERE id = %d "
+            + "UNION ALL "
+            + "SELECT n.id FROM SUBTREE INNER JOIN BOX_TREE_NODE n ON n.parent_id = SUBTREE.id"
+            + ") SELECT id FROM SUBTREE";
+
+    private final DataSource dataSource;
+
+    // guarded by this
+    private final Map<Long, Set<Long>> subtrees = new HashMap<Long, Set<Long>>();
+    /** incremented when subtrees are forgotten, not to keep the subtrees read before */
+    private int generation = 0;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+    public GroupBoxStore(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the ids of the group and all boxes under it.
+     */
+    public Set<Long> findSubtreeIds(long groupId) throws SQLException {
+        int readGeneration;
+        synchronized (this) {
+            Set<Long> ids = subtrees.get(groupId);
+            if (ids != null) {
+                return ids;
+            }
+            readGeneration = generation;
+        }
+
+        Set<Long> ids = new LinkedHashSet<Long>();
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(String.format(SUBTREE_SQL, groupId));
+                try {
+                    while (result.next()) {
+                        ids.add(result.getLong(1));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        ids = Collections.unmodifiableSet(ids);
+        synchronized (this) {
+            if (readGeneration == generation) {
+                subtrees.put(groupId, ids);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Forgets the subtrees which contain the box, to read them again.
+     * Called when a box is added under the box, or the box is moved or removed.
+     */
+    public void boxChanged(long boxId) {
+        synchronized (this) {
+            generation++;
+            for (Iterator<Set<Long>> it = subtrees.values().iterator(); it.hasNext();) {
+                if (it.next().contains(boxId)) {
+                    it.remove();
+                }
+            }
+        }
+        fireStateChanged();
+    }
+
+    /**
+     * Forgets all subtrees.
+     */
+    public void invalidate() {
+        synchronized (this) {
+            generation++;
+            subtrees.clear();
+        }
+        fireStateChanged();
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener: listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.sql.DataSource;
+
+/**
+ * Durable states of the files queued to import, kept in {@code IMPORT_JOURNAL}.
+ *
+ * State changes are kept in memory and written in one batch by {@link #flush()},
+ * so only the last state of each file since the last flush is written. The files
+ * which were not finished by the last run are found by {@link #findUnfinished()}.
+ */
+public class ImportJournal {
+    public final static int STATE_QUEUED = 0;
+    public final static int STATE_PARSING = 1;
+    public final static int STATE_STORED = 2;
+    public final static int STATE_FAILED = 3;
+    public final static int STATE_CANCELLED = 4;
+
+    final static String MERGE_SQL =
+            "MERGE INTO IMPORT_JOURNAL (file_path, box_id, state) KEY (file_path) VALUES (?, ?, ?)";
+    final static String FIND_UNFINISHED_SQL = "SELECT file_path, box_id, state FROM IMPORT_JOURNAL "
+            + "WHERE state IN (" + STATE_QUEUED + ", " + STATE_PARSING + ") ORDER BY id";
+    final static String CLEAR_SQL = "DELETE FROM IMPORT_JOURNAL";
+
+    private final DataSource dataSource;
+
+    private final Map<String, Entry> pendingEntries = new ConcurrentHashMap<String, Entry>();
+
+    public ImportJournal(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * Records the state of the file, which is written at the next flush.
+     */
+    public void record(File file, Long boxId, int state) {
+        Entry entry = new Entry(file, boxId, state);
+        pendingEntries.put(entry.getFilePath(), entry);
+    }
+
+    /**
+     * @return {@code true} if some states are not written yet.
+     */
+    public boolean hasPendingEntries() {
+        return !pendingEntries.isEmpty();
+    }
+
+    /**
+     * Writes the recorded states in one transaction.
+     *
+     * @return the count of written states
+     */
+    public synchronized int flush() throws SQLException {
+        List<Entry> entries = new ArrayList<Entry>(pendingEntries.size());
+        for (Entry entry: pendingEntries.values()) {
+            // keeps a state recorded after this read for the next flush
+            if (pendingEntries.remove(entry.getFilePath(), entry)) {
+                entries.add(entry);
+            }
+        }
+        if (entries.isEmpty()) {
+            return 0;
+        }
+
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            PreparedStatement statement = connection.prepareStatement(MERGE_SQL);
+            try {
+                for (Entry entry: entries) {
+                    statement.setString(1, entry.getFilePath());
+                    if (entry.getBoxId() == null) {
+                        statement.setNull(2, Types.BIGINT);
+                    }
+                    else {
+                        statement.setLong(2, entry.getBoxId());
+                    }
+                    statement.setInt(3, entry.getState());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                for (Entry entry: entries) {
+                    requeue(entry);
+                }
+                throw e;
+            }
+            finally {
+                statement.close();
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return entries.size();
+    }
+
+    private void requeue(Entry entry) {
+        if (!pendingEntries.containsKey(entry.getFilePath())) {
+            pendingEntries.put(entry.getFilePath(), entry);
+        }
+    }
+
+    /**
+     * @return the files which were queued or being parsed when the last import stopped.
+     */
+    public List<Entry> findUnfinished() throws SQLException {
+        List<Entry> entries = new ArrayList<Entry>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(FIND_UNFINISHED_SQL);
+                try {
+                    while (result.next()) {
+                        long boxId = result.getLong(2);
+                        Long box = result.wasNull() ? null : boxId;
+                        entries.add(new Entry(new File(result.getString(1)), box, result.getInt(3)));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return entries;
+    }
+
+    /**
+     * Deletes all states.
+     */
+    public synchronized void clear() throws SQLException {
+        pendingEntries.clear();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.executeUpdate(CLEAR_SQL);
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    public static class Entry {
+        private final File file;
+        private final Long boxId;
+        private final int state;
+
+        public Entry(File file, Long boxId, int state) {
+            if (file == null) throw new IllegalArgumentException("file must not be null");
+
+            this.file = file;
+            this.boxId = boxId;
+            this.state = state;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        String getFilePath() {
+            return file.getAbsolutePath();
+        }
+
+        public Long getBoxId() {
+            return boxId;
+        }
+
+        public int getState() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return "ImportJournal.Entry: " + file + " " + state;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package jp.scid.genomemuseum.model;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the import engine.
+ *
+ * The engine adds to the counters from the import threads without allocation.
+ * Rates and the estimated remaining time are computed when a {@link Snapshot} is
+ * taken, as exponentially weighted moving averages of the rates between snapshots.
+ */
+public class ImportMetrics {
+    /** count of the slowest files kept */
+    public final static int SLOWEST_FILE_COUNT = 5;
+    /** weight of the latest sample in the moving average of the rates */
+    private final static double RATE_SMOOTHING = 0.3;
+
+    private final AtomicLong filesFinished = new AtomicLong();
+    private final AtomicLong bytesFinished = new AtomicLong();
+    private final AtomicLong recordsStored = new AtomicLong();
+    private final AtomicLong readNanos = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    private final URI[] slowestFiles = new URI[SLOWEST_FILE_COUNT];
+    private final long[] slowestNanos = new long[SLOWEST_FILE_COUNT];
+    /** the shortest time in the slowest files, checked without the lock */
+    private volatile long slowestThreshold = 0;
+
+    private volatile long startNanos = System.nanoTime();
+
+    // sampling state, guarded by this
+    private long lastSampleNanos = startNanos;
+    private long lastSampleFiles = 0;
+    private long lastSampleBytes = 0;
+    private double filesPerSecond = 0;
+    private double bytesPerSecond = 0;
+
+    public ImportMetrics() {
+    }
+
+    /**
+     * Clears the counters and starts measuring.
+     */
+    public synchronized void reset() {
+        filesFinished.set(0);
+        bytesFinished.set(0);
+        recordsStored.set(0);
+        readNanos.set(0);
+        parseNanos.set(0);
+        writeNanos.set(0);
+
+        for (int i = 0; i < SLOWEST_FILE_COUNT; i++) {
+            slowestFiles[i] = null;
+            slowestNanos[i] = 0;
+        }
+        slowestThreshold = 0;
+
+        startNanos = System.nanoTime();
+        lastSampleNanos = startNanos;
+        lastSampleFiles = 0;
+        lastSampleBytes = 0;
+        filesPerSecond = 0;
+        bytesPerSecond = 0;
+    }
+
+    void addRead(long nanos) {
+        readNanos.addAndGet(nanos);
+    }
+
+    void addParse(long nanos) {
+        parseNanos.addAndGet(nanos);
+    }
+
+    void addWrite(long nanos, int records) {
+        writeNanos.addAndGet(nanos);
+        recordsStored.addAndGet(records);
+    }
+
+    /**
+     * @param source the file or the member of an archive
+     * @param nanos the time from the start of parsing to the end of the file, not waiting in the queue
+     * @param bytes the size of the file, or the uncompressed size of the member
+     */
+    void fileFinished(URI source, long nanos, long bytes) {
+        filesFinished.incrementAndGet();
+        bytesFinished.addAndGet(bytes);
+
+        if (nanos > slowestThreshold) {
+            updateSlowest(source, nanos);
+        }
+    }
+
+    private synchronized void updateSlowest(URI source, long nanos) {
+        int min = 0;
+        for (int i = 1; i < SLOWEST_FILE_COUNT; i++) {
+            if (slowestNanos[i] < slowestNanos[min]) {
+                min = i;
+            }
+        }
+        if (nanos <= slowestNanos[min]) {
+            return;
+        }
+        slowestFiles[min] = source;
+        slowestNanos[min] = nanos;
+
+        long threshold = slowestNanos[0];
+        for (int i = 1; i < SLOWEST_FILE_COUNT; i++) {
+            threshold = Math.min(threshold, slowestNanos[i]);
+        }
+        slowestThreshold = threshold;
+    }
+
+    public long getFilesFinished() {
+        return filesFinished.get();
+    }
+
+    public long getBytesFinished() {
+        return bytesFinished.get();
+    }
+
+    public long getRecordsStored() {
+        return recordsStored.get();
+    }
+
+    /**
+     * Samples the counters and updates the moving averages of the rates.
+     *
+     * @param remainingFiles the count of the files not finished, to estimate the remaining time
+     */
+    public synchronized Snapshot snapshot(long remainingFiles) {
+        long now = System.nanoTime();
+        long files = filesFinished.get();
+        long bytes = bytesFinished.get();
+
+        double seconds = (now - lastSampleNanos) / 1e9;
+        if (seconds > 0) {
+            double fileRate = (files - lastSampleFiles) / seconds;
+            double byteRate = (bytes - lastSampleBytes) / seconds;
+            if (lastSampleFiles == 0 && lastSampleBytes == 0) {
+                filesPerSecond = fileRate;
+                bytesPerSecond = byteRate;
+            }
+            else {
+                filesPerSecond += RATE_SMOOTHING * (fileRate - filesPerSecond);
+                bytesPerSecond += RATE_SMOOTHING * (byteRate - bytesPerSecond);
+            }
+            lastSampleNanos = now;
+            lastSampleFiles = files;
+            lastSampleBytes = bytes;
+        }
+
+        long etaSeconds = filesPerSecond > 0 ? Math.round(remainingFiles / filesPerSecond) : -1;
+
+        List<FileTime> slowest = new ArrayList<FileTime>(SLOWEST_FILE_COUNT);
+        for (int i = 0; i < SLOWEST_FILE_COUNT; i++) {
+            if (slowestFiles[i] != null) {
+                slowest.add(new FileTime(slowestFiles[i], TimeUnit.NANOSECONDS.toMillis(slowestNanos[i])));
+            }
+        }
+        Collections.sort(slowest);
+
+        return new Snapshot(TimeUnit.NANOSECONDS.toMillis(now - startNanos), files, bytes, recordsStored.get(),
+                filesPerSecond, bytesPerSecond, etaSeconds,
+                TimeUnit.NANOSECONDS.toMillis(readNanos.get()), TimeUnit.NANOSECONDS.toMillis(parseNanos.get()),
+                TimeUnit.NANOSECONDS.toMillis(writeNanos.get()), slowest);
+    }
+
+    /**
+     * Values of the metrics at a time.
+     */
+    public static class Snapshot {
+        private final long elapsedMillis;
+        private final long files;
+        private final long bytes;
+        private final long records;
+        private final double filesPerSecond;
+        private final double bytesPerSecond;
+        private final long etaSeconds;
+        private final long readMillis;
+        private final long parseMillis;
+        private final long writeMillis;
+        private final List<FileTime> slowestFiles;
+
+        Snapshot(long elapsedMillis, long files, long bytes, long records, double filesPerSecond,
+                double bytesPerSecond, long etaSeconds, long readMillis, long parseMillis, long writeMillis,
+                List<FileTime> slowestFiles) {
+            this.elapsedMillis = elapsedMillis;
+            this.files = files;
+            this.bytes = bytes;
+            this.records = records;
+            this.filesPerSecond = filesPerSecond;
+            this.bytesPerSecond = bytesPerSecond;
+            this.etaSeconds = etaSeconds;
+            this.readMillis = readMillis;
+            this.parseMillis = parseMillis;
+            this.writeMillis = writeMillis;
+            this.slowestFiles = Collections.unmodifiableList(slowestFiles);
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getRecords() {
+            return records;
+        }
+
+        public double getFilesPerSecond() {
+            return filesPerSecond;
+        }
+
+        public double getMegabytesPerSecond() {
+            return bytesPerSecond / (1024 * 1024);
+        }
+
+        /**
+         * @return estimated seconds to finish, or {@code -1} if not estimated yet.
+         */
+        public long getEtaSeconds() {
+            return etaSeconds;
+        }
+
+        /**
+         * @return total milliseconds of the parsing threads waiting for the file content.
+         */
+        public long getReadMillis() {
+            return readMillis;
+        }
+
+        /**
+         * @return total milliseconds of the parsing threads parsing, not including reading.
+         */
+        public long getParseMillis() {
+            return parseMillis;
+        }
+
+        /**
+         * @return total milliseconds of the writer thread writing records.
+         */
+        public long getWriteMillis() {
+            return writeMillis;
+        }
+
+        /**
+         * @return the slowest files, slowest first
+         */
+        public List<FileTime> getSlowestFiles() {
+            return slowestFiles;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("ImportMetrics: %d files, %d records in %d ms, %.1f files/s, %.2f MB/s, "
+                    + "eta %d s, read %d ms, parse %d ms, write %d ms, slowest %s",
+                    files, records, elapsedMillis, filesPerSecond, getMegabytesPerSecond(),
+                    etaSeconds, readMillis, parseMillis, writeMillis, slowestFiles);
+        }
+    }
+
+    /**
+     * Time taken to import a file.
+     */
+    public static class FileTime implements Comparable<FileTime> {
+        private final URI source;
+        private final long millis;
+
+        FileTime(URI source, long millis) {
+            this.source = source;
+            this.millis = millis;
+        }
+
+        /**
+         * @return the uri of the file, or the member of an archive
+         */
+        public URI getSource() {
+            return source;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        @Override
+        public int compareTo(FileTime o) {
+            return millis > o.millis ? -1 : millis < o.millis ? 1 : 0;
+        }
+
+        @Override
+        public String toString() {
+            String name = source.getFragment() != null ? source.getFragment() : source.getPath();
+            return name.substring(name.lastIndexOf('/') + 1) + " " + millis + " ms";
+        }
+    }
+}
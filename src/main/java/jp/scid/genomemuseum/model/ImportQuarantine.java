@@ -0,0 +1,326 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+/**
+ * Files which failed to be parsed, kept in {@code IMPORT_FAILURE}.
+ *
+ * A quarantined file is not read again by later imports while its content is
+ * the same. The size and the modified time are compared first, and the digest of
+ * the whole content is compared only when the size is the same but the modified
+ * time is not. A file is retried at most {@link #MAX_ATTEMPTS} times.
+ */
+public class ImportQuarantine {
+    public final static int MAX_ATTEMPTS = 3;
+
+    final static String MERGE_SQL = "MERGE INTO IMPORT_FAILURE "
+            + "(file_uri, file_size, last_modified, digest, box_id, exception_class, message, line_number, "
+            + "attempts, failed_at) KEY (file_uri) VALUES (?, ?, ?, ?, ?, ?, ?, ?, "
+            + "COALESCE((SELECT attempts FROM IMPORT_FAILURE WHERE file_uri = ?), 0) + 1, ?)";
+    final static String FIND_SQL =
+            "SELECT file_size, last_modified, digest FROM IMPORT_FAILURE WHERE file_uri = ?";
+    final static String FIND_RETRYABLE_SQL = "SELECT file_uri, file_size, last_modified, digest, box_id, "
+            + "exception_class, message, line_number, attempts, failed_at FROM IMPORT_FAILURE "
+            + "WHERE attempts < ? ORDER BY id";
+    final static String DELETE_SQL = "DELETE FROM IMPORT_FAILURE WHERE file_uri = ?";
+    final static String COUNT_SQL = "SELECT COUNT(*) FROM IMPORT_FAILURE";
+
+    private final DataSource dataSource;
+
+    public ImportQuarantine(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return {@code true} if the file failed before and its content is not changed.
+     */
+    public boolean isQuarantined(FileDigest source) throws SQLException {
+        long fileSize;
+        long lastModified;
+        String digest;
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_SQL);
+            try {
+                statement.setString(1, source.getFileUri().toString());
+                ResultSet result = statement.executeQuery();
+                try {
+                    if (!result.next()) {
+                        return false;
+                    }
+                    fileSize = result.getLong(1);
+                    lastModified = result.getLong(2);
+                    digest = result.getString(3);
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        if (fileSize != source.getFileSize()) {
+            return false;
+        }
+        if (lastModified == source.getLastModified()) {
+            return true;
+        }
+        return digest != null && digest.equals(contentDigest(source.getFileUri()));
+    }
+
+    /**
+     * Records the failure of the file, counting the attempts.
+     */
+    public void record(Failure failure) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(MERGE_SQL);
+            try {
+                String uri = failure.getFileUri().toString();
+                statement.setString(1, uri);
+                statement.setLong(2, failure.getFileSize());
+                statement.setLong(3, failure.getLastModified());
+                statement.setString(4, failure.getDigest());
+                if (failure.getBoxId() == null) {
+                    statement.setNull(5, Types.BIGINT);
+                }
+                else {
+                    statement.setLong(5, failure.getBoxId());
+                }
+                statement.setString(6, failure.getExceptionClass());
+                statement.setString(7, failure.getMessage());
+                statement.setInt(8, failure.getLineNumber());
+                statement.setString(9, uri);
+                statement.setTimestamp(10, new Timestamp(System.currentTimeMillis()));
+                statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Removes the file from the quarantine, because it is imported.
+     */
+    public void remove(URI fileUri) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(DELETE_SQL);
+            try {
+                statement.setString(1, fileUri.toString());
+                statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the failures which are tried less than {@link #MAX_ATTEMPTS} times.
+     */
+    public List<Failure> findRetryable() throws SQLException {
+        List<Failure> failures = new ArrayList<Failure>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(FIND_RETRYABLE_SQL);
+            try {
+                statement.setInt(1, MAX_ATTEMPTS);
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        failures.add(toFailure(result));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return failures;
+    }
+
+    private static Failure toFailure(ResultSet result) throws SQLException {
+        URI fileUri;
+        try {
+            fileUri = new URI(result.getString(1));
+        }
+        catch (URISyntaxException e) {
+            throw new SQLException(e);
+        }
+        long boxId = result.getLong(5);
+        Long box = result.wasNull() ? null : boxId;
+
+        Failure failure = new Failure(new FileDigest(fileUri, result.getLong(2), result.getLong(3)), box,
+                result.getString(6), result.getString(7), result.getInt(8));
+        failure.setDigest(result.getString(4));
+        failure.attempts = result.getInt(9);
+        failure.failedAt = result.getTimestamp(10);
+        return failure;
+    }
+
+    /**
+     * @return the count of quarantined files
+     */
+    public int count() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                ResultSet result = statement.executeQuery(COUNT_SQL);
+                try {
+                    return result.next() ? result.getInt(1) : 0;
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return hex string of the hash of the whole content, or {@code null} if it cannot be read.
+     */
+    static String contentDigest(URI fileUri) {
+        MessageDigest digest = FileDigest.newMessageDigest();
+        byte[] buffer = new byte[65536];
+        try {
+            InputStream source = SequenceFileArchives.open(fileUri);
+            try {
+                int read;
+                while ((read = source.read(buffer)) >= 0) {
+                    digest.update(buffer, 0, read);
+                }
+            }
+            finally {
+                source.close();
+            }
+        }
+        catch (IOException e) {
+            return null;
+        }
+        return FileDigest.toHexString(digest.digest());
+    }
+
+    /**
+     * A file which failed to be parsed.
+     */
+    public static class Failure {
+        private final FileDigest source;
+        private final Long boxId;
+        private final String exceptionClass;
+        private final String message;
+        private final int lineNumber;
+        private int attempts = 1;
+        private Timestamp failedAt = null;
+
+        public Failure(FileDigest source, Long boxId, String exceptionClass, String message, int lineNumber) {
+            if (source == null) throw new IllegalArgumentException("source must not be null");
+            if (exceptionClass == null) throw new IllegalArgumentException("exceptionClass must not be null");
+
+            this.source = source;
+            this.boxId = boxId;
+            this.exceptionClass = exceptionClass;
+            this.message = message;
+            this.lineNumber = lineNumber;
+        }
+
+        public URI getFileUri() {
+            return source.getFileUri();
+        }
+
+        public long getFileSize() {
+            return source.getFileSize();
+        }
+
+        public long getLastModified() {
+            return source.getLastModified();
+        }
+
+        /**
+         * @return hex string of the hash of the whole content, or {@code null} if it was not read.
+         */
+        public String getDigest() {
+            return source.getDigest();
+        }
+
+        void setDigest(String digest) {
+            source.setDigest(digest);
+        }
+
+        public Long getBoxId() {
+            return boxId;
+        }
+
+        public String getExceptionClass() {
+            return exceptionClass;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * @return the line where parsing failed, or {@code 0} if it is unknown.
+         */
+        public int getLineNumber() {
+            return lineNumber;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        public Timestamp getFailedAt() {
+            return failedAt;
+        }
+
+        @Override
+        public String toString() {
+            return "ImportQuarantine.Failure: " + source.getFileUri() + " " + exceptionClass + " at line "
+                    + lineNumber;
+        }
+    }
+}
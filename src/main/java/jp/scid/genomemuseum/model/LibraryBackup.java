@@ -0,0 +1,259 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Takes a snapshot of the library while it is used, into a directory for each snapshot.
+ *
+ * The database is written by {@code BACKUP TO}, which H2 runs on the open database.
+ * The files directory is copied incrementally; a file which has the same length and
+ * modified time as in the last snapshot is hard linked to it instead of copied,
+ * so only the files imported after the last snapshot take time.
+ * Deletions of the library files are held while the snapshot is taken, so that every file
+ * which the database snapshot refers exists in the copy. Imports keep running.
+ * A snapshot is taken into a directory with {@link #PARTIAL_SUFFIX}, which is renamed when
+ * the snapshot completes and deleted when it fails.
+ */
+public class LibraryBackup {
+    private final static Logger logger = LoggerFactory.getLogger(LibraryBackup.class);
+
+    final static String BACKUP_SQL = "BACKUP TO '%s'";
+    final static String DATABASE_FILE_NAME = "library.zip";
+    final static String FILES_DIRECTORY_NAME = "Files";
+    final static String SNAPSHOT_NAME_PATTERN = "yyyyMMdd-HHmmss";
+    /** suffix of the snapshot being taken, which is not used as the last snapshot */
+    final static String PARTIAL_SUFFIX = ".partial";
+
+    private final DataSource dataSource;
+    private final LibraryFileDeleter fileDeleter;
+
+    public LibraryBackup(DataSource dataSource, LibraryFileDeleter fileDeleter) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        if (fileDeleter == null) throw new IllegalArgumentException("fileDeleter must not be null");
+
+        this.dataSource = dataSource;
+        this.fileDeleter = fileDeleter;
+    }
+
+    /**
+     * Takes a snapshot into a new directory in the backup directory.
+     *
+     * @return the result of the snapshot
+     */
+    public Snapshot backup(File backupDirectory) throws SQLException, IOException {
+        if (backupDirectory == null) throw new IllegalArgumentException("backupDirectory must not be null");
+
+        File filesDirectory = fileDeleter.getFilesDirectory();
+        if (backupDirectory.getAbsoluteFile().equals(filesDirectory) || fileDeleter.isStored(backupDirectory.toURI())) {
+            throw new IOException("cannot back up into the files directory of the library");
+        }
+
+        String name = new SimpleDateFormat(SNAPSHOT_NAME_PATTERN).format(new Date());
+        File lastSnapshot = findLastSnapshot(backupDirectory);
+        File partial = new File(backupDirectory, name + PARTIAL_SUFFIX);
+        if (!partial.mkdirs()) {
+            throw new IOException("cannot make the directory " + partial);
+        }
+
+        long start = System.currentTimeMillis();
+        Snapshot snapshot = new Snapshot(new File(backupDirectory, name));
+
+        boolean completed = false;
+        fileDeleter.holdDeletions();
+        try {
+            backupDatabase(new File(partial, DATABASE_FILE_NAME));
+            File lastFiles = lastSnapshot == null ? null : new File(lastSnapshot, FILES_DIRECTORY_NAME);
+            copyFiles(filesDirectory, new File(partial, FILES_DIRECTORY_NAME), lastFiles, snapshot);
+
+            if (!partial.renameTo(snapshot.getDirectory())) {
+                throw new IOException("cannot rename the snapshot to " + snapshot.getDirectory());
+            }
+            completed = true;
+        }
+        finally {
+            fileDeleter.resumeDeletions();
+            if (!completed) {
+                deletePartial(partial);
+            }
+        }
+        logger.info("snapshot {} is taken in {} ms: {}", new Object[] {
+                snapshot.getDirectory(), System.currentTimeMillis() - start, snapshot });
+        return snapshot;
+    }
+
+    private void backupDatabase(File destination) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(String.format(BACKUP_SQL, destination.getAbsolutePath().replace("'", "''")));
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Deletes the snapshot which failed. The files linked to the last snapshot are kept there.
+     */
+    static void deletePartial(File partial) {
+        try {
+            Files.walkFileTree(partial.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+        catch (IOException e) {
+            // not used as the last snapshot because of the suffix
+            logger.warn("cannot delete the failed snapshot " + partial, e);
+        }
+    }
+
+    /**
+     * Copies the files in the source into the destination.
+     *
+     * @param last the directory of the last snapshot, or {@code null}
+     */
+    static void copyFiles(File source, File destination, File last, Snapshot snapshot) throws IOException {
+        File[] children = source.listFiles();
+        if (children == null) {
+            return;
+        }
+        if (!destination.isDirectory() && !destination.mkdirs()) {
+            throw new IOException("cannot make the directory " + destination);
+        }
+
+        for (File child: children) {
+            File dest = new File(destination, child.getName());
+            File lastFile = last == null ? null : new File(last, child.getName());
+
+            if (child.isDirectory()) {
+                copyFiles(child, dest, lastFile, snapshot);
+            }
+            else if (lastFile != null && isUnchanged(child, lastFile) && link(dest, lastFile)) {
+                snapshot.linkedCount++;
+            }
+            else if (child.isFile()) {
+                Files.copy(child.toPath(), dest.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                snapshot.copiedCount++;
+                snapshot.copiedLength += child.length();
+            }
+        }
+    }
+
+    static boolean isUnchanged(File file, File lastFile) {
+        return lastFile.isFile() && lastFile.length() == file.length()
+                && lastFile.lastModified() == file.lastModified();
+    }
+
+    /**
+     * @return {@code false} if the file system does not support hard links.
+     */
+    private static boolean link(File link, File existing) {
+        try {
+            Files.createLink(link.toPath(), existing.toPath());
+            return true;
+        }
+        catch (UnsupportedOperationException e) {
+            return false;
+        }
+        catch (IOException e) {
+            logger.debug("cannot link {}, copied instead", existing, e);
+            return false;
+        }
+    }
+
+    /**
+     * @return the newest snapshot completed in the directory, or {@code null}.
+     */
+    static File findLastSnapshot(File backupDirectory) {
+        File[] children = backupDirectory.listFiles();
+        if (children == null) {
+            return null;
+        }
+        Arrays.sort(children);
+        for (int i = children.length - 1; i >= 0; i--) {
+            File child = children[i];
+            if (child.isDirectory() && !child.getName().endsWith(PARTIAL_SUFFIX)
+                    && new File(child, DATABASE_FILE_NAME).isFile()) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The directory and the counts of the files of a snapshot.
+     */
+    public static class Snapshot {
+        private final File directory;
+        int linkedCount = 0;
+        int copiedCount = 0;
+        long copiedLength = 0;
+
+        Snapshot(File directory) {
+            this.directory = directory;
+        }
+
+        public File getDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the count of the files linked to the last snapshot
+         */
+        public int getLinkedCount() {
+            return linkedCount;
+        }
+
+        public int getCopiedCount() {
+            return copiedCount;
+        }
+
+        /**
+         * @return the total bytes of the copied files
+         */
+        public long getCopiedLength() {
+            return copiedLength;
+        }
+
+        @Override
+        public String toString() {
+            return copiedCount + " files copied (" + copiedLength + " bytes), " + linkedCount + " files linked";
+        }
+    }
+}
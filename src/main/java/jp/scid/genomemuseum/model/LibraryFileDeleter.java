@@ -0,0 +1,140 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes the files stored in the files directory of the library on a background thread,
+ * so that removing many exhibits does not wait for the file system.
+ *
+ * Files outside of the directory, which are imported from their own places, are never deleted.
+ */
+public class LibraryFileDeleter {
+    private final static Logger logger = LoggerFactory.getLogger(LibraryFileDeleter.class);
+
+    private final File filesDirectory;
+    private final ExecutorService executor;
+    /** held while deleting, and while a snapshot of the files is taken */
+    private final Lock deletionLock = new ReentrantLock();
+
+    public LibraryFileDeleter(File filesDirectory) {
+        if (filesDirectory == null) throw new IllegalArgumentException("filesDirectory must not be null");
+
+        this.filesDirectory = filesDirectory.getAbsoluteFile();
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    /**
+     * @return {@code true} if the file, or the archive of the member, is in the files directory.
+     */
+    public boolean isStored(URI fileUri) {
+        File file = toFile(fileUri);
+        if (file == null) {
+            return false;
+        }
+        for (File parent = file.getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(filesDirectory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean containsStored(Collection<URI> fileUris) {
+        for (URI fileUri: fileUris) {
+            if (isStored(fileUri)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Deletes the stored files of the uris in background.
+     *
+     * @return the count of the deleted files
+     */
+    public Future<Integer> deleteLater(Collection<URI> fileUris) {
+        final List<File> files = new ArrayList<File>();
+        for (URI fileUri: fileUris) {
+            if (isStored(fileUri)) {
+                files.add(toFile(fileUri));
+            }
+        }
+
+        return executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                int count = 0;
+                deletionLock.lock();
+                try {
+                    for (File file: files) {
+                        if (file.delete()) {
+                            count++;
+                        }
+                        else if (file.exists()) {
+                            logger.warn("fail to delete the library file {}", file);
+                        }
+                    }
+                }
+                finally {
+                    deletionLock.unlock();
+                }
+                logger.debug("{} library files are deleted", count);
+                return count;
+            }
+        });
+    }
+
+    /**
+     * Makes the files submitted to be deleted wait until {@link #resumeDeletions()}.
+     * Files are only added to the files directory while deletions are held.
+     */
+    public void holdDeletions() {
+        deletionLock.lock();
+    }
+
+    public void resumeDeletions() {
+        deletionLock.unlock();
+    }
+
+    public File getFilesDirectory() {
+        return filesDirectory;
+    }
+
+    /**
+     * Deletes the files submitted before, and stops the thread.
+     */
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the file, or the archive of the member whose uri has a fragment, or {@code null}.
+     */
+    private static File toFile(URI fileUri) {
+        if (!"file".equals(fileUri.getScheme()) || fileUri.getPath() == null) {
+            return null;
+        }
+        return new File(fileUri.getPath()).getAbsoluteFile();
+    }
+}
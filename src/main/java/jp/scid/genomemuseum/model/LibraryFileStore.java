@@ -0,0 +1,77 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Copies imported files into the files directory of the library, so that the exhibits
+ * do not refer to files which the user can move or delete.
+ *
+ * Files are copied into a directory for each month of the import, and a number is added
+ * to the name if the name is used. The modified time is kept, so that a backup can tell
+ * the files not changed. A file which is in the files directory already is not copied.
+ */
+public class LibraryFileStore {
+    final static String DIRECTORY_NAME_PATTERN = "yyyy-MM";
+
+    private final File filesDirectory;
+
+    public LibraryFileStore(File filesDirectory) {
+        if (filesDirectory == null) throw new IllegalArgumentException("filesDirectory must not be null");
+
+        this.filesDirectory = filesDirectory.getAbsoluteFile();
+    }
+
+    public File getFilesDirectory() {
+        return filesDirectory;
+    }
+
+    /**
+     * @return {@code true} if the file is in the files directory.
+     */
+    public boolean isStored(File file) {
+        for (File parent = file.getAbsoluteFile().getParentFile(); parent != null; parent = parent.getParentFile()) {
+            if (parent.equals(filesDirectory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Copies the file into the files directory.
+     *
+     * @return the copy, or the file itself if it is in the files directory.
+     */
+    public File store(File file) throws IOException {
+        if (isStored(file)) {
+            return file;
+        }
+
+        File directory = new File(filesDirectory, new SimpleDateFormat(DIRECTORY_NAME_PATTERN).format(new Date()));
+        if (!directory.isDirectory() && !directory.mkdirs() && !directory.isDirectory()) {
+            throw new IOException("cannot make the directory " + directory);
+        }
+
+        String name = file.getName();
+        int dot = name.indexOf('.', 1);
+        String base = dot < 0 ? name : name.substring(0, dot);
+        String extension = dot < 0 ? "" : name.substring(dot);
+
+        for (int number = 1;; number++) {
+            File copy = new File(directory, number == 1 ? name : base + " " + number + extension);
+            try {
+                Files.copy(file.toPath(), copy.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+                return copy;
+            }
+            catch (FileAlreadyExistsException e) {
+                // tries the next number
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+
+/**
+ * Data source which lends the connections of a {@link JdbcConnectionPool} and measures them.
+ *
+ * Every unit of work borrows a connection and closes it when done, so the reads of the
+ * display and the writes of the imports use different connections. The database should be
+ * opened with {@link #LOCK_SETTINGS} for the reads to wait the table locks of the writes.
+ */
+public class MonitoredConnectionPool implements DataSource {
+    /**
+     * Settings of the database url. Locks are taken per table and read locks are released after
+     * each statement, and a read waits the batch being written until the timeout in milliseconds.
+     */
+    public final static String LOCK_SETTINGS = ";LOCK_MODE=3;LOCK_TIMEOUT=10000";
+
+    private final JdbcConnectionPool pool;
+
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger peakActive = new AtomicInteger();
+
+    public MonitoredConnectionPool(JdbcConnectionPool pool) {
+        if (pool == null) throw new IllegalArgumentException("pool must not be null");
+        this.pool = pool;
+    }
+
+    public JdbcConnectionPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Borrows a connection, waiting for one to be returned if all are lent.
+     */
+    @Override
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = pool.getConnection();
+        recordBorrow(System.nanoTime() - start);
+        return connection;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        long start = System.nanoTime();
+        Connection connection = pool.getConnection(username, password);
+        recordBorrow(System.nanoTime() - start);
+        return connection;
+    }
+
+    private void recordBorrow(long waitNanos) {
+        borrowCount.incrementAndGet();
+        totalWaitNanos.addAndGet(waitNanos);
+
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos)) {
+            // retry
+        }
+        int active = pool.getActiveConnections();
+        int peak;
+        while (active > (peak = peakActive.get()) && !peakActive.compareAndSet(peak, active)) {
+            // retry
+        }
+    }
+
+    /**
+     * Closes the connections of the pool. Connections lent are closed when they are returned.
+     */
+    public void dispose() {
+        pool.dispose();
+    }
+
+    public Snapshot snapshot() {
+        int active = pool.getActiveConnections();
+        int max = pool.getMaxConnections();
+        // the pool keeps the returned connections up to the maximum
+        int idle = Math.max(Math.min(peakActive.get(), max) - active, 0);
+        return new Snapshot(active, idle, max, borrowCount.get(), totalWaitNanos.get(), maxWaitNanos.get());
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return pool.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        pool.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        pool.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return pool.getLoginTimeout();
+    }
+
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException("getParentLogger");
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        if (iface.isInstance(pool)) {
+            return iface.cast(pool);
+        }
+        throw new SQLException("not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || iface.isInstance(pool);
+    }
+
+    /**
+     * Counts of the pool at a time.
+     */
+    public static class Snapshot {
+        private final int active;
+        private final int idle;
+        private final int maxConnections;
+        private final long borrowCount;
+        private final long totalWaitNanos;
+        private final long maxWaitNanos;
+
+        Snapshot(int active, int idle, int maxConnections, long borrowCount, long totalWaitNanos,
+                long maxWaitNanos) {
+            this.active = active;
+            this.idle = idle;
+            this.maxConnections = maxConnections;
+            this.borrowCount = borrowCount;
+            this.totalWaitNanos = totalWaitNanos;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        /** @return the count of the connections lent */
+        public int getActive() {
+            return active;
+        }
+
+        /** @return the count of the connections kept open in the pool */
+        public int getIdle() {
+            return idle;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public long getBorrowCount() {
+            return borrowCount;
+        }
+
+        public long getTotalWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos);
+        }
+
+        public long getMaxWaitMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+        }
+
+        public double getAverageWaitMillis() {
+            return borrowCount == 0 ? 0 : totalWaitNanos / 1e6 / borrowCount;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d active, %d idle of %d, %d borrowed, wait %.2f ms on average, %d ms at most",
+                    active, idle, maxConnections, borrowCount, getAverageWaitMillis(), getMaxWaitMillis());
+        }
+    }
+}
@@ -0,0 +1,311 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Upgrades the schema of a library by numbered migrations, recording the applied version
+ * in {@code SCHEMA_VERSION}.
+ *
+ * Version 1 is the schema of {@code sql/schema.sql}, which is made by the library itself
+ * and is only created here if it does not exist. Later migrations are the scripts in
+ * {@code sql/migration}, and steps which need to look at the database first.
+ * H2 commits each DDL statement, so every migration can be applied again to a database
+ * which a failed upgrade left half done.
+ */
+public class SchemaMigrator {
+    private final static Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    final static String VERSION_TABLE_SQL = "CREATE TABLE IF NOT EXISTS SCHEMA_VERSION "
+            + "(version integer NOT NULL, description varchar NOT NULL, applied_at timestamp NOT NULL, "
+            + "PRIMARY KEY (version))";
+    final static String CURRENT_VERSION_SQL = "SELECT MAX(version) FROM SCHEMA_VERSION";
+    final static String INSERT_VERSION_SQL =
+            "INSERT INTO SCHEMA_VERSION (version, description, applied_at) VALUES (?, ?, ?)";
+    final static String TABLE_EXISTS_SQL =
+            "SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = ?";
+    final static String COLUMN_EXISTS_SQL = "SELECT COUNT(*) FROM INFORMATION_SCHEMA.COLUMNS "
+            + "WHERE TABLE_NAME = ? AND COLUMN_NAME = ?";
+
+    private final DataSource dataSource;
+    private final List<Migration> migrations;
+
+    public SchemaMigrator(DataSource dataSource) {
+        this(dataSource, defaultMigrations());
+    }
+
+    SchemaMigrator(DataSource dataSource, List<Migration> migrations) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        if (migrations == null) throw new IllegalArgumentException("migrations must not be null");
+        for (int i = 1; i < migrations.size(); i++) {
+            if (migrations.get(i - 1).getVersion() >= migrations.get(i).getVersion()) {
+                throw new IllegalArgumentException("migrations must be in ascending order of the version");
+            }
+        }
+
+        this.dataSource = dataSource;
+        this.migrations = Collections.unmodifiableList(new ArrayList<Migration>(migrations));
+    }
+
+    static List<Migration> defaultMigrations() {
+        Migration libraryTables = new Migration(1, "library tables") {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                // created by the sequence library when it opens the database
+                if (tableExists(connection, "MUSEUM_EXHIBIT")) {
+                    return;
+                }
+                SqlScript.fromResource(SchemaMigrator.class, "sql/schema.sql").execute(connection);
+                SqlScript.fromResource(SchemaMigrator.class, "sql/sequences.sql").execute(connection);
+            }
+        };
+
+        Migration importTables = new Migration(2, "import tables") {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                addColumnIfAbsent(connection, "MUSEUM_EXHIBIT", "FILE_OFFSET", "bigint DEFAULT 0 NOT NULL");
+                addColumnIfAbsent(connection, "MUSEUM_EXHIBIT", "FILE_LENGTH", "bigint DEFAULT 0 NOT NULL");
+                SqlScript.fromResource(SchemaMigrator.class, "sql/migration/002_import_tables.sql")
+                        .execute(connection);
+                addColumnIfAbsent(connection, "SEQUENCE_FILE_DIGEST", "MISSING", "boolean DEFAULT FALSE NOT NULL");
+            }
+        };
+
+        Migration fullText = new Migration(4, "full-text index of exhibits") {
+            @Override
+            void apply(Connection connection) throws SQLException {
+                ExhibitSearchIndex.createIndex(connection);
+            }
+        };
+
+        Migration tableViewProperties = new Migration(7, "table view properties of boxes") {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                addColumnIfAbsent(connection, "TABLE_VIEW_PROPERTY", "BOX_ID", "bigint");
+                SqlScript.fromResource(SchemaMigrator.class, "sql/migration/007_table_view_property.sql")
+                        .execute(connection);
+            }
+        };
+
+        // the boxes refer to the properties by table_property_id instead of box_id
+        Migration tableViewPropertyLink = new Migration(8, "table view properties referred by boxes") {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                if (!columnExists(connection, "TABLE_VIEW_PROPERTY", "BOX_ID")) {
+                    return;
+                }
+                SqlScript.fromResource(SchemaMigrator.class, "sql/migration/008_table_view_property_link.sql")
+                        .execute(connection);
+            }
+        };
+
+        Migration contentDigests = new Migration(9, "digests of whole files") {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                // hex SHA-1 of the whole file, which is NULL for the members of archives
+                addColumnIfAbsent(connection, "SEQUENCE_FILE_DIGEST", "CONTENT_DIGEST", "varchar");
+                SqlScript.fromResource(SchemaMigrator.class, "sql/migration/009_file_content_digest.sql")
+                        .execute(connection);
+            }
+        };
+
+        return Arrays.asList(libraryTables, importTables,
+                script(3, "indexes of the library", "sql/migration/003_indexes.sql"), fullText,
+                script(5, "conditions of smart boxes", "sql/migration/005_smart_box.sql"),
+                script(6, "index of the files of exhibits", "sql/migration/006_exhibit_file_uri.sql"),
+                tableViewProperties, tableViewPropertyLink, contentDigests);
+    }
+
+    /**
+     * @return the migration which executes the script resource
+     */
+    static Migration script(int version, String description, final String resourceName) {
+        return new Migration(version, description) {
+            @Override
+            void apply(Connection connection) throws SQLException, IOException {
+                SqlScript.fromResource(SchemaMigrator.class, resourceName).execute(connection);
+            }
+        };
+    }
+
+    /**
+     * @return the version which the migrations upgrade to
+     */
+    public int getLatestVersion() {
+        return migrations.isEmpty() ? 0 : migrations.get(migrations.size() - 1).getVersion();
+    }
+
+    /**
+     * @return the version of the database, or {@code 0} if no migration is applied.
+     */
+    public int getCurrentVersion() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            if (!tableExists(connection, "SCHEMA_VERSION")) {
+                return 0;
+            }
+            return currentVersion(connection);
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * Applies the migrations newer than the version of the database.
+     *
+     * @return the count of the applied migrations
+     */
+    public int migrate() throws SQLException, IOException {
+        Connection connection = dataSource.getConnection();
+        try {
+            Statement statement = connection.createStatement();
+            try {
+                statement.execute(VERSION_TABLE_SQL);
+            }
+            finally {
+                statement.close();
+            }
+
+            int current = currentVersion(connection);
+            int count = 0;
+            for (Migration migration: migrations) {
+                if (migration.getVersion() <= current) {
+                    continue;
+                }
+                logger.info("migrate schema to version {}: {}", migration.getVersion(), migration.getDescription());
+                migration.apply(connection);
+                recordVersion(connection, migration);
+                count++;
+            }
+            return count;
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static int currentVersion(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            ResultSet result = statement.executeQuery(CURRENT_VERSION_SQL);
+            try {
+                return result.next() ? result.getInt(1) : 0;
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static void recordVersion(Connection connection, Migration migration) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(INSERT_VERSION_SQL);
+        try {
+            statement.setInt(1, migration.getVersion());
+            statement.setString(2, migration.getDescription());
+            statement.setTimestamp(3, new Timestamp(System.currentTimeMillis()));
+            statement.executeUpdate();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    static boolean tableExists(Connection connection, String table) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(TABLE_EXISTS_SQL);
+        try {
+            query.setString(1, table);
+            ResultSet result = query.executeQuery();
+            try {
+                return result.next() && result.getInt(1) > 0;
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        PreparedStatement query = connection.prepareStatement(COLUMN_EXISTS_SQL);
+        try {
+            query.setString(1, table);
+            query.setString(2, column);
+            ResultSet result = query.executeQuery();
+            try {
+                return result.next() && result.getInt(1) > 0;
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            query.close();
+        }
+    }
+
+    static void addColumnIfAbsent(Connection connection, String table, String column, String definition)
+            throws SQLException {
+        if (columnExists(connection, table, column)) {
+            return;
+        }
+
+        Statement statement = connection.createStatement();
+        try {
+            statement.execute("ALTER TABLE " + table + " ADD COLUMN " + column + " " + definition);
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * A change of the schema to a version.
+     */
+    static abstract class Migration {
+        private final int version;
+        private final String description;
+
+        Migration(int version, String description) {
+            if (version < 1) throw new IllegalArgumentException("version must be positive");
+            if (description == null) throw new IllegalArgumentException("description must not be null");
+
+            this.version = version;
+            this.description = description;
+        }
+
+        public int getVersion() {
+            return version;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        abstract void apply(Connection connection) throws SQLException, IOException;
+
+        @Override
+        public String toString() {
+            return "Migration " + version + ": " + description;
+        }
+    }
+}
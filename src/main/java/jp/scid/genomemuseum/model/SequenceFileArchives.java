@@ -0,0 +1,176 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+
+/**
+ * Reads sequence files in compressed files and archives without extracting them to the disk.
+ *
+ * The compression of a file is decided by its magic number with {@link SequenceFileSniffer}.
+ * Gzip and bzip2 files are decompressed while reading. Zip and tar files are archives,
+ * whose members are read one by one. A compressed file is an archive if its extension
+ * is {@code .tar.gz}, {@code .tgz}, {@code .tar.bz2} or {@code .tbz2}.
+ *
+ * A member of an archive is identified by the uri of the archive with the member
+ * name as the fragment, like {@code file:/data/genomes.tar.gz#NC_009347.gbk}.
+ */
+public class SequenceFileArchives {
+    private final static int BUFFER_SIZE = 65536;
+
+    private SequenceFileArchives() {
+    }
+
+    /**
+     * @return {@code true} if the file is an archive by its extension.
+     */
+    public static boolean isArchive(File file) {
+        String name = file.getName().toLowerCase(Locale.ENGLISH);
+        return name.endsWith(".zip") || name.endsWith(".tar") || isCompressedArchiveName(name);
+    }
+
+    private static boolean isCompressedArchiveName(String name) {
+        return name.endsWith(".tar.gz") || name.endsWith(".tgz") || name.endsWith(".tar.bz2")
+                || name.endsWith(".tbz2");
+    }
+
+    /**
+     * @param type the sniffed type of the file
+     * @return {@code true} if the file is an archive.
+     */
+    public static boolean isArchive(File file, SequenceFileSniffer.Type type) {
+        return type.isArchive()
+                || type.isCompressed() && isCompressedArchiveName(file.getName().toLowerCase(Locale.ENGLISH));
+    }
+
+    /**
+     * Opens the file and decompresses it if it is compressed.
+     */
+    public static InputStream openDecompressed(File file) throws IOException {
+        return openDecompressed(file, SequenceFileSniffer.sniff(file));
+    }
+
+    /**
+     * Opens the file and decompresses it by the sniffed type.
+     */
+    public static InputStream openDecompressed(File file, SequenceFileSniffer.Type type) throws IOException {
+        InputStream source = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            return decompress(source, type);
+        }
+        catch (IOException e) {
+            source.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the decompressed stream, or the source if the type is not compressed.
+     */
+    static InputStream decompress(InputStream source, SequenceFileSniffer.Type type) throws IOException {
+        if (type == SequenceFileSniffer.Type.GZIP) {
+            return new GZIPInputStream(source, BUFFER_SIZE);
+        }
+        else if (type == SequenceFileSniffer.Type.BZIP2) {
+            return new BZip2CompressorInputStream(source);
+        }
+        return source;
+    }
+
+    /**
+     * Opens the archive to read the members.
+     */
+    public static ArchiveInputStream openArchive(File archive) throws IOException {
+        return openArchive(archive, SequenceFileSniffer.sniff(archive));
+    }
+
+    /**
+     * Opens the archive of the sniffed type to read the members.
+     */
+    public static ArchiveInputStream openArchive(File archive, SequenceFileSniffer.Type type) throws IOException {
+        InputStream source = openDecompressed(archive, type);
+        if (type == SequenceFileSniffer.Type.ZIP) {
+            return new ZipArchiveInputStream(source);
+        }
+        return new TarArchiveInputStream(source);
+    }
+
+    /**
+     * @return the uri of the member of the archive.
+     */
+    public static URI entryUri(File archive, String entryName) {
+        URI archiveUri = archive.toURI();
+        try {
+            return new URI(archiveUri.getScheme(), archiveUri.getSchemeSpecificPart(), entryName);
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * @return the file of the uri, which is the archive file if the uri points a member.
+     */
+    public static File toFile(URI uri) {
+        if (uri.getFragment() == null) {
+            return new File(uri);
+        }
+        try {
+            return new File(new URI(uri.getScheme(), uri.getSchemeSpecificPart(), null));
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Opens the decompressed content of the file or the member of an archive.
+     */
+    public static InputStream open(URI uri) throws IOException {
+        File file = toFile(uri);
+        String entryName = uri.getFragment();
+        if (entryName == null) {
+            return openDecompressed(file);
+        }
+
+        ArchiveInputStream archive = openArchive(file);
+        try {
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.getName().equals(entryName)) {
+                    return archive;
+                }
+            }
+        }
+        catch (IOException e) {
+            archive.close();
+            throw e;
+        }
+        archive.close();
+        throw new IOException("entry " + entryName + " is not found in " + file);
+    }
+
+    /**
+     * @return {@code true} if the member is a file to import; directories and hidden files are not.
+     */
+    static boolean isImportable(ArchiveEntry entry) {
+        if (entry.isDirectory()) {
+            return false;
+        }
+        String name = entry.getName();
+        String simpleName = name.substring(name.lastIndexOf('/') + 1);
+        return !simpleName.isEmpty() && !simpleName.startsWith(".");
+    }
+}
@@ -0,0 +1,33 @@
+package jp.scid.genomemuseum.model;
+
+/**
+ * Formats of the sequence files which the importer can read.
+ *
+ * {@link #code()} is the value stored in {@code MUSEUM_EXHIBIT.file_type}.
+ */
+public enum SequenceFileFormat {
+    UNKNOWN(0),
+    GENBANK(1),
+    FASTA(2),
+    EMBL(3),
+    ;
+
+    private final int code;
+
+    private SequenceFileFormat(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    public static SequenceFileFormat fromCode(int code) {
+        for (SequenceFileFormat format: values()) {
+            if (format.code == code) {
+                return format;
+            }
+        }
+        return UNKNOWN;
+    }
+}
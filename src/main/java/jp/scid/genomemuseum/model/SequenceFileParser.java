@@ -0,0 +1,872 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Reads the values of {@code MUSEUM_EXHIBIT} from a GenBank, FASTA or EMBL file.
+ *
+ * A file can contain concatenated records, which are read one by one through
+ * {@link #open(File)}. The format is told by the first line of each record, unless
+ * it is given by {@link SequenceFileSniffer}. The whole record is read including the sequence, whose
+ * residues are counted for the sequence length. Instances have no state and can
+ * be shared by the parsing threads.
+ * 
+ * The reader of {@link #openHeaderScan(File)} reads the file through a seekable channel
+ * and decodes only the header of a GenBank record. The feature table is skipped, and
+ * the sequence in ORIGIN is jumped over with the length of the LOCUS line.
+ * The skipped bytes are still passed to the digest, so a record has the same digest
+ * in either reader.
+ */
+public class SequenceFileParser {
+    final static Charset CHARSET = Charset.forName("ISO-8859-1");
+    private final static int BUFFER_SIZE = 8192;
+    /** bytes read at once by a seekable reader */
+    private final static int WINDOW_SIZE = 65536;
+
+    public SequenceFileParser() {
+    }
+
+    /**
+     * Reads the first record of the file.
+     */
+    public ExhibitRecord parse(File file) throws IOException, ParseException {
+        SequenceRecordReader reader = open(file);
+        try {
+            return readFirst(reader);
+        }
+        finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Reads the first record of the stream.
+     */
+    public ExhibitRecord parse(InputStream source) throws IOException, ParseException {
+        return readFirst(new SequenceRecordReader(this, source, null, null));
+    }
+
+    private static ExhibitRecord readFirst(SequenceRecordReader reader) throws IOException, ParseException {
+        ExhibitRecord record = reader.next();
+        if (record == null) {
+            throw new ParseException("empty file", 0);
+        }
+        return record;
+    }
+
+    /**
+     * Opens a reader of the records in the file. The content digest of each record is computed while reading.
+     *
+     * A compressed file is decompressed while reading.
+     * @see SequenceFileArchives#openDecompressed(File)
+     */
+    public SequenceRecordReader open(File file) throws IOException {
+        return open(file, SequenceFileSniffer.sniff(file));
+    }
+
+    /**
+     * Opens a reader of the records in the file of the sniffed type.
+     */
+    public SequenceRecordReader open(File file, SequenceFileSniffer.Type type) throws IOException {
+        InputStream source = SequenceFileArchives.openDecompressed(file, type);
+        return open(source, file.toURI(), type.format());
+    }
+
+    /**
+     * Opens a reader of the records in the stream. The reader closes the stream.
+     *
+     * @param sourceUri the uri of the content which is set to the records
+     */
+    public SequenceRecordReader open(InputStream source, URI sourceUri) {
+        return open(source, sourceUri, SequenceFileFormat.UNKNOWN);
+    }
+
+    /**
+     * Opens a reader of the records in the stream of the format.
+     *
+     * @param format the format of the records, or {@code UNKNOWN} to tell it by each record
+     */
+    public SequenceRecordReader open(InputStream source, URI sourceUri, SequenceFileFormat format) {
+        return new SequenceRecordReader(this, new LineSource(source, FileDigest.newMessageDigest()), sourceUri,
+                format);
+    }
+
+    /**
+     * Opens a reader which scans only the headers of GenBank records in the file.
+     *
+     * The digest of a record covers all of its bytes; the skipped sections are digested without decoding.
+     */
+    public SequenceRecordReader openHeaderScan(File file) throws IOException {
+        return openHeaderScan(file, SequenceFileSniffer.sniff(file));
+    }
+
+    /**
+     * Opens a reader which scans the headers of the file of the sniffed type.
+     */
+    public SequenceRecordReader openHeaderScan(File file, SequenceFileSniffer.Type type) throws IOException {
+        if (type.isCompressed()) {
+            return open(file, type);
+        }
+        // the file is closed with the reader
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        return new SequenceRecordReader(this, new LineSource(channel, FileDigest.newMessageDigest()), file.toURI(),
+                type.format());
+    }
+
+    /**
+     * Reads the residues of the first record of the stream.
+     *
+     * This is used to load the sequence lazily from the range of a record imported by header scan.
+     */
+    public String readSequence(InputStream source) throws IOException, ParseException {
+        LineSource lines = new LineSource(source, null);
+        lines.skipEmpty();
+        String firstLine = lines.next();
+        if (firstLine == null) {
+            throw new ParseException("empty file", 0);
+        }
+
+        StringBuilder sequence = new StringBuilder();
+        String line;
+        if (firstLine.startsWith("LOCUS")) {
+            while ((line = lines.next()) != null && !"ORIGIN".equals(headerKeyword(line))) {
+                if (line.startsWith("//")) {
+                    return "";
+                }
+            }
+            while ((line = lines.next()) != null && !line.startsWith("//")) {
+                appendResidues(sequence, line);
+            }
+        }
+        else if (firstLine.startsWith(">")) {
+            while ((line = lines.peek()) != null && !line.startsWith(">")) {
+                lines.next();
+                appendResidues(sequence, line);
+            }
+        }
+        else if (firstLine.startsWith("ID")) {
+            while ((line = lines.next()) != null && !line.startsWith("SQ")) {
+                if (line.startsWith("//")) {
+                    return "";
+                }
+            }
+            while ((line = lines.next()) != null && !line.startsWith("//")) {
+                appendResidues(sequence, line);
+            }
+        }
+        else {
+            throw new ParseException("unknown sequence format", lines.lineNumber());
+        }
+        return sequence.toString();
+    }
+
+    private static void appendResidues(StringBuilder sequence, String line) {
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (Character.isLetter(c)) {
+                sequence.append(c);
+            }
+        }
+    }
+
+    /**
+     * Parses a record whose first line is already consumed.
+     *
+     * The lines are consumed up to the end of the record, so that the next line begins the next record.
+     *
+     * @param format the format of the record, or {@code UNKNOWN} to tell it by the first line
+     */
+    ExhibitRecord parseRecord(SequenceFileFormat format, String firstLine, LineSource lines)
+            throws IOException, ParseException {
+        if (format == SequenceFileFormat.UNKNOWN) {
+            format = formatOf(firstLine);
+        }
+
+        switch (format) {
+        case GENBANK:
+            return parseGenBank(firstLine, lines);
+        case FASTA:
+            return parseFasta(firstLine, lines);
+        case EMBL:
+            return parseEmbl(firstLine, lines);
+        default:
+            throw new ParseException("unknown sequence format", lines.lineNumber());
+        }
+    }
+
+    static SequenceFileFormat formatOf(String firstLine) {
+        if (firstLine.startsWith("LOCUS")) {
+            return SequenceFileFormat.GENBANK;
+        }
+        else if (firstLine.startsWith(">")) {
+            return SequenceFileFormat.FASTA;
+        }
+        else if (firstLine.startsWith("ID   ")) {
+            return SequenceFileFormat.EMBL;
+        }
+        return SequenceFileFormat.UNKNOWN;
+    }
+
+    // GenBank
+    ExhibitRecord parseGenBank(String locusLine, LineSource lines) throws IOException, ParseException {
+        if (!locusLine.startsWith("LOCUS")) {
+            throw new ParseException("LOCUS line is expected", lines.lineNumber());
+        }
+        ExhibitRecord record = new ExhibitRecord();
+        record.setFileType(SequenceFileFormat.GENBANK);
+        parseLocus(locusLine, record, lines.lineNumber());
+
+        String keyword = null;
+        StringBuilder value = new StringBuilder();
+        int residues = 0;
+
+        String line;
+        while ((line = lines.peek()) != null && !line.startsWith("LOCUS")) {
+            lines.next();
+            if (line.startsWith("//")) {
+                break;
+            }
+            String lineKeyword = headerKeyword(line);
+
+            if ("ORIGIN".equals(lineKeyword)) {
+                applyHeaderValue(record, keyword, value);
+                keyword = null;
+                if (lines.isSeekable() && record.getSequenceLength() > 0) {
+                    skipOrigin(lines, record.getSequenceLength());
+                }
+                residues = countOriginResidues(lines);
+                break;
+            }
+            else if ("FEATURES".equals(lineKeyword)) {
+                // feature table is not stored to the exhibit
+                applyHeaderValue(record, keyword, value);
+                keyword = null;
+                if (lines.isSeekable()) {
+                    lines.seek(lines.findSectionLine());
+                }
+            }
+            else if (!lineKeyword.isEmpty()) {
+                applyHeaderValue(record, keyword, value);
+                keyword = lineKeyword;
+                value.setLength(0);
+                appendValue(value, line);
+            }
+            else if (keyword != null && !"ORGANISM".equals(keyword)) {
+                // continuation line; only the first line of ORGANISM is the name
+                appendValue(value, line);
+            }
+        }
+        applyHeaderValue(record, keyword, value);
+
+        if (record.getSequenceLength() == 0) {
+            record.setSequenceLength(residues);
+        }
+        return record;
+    }
+
+    static void parseLocus(String line, ExhibitRecord record, int lineNumber) throws ParseException {
+        String[] tokens = line.trim().split("\\s+");
+        if (tokens.length < 2) {
+            throw new ParseException("invalid LOCUS line", lineNumber);
+        }
+        record.setName(tokens[1]);
+
+        int index = 2;
+        if (index < tokens.length && tokens[index].matches("\\d+")) {
+            record.setSequenceLength(Integer.parseInt(tokens[index]));
+            index++;
+        }
+        if (index < tokens.length) {
+            String unit = tokens[index];
+            if ("bp".equals(unit)) {
+                record.setSequenceUnit(ExhibitRecord.SEQUENCE_UNIT_BASE);
+                index++;
+            }
+            else if ("aa".equals(unit)) {
+                record.setSequenceUnit(ExhibitRecord.SEQUENCE_UNIT_AMINO_ACID);
+                index++;
+            }
+        }
+        if (index < tokens.length && !tokens[index].matches("\\d.*")) {
+            record.setMoleculeType(tokens[index]);
+        }
+
+        Date date = parseDate(tokens[tokens.length - 1]);
+        if (date != null) {
+            record.setDate(date);
+        }
+    }
+
+    static Date parseDate(String text) {
+        if (!text.matches("\\d{1,2}-[A-Za-z]{3}-\\d{4}")) {
+            return null;
+        }
+        DateFormat format = new SimpleDateFormat("dd-MMM-yyyy", Locale.US);
+        try {
+            return format.parse(text);
+        }
+        catch (ParseException e) {
+            return null;
+        }
+    }
+
+    static String headerKeyword(String line) {
+        if (line.length() < 12) {
+            return line.trim();
+        }
+        if (line.charAt(0) == ' ' && line.charAt(2) == ' ') {
+            // continuation or feature table line
+            return "";
+        }
+        return line.substring(0, 12).trim();
+    }
+
+    private static void appendValue(StringBuilder value, String line) {
+        String text = line.length() > 12 ? line.substring(12).trim() : "";
+        if (text.isEmpty()) {
+            return;
+        }
+        if (value.length() > 0) {
+            value.append(' ');
+        }
+        value.append(text);
+    }
+
+    static void applyHeaderValue(ExhibitRecord record, String keyword, CharSequence value) {
+        if (keyword == null) {
+            return;
+        }
+        String text = value.toString();
+
+        if ("DEFINITION".equals(keyword)) {
+            record.setDefinition(text);
+        }
+        else if ("ACCESSION".equals(keyword)) {
+            int space = text.indexOf(' ');
+            record.setAccession(space < 0 ? text : text.substring(0, space));
+        }
+        else if ("VERSION".equals(keyword)) {
+            parseVersion(text, record);
+        }
+        else if ("SOURCE".equals(keyword)) {
+            record.setSourceText(text);
+        }
+        else if ("ORGANISM".equals(keyword)) {
+            record.setOrganism(text);
+        }
+    }
+
+    private static void parseVersion(String text, ExhibitRecord record) {
+        String[] tokens = text.split("\\s+");
+        String accessionVersion = tokens[0];
+        int dot = accessionVersion.lastIndexOf('.');
+        if (dot >= 0 && accessionVersion.substring(dot + 1).matches("\\d+")) {
+            record.setVersion(Integer.parseInt(accessionVersion.substring(dot + 1)));
+        }
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].startsWith("GI:")) {
+                record.setNamespace("gi");
+            }
+        }
+    }
+
+    /**
+     * Jumps to the end line of the ORIGIN section, if the section is in the standard layout
+     * of 60 residues per line.
+     */
+    static void skipOrigin(LineSource lines, int sequenceLength) throws IOException {
+        long end = lines.position() + originSectionLength(sequenceLength);
+        if (lines.lineStartsWith(end, "//")) {
+            lines.seek(end);
+        }
+    }
+
+    /**
+     * @return bytes of the lines of ORIGIN which are formatted as {@code "        1 acgtacgtac ..."}.
+     */
+    static long originSectionLength(int sequenceLength) {
+        final int residuesPerLine = 60;
+        final int numberWidth = 9;
+
+        long fullLines = sequenceLength / residuesPerLine;
+        int rest = sequenceLength % residuesPerLine;
+
+        long length = fullLines * (numberWidth + residuesPerLine + residuesPerLine / 10 + 1);
+        if (rest > 0) {
+            length += numberWidth + rest + (rest + 9) / 10 + 1;
+        }
+        return length;
+    }
+
+    private static int countOriginResidues(LineSource lines) throws IOException {
+        int count = 0;
+        String line;
+        while ((line = lines.peek()) != null && !line.startsWith("LOCUS")) {
+            lines.next();
+            if (line.startsWith("//")) {
+                break;
+            }
+            count += countResidues(line);
+        }
+        return count;
+    }
+
+    static int countResidues(CharSequence line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (Character.isLetter(line.charAt(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // FASTA
+    ExhibitRecord parseFasta(String headerLine, LineSource lines) throws IOException, ParseException {
+        if (!headerLine.startsWith(">")) {
+            throw new ParseException("FASTA header line is expected", lines.lineNumber());
+        }
+        ExhibitRecord record = new ExhibitRecord();
+        record.setFileType(SequenceFileFormat.FASTA);
+        parseFastaHeader(headerLine, record);
+
+        int residues = 0;
+        String line;
+        while ((line = lines.peek()) != null && !line.startsWith(">")) {
+            lines.next();
+            residues += countResidues(line);
+        }
+        record.setSequenceLength(residues);
+        return record;
+    }
+
+    static void parseFastaHeader(String headerLine, ExhibitRecord record) {
+        String header = headerLine.substring(1).trim();
+        int space = header.indexOf(' ');
+        String identifier = space < 0 ? header : header.substring(0, space);
+        String definition = space < 0 ? "" : header.substring(space + 1).trim();
+
+        record.setName(identifier);
+        record.setDefinition(definition);
+
+        // NCBI style identifier: gi|148244127|ref|NC_009473.1|
+        String[] fields = identifier.split("\\|");
+        for (int i = 0; i + 1 < fields.length; i += 2) {
+            String database = fields[i];
+            String value = fields[i + 1];
+
+            if ("gi".equals(database)) {
+                record.setNamespace(database);
+            }
+            else if (!value.isEmpty()) {
+                int dot = value.lastIndexOf('.');
+                if (dot >= 0 && value.substring(dot + 1).matches("\\d+")) {
+                    record.setVersion(Integer.parseInt(value.substring(dot + 1)));
+                    value = value.substring(0, dot);
+                }
+                record.setAccession(value);
+                // UniProt entries have the entry name after the accession
+                boolean hasEntryName = ("sp".equals(database) || "tr".equals(database))
+                        && i + 2 < fields.length && !fields[i + 2].isEmpty();
+                record.setName(hasEntryName ? fields[i + 2] : value);
+                if (record.getNamespace().isEmpty()) {
+                    record.setNamespace(database);
+                }
+                break;
+            }
+        }
+    }
+
+    // EMBL
+    ExhibitRecord parseEmbl(String idLine, LineSource lines) throws IOException, ParseException {
+        if (!idLine.startsWith("ID   ")) {
+            throw new ParseException("ID line is expected", lines.lineNumber());
+        }
+        ExhibitRecord record = new ExhibitRecord();
+        record.setFileType(SequenceFileFormat.EMBL);
+        parseEmblId(idLine, record);
+
+        StringBuilder definition = new StringBuilder();
+        int residues = 0;
+        boolean inSequence = false;
+
+        String line;
+        while ((line = lines.peek()) != null && !line.startsWith("ID   ")) {
+            lines.next();
+            if (line.startsWith("//")) {
+                break;
+            }
+            if (inSequence) {
+                residues += countResidues(line);
+                continue;
+            }
+
+            String code = line.length() < 2 ? line : line.substring(0, 2);
+            String value = line.length() > 5 ? line.substring(5).trim() : "";
+
+            if ("SQ".equals(code)) {
+                inSequence = true;
+            }
+            else if ("AC".equals(code) && record.getAccession().isEmpty()) {
+                int end = value.indexOf(';');
+                record.setAccession(end < 0 ? value : value.substring(0, end));
+            }
+            else if ("DE".equals(code)) {
+                if (definition.length() > 0) {
+                    definition.append(' ');
+                }
+                definition.append(value);
+            }
+            else if ("OS".equals(code) && record.getOrganism().isEmpty()) {
+                record.setOrganism(value);
+                record.setSourceText(value);
+            }
+            else if ("DT".equals(code)) {
+                // the last DT line is the date of the last update
+                int space = value.indexOf(' ');
+                Date date = parseDate(space < 0 ? value : value.substring(0, space));
+                if (date != null) {
+                    record.setDate(date);
+                }
+            }
+        }
+        record.setDefinition(definition.toString());
+
+        if (record.getSequenceLength() == 0) {
+            record.setSequenceLength(residues);
+        }
+        return record;
+    }
+
+    /**
+     * Reads the ID line such as {@code "ID   X56734; SV 1; linear; mRNA; STD; PLN; 1859 BP."}.
+     */
+    static void parseEmblId(String line, ExhibitRecord record) {
+        String[] fields = line.substring(5).split(";");
+        String name = fields[0].trim();
+        int space = name.indexOf(' ');
+        record.setName(space < 0 ? name : name.substring(0, space));
+
+        for (int i = 1; i < fields.length; i++) {
+            String field = fields[i].trim();
+            if (field.endsWith(".")) {
+                field = field.substring(0, field.length() - 1);
+            }
+
+            if (field.startsWith("SV ") && field.substring(3).matches("\\d+")) {
+                record.setVersion(Integer.parseInt(field.substring(3)));
+            }
+            else if (field.matches("\\d+ (BP|AA)")) {
+                String[] tokens = field.split(" ");
+                record.setSequenceLength(Integer.parseInt(tokens[0]));
+                record.setSequenceUnit("AA".equals(tokens[1])
+                        ? ExhibitRecord.SEQUENCE_UNIT_AMINO_ACID : ExhibitRecord.SEQUENCE_UNIT_BASE);
+            }
+            else if (i == 3 || field.matches(".*(DNA|RNA)")) {
+                if (record.getMoleculeType().isEmpty()) {
+                    record.setMoleculeType(field);
+                }
+            }
+        }
+    }
+
+    /**
+     * Lines of a stream with the byte position.
+     *
+     * Bytes are decoded as ISO-8859-1, so that one character is one byte.
+     * The bytes of consumed lines are passed to the digest if it is given.
+     * A source on a file channel can seek to a position.
+     */
+    static class LineSource {
+        private final InputStream source;
+        private final FileChannel channel;
+        private final MessageDigest digest;
+
+        // the bytes of the channel from windowStart
+        private ByteBuffer window = null;
+        private long windowStart = 0;
+
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private int inputPosition = 0;
+        private int inputLimit = 0;
+
+        private byte[] buffer = new byte[256];
+        private int rawLength = 0;
+        private String peeked = null;
+
+        private long position = 0;
+        private int lineNumber = 0;
+        private long readNanos = 0;
+
+        public LineSource(InputStream source, MessageDigest digest) {
+            this.source = source;
+            this.channel = null;
+            this.digest = digest;
+        }
+
+        public LineSource(FileChannel channel, MessageDigest digest) {
+            this.source = null;
+            this.channel = channel;
+            this.digest = digest;
+            window = ByteBuffer.allocate(WINDOW_SIZE);
+            window.limit(0);
+        }
+
+        public boolean isSeekable() {
+            return channel != null;
+        }
+
+        /**
+         * Moves forward to the line beginning at the position. The line number is not counted for skipped lines.
+         * The skipped bytes are passed to the digest.
+         */
+        public void seek(long newPosition) throws IOException {
+            if (channel == null) {
+                throw new UnsupportedOperationException("not seekable");
+            }
+            long end = Math.min(newPosition, channel.size());
+            if (end < position) {
+                throw new IllegalArgumentException("cannot seek backward");
+            }
+            if (digest != null) {
+                digestRange(position, end);
+            }
+            position = end;
+            peeked = null;
+        }
+
+        private void digestRange(long start, long end) throws IOException {
+            long index = start;
+            while (index < end && fillWindow(index)) {
+                int offset = (int) (index - windowStart);
+                int length = (int) Math.min(window.limit() - offset, end - index);
+                digest.update(window.array(), offset, length);
+                index += length;
+            }
+        }
+
+        /**
+         * @return {@code true} if a line begins at the position with the prefix.
+         */
+        public boolean lineStartsWith(long linePosition, String prefix) throws IOException {
+            if (linePosition < 0 || linePosition + prefix.length() > channel.size()) {
+                return false;
+            }
+            if (linePosition > 0 && byteAt(linePosition - 1) != '\n') {
+                return false;
+            }
+            for (int i = 0; i < prefix.length(); i++) {
+                if (byteAt(linePosition + i) != prefix.charAt(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the position of the next line which begins with a non-space character,
+         *         or the end of the file.
+         */
+        public long findSectionLine() throws IOException {
+            long index = position;
+            int b;
+            while ((b = byteAt(index)) >= 0) {
+                if (b != ' ' && b != '\r' && b != '\n') {
+                    return index;
+                }
+                while (b >= 0 && b != '\n') {
+                    b = byteAt(++index);
+                }
+                index++;
+            }
+            return channel.size();
+        }
+
+        /**
+         * @return the byte at the position of the channel, or {@code -1} at the end.
+         */
+        private int byteAt(long index) throws IOException {
+            if (!fillWindow(index)) {
+                return -1;
+            }
+            return window.get((int) (index - windowStart)) & 0xff;
+        }
+
+        /**
+         * Reads the window of the channel containing the position, unless it is read already.
+         *
+         * @return {@code false} at the end of the channel
+         */
+        private boolean fillWindow(long index) throws IOException {
+            if (index >= windowStart && index < windowStart + window.limit()) {
+                return true;
+            }
+            long start = System.nanoTime();
+            window.clear();
+            windowStart = index;
+            while (window.hasRemaining() && channel.read(window, windowStart + window.position()) > 0) {
+                // fill
+            }
+            window.flip();
+            readNanos += System.nanoTime() - start;
+            return window.limit() > 0;
+        }
+
+        /**
+         * @return the next line without consuming it, or {@code null} at the end.
+         */
+        public String peek() throws IOException {
+            if (peeked == null) {
+                peeked = readLine();
+            }
+            return peeked;
+        }
+
+        public String next() throws IOException {
+            String line = peek();
+            if (line != null) {
+                if (digest != null) {
+                    digest.update(buffer, 0, rawLength);
+                }
+                position += rawLength;
+                lineNumber++;
+                peeked = null;
+            }
+            return line;
+        }
+
+        /**
+         * Consumes empty lines.
+         */
+        public void skipEmpty() throws IOException {
+            String line;
+            while ((line = peek()) != null && line.trim().isEmpty()) {
+                next();
+            }
+        }
+
+        private String readLine() throws IOException {
+            rawLength = 0;
+            if (channel != null) {
+                return readChannelLine();
+            }
+            boolean lineEnd = false;
+            while (!lineEnd && fillInput()) {
+                int end = inputPosition;
+                while (end < inputLimit && input[end] != '\n') {
+                    end++;
+                }
+                if (end < inputLimit) {
+                    end++;
+                    lineEnd = true;
+                }
+                appendRaw(input, inputPosition, end - inputPosition);
+                inputPosition = end;
+            }
+            return decodeLine();
+        }
+
+        private String readChannelLine() throws IOException {
+            long index = position;
+            boolean lineEnd = false;
+            while (!lineEnd && fillWindow(index)) {
+                int offset = (int) (index - windowStart);
+                int end = offset;
+                int limit = window.limit();
+                while (end < limit && window.get(end) != '\n') {
+                    end++;
+                }
+                if (end < limit) {
+                    end++;
+                    lineEnd = true;
+                }
+                appendRaw(window.array(), offset, end - offset);
+                index += end - offset;
+            }
+            return decodeLine();
+        }
+
+        private String decodeLine() {
+            if (rawLength == 0) {
+                return null;
+            }
+
+            int length = rawLength;
+            if (length > 0 && buffer[length - 1] == '\n') {
+                length--;
+            }
+            if (length > 0 && buffer[length - 1] == '\r') {
+                length--;
+            }
+            return new String(buffer, 0, length, CHARSET);
+        }
+
+        private boolean fillInput() throws IOException {
+            if (inputPosition < inputLimit) {
+                return true;
+            }
+            long start = System.nanoTime();
+            int read;
+            while ((read = source.read(input)) == 0) {
+                // retry
+            }
+            readNanos += System.nanoTime() - start;
+            inputPosition = 0;
+            inputLimit = Math.max(read, 0);
+            return read > 0;
+        }
+
+        private void appendRaw(byte[] bytes, int offset, int length) {
+            if (rawLength + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, rawLength + length));
+            }
+            System.arraycopy(bytes, offset, buffer, rawLength, length);
+            rawLength += length;
+        }
+
+        /**
+         * @return the byte offset of the next line
+         */
+        public long position() {
+            return position;
+        }
+
+        public int lineNumber() {
+            return lineNumber;
+        }
+
+        public MessageDigest getDigest() {
+            return digest;
+        }
+
+        /**
+         * @return nanoseconds spent reading the source stream
+         */
+        public long readNanos() {
+            return readNanos;
+        }
+
+        public void close() throws IOException {
+            if (source != null) {
+                source.close();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        }
+    }
+}
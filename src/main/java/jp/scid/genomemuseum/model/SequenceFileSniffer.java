@@ -0,0 +1,181 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Decides the type of a file from its first bytes, without parsing it.
+ *
+ * Only {@link #SNIFF_LENGTH} bytes are read, into a direct buffer which each thread reuses.
+ * Compressed files and archives are told by their magic numbers, and sequence files by
+ * the first line which is not empty.
+ */
+public class SequenceFileSniffer {
+    public final static int SNIFF_LENGTH = 4096;
+
+    private final static int TAR_MAGIC_OFFSET = 257;
+
+    private final static ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(SNIFF_LENGTH);
+        }
+    };
+
+    private final static ThreadLocal<byte[]> streamBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[SNIFF_LENGTH];
+        }
+    };
+
+    public static enum Type {
+        GENBANK(SequenceFileFormat.GENBANK),
+        FASTA(SequenceFileFormat.FASTA),
+        EMBL(SequenceFileFormat.EMBL),
+        GZIP(SequenceFileFormat.UNKNOWN),
+        BZIP2(SequenceFileFormat.UNKNOWN),
+        ZIP(SequenceFileFormat.UNKNOWN),
+        TAR(SequenceFileFormat.UNKNOWN),
+        UNKNOWN(SequenceFileFormat.UNKNOWN),
+        ;
+
+        private final SequenceFileFormat format;
+
+        private Type(SequenceFileFormat format) {
+            this.format = format;
+        }
+
+        /**
+         * @return the format of the sequence file, or {@code UNKNOWN} if this is not a sequence file.
+         */
+        public SequenceFileFormat format() {
+            return format;
+        }
+
+        public boolean isSequence() {
+            return format != SequenceFileFormat.UNKNOWN;
+        }
+
+        /**
+         * @return {@code true} if this is a compressed stream, which can be a single file or an archive.
+         */
+        public boolean isCompressed() {
+            return this == GZIP || this == BZIP2;
+        }
+
+        /**
+         * @return {@code true} if this is an uncompressed archive.
+         */
+        public boolean isArchive() {
+            return this == ZIP || this == TAR;
+        }
+    }
+
+    private SequenceFileSniffer() {
+    }
+
+    public static Type sniff(File file) throws IOException {
+        ByteBuffer buffer = buffers.get();
+        buffer.clear();
+
+        FileInputStream source = new FileInputStream(file);
+        try {
+            FileChannel channel = source.getChannel();
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // fill the head
+            }
+        }
+        finally {
+            source.close();
+        }
+        buffer.flip();
+        return sniff(buffer);
+    }
+
+    /**
+     * Sniffs the head of the stream, which is read again from the head after this.
+     *
+     * @param source a stream which supports mark
+     */
+    public static Type sniff(InputStream source) throws IOException {
+        if (!source.markSupported()) throw new IllegalArgumentException("source must support mark");
+
+        byte[] bytes = streamBuffers.get();
+        int length = 0;
+        source.mark(SNIFF_LENGTH);
+        try {
+            int read;
+            while (length < SNIFF_LENGTH && (read = source.read(bytes, length, SNIFF_LENGTH - length)) >= 0) {
+                length += read;
+            }
+        }
+        finally {
+            source.reset();
+        }
+        return sniff(ByteBuffer.wrap(bytes, 0, length));
+    }
+
+    /**
+     * @param head the first bytes of a file, from the position to the limit
+     */
+    static Type sniff(ByteBuffer head) {
+        int start = head.position();
+        int length = head.remaining();
+
+        if (startsWith(head, start, 0x1f, 0x8b)) {
+            return Type.GZIP;
+        }
+        if (startsWith(head, start, 'B', 'Z', 'h')) {
+            return Type.BZIP2;
+        }
+        if (startsWith(head, start, 'P', 'K', 3, 4) || startsWith(head, start, 'P', 'K', 5, 6)) {
+            return Type.ZIP;
+        }
+        if (length >= TAR_MAGIC_OFFSET + 5
+                && startsWith(head, start + TAR_MAGIC_OFFSET, 'u', 's', 't', 'a', 'r')) {
+            return Type.TAR;
+        }
+
+        int index = start;
+        // UTF-8 byte order mark
+        if (startsWith(head, index, 0xef, 0xbb, 0xbf)) {
+            index += 3;
+        }
+        int limit = head.limit();
+        while (index < limit && isWhitespace(head.get(index))) {
+            index++;
+        }
+
+        if (startsWith(head, index, 'L', 'O', 'C', 'U', 'S')) {
+            return Type.GENBANK;
+        }
+        if (startsWith(head, index, '>')) {
+            return Type.FASTA;
+        }
+        if (startsWith(head, index, 'I', 'D', ' ', ' ', ' ')) {
+            return Type.EMBL;
+        }
+        return Type.UNKNOWN;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, int index, int... bytes) {
+        if (index + bytes.length > buffer.limit()) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if ((buffer.get(index + i) & 0xff) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
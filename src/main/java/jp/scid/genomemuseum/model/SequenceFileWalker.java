@@ -0,0 +1,107 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Walks directory trees and passes each file to the handler as soon as it is found.
+ *
+ * Hidden files and directories are skipped. The walk stops when the running thread
+ * is interrupted, so cancelling the {@link java.util.concurrent.Future} running this
+ * walker stops it.
+ */
+public class SequenceFileWalker implements Callable<Integer> {
+    private final static Logger logger = LoggerFactory.getLogger(SequenceFileWalker.class);
+
+    private final List<Path> roots;
+    private final FileHandler handler;
+
+    private int foundCount = 0;
+
+    public SequenceFileWalker(Collection<File> roots, FileHandler handler) {
+        if (handler == null) throw new IllegalArgumentException("handler must not be null");
+
+        this.roots = new ArrayList<Path>(roots.size());
+        for (File file: roots) {
+            this.roots.add(file.toPath());
+        }
+        this.handler = handler;
+    }
+
+    /**
+     * @return the count of files passed to the handler.
+     */
+    @Override
+    public Integer call() throws IOException {
+        Visitor visitor = new Visitor();
+
+        for (Path root: roots) {
+            if (isCancelled()) {
+                break;
+            }
+            Files.walkFileTree(root, visitor);
+        }
+
+        return foundCount;
+    }
+
+    private static boolean isCancelled() {
+        return Thread.currentThread().isInterrupted();
+    }
+
+    static boolean isHidden(Path path) {
+        try {
+            return Files.isHidden(path);
+        }
+        catch (IOException e) {
+            return false;
+        }
+    }
+
+    public static interface FileHandler {
+        void fileFound(File file);
+    }
+
+    private class Visitor extends SimpleFileVisitor<Path> {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (isCancelled()) {
+                return FileVisitResult.TERMINATE;
+            }
+            if (!roots.contains(dir) && isHidden(dir)) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            if (isCancelled()) {
+                return FileVisitResult.TERMINATE;
+            }
+            if (attrs.isRegularFile() && !isHidden(file)) {
+                foundCount++;
+                handler.fileFound(file.toFile());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            logger.warn("cannot visit file {}: {}", file, exc.getLocalizedMessage());
+            return FileVisitResult.CONTINUE;
+        }
+    }
+}
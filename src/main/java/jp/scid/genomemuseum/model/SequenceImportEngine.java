@@ -0,0 +1,1519 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.sql.SQLException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.scid.genomemuseum.model.ExhibitRecordStore.InsertBatch;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Imports sequence files in two stages.
+ *
+ * Files are parsed on a pool of threads sized to the processors, and the parsed
+ * records are handed to one writer thread which stores them into the library.
+ * A file of concatenated records is streamed, so each record is handed to the
+ * writer as soon as it is parsed.
+ * Every database write of the importer runs on the writer thread.
+ * 
+ * The writer stores the records in batches of {@link #getBatchSize()} records in
+ * one transaction. Records which do not fill a batch are written after
+ * {@link #getFlushInterval()} milliseconds.
+ * 
+ * The imported file, or the archive of a member, is copied into the {@link LibraryFileStore}
+ * on the writer thread before its first record is stored, and the exhibits refer to the copy.
+ * The digests keep the location of the source, by which the file is told imported.
+ * 
+ * Files already imported are skipped as duplicates. A file of the same location,
+ * size and modified time is skipped before it is read, and otherwise the content
+ * digest of each record computed while parsing is looked up before it is written.
+ * A file whose size or modified time changed replaces the exhibits imported from it:
+ * the exhibits of the same digest read the new version, and the others are deleted
+ * after the file is stored. The members of an archive have the size and the modified
+ * time of the archive, so a changed archive replaces the exhibits of its members.
+ * The stored exhibits of the duplicates are added to the collection box of the import.
+ * 
+ * The type of each file is sniffed from its first bytes before parsing, so files
+ * which are not sequence files are skipped without a parse attempt.
+ * 
+ * Files which fail to be parsed are recorded to the {@link ImportQuarantine} and
+ * skipped by later imports while their content is not changed, unless they are
+ * submitted by {@link #retry(File, Long)}.
+ *
+ * Files are parsed in the order of their {@link Priority}. Files added by the user
+ * are parsed before the files of a bulk import which are waiting, and at most
+ * {@link #DEFAULT_QUEUE_CAPACITY} bulk files wait to be parsed; submitting more blocks
+ * the caller. Parsed records waiting to be written are bounded by
+ * {@link #MAX_PENDING_RECORDS}, which blocks the parsing threads while the writer is behind.
+ */
+public class SequenceImportEngine {
+    private final static Logger logger = LoggerFactory.getLogger(SequenceImportEngine.class);
+
+    public final static int DEFAULT_BATCH_SIZE = 500;
+    public final static long DEFAULT_FLUSH_INTERVAL = 200;
+    public final static long JOURNAL_FLUSH_INTERVAL = 1000;
+    /** count of bulk files which can wait to be parsed */
+    public final static int DEFAULT_QUEUE_CAPACITY = 1000;
+    /** count of parsed records which can wait to be written */
+    public final static int MAX_PENDING_RECORDS = DEFAULT_BATCH_SIZE * 8;
+
+    public static enum Priority {
+        /** files added by the user, parsed before waiting bulk files */
+        INTERACTIVE,
+        /** files of directory walks and retries, which block the caller when the queue is full */
+        BULK,
+    }
+    
+    private final ExecutorService parseExecutor;
+    private final ScheduledExecutorService writeExecutor;
+    private final SequenceFileParser parser;
+
+    private final Queue<ParsedRecord> parsedRecords = new ConcurrentLinkedQueue<ParsedRecord>();
+    private final AtomicInteger parsedCount = new AtomicInteger(0);
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private final AtomicBoolean batchScheduled = new AtomicBoolean(false);
+    private final Semaphore pendingRecords = new Semaphore(MAX_PENDING_RECORDS);
+    private final Semaphore bulkQueue = new Semaphore(DEFAULT_QUEUE_CAPACITY);
+    private final AtomicLong commandSequence = new AtomicLong(0);
+    private final List<ImportListener> listeners = new CopyOnWriteArrayList<ImportListener>();
+    private final ImportMetrics metrics = new ImportMetrics();
+
+    private final Runnable batchWriteCommand = new WriteCommand(false);
+    private final Runnable flushCommand = new WriteCommand(true);
+    private final Runnable journalFlushCommand = new Runnable() {
+        @Override
+        public void run() {
+            flushJournal();
+        }
+    };
+    private final AtomicBoolean journalFlushScheduled = new AtomicBoolean(false);
+
+    private volatile ExhibitRecordStore recordStore = null;
+    private volatile CollectionBoxStore boxStore = null;
+    private volatile int batchSize = DEFAULT_BATCH_SIZE;
+    private volatile long flushInterval = DEFAULT_FLUSH_INTERVAL;
+    private volatile boolean headerScan = true;
+    private volatile ImportJournal journal = null;
+    private volatile ImportQuarantine quarantine = null;
+    private volatile LibraryFileStore fileStore = null;
+    private volatile LibraryFileDeleter fileDeleter = null;
+
+    public SequenceImportEngine(ExecutorService parseExecutor, ScheduledExecutorService writeExecutor) {
+        if (parseExecutor == null) throw new IllegalArgumentException("parseExecutor must not be null");
+        if (writeExecutor == null) throw new IllegalArgumentException("writeExecutor must not be null");
+
+        this.parseExecutor = parseExecutor;
+        this.writeExecutor = writeExecutor;
+        parser = new SequenceFileParser();
+    }
+
+    public SequenceImportEngine() {
+        this(newParseExecutor(Runtime.getRuntime().availableProcessors()),
+                Executors.newSingleThreadScheduledExecutor());
+    }
+
+    /**
+     * Creates an executor which runs the parsing in the order of {@link Priority}.
+     * Other executors run it in their own order.
+     */
+    public static ExecutorService newParseExecutor(int threads) {
+        return new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>());
+    }
+
+    public ExhibitRecordStore getRecordStore() {
+        return recordStore;
+    }
+
+    public void setRecordStore(ExhibitRecordStore recordStore) {
+        this.recordStore = recordStore;
+        // the views reload the boxes when the import finishes, so no listener is notified on the writer
+        boxStore = recordStore == null ? null : new CollectionBoxStore(recordStore.getDataSource());
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return milliseconds which parsed records wait at most to be written
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        if (flushInterval < 0) throw new IllegalArgumentException("flushInterval must not be negative");
+        this.flushInterval = flushInterval;
+    }
+
+    /**
+     * @return the counters of the throughput and the time of each stage
+     */
+    public ImportMetrics getMetrics() {
+        return metrics;
+    }
+
+    public ImportJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the journal which records the states of the submitted files.
+     * 
+     * The journal is flushed on the writer thread every {@link #JOURNAL_FLUSH_INTERVAL} milliseconds.
+     */
+    public void setJournal(ImportJournal journal) {
+        this.journal = journal;
+
+        if (journal != null && journalFlushScheduled.compareAndSet(false, true)) {
+            writeExecutor.scheduleWithFixedDelay(journalFlushCommand,
+                    JOURNAL_FLUSH_INTERVAL, JOURNAL_FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public ImportQuarantine getQuarantine() {
+        return quarantine;
+    }
+
+    public void setQuarantine(ImportQuarantine quarantine) {
+        this.quarantine = quarantine;
+    }
+
+    public LibraryFileStore getFileStore() {
+        return fileStore;
+    }
+
+    /**
+     * Sets the store which the imported files are copied into, or {@code null} to refer the files where they are.
+     */
+    public void setFileStore(LibraryFileStore fileStore) {
+        this.fileStore = fileStore;
+    }
+
+    public LibraryFileDeleter getFileDeleter() {
+        return fileDeleter;
+    }
+
+    /**
+     * Sets the deleter of the copies which no exhibit reads after their files are replaced.
+     */
+    public void setFileDeleter(LibraryFileDeleter fileDeleter) {
+        this.fileDeleter = fileDeleter;
+    }
+
+    /**
+     * @return {@code true} if GenBank files are read only in their headers.
+     * @see SequenceFileParser#openHeaderScan(java.io.File)
+     */
+    public boolean isHeaderScan() {
+        return headerScan;
+    }
+
+    public void setHeaderScan(boolean headerScan) {
+        this.headerScan = headerScan;
+    }
+
+    /**
+     * Parses the file and stores it into the library.
+     * 
+     * A compressed file is decompressed while parsing. The members of an archive
+     * are imported as separate tasks, which are notified to
+     * {@link ImportListener#importSubmitted(ImportTask)}.
+     *
+     * @param boxId the collection box which the record is added to, or {@code null}.
+     * @see SequenceFileArchives
+     */
+    public ImportTask submit(File file, Long boxId, Priority priority) {
+        return submit(file, boxId, priority, false);
+    }
+
+    /**
+     * Submits the file as a bulk file, which blocks while the queue is full.
+     */
+    public ImportTask submit(File file, Long boxId) {
+        return submit(file, boxId, Priority.BULK);
+    }
+
+    /**
+     * Imports the file even if it is quarantined, and removes it from the quarantine if it succeeds.
+     */
+    public ImportTask retry(File file, Long boxId) {
+        return submit(file, boxId, Priority.BULK, true);
+    }
+
+    private ImportTask submit(File file, Long boxId, Priority priority, boolean retrying) {
+        if (priority == null) throw new IllegalArgumentException("priority must not be null");
+
+        ImportTask task = new ImportTask(file, FileDigest.of(file), boxId, new LibraryCopy(file));
+        task.retrying = retrying;
+
+        if (priority == Priority.BULK) {
+            try {
+                bulkQueue.acquire();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                task.cancel(false);
+                return task;
+            }
+        }
+        task.journaled = true;
+        recordJournal(task, ImportJournal.STATE_QUEUED);
+
+        try {
+            parseExecutor.execute(new ParseCommand(task, priority));
+        }
+        catch (RejectedExecutionException e) {
+            if (priority == Priority.BULK) {
+                bulkQueue.release();
+            }
+            throw e;
+        }
+        return task;
+    }
+
+    /**
+     * Runs the command on the writer thread, serialized with the other writes.
+     */
+    public <V> Future<V> submitWrite(Callable<V> command) {
+        return writeExecutor.submit(command);
+    }
+
+    public void execute(FutureTask<?> writeTask) {
+        writeExecutor.execute(writeTask);
+    }
+
+    public void addImportListener(ImportListener l) {
+        listeners.add(l);
+    }
+
+    public void removeImportListener(ImportListener l) {
+        listeners.remove(l);
+    }
+
+    /**
+     * Stops the import. The journal keeps the files not finished.
+     */
+    public void shutdownNow() {
+        parseExecutor.shutdownNow();
+        writeExecutor.shutdownNow();
+        flushJournal();
+    }
+
+    /**
+     * Stops accepting files and waits for the submitted work, including the records of failures.
+     *
+     * @return {@code true} if the work finished in the timeout.
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        parseExecutor.shutdown();
+        boolean terminated = parseExecutor.awaitTermination(timeout, unit);
+        writeExecutor.shutdown();
+        terminated &= writeExecutor.awaitTermination(timeout, unit);
+        flushJournal();
+        return terminated;
+    }
+
+    private void recordJournal(ImportTask task, int state) {
+        ImportJournal journal = this.journal;
+        if (journal != null && task.journaled) {
+            journal.record(task.file, task.boxId, state);
+        }
+    }
+
+    private void flushJournal() {
+        ImportJournal journal = this.journal;
+        if (journal == null || !journal.hasPendingEntries()) {
+            return;
+        }
+        try {
+            journal.flush();
+        }
+        catch (SQLException e) {
+            logger.warn("fail to write the import journal", e);
+        }
+    }
+
+    /**
+     * Records the failure of parsing. The content digest is computed on a parsing thread
+     * and the failure is written on the writer thread.
+     */
+    private void quarantine(final ImportTask task, final Throwable cause) {
+        final ImportQuarantine quarantine = this.quarantine;
+        if (quarantine == null) {
+            return;
+        }
+
+        final FileDigest source = task.fileDigest;
+        final Runnable digestCommand = new PrioritizedCommand(Priority.BULK) {
+            @Override
+            public void run() {
+                String digest = source.getContentDigest() != null
+                        ? source.getContentDigest() : ImportQuarantine.contentDigest(source.getFileUri());
+                FileDigest failedSource =
+                        new FileDigest(source.getFileUri(), source.getFileSize(), source.getLastModified());
+                failedSource.setDigest(digest);
+                final ImportQuarantine.Failure failure = new ImportQuarantine.Failure(failedSource, task.boxId,
+                        cause.getClass().getName(), cause.getMessage(), task.failedLine);
+
+                writeExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            quarantine.record(failure);
+                        }
+                        catch (SQLException e) {
+                            logger.warn("fail to record the failure of " + failure.getFileUri(), e);
+                        }
+                    }
+                });
+            }
+        };
+        try {
+            parseExecutor.execute(digestCommand);
+        }
+        catch (RejectedExecutionException e) {
+            logger.info("failure of {} is not recorded because the import is stopped", source.getFileUri());
+        }
+    }
+
+    private void releaseFromQuarantine(final ImportTask task) {
+        final ImportQuarantine quarantine = this.quarantine;
+        if (quarantine == null) {
+            return;
+        }
+        try {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        quarantine.remove(task.getSourceUri());
+                    }
+                    catch (SQLException e) {
+                        logger.warn("fail to remove " + task.getSourceUri() + " from the quarantine", e);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            logger.info("{} is not removed from the quarantine because the import is stopped",
+                    task.getSourceUri());
+        }
+    }
+
+    /**
+     * Adds the record to be written, waiting while too many records are not written.
+     */
+    private void enqueueWrite(ParsedRecord parsed) throws InterruptedIOException {
+        try {
+            pendingRecords.acquire();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("import is stopped");
+        }
+        parsedRecords.add(parsed);
+        int count = parsedCount.incrementAndGet();
+
+        if (count >= writeBatchSize()) {
+            // a batch command which is not run yet writes this record too
+            if (batchScheduled.compareAndSet(false, true)) {
+                writeExecutor.execute(batchWriteCommand);
+            }
+        }
+        else if (flushScheduled.compareAndSet(false, true)) {
+            writeExecutor.schedule(flushCommand, flushInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes parsed records in batches.
+     * 
+     * @param flush {@code true} to write records which do not fill a batch too.
+     */
+    void writeParsedRecords(boolean flush) {
+        ExhibitRecordStore store = recordStore;
+        if (store == null) {
+            throw new IllegalStateException("recordStore must be set to import");
+        }
+
+        int size = writeBatchSize();
+        while (parsedCount.get() >= size || flush && parsedCount.get() > 0) {
+            List<ParsedRecord> records = pollParsedRecords(size);
+            if (!records.isEmpty()) {
+                long start = System.nanoTime();
+                int stored = writeBatch(store, records);
+                metrics.addWrite(System.nanoTime() - start, stored);
+            }
+        }
+    }
+
+    /**
+     * @return the batch size, which is not larger than the records which can wait
+     */
+    private int writeBatchSize() {
+        return Math.min(batchSize, MAX_PENDING_RECORDS);
+    }
+
+    private List<ParsedRecord> pollParsedRecords(int maxCount) {
+        List<ParsedRecord> records = new ArrayList<ParsedRecord>(maxCount);
+        ParsedRecord parsed;
+        while (records.size() < maxCount && (parsed = parsedRecords.poll()) != null) {
+            parsedCount.decrementAndGet();
+            pendingRecords.release();
+            if (parsed.task.isCancelled()) {
+                parsed.task.recordFinished();
+            }
+            else {
+                records.add(parsed);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * @return the count of stored records
+     */
+    private int writeBatch(ExhibitRecordStore store, List<ParsedRecord> records) {
+        List<Duplicate> duplicates = new ArrayList<Duplicate>();
+        try {
+            records = skipDuplicates(store, records, duplicates);
+        }
+        catch (SQLException e) {
+            logger.warn("fail to look up digests of the batch", e);
+        }
+        records = copyFiles(records);
+        int stored = insertBatch(store, records);
+        finishDuplicates(duplicates);
+        return stored;
+    }
+
+    private int insertBatch(ExhibitRecordStore store, List<ParsedRecord> records) {
+        if (records.isEmpty()) {
+            return 0;
+        }
+
+        InsertBatch batch = new InsertBatch();
+        for (ParsedRecord parsed: records) {
+            addTo(batch, parsed);
+        }
+
+        try {
+            store.insertAll(batch);
+        }
+        catch (SQLException e) {
+            logger.warn("fail to store the batch, retry each record", e);
+            return writeEach(store, records);
+        }
+
+        fireBatchStored(records);
+        for (ParsedRecord parsed: records) {
+            parsed.task.recordStored();
+        }
+        return records.size();
+    }
+
+    private static void addTo(InsertBatch batch, ParsedRecord parsed) {
+        if (parsed.replacedId != null) {
+            batch.replace(parsed.replacedId, parsed.record, parsed.digest);
+        }
+        else {
+            batch.add(parsed.record, parsed.task.boxId, parsed.digest);
+        }
+    }
+
+    private int writeEach(ExhibitRecordStore store, List<ParsedRecord> records) {
+        List<ParsedRecord> stored = new ArrayList<ParsedRecord>(records.size());
+
+        for (ParsedRecord parsed: records) {
+            InsertBatch batch = new InsertBatch();
+            addTo(batch, parsed);
+            try {
+                store.insertAll(batch);
+                stored.add(parsed);
+            }
+            catch (SQLException e) {
+                logger.warn("fail to store the record {} of {}", parsed.record, parsed.task.file);
+                parsed.task.recordFailed(e);
+            }
+        }
+
+        if (!stored.isEmpty()) {
+            fireBatchStored(stored);
+        }
+        for (ParsedRecord parsed: stored) {
+            parsed.task.recordStored();
+        }
+        return stored.size();
+    }
+
+    /**
+     * Takes out the records whose content is stored already or appears earlier in the batch.
+     * A record of the same content as an exhibit of the old version of its file replaces the exhibit.
+     *
+     * @param duplicates the list which the taken records are added to
+     * @return the records to write
+     */
+    private List<ParsedRecord> skipDuplicates(ExhibitRecordStore store, List<ParsedRecord> records,
+            List<Duplicate> duplicates) throws SQLException {
+        Map<String, ParsedRecord> firstRecords = new HashMap<String, ParsedRecord>();
+        for (ParsedRecord parsed: records) {
+            String digest = parsed.digest.getDigest();
+            if (digest != null && !firstRecords.containsKey(digest)) {
+                firstRecords.put(digest, parsed);
+            }
+        }
+        Map<String, Long> stored = store.findExhibitIdsByDigest(firstRecords.keySet());
+
+        List<ParsedRecord> writing = new ArrayList<ParsedRecord>(records.size());
+        for (ParsedRecord parsed: records) {
+            String digest = parsed.digest.getDigest();
+            Map<String, Long> replaced = parsed.task.replacedExhibits;
+            if (digest != null && firstRecords.get(digest) != parsed) {
+                duplicates.add(new Duplicate(parsed, null, firstRecords.get(digest)));
+            }
+            else if (replaced != null && replaced.containsKey(digest)) {
+                // removed so that a later record of the same content is a duplicate of the exhibit
+                parsed.replacedId = replaced.remove(digest);
+                writing.add(parsed);
+            }
+            else if (stored.containsKey(digest)) {
+                duplicates.add(new Duplicate(parsed, stored.get(digest), null));
+            }
+            else {
+                writing.add(parsed);
+            }
+        }
+        return writing;
+    }
+
+    /**
+     * Adds the exhibits of the duplicates to the boxes of their tasks, and finishes the duplicates.
+     * The items are added before the tasks complete, so that the box shows them when the import finishes.
+     */
+    private void finishDuplicates(List<Duplicate> duplicates) {
+        Map<Long, Set<Long>> boxItems = new HashMap<Long, Set<Long>>();
+        for (Duplicate duplicate: duplicates) {
+            Long boxId = duplicate.parsed.task.boxId;
+            Long exhibitId = duplicate.getExhibitId();
+            if (boxId == null || exhibitId == null) {
+                continue;
+            }
+            Set<Long> exhibitIds = boxItems.get(boxId);
+            if (exhibitIds == null) {
+                exhibitIds = new HashSet<Long>();
+                boxItems.put(boxId, exhibitIds);
+            }
+            exhibitIds.add(exhibitId);
+        }
+
+        CollectionBoxStore boxStore = this.boxStore;
+        if (boxStore != null) {
+            for (Map.Entry<Long, Set<Long>> entry: boxItems.entrySet()) {
+                try {
+                    boxStore.addExhibits(entry.getKey(), entry.getValue());
+                }
+                catch (SQLException e) {
+                    logger.warn("fail to add the duplicates to the box " + entry.getKey(), e);
+                }
+            }
+        }
+
+        for (Duplicate duplicate: duplicates) {
+            duplicate.parsed.task.recordSkipped();
+        }
+    }
+
+    /**
+     * Skips the file whose records are stored already. The stored exhibits are added to the box
+     * of the task on the writer thread, and the task completes after them.
+     */
+    private void skipStoredFile(final ImportTask task, final List<Long> exhibitIds) {
+        final CollectionBoxStore boxStore = this.boxStore;
+        if (task.boxId == null || boxStore == null) {
+            task.skipFile();
+            return;
+        }
+
+        // keeps the end of the parsing from completing the task
+        task.recordParsed();
+        try {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        boxStore.addExhibits(task.boxId, exhibitIds);
+                    }
+                    catch (SQLException e) {
+                        logger.warn("fail to add the exhibits of " + task.getSourceUri() + " to the box", e);
+                    }
+                    finally {
+                        task.skipFile();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            task.skipFile();
+        }
+    }
+
+    /**
+     * Copies the files of the records into the file store, and lets the records refer to the copies.
+     * The records whose file cannot be copied are failed.
+     *
+     * @return the records to write
+     */
+    private List<ParsedRecord> copyFiles(List<ParsedRecord> records) {
+        LibraryFileStore fileStore = this.fileStore;
+        if (fileStore == null) {
+            return records;
+        }
+
+        List<ParsedRecord> copied = new ArrayList<ParsedRecord>(records.size());
+        for (ParsedRecord parsed: records) {
+            File copy;
+            try {
+                copy = parsed.task.libraryCopy.store(fileStore);
+            }
+            catch (IOException e) {
+                logger.warn("fail to copy {} into the library", parsed.task.file);
+                parsed.task.recordFailed(e);
+                continue;
+            }
+            String entryName = parsed.task.getSourceUri().getFragment();
+            parsed.record.setFileUri(entryName == null
+                    ? copy.toURI() : SequenceFileArchives.entryUri(copy, entryName));
+            copied.add(parsed);
+        }
+        return copied;
+    }
+
+    private void failParsedRecords(Throwable cause) {
+        ParsedRecord parsed;
+        while ((parsed = parsedRecords.poll()) != null) {
+            parsedCount.decrementAndGet();
+            pendingRecords.release();
+            parsed.task.recordFailed(cause);
+        }
+    }
+
+    private void fireBatchStored(List<ParsedRecord> records) {
+        List<ExhibitRecord> stored = new ArrayList<ExhibitRecord>(records.size());
+        for (ParsedRecord parsed: records) {
+            stored.add(parsed.record);
+        }
+        List<ExhibitRecord> unmodifiable = Collections.unmodifiableList(stored);
+        for (ImportListener l: listeners) {
+            l.batchStored(unmodifiable);
+        }
+    }
+
+    private void fireImportSubmitted(ImportTask task) {
+        for (ImportListener l: listeners) {
+            l.importSubmitted(task);
+        }
+    }
+
+    private void fireImportFinished(ImportTask task) {
+        for (ImportListener l: listeners) {
+            l.importFinished(task);
+        }
+    }
+
+    public static interface ImportListener {
+        /**
+         * Called on the parsing thread when a member of an archive is submitted as a task.
+         */
+        void importSubmitted(ImportTask task);
+        
+        /**
+         * Called on the thread which finished the task, when it succeeded, failed or was cancelled.
+         */
+        void importFinished(ImportTask task);
+        
+        /**
+         * Called on the writer thread once per stored batch.
+         */
+        void batchStored(List<ExhibitRecord> records);
+    }
+
+    /**
+     * The result of importing one file, which is the count of the stored records.
+     * 
+     * The task is done when the file is parsed to the end and every record of
+     * it is written or skipped. The task of an archive is done with the count of
+     * the members when all members are submitted.
+     * The task is not run; the parsing threads and the writer complete it.
+     */
+    public class ImportTask implements Future<Integer> {
+        private final File file;
+        private final Long boxId;
+        final FileDigest fileDigest;
+
+        private final CountDownLatch completion = new CountDownLatch(1);
+        private final AtomicBoolean completing = new AtomicBoolean(false);
+        private volatile Integer result = null;
+        private volatile Throwable failure = null;
+        private volatile boolean cancelled = false;
+
+        private final AtomicInteger pendingCount = new AtomicInteger(0);
+        private final AtomicInteger storedCount = new AtomicInteger(0);
+        private final AtomicInteger duplicateCount = new AtomicInteger(0);
+        private volatile boolean parseFinished = false;
+        private volatile boolean storedFile = false;
+        /** {@code true} if the task is submitted as a file and recorded to the journal */
+        volatile boolean journaled = false;
+        /** {@code true} if the task reads the members of an archive */
+        volatile boolean archive = false;
+        /** {@code true} if the task imports the file even if it is quarantined */
+        volatile boolean retrying = false;
+        private volatile boolean quarantined = false;
+        private volatile boolean unsupported = false;
+        /** the exception of parsing, which quarantines the file */
+        volatile Throwable parseFailure = null;
+        /** the line where parsing failed, or {@code 0} */
+        volatile int failedLine = 0;
+        /** the time when a parsing thread took this task, or {@code 0} if not taken */
+        private volatile long startNanos = 0;
+        /** the copy of the file, which the members of an archive share */
+        final LibraryCopy libraryCopy;
+        /** bytes of the content, which is the size of the member for a member of an archive */
+        volatile long contentLength;
+        /** the exhibits of the old version of the file keyed by their digests, used on the writer thread */
+        volatile Map<String, Long> replacedExhibits = null;
+        /** the files which the exhibits of the old version are read from */
+        volatile Set<URI> replacedFiles = Collections.emptySet();
+
+        /**
+         * @param source the identity of the file or the archive member to read
+         */
+        ImportTask(File file, FileDigest source, Long boxId, LibraryCopy libraryCopy) {
+            this.file = file;
+            this.boxId = boxId;
+            fileDigest = source;
+            this.libraryCopy = libraryCopy;
+            contentLength = source.getFileSize();
+        }
+
+        /**
+         * @return the file, or the archive file of the member
+         */
+        public File getFile() {
+            return file;
+        }
+
+        /**
+         * @return the uri of the file, or the uri of the member of an archive
+         */
+        public URI getSourceUri() {
+            return fileDigest.getFileUri();
+        }
+
+        public Long getBoxId() {
+            return boxId;
+        }
+
+        /**
+         * @return {@code true} if nothing was imported because the same content is in the library.
+         */
+        public boolean isDuplicate() {
+            return storedFile || storedCount.get() == 0 && duplicateCount.get() > 0;
+        }
+
+        /**
+         * @return the count of records which were not imported because the same content is in the library.
+         */
+        public int getDuplicateCount() {
+            return duplicateCount.get();
+        }
+
+        /**
+         * @return {@code true} if the file is not read because it failed before and its content is not changed.
+         */
+        public boolean isQuarantined() {
+            return quarantined;
+        }
+
+        /**
+         * Completes this task without reading because the file is imported already.
+         */
+        void skipFile() {
+            storedFile = true;
+            set(0);
+        }
+
+        /**
+         * @return {@code true} if the file is not imported because it is not a sequence file.
+         */
+        public boolean isUnsupported() {
+            return unsupported;
+        }
+
+        /**
+         * Completes this task because the sniffed type is not a sequence file.
+         */
+        void skipUnsupported() {
+            unsupported = true;
+            set(0);
+        }
+
+        /**
+         * Completes this task without reading because the file is known to fail.
+         */
+        void skipQuarantined() {
+            quarantined = true;
+            set(0);
+        }
+
+        /**
+         * Fails this task and quarantines the file.
+         */
+        void parseFailed(Throwable cause, int lineNumber) {
+            parseFailure = cause;
+            failedLine = lineNumber;
+            fail(cause);
+        }
+
+        void complete(int count) {
+            set(count);
+        }
+
+        /**
+         * Starts measuring the time of this task, which does not include the time waiting in the queue.
+         */
+        void started() {
+            startNanos = System.nanoTime();
+        }
+
+        void recordParsed() {
+            pendingCount.incrementAndGet();
+        }
+
+        void parseFinished() {
+            parseFinished = true;
+            completeIfFinished();
+        }
+
+        void recordStored() {
+            storedCount.incrementAndGet();
+            recordFinished();
+        }
+
+        void recordSkipped() {
+            duplicateCount.incrementAndGet();
+            recordFinished();
+        }
+
+        void recordFailed(Throwable cause) {
+            fail(cause);
+            recordFinished();
+        }
+
+        void recordFinished() {
+            pendingCount.decrementAndGet();
+            completeIfFinished();
+        }
+
+        private void completeIfFinished() {
+            if (parseFinished && pendingCount.get() == 0) {
+                set(storedCount.get());
+            }
+        }
+
+        void fail(Throwable cause) {
+            finish(null, cause, false);
+        }
+
+        private void set(Integer count) {
+            finish(count, null, false);
+        }
+
+        /**
+         * Completes this task by the first call.
+         *
+         * @return {@code false} if this task is completed already
+         */
+        private boolean finish(Integer count, Throwable cause, boolean cancel) {
+            if (!completing.compareAndSet(false, true)) {
+                return false;
+            }
+            result = count;
+            failure = cause;
+            cancelled = cancel;
+            completion.countDown();
+            done();
+            return true;
+        }
+
+        /**
+         * Cancels this task. The parsing of it stops at the next record, and its records
+         * waiting for the writer are not written.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return finish(null, null, true);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public boolean isDone() {
+            return completion.getCount() == 0;
+        }
+
+        @Override
+        public Integer get() throws InterruptedException, ExecutionException {
+            completion.await();
+            return report();
+        }
+
+        @Override
+        public Integer get(long timeout, TimeUnit unit)
+                throws InterruptedException, ExecutionException, TimeoutException {
+            if (!completion.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return report();
+        }
+
+        private Integer report() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+
+        private void done() {
+            long start = startNanos;
+            if (!archive && start != 0) {
+                metrics.fileFinished(getSourceUri(), System.nanoTime() - start, Math.max(contentLength, 0));
+            }
+            int state = finishedState();
+            recordJournal(this, state);
+
+            if (state == ImportJournal.STATE_FAILED && parseFailure != null) {
+                quarantine(this, parseFailure);
+            }
+            else if (state == ImportJournal.STATE_STORED && retrying) {
+                releaseFromQuarantine(this);
+            }
+            fireImportFinished(this);
+        }
+
+        private int finishedState() {
+            if (isCancelled()) {
+                return ImportJournal.STATE_CANCELLED;
+            }
+            try {
+                get();
+                return ImportJournal.STATE_STORED;
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return ImportJournal.STATE_FAILED;
+            }
+            catch (ExecutionException e) {
+                return ImportJournal.STATE_FAILED;
+            }
+        }
+    }
+
+    /**
+     * The file copied into the file store, which is copied once by the first record stored.
+     * Used only on the writer thread.
+     */
+    private static class LibraryCopy {
+        private final File file;
+        private File copy = null;
+        private IOException failure = null;
+
+        public LibraryCopy(File file) {
+            this.file = file;
+        }
+
+        /**
+         * @return the copy, or the file itself if it is in the file store
+         * @throws IOException if the file is not copied, which is thrown again for the later records
+         */
+        File store(LibraryFileStore fileStore) throws IOException {
+            if (copy == null && failure == null) {
+                try {
+                    copy = fileStore.store(file);
+                }
+                catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return copy;
+        }
+    }
+
+    /**
+     * A record which is not written because of the same content as a stored exhibit or as
+     * the first record of the batch.
+     */
+    private static class Duplicate {
+        final ParsedRecord parsed;
+        private final Long storedId;
+        private final ParsedRecord first;
+
+        public Duplicate(ParsedRecord parsed, Long storedId, ParsedRecord first) {
+            this.parsed = parsed;
+            this.storedId = storedId;
+            this.first = first;
+        }
+
+        /**
+         * @return the exhibit of the same content, or {@code null} if the first record of the batch failed
+         */
+        Long getExhibitId() {
+            return storedId != null ? storedId : first.record.getId();
+        }
+    }
+
+    /**
+     * A record waiting for the writer.
+     */
+    private static class ParsedRecord {
+        final ImportTask task;
+        final ExhibitRecord record;
+        final FileDigest digest;
+        /** the exhibit which this record replaces, set on the writer thread */
+        Long replacedId = null;
+
+        public ParsedRecord(ImportTask task, ExhibitRecord record, FileDigest digest) {
+            this.task = task;
+            this.record = record;
+            this.digest = digest;
+        }
+    }
+
+    /**
+     * Checks the task is not imported yet, sniffs the type of it and parses the records of it.
+     * 
+     * A file which is not a sequence file is skipped without parsing, and an archive is
+     * imported by its members. The sniffed format is passed to the parser.
+     * 
+     * @param source the stream of the content which supports mark, or {@code null} to open the file of the task
+     */
+    private void parseTask(ImportTask task, InputStream source) {
+        SequenceRecordReader reader = null;
+        try {
+            ExhibitRecordStore store = recordStore;
+            if (store != null) {
+                Map<Long, FileDigest> storedDigests = store.findStoredDigests(task.getSourceUri());
+                if (isStored(storedDigests.values(), task.fileDigest)) {
+                    skipStoredFile(task, new ArrayList<Long>(storedDigests.keySet()));
+                    return;
+                }
+                else if (!storedDigests.isEmpty()) {
+                    task.replacedFiles = store.findExhibitFiles(storedDigests.keySet());
+                    task.replacedExhibits = replacedExhibitsOf(storedDigests);
+                }
+            }
+            ImportQuarantine quarantine = this.quarantine;
+            if (quarantine != null && !task.retrying && quarantine.isQuarantined(task.fileDigest)) {
+                task.skipQuarantined();
+                return;
+            }
+
+            SequenceFileSniffer.Type type =
+                    source != null ? SequenceFileSniffer.sniff(source) : SequenceFileSniffer.sniff(task.file);
+
+            if (source == null && SequenceFileArchives.isArchive(task.file, type)) {
+                task.archive = true;
+                importArchive(task, type);
+                return;
+            }
+            else if (source == null && store != null && (type.isSequence() || type.isCompressed())
+                    && isContentStored(store, task)) {
+                return;
+            }
+
+            if (type.isCompressed()) {
+                // the format of the content is told by each record
+                reader = source != null
+                        ? parser.open(SequenceFileArchives.decompress(source, type), task.getSourceUri())
+                        : parser.open(task.file, type);
+            }
+            else if (!type.isSequence()) {
+                task.skipUnsupported();
+                return;
+            }
+            else if (source != null) {
+                reader = parser.open(source, task.getSourceUri(), type.format());
+            }
+            else if (headerScan) {
+                reader = parser.openHeaderScan(task.file, type);
+            }
+            else {
+                reader = parser.open(task.file, type);
+            }
+            parseRecords(task, reader);
+            if (task.replacedExhibits != null) {
+                finishReplacing(task);
+            }
+        }
+        catch (SQLException e) {
+            task.fail(e);
+        }
+        catch (InterruptedIOException e) {
+            // stopped while waiting for the writer, which is not a failure of the file
+            task.fail(e);
+        }
+        catch (ParseException e) {
+            task.parseFailed(e, e.getErrorOffset());
+        }
+        catch (Exception e) {
+            task.parseFailed(e, reader == null ? 0 : reader.getLineNumber());
+        }
+        finally {
+            task.parseFinished();
+        }
+    }
+
+    /**
+     * Hashes the whole file, and skips it if a file of the same content is imported from another
+     * location. The hash is kept by the digests of the records of the file.
+     *
+     * @return {@code true} if the file is skipped
+     */
+    private boolean isContentStored(ExhibitRecordStore store, ImportTask task) throws SQLException {
+        FileDigest file = task.fileDigest;
+        file.setContentDigest(ImportQuarantine.contentDigest(file.getFileUri()));
+        // a new version of the file replaces the old one even if the content is the same
+        if (file.getContentDigest() == null || task.replacedExhibits != null) {
+            return false;
+        }
+        List<Long> exhibitIds = store.findExhibitIdsByContent(file.getFileSize(), file.getContentDigest());
+        if (exhibitIds.isEmpty()) {
+            return false;
+        }
+        logger.debug("{} is a copy of a file imported already", file.getFileUri());
+        skipStoredFile(task, exhibitIds);
+        return true;
+    }
+
+    /**
+     * @return {@code true} if the exhibits are imported from the file, and all of them are imported
+     *         from the same size and modified time.
+     */
+    private static boolean isStored(Collection<FileDigest> storedDigests, FileDigest file) {
+        if (storedDigests.isEmpty()) {
+            return false;
+        }
+        for (FileDigest stored: storedDigests) {
+            if (stored.getFileSize() != file.getFileSize() || stored.getLastModified() != file.getLastModified()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Map<String, Long> replacedExhibitsOf(Map<Long, FileDigest> storedDigests) {
+        Map<String, Long> exhibits = new HashMap<String, Long>();
+        for (Map.Entry<Long, FileDigest> entry: storedDigests.entrySet()) {
+            exhibits.put(entry.getValue().getDigest(), entry.getKey());
+        }
+        return exhibits;
+    }
+
+    /**
+     * Deletes the exhibits of the old version of the file on the writer thread, after the records
+     * of the new version are written. The task completes after them.
+     */
+    private void finishReplacing(final ImportTask task) {
+        // keeps the end of the parsing from completing the task
+        task.recordParsed();
+        try {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeParsedRecords(true);
+                        // the old version is kept if the new one failed
+                        if (!task.isDone()) {
+                            deleteReplaced(task.fileDigest, false, Collections.<URI>emptySet(), task.replacedFiles);
+                        }
+                    }
+                    catch (RuntimeException e) {
+                        logger.error("fail to store parsed sequences", e);
+                        failParsedRecords(e);
+                    }
+                    finally {
+                        task.recordFinished();
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            task.recordFinished();
+        }
+    }
+
+    /**
+     * Deletes the exhibits of the members which are not in the archive any more, on the writer
+     * thread after the records of the members are written.
+     *
+     * @param memberUris the members in the archive, whose exhibits are replaced by their own tasks
+     */
+    private void finishArchive(final ImportTask task, final Set<URI> memberUris) {
+        try {
+            writeExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeParsedRecords(true);
+                        deleteReplaced(task.fileDigest, true, memberUris, Collections.<URI>emptySet());
+                    }
+                    catch (RuntimeException e) {
+                        logger.error("fail to store parsed sequences", e);
+                        failParsedRecords(e);
+                    }
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            logger.info("old members of {} are not deleted because the import is stopped", task.getSourceUri());
+        }
+    }
+
+    /**
+     * Deletes the exhibits of the old version of the file, and the copies which no exhibit reads.
+     *
+     * @param members {@code true} to delete the exhibits of the members of the archive
+     * @param keptUris the locations whose exhibits are not deleted
+     * @param replacedFiles the files which the exhibits of the old version were read from
+     */
+    private void deleteReplaced(FileDigest file, boolean members, Set<URI> keptUris, Set<URI> replacedFiles) {
+        ExhibitRecordStore store = recordStore;
+        if (store == null) {
+            return;
+        }
+        Set<URI> unreferred = new HashSet<URI>();
+        try {
+            List<Long> replaced = new ArrayList<Long>();
+            for (Map.Entry<Long, URI> entry: store.findReplacedExhibits(file, members).entrySet()) {
+                if (!keptUris.contains(entry.getValue())) {
+                    replaced.add(entry.getKey());
+                }
+            }
+            if (!replaced.isEmpty()) {
+                logger.debug("delete {} exhibits of the old version of {}", replaced.size(), file.getFileUri());
+                unreferred.addAll(store.deleteAll(replaced));
+            }
+            unreferred.addAll(store.findUnreferredFiles(replacedFiles));
+        }
+        catch (SQLException e) {
+            logger.warn("fail to delete the old version of " + file.getFileUri(), e);
+        }
+
+        LibraryFileDeleter fileDeleter = this.fileDeleter;
+        if (fileDeleter != null && !unreferred.isEmpty()) {
+            fileDeleter.deleteLater(unreferred);
+        }
+    }
+
+    private void parseRecords(ImportTask task, SequenceRecordReader reader) throws IOException, ParseException {
+        FileDigest file = task.fileDigest;
+        long start = System.nanoTime();
+        try {
+            ExhibitRecord record;
+            while (!task.isCancelled() && (record = reader.next()) != null) {
+                FileDigest digest = new FileDigest(file.getFileUri(), file.getFileSize(), file.getLastModified());
+                digest.setDigest(reader.getRecordDigest());
+                digest.setContentDigest(file.getContentDigest());
+
+                task.recordParsed();
+                enqueueWrite(new ParsedRecord(task, record, digest));
+            }
+            if (reader.getRecordCount() == 0) {
+                throw new ParseException("no sequence record", reader.getLineNumber());
+            }
+        }
+        finally {
+            reader.close();
+
+            long readNanos = reader.getReadNanos();
+            metrics.addRead(readNanos);
+            metrics.addParse(System.nanoTime() - start - readNanos);
+        }
+    }
+
+    /**
+     * A command of the parsing threads, ordered by the priority and then by the submission.
+     */
+    private abstract class PrioritizedCommand implements Runnable, Comparable<PrioritizedCommand> {
+        final Priority priority;
+        private final long sequence = commandSequence.getAndIncrement();
+
+        public PrioritizedCommand(Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public int compareTo(PrioritizedCommand o) {
+            int order = priority.compareTo(o.priority);
+            if (order != 0) {
+                return order;
+            }
+            return sequence < o.sequence ? -1 : sequence > o.sequence ? 1 : 0;
+        }
+    }
+
+    private class ParseCommand extends PrioritizedCommand {
+        private final ImportTask task;
+
+        public ParseCommand(ImportTask task, Priority priority) {
+            super(priority);
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (priority == Priority.BULK) {
+                bulkQueue.release();
+            }
+            if (task.isDone()) {
+                return;
+            }
+            task.started();
+            recordJournal(task, ImportJournal.STATE_PARSING);
+            parseTask(task, null);
+        }
+    }
+
+    /**
+     * Reads the members of an archive in one pass and imports each member as a task.
+     */
+    private void importArchive(ImportTask task, SequenceFileSniffer.Type type) throws IOException {
+        int count = 0;
+        Set<URI> memberUris = new HashSet<URI>();
+        ArchiveInputStream archive = SequenceFileArchives.openArchive(task.file, type);
+        try {
+            ArchiveEntry entry;
+            while (!task.isCancelled() && (entry = archive.getNextEntry()) != null) {
+                if (!SequenceFileArchives.isImportable(entry)) {
+                    continue;
+                }
+                // a changed archive is told by its own size and modified time
+                URI entryUri = SequenceFileArchives.entryUri(task.file, entry.getName());
+                memberUris.add(entryUri);
+                FileDigest source = new FileDigest(entryUri,
+                        task.fileDigest.getFileSize(), task.fileDigest.getLastModified());
+                ImportTask member = new ImportTask(task.file, source, task.boxId, task.libraryCopy);
+                member.contentLength = entry.getSize();
+                member.retrying = task.retrying;
+
+                fireImportSubmitted(member);
+                count++;
+                member.started();
+                parseTask(member, new BufferedInputStream(new EntryInputStream(archive),
+                        SequenceFileSniffer.SNIFF_LENGTH));
+            }
+        }
+        finally {
+            archive.close();
+        }
+        if (!task.isCancelled()) {
+            finishArchive(task, memberUris);
+        }
+        task.complete(count);
+    }
+
+    /**
+     * A member of an archive, which is not closed by the reader.
+     */
+    private static class EntryInputStream extends FilterInputStream {
+        public EntryInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public void close() {
+            // the archive is closed after all members are read
+        }
+    }
+
+    private class WriteCommand implements Runnable {
+        private final boolean flush;
+
+        public WriteCommand(boolean flush) {
+            this.flush = flush;
+        }
+
+        @Override
+        public void run() {
+            if (flush) {
+                flushScheduled.set(false);
+            }
+            else {
+                batchScheduled.set(false);
+            }
+
+            try {
+                writeParsedRecords(flush);
+            }
+            catch (RuntimeException e) {
+                logger.error("fail to store parsed sequences", e);
+                failParsedRecords(e);
+            }
+        }
+    }
+}
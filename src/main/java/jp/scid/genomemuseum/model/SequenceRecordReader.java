@@ -0,0 +1,219 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.text.ParseException;
+
+import jp.scid.genomemuseum.model.SequenceFileParser.LineSource;
+
+/**
+ * Reads concatenated records of a GenBank or FASTA file one at a time.
+ *
+ * Only the record being parsed is kept in memory. Each record has the byte offset
+ * and the length in the file, so that it can be read again with
+ * {@link #openRecord(File, long, long)}.
+ */
+public class SequenceRecordReader implements Closeable {
+    private final SequenceFileParser parser;
+    private final LineSource lines;
+    private final URI fileUri;
+    private final SequenceFileFormat format;
+
+    private String recordDigest = null;
+    private int recordCount = 0;
+
+    SequenceRecordReader(SequenceFileParser parser, InputStream source, URI fileUri, MessageDigest digest) {
+        this(parser, new LineSource(source, digest), fileUri, SequenceFileFormat.UNKNOWN);
+    }
+
+    /**
+     * @param format the format of the records, or {@code UNKNOWN} to tell it by each record
+     */
+    SequenceRecordReader(SequenceFileParser parser, LineSource lines, URI fileUri, SequenceFileFormat format) {
+        this.parser = parser;
+        this.lines = lines;
+        this.fileUri = fileUri;
+        this.format = format;
+    }
+
+    /**
+     * @return the next record, or {@code null} if no record remains.
+     */
+    public ExhibitRecord next() throws IOException, ParseException {
+        lines.skipEmpty();
+        if (lines.peek() == null) {
+            return null;
+        }
+
+        MessageDigest digest = lines.getDigest();
+        if (digest != null) {
+            digest.reset();
+        }
+        long offset = lines.position();
+        String firstLine = lines.next();
+
+        ExhibitRecord record = parser.parseRecord(format, firstLine, lines);
+        record.setFileUri(fileUri);
+        record.setFileOffset(offset);
+        record.setFileLength(lines.position() - offset);
+
+        recordDigest = digest == null ? null : FileDigest.toHexString(digest.digest());
+        recordCount++;
+        return record;
+    }
+
+    /**
+     * @return hex string of the content hash of the last record, or {@code null} if it is not computed.
+     */
+    public String getRecordDigest() {
+        return recordDigest;
+    }
+
+    /**
+     * @return the count of records read
+     */
+    public int getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * @return nanoseconds spent reading the file content
+     */
+    public long getReadNanos() {
+        return lines.readNanos();
+    }
+
+    /**
+     * @return the line number of the last line read
+     */
+    public int getLineNumber() {
+        return lines.lineNumber();
+    }
+
+    @Override
+    public void close() throws IOException {
+        lines.close();
+    }
+
+    /**
+     * Opens the bytes of a record in the file, or the member of an archive.
+     *
+     * A compressed content is decompressed and skipped to the offset,
+     * because it cannot seek.
+     *
+     * @param length the byte length of the record, or {@code 0} to read to the end of the file.
+     * @see SequenceFileArchives#open(URI)
+     */
+    public static InputStream openRecord(URI uri, long offset, long length) throws IOException {
+        File file = SequenceFileArchives.toFile(uri);
+        if (uri.getFragment() == null && !SequenceFileSniffer.sniff(file).isCompressed()) {
+            return openRecord(file, offset, length);
+        }
+
+        InputStream stream = SequenceFileArchives.open(uri);
+        try {
+            skipFully(stream, offset);
+        }
+        catch (IOException e) {
+            stream.close();
+            throw e;
+        }
+        if (length <= 0) {
+            return stream;
+        }
+        return new BoundedInputStream(stream, length);
+    }
+
+    private static void skipFully(InputStream stream, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = stream.skip(remaining);
+            if (skipped <= 0) {
+                if (stream.read() < 0) {
+                    throw new IOException("unexpected end of the content");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Opens the bytes of a record by seeking to its offset.
+     *
+     * @param length the byte length of the record, or {@code 0} to read to the end of the file.
+     */
+    public static InputStream openRecord(File file, long offset, long length) throws IOException {
+        RandomAccessFile source = new RandomAccessFile(file, "r");
+        try {
+            source.seek(offset);
+        }
+        catch (IOException e) {
+            source.close();
+            throw e;
+        }
+
+        InputStream stream = Channels.newInputStream(source.getChannel());
+        if (length <= 0) {
+            return stream;
+        }
+        return new BoundedInputStream(stream, length);
+    }
+
+    private static class BoundedInputStream extends FilterInputStream {
+        private long remaining;
+
+        public BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = super.read(b, off, (int) Math.min(len, remaining));
+            if (read > 0) {
+                remaining -= read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Condition of a smart box, which is rules matched by all or any of them.
+ *
+ * The condition is compiled to a parameterized {@code WHERE} clause of {@code MUSEUM_EXHIBIT}.
+ * Rules which compare a whole text or the head of it, and the rules of numbers and dates,
+ * compare the column as it is so that its index is used. The other rules of texts ignore case.
+ */
+public class SmartBoxCondition {
+    public static enum ValueType {
+        TEXT, NUMBER, DATE;
+    }
+
+    public static enum Field {
+        NAME("name", "NAME", ValueType.TEXT),
+        ACCESSION("accession", "ACCESSION", ValueType.TEXT),
+        NAMESPACE("namespace", "NAMESPACE", ValueType.TEXT),
+        DEFINITION("definition", "DEFINITION", ValueType.TEXT),
+        SOURCE_TEXT("sourceText", "SOURCE_TEXT", ValueType.TEXT),
+        ORGANISM("organism", "ORGANISM", ValueType.TEXT),
+        MOLECULE_TYPE("moleculeType", "MOLECULE_TYPE", ValueType.TEXT),
+        SEQUENCE_LENGTH("sequenceLength", "SEQUENCE_LENGTH", ValueType.NUMBER),
+        VERSION("version", "VERSION", ValueType.NUMBER),
+        DATE("date", "DATE", ValueType.DATE),
+        ;
+
+        private final String identifier;
+        private final String column;
+        private final ValueType valueType;
+
+        private Field(String identifier, String column, ValueType valueType) {
+            this.identifier = identifier;
+            this.column = column;
+            this.valueType = valueType;
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public ValueType getValueType() {
+            return valueType;
+        }
+
+        /**
+         * @return the value of the text for the column
+         * @throws IllegalArgumentException if the text is not a number or a date for the field.
+         */
+        Object parseValue(String text) {
+            switch (valueType) {
+            case NUMBER:
+                try {
+                    return Integer.valueOf(text.trim());
+                }
+                catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(identifier + " must be a number: " + text);
+                }
+            case DATE:
+                try {
+                    return Date.valueOf(text.trim());
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(identifier + " must be a date of yyyy-mm-dd: " + text);
+                }
+            default:
+                return text;
+            }
+        }
+
+        public static Field fromIdentifier(String identifier) {
+            for (Field field: values()) {
+                if (field.identifier.equals(identifier)) {
+                    return field;
+                }
+            }
+            throw new IllegalArgumentException("unknown field " + identifier);
+        }
+    }
+
+    public static enum Operator {
+        CONTAINS("contains", ValueType.TEXT) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add("%" + ExhibitRecordStore.escapeLike(value.toLowerCase(Locale.ENGLISH)) + "%");
+                return "LOWER(" + field.column + ") LIKE ? ESCAPE '\\'";
+            }
+        },
+        NOT_CONTAINS("notContains", ValueType.TEXT) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add("%" + ExhibitRecordStore.escapeLike(value.toLowerCase(Locale.ENGLISH)) + "%");
+                return "LOWER(" + field.column + ") NOT LIKE ? ESCAPE '\\'";
+            }
+        },
+        STARTS_WITH("startsWith", ValueType.TEXT) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add(ExhibitRecordStore.escapeLike(value) + "%");
+                return field.column + " LIKE ? ESCAPE '\\'";
+            }
+        },
+        ENDS_WITH("endsWith", ValueType.TEXT) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add("%" + ExhibitRecordStore.escapeLike(value.toLowerCase(Locale.ENGLISH)));
+                return "LOWER(" + field.column + ") LIKE ? ESCAPE '\\'";
+            }
+        },
+        EQUALS("equals", ValueType.TEXT, ValueType.NUMBER, ValueType.DATE) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add(field.parseValue(value));
+                return field.column + " = ?";
+            }
+        },
+        NOT_EQUALS("notEquals", ValueType.TEXT, ValueType.NUMBER, ValueType.DATE) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add(field.parseValue(value));
+                return field.column + " <> ?";
+            }
+        },
+        GREATER_THAN("greaterThan", ValueType.NUMBER, ValueType.DATE) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add(field.parseValue(value));
+                return field.column + " > ?";
+            }
+        },
+        LESS_THAN("lessThan", ValueType.NUMBER, ValueType.DATE) {
+            @Override
+            String compile(Field field, String value, List<Object> parameters) {
+                parameters.add(field.parseValue(value));
+                return field.column + " < ?";
+            }
+        },
+        ;
+
+        private final String identifier;
+        private final List<ValueType> valueTypes;
+
+        private Operator(String identifier, ValueType... valueTypes) {
+            this.identifier = identifier;
+            this.valueTypes = Arrays.asList(valueTypes);
+        }
+
+        public String getIdentifier() {
+            return identifier;
+        }
+
+        public boolean appliesTo(Field field) {
+            return valueTypes.contains(field.getValueType());
+        }
+
+        abstract String compile(Field field, String value, List<Object> parameters);
+
+        public static Operator fromIdentifier(String identifier) {
+            for (Operator operator: values()) {
+                if (operator.identifier.equals(identifier)) {
+                    return operator;
+                }
+            }
+            throw new IllegalArgumentException("unknown operator " + identifier);
+        }
+    }
+
+    /**
+     * A comparison of a field with a value.
+     */
+    public static class Rule {
+        private final Field field;
+        private final Operator operator;
+        private final String value;
+
+        /**
+         * @throws IllegalArgumentException if the operator cannot compare the field,
+         *         or the value is not a number or a date for the field.
+         */
+        public Rule(Field field, Operator operator, String value) {
+            if (field == null) throw new IllegalArgumentException("field must not be null");
+            if (operator == null) throw new IllegalArgumentException("operator must not be null");
+            if (value == null) throw new IllegalArgumentException("value must not be null");
+            if (!operator.appliesTo(field))
+                throw new IllegalArgumentException(operator.getIdentifier() + " cannot compare " + field.getIdentifier());
+            // the number or the date is parsed when compiled
+            field.parseValue(value);
+
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        public Field getField() {
+            return field;
+        }
+
+        public Operator getOperator() {
+            return operator;
+        }
+
+        public String getValue() {
+            return value;
+        }
+
+        String compile(List<Object> parameters) {
+            return operator.compile(field, value, parameters);
+        }
+
+        @Override
+        public String toString() {
+            return field.getIdentifier() + " " + operator.getIdentifier() + " " + value;
+        }
+    }
+
+    private final boolean matchAll;
+    private final List<Rule> rules;
+
+    /**
+     * Creates the condition which matches all exhibits.
+     */
+    public SmartBoxCondition() {
+        this(true, Collections.<Rule>emptyList());
+    }
+
+    /**
+     * @param matchAll {@code true} to match the exhibits which match all rules,
+     *        {@code false} to match the exhibits which match any of the rules.
+     */
+    public SmartBoxCondition(boolean matchAll, List<Rule> rules) {
+        if (rules == null) throw new IllegalArgumentException("rules must not be null");
+
+        this.matchAll = matchAll;
+        this.rules = Collections.unmodifiableList(new ArrayList<Rule>(rules));
+    }
+
+    public boolean isMatchAll() {
+        return matchAll;
+    }
+
+    public List<Rule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Compiles the rules to the condition of a {@code WHERE} clause.
+     *
+     * @param parameters the list which the values of the parameters of the clause are added to
+     * @return the condition, which is {@code TRUE} if there is no rule.
+     */
+    public String compile(List<Object> parameters) {
+        if (rules.isEmpty()) {
+            return "TRUE";
+        }
+
+        StringBuilder clause = new StringBuilder();
+        for (Rule rule: rules) {
+            if (clause.length() > 0) {
+                clause.append(matchAll ? " AND " : " OR ");
+            }
+            clause.append('(').append(rule.compile(parameters)).append(')');
+        }
+        return clause.toString();
+    }
+
+    @Override
+    public String toString() {
+        return (matchAll ? "all of " : "any of ") + rules;
+    }
+}
@@ -0,0 +1,197 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import jp.scid.genomemuseum.model.SmartBoxCondition.Field;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Operator;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Rule;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the conditions of the smart boxes in {@code SMART_BOX_CONDITION} and {@code SMART_BOX_RULE}.
+ *
+ * A condition is read once and kept until it is saved again.
+ */
+public class SmartBoxStore {
+    private final static Logger logger = LoggerFactory.getLogger(SmartBoxStore.class);
+
+    final static String FIND_CONDITION_SQL = "SELECT match_all FROM SMART_BOX_CONDITION WHERE box_id = ?";
+    final static String FIND_RULES_SQL =
+            "SELECT field, operator, value FROM SMART_BOX_RULE WHERE box_id = ? ORDER BY position";
+    final static String MERGE_CONDITION_SQL =
+            "MERGE INTO SMART_BOX_CONDITION (box_id, match_all) KEY (box_id) VALUES (?, ?)";
+    final static String DELETE_RULES_SQL = "DELETE FROM SMART_BOX_RULE WHERE box_id = ?";
+    final static String INSERT_RULE_SQL =
+            "INSERT INTO SMART_BOX_RULE (box_id, position, field, operator, value) VALUES (?, ?, ?, ?, ?)";
+
+    private final DataSource dataSource;
+
+    /** conditions read, and {@code null} for the boxes which are not smart boxes */
+    private final Map<Long, SmartBoxCondition> conditions = new HashMap<Long, SmartBoxCondition>();
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+    public SmartBoxStore(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+        this.dataSource = dataSource;
+    }
+
+    /**
+     * @return the condition of the box, or {@code null} if the box is not a smart box.
+     */
+    public synchronized SmartBoxCondition findCondition(long boxId) throws SQLException {
+        if (conditions.containsKey(boxId)) {
+            return conditions.get(boxId);
+        }
+
+        SmartBoxCondition condition;
+        Connection connection = dataSource.getConnection();
+        try {
+            Boolean matchAll = findMatchAll(connection, boxId);
+            condition = matchAll == null ? null : new SmartBoxCondition(matchAll, findRules(connection, boxId));
+        }
+        finally {
+            connection.close();
+        }
+        conditions.put(boxId, condition);
+        return condition;
+    }
+
+    private static Boolean findMatchAll(Connection connection, long boxId) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(FIND_CONDITION_SQL);
+        try {
+            statement.setLong(1, boxId);
+            ResultSet result = statement.executeQuery();
+            try {
+                return result.next() ? result.getBoolean(1) : null;
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    private static List<Rule> findRules(Connection connection, long boxId) throws SQLException {
+        List<Rule> rules = new ArrayList<Rule>();
+        PreparedStatement statement = connection.prepareStatement(FIND_RULES_SQL);
+        try {
+            statement.setLong(1, boxId);
+            ResultSet result = statement.executeQuery();
+            try {
+                while (result.next()) {
+                    try {
+                        rules.add(new Rule(Field.fromIdentifier(result.getString(1)),
+                                Operator.fromIdentifier(result.getString(2)), result.getString(3)));
+                    }
+                    catch (IllegalArgumentException e) {
+                        logger.warn("ignore the invalid rule of the smart box {}: {}", boxId, e.getMessage());
+                    }
+                }
+            }
+            finally {
+                result.close();
+            }
+        }
+        finally {
+            statement.close();
+        }
+        return rules;
+    }
+
+    /**
+     * Saves the condition of the box, which becomes a smart box if it is not.
+     */
+    public void saveCondition(long boxId, SmartBoxCondition condition) throws SQLException {
+        if (condition == null) throw new IllegalArgumentException("condition must not be null");
+
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                PreparedStatement merge = connection.prepareStatement(MERGE_CONDITION_SQL);
+                try {
+                    merge.setLong(1, boxId);
+                    merge.setBoolean(2, condition.isMatchAll());
+                    merge.executeUpdate();
+                }
+                finally {
+                    merge.close();
+                }
+
+                PreparedStatement delete = connection.prepareStatement(DELETE_RULES_SQL);
+                try {
+                    delete.setLong(1, boxId);
+                    delete.executeUpdate();
+                }
+                finally {
+                    delete.close();
+                }
+
+                PreparedStatement insert = connection.prepareStatement(INSERT_RULE_SQL);
+                try {
+                    int position = 0;
+                    for (Rule rule: condition.getRules()) {
+                        insert.setLong(1, boxId);
+                        insert.setInt(2, position++);
+                        insert.setString(3, rule.getField().getIdentifier());
+                        insert.setString(4, rule.getOperator().getIdentifier());
+                        insert.setString(5, rule.getValue());
+                        insert.addBatch();
+                    }
+                    insert.executeBatch();
+                }
+                finally {
+                    insert.close();
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        synchronized (this) {
+            conditions.put(boxId, condition);
+        }
+        fireStateChanged();
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    private void fireStateChanged() {
+        ChangeEvent event = new ChangeEvent(this);
+        for (ChangeListener listener: listeners) {
+            listener.stateChanged(event);
+        }
+    }
+}
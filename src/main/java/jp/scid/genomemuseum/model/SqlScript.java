@@ -0,0 +1,111 @@
+package jp.scid.genomemuseum.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQL statements read from a script resource.
+ *
+ * Statements are separated by {@code ;} and lines starting with {@code --} are comments.
+ */
+public class SqlScript {
+    private final static Charset CHARSET = Charset.forName("UTF-8");
+
+    private final String name;
+    private final List<String> statements;
+
+    public SqlScript(String name, List<String> statements) {
+        this.name = name;
+        this.statements = Collections.unmodifiableList(new ArrayList<String>(statements));
+    }
+
+    public static SqlScript fromResource(Class<?> base, String resourceName) throws IOException {
+        InputStream source = base.getResourceAsStream(resourceName);
+        if (source == null) {
+            throw new IOException("script not found: " + resourceName);
+        }
+        try {
+            return new SqlScript(resourceName, parse(new InputStreamReader(source, CHARSET)));
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    static List<String> parse(Reader source) throws IOException {
+        List<String> statements = new ArrayList<String>();
+        StringBuilder text = new StringBuilder();
+        StringBuilder line = new StringBuilder();
+
+        int c;
+        while ((c = source.read()) >= 0) {
+            if (c != '\n') {
+                line.append((char) c);
+                continue;
+            }
+            appendLine(text, line, statements);
+        }
+        appendLine(text, line, statements);
+
+        if (text.toString().trim().length() > 0) {
+            statements.add(text.toString().trim());
+        }
+        return statements;
+    }
+
+    private static void appendLine(StringBuilder text, StringBuilder line, List<String> statements) {
+        String lineText = line.toString();
+        line.setLength(0);
+
+        if (lineText.trim().startsWith("--")) {
+            return;
+        }
+
+        int start = 0;
+        int end;
+        while ((end = lineText.indexOf(';', start)) >= 0) {
+            text.append(lineText, start, end);
+            String statement = text.toString().trim();
+            if (!statement.isEmpty()) {
+                statements.add(statement);
+            }
+            text.setLength(0);
+            start = end + 1;
+        }
+        text.append(lineText, start, lineText.length()).append('\n');
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getStatements() {
+        return statements;
+    }
+
+    public void execute(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            for (String sql: statements) {
+                statement.execute(sql);
+            }
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SqlScript: " + name;
+    }
+}
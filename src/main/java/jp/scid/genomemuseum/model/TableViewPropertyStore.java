@@ -0,0 +1,368 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the columns, the order and the selected rows of the table of each box in {@code TABLE_VIEW_PROPERTY}.
+ *
+ * Properties are saved in memory at once, and written behind on a background thread
+ * {@link #WRITE_DELAY} milliseconds after the first change, so a property changed many times
+ * is written once. The property of a box is referred by {@code BOX_TREE_NODE.table_property_id},
+ * and the property of the library, which is not a box, is kept as the property of the id {@code 0}.
+ */
+public class TableViewPropertyStore {
+    private final static Logger logger = LoggerFactory.getLogger(TableViewPropertyStore.class);
+
+    /** the id of the box of the library */
+    public final static long LIBRARY_BOX_ID = 0;
+    /** milliseconds from a change to the write */
+    public final static long WRITE_DELAY = 2000;
+
+    final static String FIND_LIBRARY_PROPERTY_SQL = "SELECT visibled_columns, order_statement, selected_rows "
+            + "FROM TABLE_VIEW_PROPERTY WHERE id = ?";
+    final static String FIND_BOX_PROPERTY_SQL = "SELECT P.visibled_columns, P.order_statement, P.selected_rows "
+            + "FROM BOX_TREE_NODE B JOIN TABLE_VIEW_PROPERTY P ON P.id = B.table_property_id WHERE B.id = ?";
+    final static String MERGE_LIBRARY_PROPERTY_SQL = "MERGE INTO TABLE_VIEW_PROPERTY "
+            + "(id, visibled_columns, order_statement, selected_rows) KEY (id) VALUES (?, ?, ?, ?)";
+    final static String UPDATE_BOX_PROPERTY_SQL = "UPDATE TABLE_VIEW_PROPERTY "
+            + "SET visibled_columns = ?, order_statement = ?, selected_rows = ? "
+            + "WHERE id = (SELECT table_property_id FROM BOX_TREE_NODE WHERE id = ?)";
+    final static String INSERT_PROPERTY_SQL = "INSERT INTO TABLE_VIEW_PROPERTY "
+            + "(visibled_columns, order_statement, selected_rows) VALUES (?, ?, ?)";
+    final static String LINK_BOX_PROPERTY_SQL = "UPDATE BOX_TREE_NODE SET table_property_id = ? "
+            + "WHERE id = ? AND table_property_id IS NULL";
+    /** deletes the properties of the boxes which are deleted */
+    final static String DELETE_UNLINKED_SQL = "DELETE FROM TABLE_VIEW_PROPERTY WHERE id <> " + LIBRARY_BOX_ID
+            + " AND id NOT IN (SELECT table_property_id FROM BOX_TREE_NODE WHERE table_property_id IS NOT NULL)";
+
+    private final DataSource dataSource;
+    private final ScheduledExecutorService writeExecutor;
+
+    // guarded by this
+    /** properties read or saved, and {@code null} for the boxes which have no property */
+    private final Map<Long, Property> properties = new HashMap<Long, Property>();
+    /** properties saved and not written yet */
+    private Map<Long, Property> pending = new LinkedHashMap<Long, Property>();
+
+    public TableViewPropertyStore(DataSource dataSource) {
+        if (dataSource == null) throw new IllegalArgumentException("dataSource must not be null");
+
+        this.dataSource = dataSource;
+        writeExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    /**
+     * @return the property of the box, or {@code null} if it is not saved.
+     */
+    public Property find(long boxId) throws SQLException {
+        synchronized (this) {
+            if (properties.containsKey(boxId)) {
+                return properties.get(boxId);
+            }
+        }
+
+        Property property = null;
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(
+                    boxId == LIBRARY_BOX_ID ? FIND_LIBRARY_PROPERTY_SQL : FIND_BOX_PROPERTY_SQL);
+            try {
+                statement.setLong(1, boxId);
+                ResultSet result = statement.executeQuery();
+                try {
+                    if (result.next()) {
+                        property = new Property(Property.parseColumns(result.getString(1)),
+                                result.getString(2), result.getString(3));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+
+        synchronized (this) {
+            // saved while reading
+            if (!properties.containsKey(boxId)) {
+                properties.put(boxId, property);
+            }
+            return properties.get(boxId);
+        }
+    }
+
+    /**
+     * Keeps the property, which is written later in background.
+     */
+    public void save(long boxId, Property property) {
+        if (property == null) throw new IllegalArgumentException("property must not be null");
+
+        synchronized (this) {
+            if (property.equals(properties.get(boxId))) {
+                return;
+            }
+            properties.put(boxId, property);
+            boolean scheduled = !pending.isEmpty();
+            pending.put(boxId, property);
+            if (scheduled) {
+                return;
+            }
+        }
+
+        try {
+            writeExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, WRITE_DELAY, TimeUnit.MILLISECONDS);
+        }
+        catch (RejectedExecutionException e) {
+            logger.debug("the property is written at shutdown");
+        }
+    }
+
+    /**
+     * Writes the properties not written yet in one transaction.
+     */
+    public void flush() {
+        Map<Long, Property> writing;
+        synchronized (this) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            writing = pending;
+            pending = new LinkedHashMap<Long, Property>();
+        }
+
+        try {
+            write(writing);
+            logger.debug("{} table view properties are written", writing.size());
+        }
+        catch (SQLException e) {
+            logger.warn("fail to write the table view properties", e);
+        }
+    }
+
+    private void write(Map<Long, Property> writing) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                for (Map.Entry<Long, Property> entry: writing.entrySet()) {
+                    if (entry.getKey() == LIBRARY_BOX_ID) {
+                        writeLibraryProperty(connection, entry.getValue());
+                    }
+                    else {
+                        writeBoxProperty(connection, entry.getKey(), entry.getValue());
+                    }
+                }
+                Statement statement = connection.createStatement();
+                try {
+                    statement.executeUpdate(DELETE_UNLINKED_SQL);
+                }
+                finally {
+                    statement.close();
+                }
+                connection.commit();
+            }
+            catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            finally {
+                connection.setAutoCommit(true);
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    private static void writeLibraryProperty(Connection connection, Property property) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(MERGE_LIBRARY_PROPERTY_SQL);
+        try {
+            statement.setLong(1, LIBRARY_BOX_ID);
+            statement.setString(2, property.formatColumns());
+            statement.setString(3, property.getOrderStatement());
+            statement.setString(4, property.getSelectedRows());
+            statement.executeUpdate();
+        }
+        finally {
+            statement.close();
+        }
+    }
+
+    /**
+     * Updates the property of the box, or inserts it and links the box to it.
+     * The property of a box which is deleted is not written.
+     */
+    private static void writeBoxProperty(Connection connection, long boxId, Property property)
+            throws SQLException {
+        PreparedStatement update = connection.prepareStatement(UPDATE_BOX_PROPERTY_SQL);
+        try {
+            update.setString(1, property.formatColumns());
+            update.setString(2, property.getOrderStatement());
+            update.setString(3, property.getSelectedRows());
+            update.setLong(4, boxId);
+            if (update.executeUpdate() > 0) {
+                return;
+            }
+        }
+        finally {
+            update.close();
+        }
+
+        long propertyId;
+        PreparedStatement insert = connection.prepareStatement(INSERT_PROPERTY_SQL, Statement.RETURN_GENERATED_KEYS);
+        try {
+            insert.setString(1, property.formatColumns());
+            insert.setString(2, property.getOrderStatement());
+            insert.setString(3, property.getSelectedRows());
+            insert.executeUpdate();
+            ResultSet keys = insert.getGeneratedKeys();
+            try {
+                if (!keys.next()) {
+                    throw new SQLException("the id of the property is not generated");
+                }
+                propertyId = keys.getLong(1);
+            }
+            finally {
+                keys.close();
+            }
+        }
+        finally {
+            insert.close();
+        }
+
+        PreparedStatement link = connection.prepareStatement(LINK_BOX_PROPERTY_SQL);
+        try {
+            link.setLong(1, propertyId);
+            link.setLong(2, boxId);
+            // the property which no box refers is deleted with the others
+            link.executeUpdate();
+        }
+        finally {
+            link.close();
+        }
+    }
+
+    /**
+     * Writes the properties not written yet, and stops the background thread.
+     */
+    public void shutdown() {
+        writeExecutor.shutdownNow();
+        flush();
+    }
+
+    /**
+     * Columns, order and selected rows of a table.
+     */
+    public static class Property {
+        private final List<String> columns;
+        private final String orderStatement;
+        private final String selectedRows;
+
+        /**
+         * @param columns the identifiers of the columns shown, in the shown order.
+         * @param orderStatement the column and the direction, such as {@code name descending},
+         *        or an empty text if not sorted.
+         * @param selectedRows the ranges of the selected rows, such as {@code 0-4,9}.
+         */
+        public Property(List<String> columns, String orderStatement, String selectedRows) {
+            if (columns == null) throw new IllegalArgumentException("columns must not be null");
+            if (orderStatement == null) throw new IllegalArgumentException("orderStatement must not be null");
+            if (selectedRows == null) throw new IllegalArgumentException("selectedRows must not be null");
+
+            this.columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+            this.orderStatement = orderStatement;
+            this.selectedRows = selectedRows;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        public String getOrderStatement() {
+            return orderStatement;
+        }
+
+        /**
+         * @return the column of the order, or {@code null} if not sorted.
+         */
+        public String getOrderColumn() {
+            String[] words = orderStatement.trim().split("\\s+");
+            return words[0].isEmpty() ? null : words[0];
+        }
+
+        public boolean isDescending() {
+            return orderStatement.trim().endsWith("descending") || orderStatement.trim().endsWith("desc");
+        }
+
+        public String getSelectedRows() {
+            return selectedRows;
+        }
+
+        String formatColumns() {
+            StringBuilder text = new StringBuilder();
+            for (String column: columns) {
+                if (text.length() > 0) {
+                    text.append(',');
+                }
+                text.append(column);
+            }
+            return text.toString();
+        }
+
+        static List<String> parseColumns(String text) {
+            if (text == null || text.trim().isEmpty()) {
+                return Collections.emptyList();
+            }
+            return Arrays.asList(text.trim().split("\\s*,\\s*"));
+        }
+
+        @Override
+        public int hashCode() {
+            return (columns.hashCode() * 31 + orderStatement.hashCode()) * 31 + selectedRows.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Property)) return false;
+            Property other = (Property) obj;
+            return columns.equals(other.columns) && orderStatement.equals(other.orderStatement)
+                    && selectedRows.equals(other.selectedRows);
+        }
+
+        @Override
+        public String toString() {
+            return "columns " + columns + ", order " + orderStatement + ", selected " + selectedRows;
+        }
+    }
+}
@@ -11,9 +11,14 @@ public class MainMenuBar {
     public final JMenuItem newSmartBox = new JMenuItem("New Smart Box");
     
     public final JMenuItem open = new JMenuItem("Open");
+    public final JMenuItem retryFailedImports = new JMenuItem("Retry Failed Imports");
+    public final JMenuItem watchFolder = new JMenuItem("Watch Folder...");
+    public final JMenuItem unwatchFolder = new JMenuItem("Stop Watching Folder...");
+    public final JMenuItem backupLibrary = new JMenuItem("Back Up Library...");
     public final JMenuItem quit = new JMenuItem("Quit");
     
-    public final JMenu fileMenu = createFileMenu(newCollectionBox, newGroupBox, newSmartBox, open, quit);
+    public final JMenu fileMenu = createFileMenu(newCollectionBox, newGroupBox, newSmartBox, open,
+            retryFailedImports, watchFolder, unwatchFolder, backupLibrary, quit);
     
     // Edit
     public final JMenuItem cut = new JMenuItem("Cut");
@@ -43,13 +48,20 @@ public class MainMenuBar {
     
     static JMenu createFileMenu(
             JMenuItem newCollectionBox, JMenuItem newGroupBox, JMenuItem newSmartBox,
-            JMenuItem open, JMenuItem quit) {
+            JMenuItem open, JMenuItem retryFailedImports, JMenuItem watchFolder, JMenuItem unwatchFolder,
+            JMenuItem backupLibrary, JMenuItem quit) {
         JMenu menu = new JMenu("File");
         
         menu.add(newSmartBox);
         menu.add(newGroupBox);
         menu.addSeparator();
         menu.add(open);
+        menu.add(retryFailedImports);
+        menu.addSeparator();
+        menu.add(watchFolder);
+        menu.add(unwatchFolder);
+        menu.addSeparator();
+        menu.add(backupLibrary);
         menu.addSeparator();
         menu.add(quit);
         
@@ -0,0 +1,72 @@
+/* Tables used by the importer */
+
+-- 取り込んだレコードの内容のダイジェスト
+CREATE TABLE IF NOT EXISTS SEQUENCE_FILE_DIGEST
+(
+	id bigint NOT NULL AUTO_INCREMENT,
+	exhibit_id bigint NOT NULL,
+	-- SHA-1 の16進数表記
+	digest varchar NOT NULL,
+	file_size bigint NOT NULL,
+	-- ミリ秒
+	last_modified bigint NOT NULL,
+	file_uri varchar NOT NULL,
+	-- 監視フォルダから削除されたファイル
+	missing boolean DEFAULT FALSE NOT NULL,
+	PRIMARY KEY (id),
+	CONSTRAINT FK_FILE_DIGEST_EXHIBIT_ID FOREIGN KEY (exhibit_id)
+		REFERENCES MUSEUM_EXHIBIT (id)
+		ON UPDATE CASCADE
+		ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS IDX_FILE_DIGEST_DIGEST ON SEQUENCE_FILE_DIGEST (digest);
+
+CREATE INDEX IF NOT EXISTS IDX_FILE_DIGEST_FILE_URI ON SEQUENCE_FILE_DIGEST (file_uri);
+
+-- 取り込み待ちのファイルの状態
+CREATE TABLE IF NOT EXISTS IMPORT_JOURNAL
+(
+	id bigint NOT NULL AUTO_INCREMENT,
+	file_path varchar NOT NULL,
+	-- 取り込み先の箱。NULL はライブラリ
+	box_id bigint,
+	-- 0:待機 1:読み込み中 2:保存済み 3:失敗 4:中止
+	state integer NOT NULL,
+	PRIMARY KEY (id),
+	UNIQUE (file_path)
+);
+
+-- 読み込みに失敗したファイル
+CREATE TABLE IF NOT EXISTS IMPORT_FAILURE
+(
+	id bigint NOT NULL AUTO_INCREMENT,
+	-- アーカイブ内のファイルはフラグメントにエントリ名を持つ
+	file_uri varchar NOT NULL,
+	file_size bigint NOT NULL,
+	-- ミリ秒
+	last_modified bigint NOT NULL,
+	-- 内容全体の SHA-1 の16進数表記。読めなかった時は NULL
+	digest varchar,
+	-- 取り込み先の箱。NULL はライブラリ
+	box_id bigint,
+	exception_class varchar NOT NULL,
+	message varchar,
+	-- 失敗した行番号。不明の時は 0
+	line_number integer DEFAULT 0 NOT NULL,
+	attempts integer DEFAULT 1 NOT NULL,
+	failed_at timestamp NOT NULL,
+	PRIMARY KEY (id),
+	UNIQUE (file_uri)
+);
+
+-- 自動で取り込むフォルダ
+CREATE TABLE IF NOT EXISTS WATCHED_FOLDER
+(
+	id bigint NOT NULL AUTO_INCREMENT,
+	folder_path varchar NOT NULL,
+	-- 取り込み先の箱。NULL はライブラリ
+	box_id bigint,
+	PRIMARY KEY (id),
+	UNIQUE (folder_path)
+);
@@ -0,0 +1,15 @@
+/* Indexes for the lookups of the library */
+
+-- 箱の中身の取得
+CREATE INDEX IF NOT EXISTS IDX_BOX_ITEM_BOX_ID ON COLLECTION_BOX_ITEM (box_id, exhibit_id);
+
+-- アクセッション番号での検索
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_ACCESSION ON MUSEUM_EXHIBIT (accession);
+
+-- 生物種名と名前での並べ替え
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_ORGANISM ON MUSEUM_EXHIBIT (organism);
+
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_NAME ON MUSEUM_EXHIBIT (name);
+
+-- 子ノードの取得
+CREATE INDEX IF NOT EXISTS IDX_BOX_PARENT_ID ON BOX_TREE_NODE (parent_id);
@@ -0,0 +1,44 @@
+/* Conditions of the smart boxes */
+
+-- スマートボックスの条件
+CREATE TABLE IF NOT EXISTS SMART_BOX_CONDITION
+(
+	box_id bigint NOT NULL,
+	-- TRUE - すべての規則に一致, FALSE - いずれかの規則に一致
+	match_all boolean DEFAULT TRUE NOT NULL,
+	PRIMARY KEY (box_id),
+	CONSTRAINT FK_SMART_BOX_BOX_ID FOREIGN KEY (box_id)
+		REFERENCES BOX_TREE_NODE (id)
+		ON UPDATE CASCADE
+		ON DELETE CASCADE
+);
+
+-- スマートボックスの条件の規則
+CREATE TABLE IF NOT EXISTS SMART_BOX_RULE
+(
+	id bigint NOT NULL AUTO_INCREMENT,
+	box_id bigint NOT NULL,
+	-- 規則の順番
+	position integer NOT NULL,
+	-- 項目の識別名 例：organism
+	field varchar NOT NULL,
+	-- 演算子の識別名 例：contains
+	operator varchar NOT NULL,
+	value varchar DEFAULT '' NOT NULL,
+	PRIMARY KEY (id),
+	CONSTRAINT FK_SMART_BOX_RULE_BOX_ID FOREIGN KEY (box_id)
+		REFERENCES SMART_BOX_CONDITION (box_id)
+		ON UPDATE CASCADE
+		ON DELETE CASCADE
+);
+
+CREATE INDEX IF NOT EXISTS IDX_SMART_BOX_RULE_BOX_ID ON SMART_BOX_RULE (box_id, position);
+
+-- 規則で比べる項目
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_NAMESPACE ON MUSEUM_EXHIBIT (namespace);
+
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_MOLECULE_TYPE ON MUSEUM_EXHIBIT (molecule_type);
+
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_SEQUENCE_LENGTH ON MUSEUM_EXHIBIT (sequence_length);
+
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_DATE ON MUSEUM_EXHIBIT (date);
@@ -0,0 +1,4 @@
+/* Index for deleting the exhibits */
+
+-- 削除した展示物のファイルを参照する展示物の検索
+CREATE INDEX IF NOT EXISTS IDX_EXHIBIT_FILE_URI ON MUSEUM_EXHIBIT (file_uri);
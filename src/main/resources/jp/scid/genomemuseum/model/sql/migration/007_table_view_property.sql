@@ -0,0 +1,4 @@
+/* Table view properties of the boxes */
+
+-- 表示状態を持つ箱の ID。0 はライブラリ
+CREATE UNIQUE INDEX IF NOT EXISTS IDX_VIEW_PROPERTY_BOX_ID ON TABLE_VIEW_PROPERTY (box_id);
@@ -0,0 +1,18 @@
+/* Table view properties referred by the boxes */
+
+-- 箱の表示状態は BOX_TREE_NODE.table_property_id から参照する
+UPDATE BOX_TREE_NODE B SET table_property_id =
+	(SELECT P.id FROM TABLE_VIEW_PROPERTY P WHERE P.box_id = B.id)
+	WHERE B.table_property_id IS NULL
+	AND EXISTS (SELECT 1 FROM TABLE_VIEW_PROPERTY P WHERE P.box_id = B.id);
+
+-- ライブラリの表示状態は ID 0
+UPDATE TABLE_VIEW_PROPERTY SET id = 0 WHERE box_id = 0;
+
+-- 削除された箱の表示状態
+DELETE FROM TABLE_VIEW_PROPERTY WHERE id <> 0
+	AND id NOT IN (SELECT table_property_id FROM BOX_TREE_NODE WHERE table_property_id IS NOT NULL);
+
+DROP INDEX IF EXISTS IDX_VIEW_PROPERTY_BOX_ID;
+
+ALTER TABLE TABLE_VIEW_PROPERTY DROP COLUMN box_id;
@@ -0,0 +1,4 @@
+/* Digests of the whole files */
+
+-- 別の場所にある同じ内容のファイル
+CREATE INDEX IF NOT EXISTS IDX_FILE_DIGEST_CONTENT ON SEQUENCE_FILE_DIGEST (file_size, content_digest);
@@ -0,0 +1,115 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import jp.scid.genomemuseum.model.SmartBoxCondition.Field;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Operator;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Rule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CollectionBoxStoreTest {
+    MemoryDatabase database;
+    CollectionBoxStore store;
+
+    long boxId;
+    long exhibit1;
+    long exhibit2;
+    long exhibit3;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new CollectionBoxStore(database.getDataSource());
+
+        boxId = database.insertBox("box", 1, null);
+        exhibit1 = database.insertExhibit("NC_000001", "NC_000001");
+        exhibit2 = database.insertExhibit("NC_000002", "NC_000002");
+        exhibit3 = database.insertExhibit("AB000003", "AB000003");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void addExhibitsSkipsItemsInBox() throws Exception {
+        assertEquals(1, store.addExhibits(boxId, Collections.singleton(exhibit1)));
+
+        assertEquals(1, store.addExhibits(boxId, Arrays.asList(exhibit1, exhibit2)));
+
+        assertEquals(ids(exhibit1, exhibit2), itemsOf(boxId));
+    }
+
+    @Test
+    public void addExhibitsIgnoresUnknownIds() throws Exception {
+        assertEquals(1, store.addExhibits(boxId, Arrays.asList(exhibit1, exhibit3 + 100)));
+
+        assertEquals(ids(exhibit1), itemsOf(boxId));
+    }
+
+    @Test
+    public void copyBoxItemsAddsEachExhibitOnce() throws Exception {
+        long source1 = database.insertBox("source1", 1, null);
+        long source2 = database.insertBox("source2", 1, null);
+        store.addExhibits(source1, Arrays.asList(exhibit1, exhibit2));
+        store.addExhibits(source2, Arrays.asList(exhibit2, exhibit3));
+        store.addExhibits(boxId, Collections.singleton(exhibit3));
+
+        assertEquals(2, store.copyBoxItems(boxId, Arrays.asList(source1, source2)));
+
+        assertEquals(ids(exhibit1, exhibit2, exhibit3), itemsOf(boxId));
+        assertEquals(0, store.copyBoxItems(boxId, Arrays.asList(source1, source2)));
+    }
+
+    @Test
+    public void addMatchingExhibits() throws Exception {
+        store.addExhibits(boxId, Collections.singleton(exhibit1));
+        SmartBoxCondition condition = new SmartBoxCondition(true, Collections.singletonList(
+                new Rule(Field.ACCESSION, Operator.STARTS_WITH, "NC_")));
+
+        assertEquals(1, store.addMatchingExhibits(boxId, condition));
+
+        assertEquals(ids(exhibit1, exhibit2), itemsOf(boxId));
+    }
+
+    @Test
+    public void listenersAreToldOnlyOfAddition() throws Exception {
+        final int[] changeCount = {0};
+        store.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                changeCount[0]++;
+            }
+        });
+
+        store.addExhibits(boxId, Collections.singleton(exhibit1));
+        store.addExhibits(boxId, Collections.singleton(exhibit1));
+
+        assertEquals(1, changeCount[0]);
+    }
+
+    private Set<Long> itemsOf(long boxId) throws Exception {
+        Set<Long> ids = new HashSet<Long>();
+        for (Object id: database.queryColumn(
+                "SELECT exhibit_id FROM COLLECTION_BOX_ITEM WHERE box_id = ?", boxId)) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+}
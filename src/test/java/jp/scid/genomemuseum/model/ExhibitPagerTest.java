@@ -0,0 +1,134 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExhibitPagerTest {
+    /** names of the exhibits, which have ties over the pages */
+    final static String[] NAMES = {"b", "a", "c", "a", "b", "a", "d", "b", "a", "c"};
+    final static int PAGE_SIZE = 3;
+
+    MemoryDatabase database;
+    ExhibitPager pager;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        for (String name: NAMES) {
+            database.insertExhibit(name, name);
+        }
+        pager = new ExhibitPager(database.getDataSource(), PAGE_SIZE, 2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void pagesInOrderOfId() throws Exception {
+        assertEquals(NAMES.length, pager.count());
+        assertEquals(queryIds("ORDER BY id"), readPages());
+    }
+
+    @Test
+    public void pagesAcrossTies() throws Exception {
+        pager.setOrder("name", false);
+
+        List<Long> expected = queryIds("ORDER BY name, id");
+        assertEquals(expected, readPages());
+        assertEquals(expected, pager.readIds(0, NAMES.length));
+    }
+
+    @Test
+    public void pagesAcrossTiesDescending() throws Exception {
+        pager.setOrder("name", true);
+
+        List<Long> expected = queryIds("ORDER BY name DESC, id DESC");
+        assertEquals(expected, readPages());
+        assertEquals(expected.subList(2, 7), pager.readIds(2, 5));
+    }
+
+    @Test
+    public void pageFarFromPagesRead() throws Exception {
+        pager.setOrder("name", false);
+        List<Long> expected = queryIds("ORDER BY name, id");
+
+        // read by the offset from the first row, and then after the first page
+        assertEquals(expected.subList(9, 10), idsOf(pager.getPage(3)));
+        idsOf(pager.getPage(0));
+        assertEquals(expected.subList(6, 9), idsOf(pager.getPage(2)));
+    }
+
+    @Test
+    public void pagesInOrderOfDateWithoutDate() throws Exception {
+        database.update("UPDATE MUSEUM_EXHIBIT SET date = DATE '2012-01-01' WHERE name = 'a'");
+        database.update("UPDATE MUSEUM_EXHIBIT SET date = NULL WHERE name <> 'a'");
+        pager.setOrder("date", true);
+
+        assertEquals(queryIds("ORDER BY COALESCE(date, DATE '0001-01-01') DESC, id DESC"), readPages());
+    }
+
+    @Test
+    public void pagesOfBoxes() throws Exception {
+        long box1 = database.insertBox("box1", 1, null);
+        long box2 = database.insertBox("box2", 1, null);
+        List<Long> ids = queryIds("ORDER BY id");
+        new CollectionBoxStore(database.getDataSource()).addExhibits(box1, ids.subList(0, 4));
+        new CollectionBoxStore(database.getDataSource()).addExhibits(box2, ids.subList(2, 6));
+
+        pager.setBoxes(Arrays.asList(box1, box2));
+        assertEquals(6, pager.count());
+        assertEquals(ids.subList(0, 6), readPages());
+
+        pager.setBoxes(Collections.<Long>emptyList());
+        assertEquals(0, pager.count());
+    }
+
+    @Test
+    public void invalidateReadsInsertedExhibits() throws Exception {
+        List<ExhibitRecord> page = pager.getPage(3);
+        assertEquals(1, page.size());
+        database.insertExhibit("e", "e");
+
+        assertSame(page, pager.getPage(3));
+        pager.invalidate();
+        assertEquals(2, pager.getPage(3).size());
+        assertEquals(NAMES.length + 1, pager.count());
+    }
+
+    private List<Long> readPages() throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        for (int pageIndex = 0;; pageIndex++) {
+            List<ExhibitRecord> page = pager.getPage(pageIndex);
+            ids.addAll(idsOf(page));
+            if (page.size() < PAGE_SIZE) {
+                return ids;
+            }
+        }
+    }
+
+    private List<Long> queryIds(String orderBy) throws Exception {
+        List<Long> ids = new ArrayList<Long>();
+        for (Object id: database.queryColumn("SELECT id FROM MUSEUM_EXHIBIT " + orderBy)) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    static List<Long> idsOf(List<ExhibitRecord> page) {
+        List<Long> ids = new ArrayList<Long>();
+        for (ExhibitRecord record: page) {
+            ids.add(record.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,213 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import jp.scid.genomemuseum.model.ExhibitRecordStore.InsertBatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExhibitRecordStoreTest {
+    MemoryDatabase database;
+    ExhibitRecordStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new ExhibitRecordStore(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void insertAllSetsAllocatedIds() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord[] records = new ExhibitRecord[3];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = record("NC_00000" + i, "file:/data/seq.gbk");
+            batch.add(records[i], boxId, digest("file:/data/seq.gbk", "digest" + i));
+        }
+
+        store.insertAll(batch);
+
+        for (int i = 0; i < records.length; i++) {
+            assertNotNull(records[i].getId());
+            assertEquals("NC_00000" + i, database.queryValue(
+                    "SELECT name FROM MUSEUM_EXHIBIT WHERE id = ?", records[i].getId()));
+        }
+        assertTrue(records[0].getId() < records[1].getId());
+        assertTrue(records[1].getId() < records[2].getId());
+        assertEquals(3, database.count("COLLECTION_BOX_ITEM"));
+        assertEquals(records[2].getId(), database.queryValue(
+                "SELECT exhibit_id FROM SEQUENCE_FILE_DIGEST WHERE digest = ?", "digest2"));
+    }
+
+    @Test
+    public void insertAllAfterInsert() throws Exception {
+        ExhibitRecord first = record("first", "file:/data/first.gbk");
+        store.insert(first, null);
+
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord second = record("second", "file:/data/second.gbk");
+        batch.add(second, null);
+        store.insertAll(batch);
+
+        assertTrue(first.getId() < second.getId());
+        assertEquals(2, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    @Test
+    public void insertAllRollsBackOnFailure() throws Exception {
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord record = record("NC_000001", "file:/data/seq.gbk");
+        // the box does not exist
+        batch.add(record, 999L, digest("file:/data/seq.gbk", "digest"));
+
+        try {
+            store.insertAll(batch);
+            fail("the box item must violate the foreign key");
+        }
+        catch (SQLException expected) {
+            // rolled back
+        }
+
+        assertNull(record.getId());
+        assertEquals(0, database.count("MUSEUM_EXHIBIT"));
+        assertEquals(0, database.count("SEQUENCE_FILE_DIGEST"));
+    }
+
+    @Test
+    public void insertAllReplacesExhibit() throws Exception {
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord old = record("NC_000001", "file:/data/seq.gbk");
+        batch.add(old, null, digest("file:/data/seq.gbk", 100, 1000, "digest"));
+        store.insertAll(batch);
+
+        ExhibitRecord record = record("NC_000001", "file:/library/seq.gbk");
+        record.setFileOffset(20);
+        record.setFileLength(80);
+        InsertBatch replacing = new InsertBatch();
+        replacing.replace(old.getId(), record, digest("file:/data/seq.gbk", 120, 2000, "digest"));
+        store.insertAll(replacing);
+
+        assertEquals(old.getId(), record.getId());
+        assertEquals(1, database.count("MUSEUM_EXHIBIT"));
+        ExhibitRecord location = store.findRecordLocation(old.getId());
+        assertEquals(URI.create("file:/library/seq.gbk"), location.getFileUri());
+        assertEquals(20, location.getFileOffset());
+        assertEquals(80, location.getFileLength());
+
+        Map<Long, FileDigest> digests = store.findStoredDigests(URI.create("file:/data/seq.gbk"));
+        assertEquals(1, digests.size());
+        assertEquals(120, digests.get(old.getId()).getFileSize());
+        assertEquals(2000, digests.get(old.getId()).getLastModified());
+    }
+
+    @Test
+    public void findReplacedExhibits() throws Exception {
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord current = record("current", "file:/data/seq.gbk");
+        batch.add(current, null, digest("file:/data/seq.gbk", 120, 2000, "digest1"));
+        ExhibitRecord old = record("old", "file:/data/seq.gbk");
+        batch.add(old, null, digest("file:/data/seq.gbk", 100, 1000, "digest2"));
+        ExhibitRecord member = record("member", "file:/data/seqs.zip#a.gbk");
+        batch.add(member, null, digest("file:/data/seqs.zip#a.gbk", 100, 1000, "digest3"));
+        store.insertAll(batch);
+
+        Map<Long, URI> replaced = store.findReplacedExhibits(
+                new FileDigest(URI.create("file:/data/seq.gbk"), 120, 2000), false);
+        assertEquals(1, replaced.size());
+        assertTrue(replaced.containsKey(old.getId()));
+
+        Map<Long, URI> replacedMembers = store.findReplacedExhibits(
+                new FileDigest(URI.create("file:/data/seqs.zip"), 120, 2000), true);
+        assertEquals(URI.create("file:/data/seqs.zip#a.gbk"), replacedMembers.get(member.getId()));
+    }
+
+    @Test
+    public void deleteAllReturnsUnreferredFiles() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord single = record("single", "file:/library/single.gbk");
+        batch.add(single, boxId, digest("file:/data/single.gbk", "digest1"));
+        ExhibitRecord shared1 = record("shared1", "file:/library/shared.gbk");
+        batch.add(shared1, null, digest("file:/data/shared.gbk", "digest2"));
+        ExhibitRecord shared2 = record("shared2", "file:/library/shared.gbk");
+        batch.add(shared2, null, digest("file:/data/shared.gbk", "digest3"));
+        store.insertAll(batch);
+
+        Set<URI> deleted = store.deleteAll(Arrays.asList(single.getId(), shared1.getId()));
+
+        assertEquals(Collections.singleton(URI.create("file:/library/single.gbk")), deleted);
+        assertEquals(1, database.count("MUSEUM_EXHIBIT"));
+        assertEquals(0, database.count("COLLECTION_BOX_ITEM"));
+        assertEquals(1, database.count("SEQUENCE_FILE_DIGEST"));
+
+        deleted = store.deleteAll(Collections.singleton(shared2.getId()));
+        assertEquals(Collections.singleton(URI.create("file:/library/shared.gbk")), deleted);
+    }
+
+    @Test
+    public void deleteAllKeepsArchiveOfOtherMembers() throws Exception {
+        InsertBatch batch = new InsertBatch();
+        ExhibitRecord member1 = record("member1", "file:/library/seqs.zip#a.gbk");
+        batch.add(member1, null, digest("file:/data/seqs.zip#a.gbk", "digest1"));
+        ExhibitRecord member2 = record("member2", "file:/library/seqs.zip#b.gbk");
+        batch.add(member2, null, digest("file:/data/seqs.zip#b.gbk", "digest2"));
+        // a file which name begins with the archive is not a member
+        ExhibitRecord other = record("other", "file:/library/seqs.zip2");
+        batch.add(other, null, digest("file:/data/seqs.zip2", "digest3"));
+        store.insertAll(batch);
+
+        assertTrue(store.deleteAll(Collections.singleton(member1.getId())).isEmpty());
+
+        Set<URI> deleted = store.deleteAll(Collections.singleton(member2.getId()));
+        assertEquals(Collections.singleton(URI.create("file:/library/seqs.zip")), deleted);
+    }
+
+    @Test
+    public void findUnreferredFiles() throws Exception {
+        InsertBatch batch = new InsertBatch();
+        batch.add(record("exhibit", "file:/library/seq.gbk"), null);
+        batch.add(record("member", "file:/library/seqs.zip#a.gbk"), null);
+        store.insertAll(batch);
+
+        Set<URI> unreferred = store.findUnreferredFiles(Arrays.asList(
+                URI.create("file:/library/seq.gbk"), URI.create("file:/library/seqs.zip#b.gbk"),
+                URI.create("file:/library/old.gbk"), URI.create("file:/library/old.zip#a.gbk")));
+
+        assertEquals(2, unreferred.size());
+        assertTrue(unreferred.contains(URI.create("file:/library/old.gbk")));
+        assertTrue(unreferred.contains(URI.create("file:/library/old.zip")));
+    }
+
+    static ExhibitRecord record(String name, String fileUri) {
+        ExhibitRecord record = new ExhibitRecord();
+        record.setName(name);
+        record.setAccession(name);
+        record.setFileUri(URI.create(fileUri));
+        return record;
+    }
+
+    static FileDigest digest(String fileUri, String digest) {
+        return digest(fileUri, 100, 1000, digest);
+    }
+
+    static FileDigest digest(String fileUri, long fileSize, long lastModified, String digest) {
+        FileDigest fileDigest = new FileDigest(URI.create(fileUri), fileSize, lastModified);
+        fileDigest.setDigest(digest);
+        return fileDigest;
+    }
+}
@@ -0,0 +1,93 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ExhibitSearchIndexTest {
+    MemoryDatabase database;
+    ExhibitSearchIndex index;
+    long coli;
+    long subtilis;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        coli = database.insertExhibit("NC_000913", "NC_000913");
+        database.update("UPDATE MUSEUM_EXHIBIT SET organism = ? WHERE id = ?", "Escherichia coli K-12", coli);
+        subtilis = database.insertExhibit("NC_000964", "NC_000964");
+        database.update("UPDATE MUSEUM_EXHIBIT SET organism = ? WHERE id = ?", "Bacillus subtilis", subtilis);
+        index = new ExhibitSearchIndex(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void wholeWords() throws Exception {
+        assertEquals(ids(coli), index.search("escherichia coli"));
+        assertEquals(ids(subtilis), index.search("SUBTILIS"));
+    }
+
+    @Test
+    public void lastWordIsPrefix() throws Exception {
+        assertEquals(ids(coli), index.search("Escher"));
+        assertEquals(ids(coli), index.search("nc_00091"));
+        assertEquals(ids(coli, subtilis), index.search("NC_000"));
+        assertEquals(ids(subtilis), index.search("NC_00096"));
+    }
+
+    @Test
+    public void wordsBeforeLastAreWhole() throws Exception {
+        assertEquals(ids(), index.search("Escher coli"));
+        assertEquals(ids(coli), index.search("coli Escher"));
+    }
+
+    @Test
+    public void allWordsAreRequired() throws Exception {
+        assertEquals(ids(), index.search("coli subtilis"));
+    }
+
+    @Test
+    public void symbolsAreNotSearched() throws Exception {
+        assertEquals(ids(), index.search(" %_ "));
+        assertEquals(ids(), index.search("e%coli"));
+    }
+
+    @Test
+    public void changesAreSearched() throws Exception {
+        database.update("UPDATE MUSEUM_EXHIBIT SET organism = ? WHERE id = ?", "Bacillus anthracis", subtilis);
+        assertEquals(ids(subtilis), index.search("anthr"));
+        assertEquals(ids(), index.search("subtilis"));
+
+        database.update("DELETE FROM MUSEUM_EXHIBIT WHERE id = ?", coli);
+        assertEquals(ids(), index.search("Escher"));
+    }
+
+    @Test
+    public void limitCount() throws Exception {
+        assertEquals(1, index.search("NC", 1).size());
+    }
+
+    @Test
+    public void pagerSearches() throws Exception {
+        ExhibitPager pager = new ExhibitPager(database.getDataSource(), 10, 2);
+        pager.setSearchText("Bacil");
+
+        assertEquals(1, pager.count());
+        assertEquals(Collections.singletonList(subtilis), ExhibitPagerTest.idsOf(pager.getPage(0)));
+    }
+
+    static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+}
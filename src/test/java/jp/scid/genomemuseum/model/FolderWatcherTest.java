@@ -0,0 +1,164 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportListener;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FolderWatcherTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MemoryDatabase database;
+    ExhibitRecordStore store;
+    GeneticSequenceFileLoadingManager manager;
+    FolderWatcher watcher;
+    final List<File> importedFiles = Collections.synchronizedList(new ArrayList<File>());
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new ExhibitRecordStore(database.getDataSource());
+        SequenceImportEngine engine = new SequenceImportEngine(
+                SequenceImportEngine.newParseExecutor(1), Executors.newSingleThreadScheduledExecutor());
+        engine.setRecordStore(store);
+        engine.setFlushInterval(0);
+        engine.addImportListener(new ImportListener() {
+            @Override
+            public void importSubmitted(ImportTask task) {
+                // archives are not watched
+            }
+
+            @Override
+            public void importFinished(ImportTask task) {
+                importedFiles.add(task.getFile());
+            }
+
+            @Override
+            public void batchStored(List<ExhibitRecord> records) {
+                // counted by the exhibits
+            }
+        });
+        manager = new GeneticSequenceFileLoadingManager(engine);
+        watcher = new FolderWatcher(database.getDataSource(), store, manager);
+        watcher.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        watcher.stop();
+        manager.shutdownNow();
+        database.shutdown();
+    }
+
+    @Test
+    public void filesInFolderAreImportedWhenWatched() throws Exception {
+        copyResource("/jp/scid/bio/NC_009347.gbk", "a.gbk");
+        copyResource("/jp/scid/bio/NC_001773.gbk", "dir/b.gbk");
+
+        watch();
+
+        awaitExhibits(2);
+    }
+
+    @Test
+    public void fileIsImportedAfterQuietPeriod() throws Exception {
+        watch();
+
+        long written = System.currentTimeMillis();
+        copyResource("/jp/scid/bio/NC_009347.gbk", "a.gbk");
+        awaitExhibits(1);
+
+        assertTrue(System.currentTimeMillis() - written >= FolderWatcher.QUIET_PERIOD);
+    }
+
+    @Test
+    public void fileBeingWrittenIsImportedOnce() throws Exception {
+        watch();
+        byte[] content = Files.readAllBytes(
+                SequenceFileParserTest.resourceFile("/jp/scid/bio/NC_009347.gbk").toPath());
+        File file = new File(folder.getRoot(), "a.gbk");
+
+        // written in pieces for longer than the quiet period
+        int pieces = 8;
+        int pieceLength = content.length / pieces + 1;
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int offset = 0; offset < content.length; offset += pieceLength) {
+                out.write(content, offset, Math.min(pieceLength, content.length - offset));
+                out.flush();
+                Thread.sleep(FolderWatcher.QUIET_PERIOD / 4);
+                assertEquals("imported while written", 0, database.count("MUSEUM_EXHIBIT"));
+            }
+        }
+        finally {
+            out.close();
+        }
+        awaitExhibits(1);
+
+        // no more imports after the file is quiet
+        Thread.sleep(FolderWatcher.QUIET_PERIOD + 1000);
+        assertEquals(Collections.singletonList(file), importedFiles);
+        assertEquals(content.length, ((Number) database.queryValue(
+                "SELECT file_size FROM SEQUENCE_FILE_DIGEST")).intValue());
+    }
+
+    @Test
+    public void deletedFileIsMarkedMissing() throws Exception {
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "a.gbk");
+        watch();
+        awaitExhibits(1);
+
+        assertTrue(file.delete());
+
+        URI directory = folder.getRoot().toURI();
+        for (int i = 0; i < 100 && store.findMissingFiles(directory).isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(Collections.singleton(file.toURI()), store.findMissingFiles(directory));
+        assertEquals(1, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    /**
+     * Watches the temporary folder and waits for the folder to be registered.
+     */
+    private void watch() throws Exception {
+        watcher.watch(folder.getRoot(), null);
+        for (int i = 0; i < 100 && watcher.getWatchedFolders().isEmpty(); i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(1, watcher.getWatchedFolders().size());
+        // the folder is registered to the watch service after it is added
+        Thread.sleep(200);
+    }
+
+    private void awaitExhibits(int count) throws Exception {
+        long timeout = System.currentTimeMillis() + FolderWatcher.QUIET_PERIOD + 10000;
+        while (System.currentTimeMillis() < timeout && database.count("MUSEUM_EXHIBIT") < count) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    private File copyResource(String name, String fileName) throws Exception {
+        File file = new File(folder.getRoot(), fileName);
+        file.getParentFile().mkdirs();
+        Files.copy(SequenceFileParserTest.resourceFile(name).toPath(), file.toPath());
+        return file;
+    }
+}
@@ -0,0 +1,144 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.EventQueue;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GeneticSequenceFileLoadingManagerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MemoryDatabase database;
+    SequenceImportEngine engine;
+    GeneticSequenceFileLoadingManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        engine = new SequenceImportEngine();
+        engine.setRecordStore(new ExhibitRecordStore(database.getDataSource()));
+        manager = new GeneticSequenceFileLoadingManager(engine);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.shutdownNow();
+        database.shutdown();
+    }
+
+    @Test
+    public void progressChangesAreCoalesced() throws Exception {
+        List<File> files = new ArrayList<File>();
+        for (int i = 0; i < 20; i++) {
+            files.add(copyResource("/jp/scid/bio/NC_009347.gbk", "seq" + i + ".gbk"));
+        }
+        final AtomicInteger executedChanges = new AtomicInteger(0);
+        manager.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("executed".equals(evt.getPropertyName())) {
+                    executedChanges.incrementAndGet();
+                }
+            }
+        });
+
+        CountDownLatch finished = finishedLatch();
+        manager.executeLoading(files, null);
+        awaitFinished(finished);
+
+        assertEquals(20, manager.getExecuted());
+        assertEquals(20, manager.getFinished());
+        assertTrue("changes " + executedChanges.get(), executedChanges.get() < 20);
+    }
+
+    @Test
+    public void inProgressOnceForDrop() throws Exception {
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+        File directory = folder.newFolder("dir");
+        copyResource("/jp/scid/bio/NC_001773.gbk", "dir/NC_001773.gbk");
+        copyResource("/jp/scid/bio/NC_009473.fna", "dir/NC_009473.fna");
+        final AtomicInteger started = new AtomicInteger(0);
+        manager.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("inProgress".equals(evt.getPropertyName()) && Boolean.TRUE.equals(evt.getNewValue())) {
+                    started.incrementAndGet();
+                }
+            }
+        });
+        List<File> roots = new ArrayList<File>();
+        roots.add(file);
+        roots.add(directory);
+
+        CountDownLatch finished = finishedLatch();
+        int submitted = manager.executeWalking(roots, null).get();
+        awaitFinished(finished);
+
+        assertEquals(1, started.get());
+        assertEquals(3, submitted);
+        assertEquals(3, manager.getExecuted());
+        assertEquals(3, manager.getSuccess());
+    }
+
+    @Test
+    public void skippedFilesAreCounted() throws Exception {
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+        CountDownLatch finished = finishedLatch();
+        manager.executeLoading(Collections.singleton(file), null);
+        awaitFinished(finished);
+
+        finished = finishedLatch();
+        manager.executeLoading(Collections.singleton(file), null);
+        awaitFinished(finished);
+
+        assertEquals(1, manager.getSkipped());
+        assertEquals(0, manager.getSuccess());
+        assertEquals(Collections.singletonList(file), manager.getSkippedFiles());
+    }
+
+    private CountDownLatch finishedLatch() {
+        final CountDownLatch finished = new CountDownLatch(1);
+        manager.addPropertyChangeListener(new PropertyChangeListener() {
+            @Override
+            public void propertyChange(PropertyChangeEvent evt) {
+                if ("inProgress".equals(evt.getPropertyName()) && Boolean.FALSE.equals(evt.getNewValue())) {
+                    manager.removePropertyChangeListener(this);
+                    finished.countDown();
+                }
+            }
+        });
+        return finished;
+    }
+
+    private static void awaitFinished(CountDownLatch finished) throws Exception {
+        assertTrue("import must finish", finished.await(30, TimeUnit.SECONDS));
+        // the last progress is fired on the event dispatch thread
+        EventQueue.invokeAndWait(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+    }
+
+    private File copyResource(String name, String fileName) throws Exception {
+        File file = new File(folder.getRoot(), fileName);
+        Files.copy(SequenceFileParserTest.resourceFile(name).toPath(), file.toPath());
+        return file;
+    }
+}
@@ -0,0 +1,93 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GroupBoxStoreTest {
+    MemoryDatabase database;
+    GroupBoxStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new GroupBoxStore(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void findSubtreeIds() throws Exception {
+        long group = database.insertBox("group", 2, null);
+        long box = database.insertBox("box", 1, group);
+        long childGroup = database.insertBox("child group", 2, group);
+        long grandchild = database.insertBox("grandchild", 1, childGroup);
+        long other = database.insertBox("other", 1, null);
+
+        assertEquals(ids(group, box, childGroup, grandchild), new HashSet<Long>(store.findSubtreeIds(group)));
+        assertEquals(ids(childGroup, grandchild), new HashSet<Long>(store.findSubtreeIds(childGroup)));
+        assertEquals(Collections.singleton(other), store.findSubtreeIds(other));
+    }
+
+    @Test
+    public void findSubtreeIdsOfEmptyGroup() throws Exception {
+        long group = database.insertBox("group", 2, null);
+
+        assertEquals(Collections.singleton(group), store.findSubtreeIds(group));
+        assertTrue(store.findSubtreeIds(group + 1).isEmpty());
+    }
+
+    @Test
+    public void boxChangedForgetsSubtree() throws Exception {
+        long group = database.insertBox("group", 2, null);
+        long childGroup = database.insertBox("child group", 2, group);
+        long other = database.insertBox("other", 2, null);
+        Set<Long> otherIds = store.findSubtreeIds(other);
+        store.findSubtreeIds(group);
+
+        long box = database.insertBox("box", 1, childGroup);
+        // kept until the change is told
+        assertEquals(ids(group, childGroup), new HashSet<Long>(store.findSubtreeIds(group)));
+
+        final int[] changeCount = {0};
+        store.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                changeCount[0]++;
+            }
+        });
+        store.boxChanged(childGroup);
+
+        assertEquals(1, changeCount[0]);
+        assertEquals(ids(group, childGroup, box), new HashSet<Long>(store.findSubtreeIds(group)));
+        assertSame(otherIds, store.findSubtreeIds(other));
+    }
+
+    @Test
+    public void invalidateForgetsAllSubtrees() throws Exception {
+        long group = database.insertBox("group", 2, null);
+        store.findSubtreeIds(group);
+        long box = database.insertBox("box", 1, group);
+
+        store.invalidate();
+
+        assertEquals(ids(group, box), new HashSet<Long>(store.findSubtreeIds(group)));
+    }
+
+    static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+}
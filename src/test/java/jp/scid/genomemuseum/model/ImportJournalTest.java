@@ -0,0 +1,143 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportJournalTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MemoryDatabase database;
+    ImportJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        journal = new ImportJournal(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void lastStateIsWrittenByFlush() throws Exception {
+        File file = folder.newFile("a.gbk");
+        journal.record(file, null, ImportJournal.STATE_QUEUED);
+        journal.record(file, null, ImportJournal.STATE_PARSING);
+        assertEquals(0, database.count("IMPORT_JOURNAL"));
+
+        assertEquals(1, journal.flush());
+
+        assertFalse(journal.hasPendingEntries());
+        List<ImportJournal.Entry> unfinished = journal.findUnfinished();
+        assertEquals(1, unfinished.size());
+        assertEquals(file.getAbsoluteFile(), unfinished.get(0).getFile());
+        assertEquals(ImportJournal.STATE_PARSING, unfinished.get(0).getState());
+        assertEquals(0, journal.flush());
+    }
+
+    @Test
+    public void finishedFilesAreNotUnfinished() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        journal.record(folder.newFile("stored.gbk"), null, ImportJournal.STATE_STORED);
+        journal.record(folder.newFile("failed.gbk"), null, ImportJournal.STATE_FAILED);
+        journal.record(folder.newFile("cancelled.gbk"), null, ImportJournal.STATE_CANCELLED);
+        File queued = folder.newFile("queued.gbk");
+        journal.record(queued, boxId, ImportJournal.STATE_QUEUED);
+        journal.flush();
+
+        List<ImportJournal.Entry> unfinished = journal.findUnfinished();
+
+        assertEquals(1, unfinished.size());
+        assertEquals(queued.getAbsoluteFile(), unfinished.get(0).getFile());
+        assertEquals(Long.valueOf(boxId), unfinished.get(0).getBoxId());
+
+        journal.clear();
+        assertEquals(0, database.count("IMPORT_JOURNAL"));
+    }
+
+    @Test
+    public void resumeAfterCrash() throws Exception {
+        File first = copyResource("/jp/scid/bio/NC_009347.gbk", "first.gbk");
+        File second = copyResource("/jp/scid/bio/NC_001773.gbk", "second.gbk");
+
+        // the files are queued behind a parse which does not end until the crash
+        ExecutorService parseExecutor = SequenceImportEngine.newParseExecutor(1);
+        SequenceImportEngine crashing = newEngine(parseExecutor, journal);
+        final CountDownLatch crash = new CountDownLatch(1);
+        parseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    crash.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        crashing.submit(first, null);
+        crashing.submit(second, null);
+        journal.flush();
+        crashing.shutdownNow();
+
+        ImportJournal resumedJournal = new ImportJournal(database.getDataSource());
+        List<ImportJournal.Entry> unfinished = resumedJournal.findUnfinished();
+        Set<File> unfinishedFiles = new HashSet<File>();
+        for (ImportJournal.Entry entry: unfinished) {
+            assertEquals(ImportJournal.STATE_QUEUED, entry.getState());
+            unfinishedFiles.add(entry.getFile());
+        }
+        assertEquals(new HashSet<File>(Arrays.asList(first.getAbsoluteFile(), second.getAbsoluteFile())),
+                unfinishedFiles);
+
+        SequenceImportEngine engine = newEngine(SequenceImportEngine.newParseExecutor(2), resumedJournal);
+        GeneticSequenceFileLoadingManager manager = new GeneticSequenceFileLoadingManager(engine);
+        try {
+            assertEquals(Integer.valueOf(2), manager.executeUnfinished(unfinished).get(30, TimeUnit.SECONDS));
+            for (int i = 0; i < 100 && database.count("MUSEUM_EXHIBIT") < 2; i++) {
+                Thread.sleep(50);
+            }
+            assertTrue(engine.shutdown(30, TimeUnit.SECONDS));
+        }
+        finally {
+            manager.shutdownNow();
+        }
+
+        assertEquals(2, database.count("MUSEUM_EXHIBIT"));
+        assertTrue(new ImportJournal(database.getDataSource()).findUnfinished().isEmpty());
+    }
+
+    private SequenceImportEngine newEngine(ExecutorService parseExecutor, ImportJournal journal) {
+        SequenceImportEngine engine =
+                new SequenceImportEngine(parseExecutor, Executors.newSingleThreadScheduledExecutor());
+        engine.setRecordStore(new ExhibitRecordStore(database.getDataSource()));
+        engine.setFlushInterval(0);
+        engine.setJournal(journal);
+        return engine;
+    }
+
+    private File copyResource(String name, String fileName) throws Exception {
+        File file = new File(folder.getRoot(), fileName);
+        Files.copy(SequenceFileParserTest.resourceFile(name).toPath(), file.toPath());
+        return file;
+    }
+}
@@ -0,0 +1,85 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import jp.scid.genomemuseum.model.ImportMetrics.FileTime;
+import jp.scid.genomemuseum.model.ImportMetrics.Snapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImportMetricsTest {
+    ImportMetrics metrics;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new ImportMetrics();
+    }
+
+    @Test
+    public void snapshotCounts() {
+        metrics.fileFinished(URI.create("file:/data/a.gbk"), millis(10), 100);
+        metrics.fileFinished(URI.create("file:/data/b.gbk"), millis(20), 200);
+        metrics.addWrite(millis(5), 3);
+        metrics.addRead(millis(7));
+        metrics.addParse(millis(9));
+
+        Snapshot snapshot = metrics.snapshot(2);
+
+        assertEquals(2, snapshot.getFiles());
+        assertEquals(300, snapshot.getBytes());
+        assertEquals(3, snapshot.getRecords());
+        assertEquals(5, snapshot.getWriteMillis());
+        assertEquals(7, snapshot.getReadMillis());
+        assertEquals(9, snapshot.getParseMillis());
+        assertTrue(snapshot.getFilesPerSecond() > 0);
+        assertTrue(snapshot.getEtaSeconds() >= 0);
+    }
+
+    @Test
+    public void etaIsNotEstimatedBeforeFiles() {
+        assertEquals(-1, metrics.snapshot(10).getEtaSeconds());
+    }
+
+    @Test
+    public void slowestFilesAreKeptSlowestFirst() {
+        for (int i = 1; i <= ImportMetrics.SLOWEST_FILE_COUNT + 3; i++) {
+            metrics.fileFinished(URI.create("file:/data/" + i + ".gbk"), millis(i), 0);
+        }
+
+        List<FileTime> slowest = metrics.snapshot(0).getSlowestFiles();
+
+        assertEquals(ImportMetrics.SLOWEST_FILE_COUNT, slowest.size());
+        assertEquals(URI.create("file:/data/8.gbk"), slowest.get(0).getSource());
+        assertEquals(8, slowest.get(0).getMillis());
+        assertEquals(4, slowest.get(ImportMetrics.SLOWEST_FILE_COUNT - 1).getMillis());
+    }
+
+    @Test
+    public void resetClearsCounters() {
+        metrics.fileFinished(URI.create("file:/data/a.gbk"), millis(10), 100);
+        metrics.addWrite(millis(5), 3);
+
+        metrics.reset();
+
+        Snapshot snapshot = metrics.snapshot(0);
+        assertEquals(0, snapshot.getFiles());
+        assertEquals(0, snapshot.getRecords());
+        assertTrue(snapshot.getSlowestFiles().isEmpty());
+    }
+
+    @Test
+    public void memberNameIsShown() {
+        FileTime time = new FileTime(URI.create("file:/data/seqs.zip#dir/a.gbk"), 12);
+
+        assertEquals("a.gbk 12 ms", time.toString());
+    }
+
+    static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+}
@@ -0,0 +1,139 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import jp.scid.genomemuseum.model.ImportQuarantine.Failure;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportTask;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportQuarantineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MemoryDatabase database;
+    ImportQuarantine quarantine;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        quarantine = new ImportQuarantine(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void quarantinedWhileContentIsSame() throws Exception {
+        File file = newFile("broken.gbk", "LOCUS broken\n");
+        quarantine.record(failure(file));
+
+        assertTrue(quarantine.isQuarantined(FileDigest.of(file)));
+
+        // touched, the same content
+        file.setLastModified(file.lastModified() - 60000);
+        assertTrue(quarantine.isQuarantined(FileDigest.of(file)));
+
+        // the same size, another content
+        Files.write(file.toPath(), "LOCUS fixed!\n".getBytes("US-ASCII"));
+        file.setLastModified(file.lastModified() - 120000);
+        assertFalse(quarantine.isQuarantined(FileDigest.of(file)));
+    }
+
+    @Test
+    public void retriedLessThanMaxAttempts() throws Exception {
+        File file = newFile("broken.gbk", "LOCUS broken\n");
+
+        for (int attempts = 1; attempts < ImportQuarantine.MAX_ATTEMPTS; attempts++) {
+            quarantine.record(failure(file));
+            List<Failure> retryable = quarantine.findRetryable();
+            assertEquals(1, retryable.size());
+            assertEquals(attempts, retryable.get(0).getAttempts());
+        }
+        quarantine.record(failure(file));
+
+        assertTrue(quarantine.findRetryable().isEmpty());
+        assertEquals(1, quarantine.count());
+        assertTrue(quarantine.isQuarantined(FileDigest.of(file)));
+
+        quarantine.remove(file.toURI());
+        assertEquals(0, quarantine.count());
+    }
+
+    @Test
+    public void failedFileIsNotReadAgainUntilRetried() throws Exception {
+        File file = newFile("broken.gbk", "LOCUS\n//\n");
+        SequenceImportEngine engine = new SequenceImportEngine(
+                SequenceImportEngine.newParseExecutor(1), Executors.newSingleThreadScheduledExecutor());
+        engine.setRecordStore(new ExhibitRecordStore(database.getDataSource()));
+        engine.setQuarantine(quarantine);
+        GeneticSequenceFileLoadingManager manager = new GeneticSequenceFileLoadingManager(engine);
+        try {
+            assertFailed(engine.submit(file, null));
+            awaitAttempts(1);
+
+            ImportTask skipped = engine.submit(file, null);
+            assertEquals(Integer.valueOf(0), skipped.get(30, TimeUnit.SECONDS));
+            assertTrue(skipped.isQuarantined());
+
+            for (int attempts = 2; attempts <= ImportQuarantine.MAX_ATTEMPTS; attempts++) {
+                assertEquals(Integer.valueOf(1), manager.executeRetry(1).get(30, TimeUnit.SECONDS));
+                awaitAttempts(attempts);
+            }
+            assertEquals(Integer.valueOf(0), manager.executeRetry(1).get(30, TimeUnit.SECONDS));
+        }
+        finally {
+            manager.shutdownNow();
+        }
+    }
+
+    private void assertFailed(ImportTask task) throws Exception {
+        try {
+            task.get(30, TimeUnit.SECONDS);
+            fail("the file must fail");
+        }
+        catch (ExecutionException expected) {
+            // parse failure
+        }
+    }
+
+    /**
+     * Waits for the failure, which is recorded after the task completes.
+     */
+    private void awaitAttempts(int attempts) throws Exception {
+        for (int i = 0; i < 100 && recordedAttempts() < attempts; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(attempts, recordedAttempts());
+    }
+
+    private int recordedAttempts() throws Exception {
+        Object attempts = database.queryValue("SELECT MAX(attempts) FROM IMPORT_FAILURE");
+        return attempts == null ? 0 : ((Number) attempts).intValue();
+    }
+
+    private static Failure failure(File file) {
+        Failure failure = new Failure(FileDigest.of(file), null, "java.text.ParseException", "broken", 1);
+        failure.setDigest(ImportQuarantine.contentDigest(file.toURI()));
+        return failure;
+    }
+
+    private File newFile(String name, String content) throws Exception {
+        File file = new File(folder.getRoot(), name);
+        Files.write(file.toPath(), content.getBytes("US-ASCII"));
+        return file;
+    }
+}
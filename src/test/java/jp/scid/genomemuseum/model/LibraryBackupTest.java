@@ -0,0 +1,159 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import javax.sql.DataSource;
+
+import jp.scid.genomemuseum.model.LibraryBackup.Snapshot;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LibraryBackupTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    JdbcDataSource dataSource;
+    LibraryFileDeleter fileDeleter;
+    File filesDirectory;
+    File backupDirectory;
+
+    @Before
+    public void setUp() throws Exception {
+        // BACKUP TO needs a database in files
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:" + new File(folder.newFolder("database"), "library").getAbsolutePath());
+        filesDirectory = folder.newFolder("Files");
+        fileDeleter = new LibraryFileDeleter(filesDirectory);
+        backupDirectory = folder.newFolder("backup");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        fileDeleter.shutdown();
+        dataSource.getConnection().createStatement().execute("SHUTDOWN");
+    }
+
+    @Test
+    public void unchangedFilesAreLinkedToLastSnapshot() throws Exception {
+        File unchanged = newFile("a/unchanged.gbk", "unchanged");
+        File changed = newFile("changed.gbk", "before");
+        LibraryBackup backup = new LibraryBackup(dataSource, fileDeleter);
+
+        Snapshot first = backup.backup(backupDirectory);
+        assertEquals(2, first.getCopiedCount());
+        assertEquals(0, first.getLinkedCount());
+        assertTrue(new File(first.getDirectory(), LibraryBackup.DATABASE_FILE_NAME).isFile());
+
+        Files.write(changed.toPath(), "after, longer".getBytes("US-ASCII"));
+        newFile("added.gbk", "added");
+        Snapshot second = backupInNextSecond(backup);
+
+        assertEquals(1, second.getLinkedCount());
+        assertEquals(2, second.getCopiedCount());
+        assertEquals("after, longer".length() + "added".length(), second.getCopiedLength());
+        assertTrue(Files.isSameFile(snapshotFile(first, "a/unchanged.gbk").toPath(),
+                snapshotFile(second, "a/unchanged.gbk").toPath()));
+        assertEquals("before", read(snapshotFile(first, "changed.gbk")));
+        assertEquals("after, longer", read(snapshotFile(second, "changed.gbk")));
+        assertEquals(unchanged.length(), snapshotFile(second, "a/unchanged.gbk").length());
+    }
+
+    @Test
+    public void failedSnapshotIsDeleted() throws Exception {
+        newFile("a.gbk", "a");
+        LibraryBackup failing = new LibraryBackup(failingDataSource(), fileDeleter);
+
+        try {
+            failing.backup(backupDirectory);
+            fail("the backup must fail");
+        }
+        catch (SQLException expected) {
+            // interrupted
+        }
+
+        assertEquals(0, backupDirectory.list().length);
+    }
+
+    @Test
+    public void snapshotAfterInterruptedOneIsIncremental() throws Exception {
+        newFile("a.gbk", "a");
+        newFile("b.gbk", "b");
+        LibraryBackup backup = new LibraryBackup(dataSource, fileDeleter);
+        Snapshot first = backup.backup(backupDirectory);
+
+        // a snapshot interrupted by a crash, which is newer than the completed one
+        File crashed = new File(backupDirectory, "99991231-235959" + LibraryBackup.PARTIAL_SUFFIX);
+        LibraryBackup.copyFiles(filesDirectory, new File(crashed, LibraryBackup.FILES_DIRECTORY_NAME), null,
+                new Snapshot(crashed));
+        assertTrue(new File(crashed, LibraryBackup.DATABASE_FILE_NAME).createNewFile());
+        assertEquals(first.getDirectory(), LibraryBackup.findLastSnapshot(backupDirectory));
+
+        try {
+            new LibraryBackup(failingDataSource(), fileDeleter).backup(backupDirectory);
+            fail("the backup must fail");
+        }
+        catch (SQLException expected) {
+            // interrupted
+        }
+        Snapshot second = backupInNextSecond(backup);
+
+        assertEquals(2, second.getLinkedCount());
+        assertEquals(0, second.getCopiedCount());
+        assertTrue(Files.isSameFile(snapshotFile(first, "a.gbk").toPath(), snapshotFile(second, "a.gbk").toPath()));
+        assertEquals(second.getDirectory(), LibraryBackup.findLastSnapshot(backupDirectory));
+        assertEquals(Arrays.asList(first.getDirectory().getName(), second.getDirectory().getName(), crashed.getName()),
+                Arrays.asList(sortedNames(backupDirectory)));
+    }
+
+    /**
+     * Snapshots are named by the second when they are taken.
+     */
+    private Snapshot backupInNextSecond(LibraryBackup backup) throws Exception {
+        Thread.sleep(1100);
+        return backup.backup(backupDirectory);
+    }
+
+    private static DataSource failingDataSource() {
+        return (DataSource) Proxy.newProxyInstance(LibraryBackupTest.class.getClassLoader(),
+                new Class<?>[] {DataSource.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+                        throw new SQLException("interrupted");
+                    }
+                });
+    }
+
+    private static String[] sortedNames(File directory) {
+        String[] names = directory.list();
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static File snapshotFile(Snapshot snapshot, String path) {
+        return new File(new File(snapshot.getDirectory(), LibraryBackup.FILES_DIRECTORY_NAME), path);
+    }
+
+    private static String read(File file) throws Exception {
+        return new String(Files.readAllBytes(file.toPath()), "US-ASCII");
+    }
+
+    private File newFile(String path, String content) throws Exception {
+        File file = new File(filesDirectory, path);
+        file.getParentFile().mkdirs();
+        Files.write(file.toPath(), content.getBytes("US-ASCII"));
+        return file;
+    }
+}
@@ -0,0 +1,141 @@
+package jp.scid.genomemuseum.model;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.h2.jdbcx.JdbcDataSource;
+
+/**
+ * A library database in memory, which each test opens and shuts down.
+ */
+class MemoryDatabase {
+    private final static AtomicInteger databaseCount = new AtomicInteger(0);
+
+    private final JdbcDataSource dataSource;
+
+    /**
+     * Opens an empty database.
+     */
+    public MemoryDatabase() {
+        dataSource = new JdbcDataSource();
+        // kept while no connection is open, until the shutdown
+        dataSource.setURL("jdbc:h2:mem:library" + databaseCount.incrementAndGet() + ";DB_CLOSE_DELAY=-1");
+        dataSource.setUser("genomemuseum");
+        dataSource.setPassword("");
+    }
+
+    /**
+     * Opens a database which has the tables of the latest schema.
+     */
+    public static MemoryDatabase migrated() throws Exception {
+        MemoryDatabase database = new MemoryDatabase();
+        new SchemaMigrator(database.getDataSource()).migrate();
+        return database;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * @return the count of the changed rows
+     */
+    public int update(String sql, Object... parameters) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                bind(statement, parameters);
+                return statement.executeUpdate();
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * @return the values of the first column
+     */
+    public List<Object> queryColumn(String sql, Object... parameters) throws SQLException {
+        List<Object> values = new ArrayList<Object>();
+
+        Connection connection = dataSource.getConnection();
+        try {
+            PreparedStatement statement = connection.prepareStatement(sql);
+            try {
+                bind(statement, parameters);
+                ResultSet result = statement.executeQuery();
+                try {
+                    while (result.next()) {
+                        values.add(result.getObject(1));
+                    }
+                }
+                finally {
+                    result.close();
+                }
+            }
+            finally {
+                statement.close();
+            }
+        }
+        finally {
+            connection.close();
+        }
+        return values;
+    }
+
+    /**
+     * @return the value of the first column of the first row, or {@code null} if no row is found
+     */
+    public Object queryValue(String sql, Object... parameters) throws SQLException {
+        List<Object> values = queryColumn(sql, parameters);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    public long count(String table) throws SQLException {
+        return ((Number) queryValue("SELECT COUNT(*) FROM " + table)).longValue();
+    }
+
+    /**
+     * Inserts a box of the tree.
+     *
+     * @param parentId the parent box, or {@code null} for a box of the root
+     * @return the id of the box
+     */
+    public long insertBox(String name, int nodeType, Long parentId) throws SQLException {
+        update("INSERT INTO BOX_TREE_NODE (name, node_type, parent_id) VALUES (?, ?, ?)",
+                name, nodeType, parentId);
+        return ((Number) queryValue("SELECT MAX(id) FROM BOX_TREE_NODE")).longValue();
+    }
+
+    /**
+     * Inserts an exhibit of the name and the accession.
+     *
+     * @return the id of the exhibit
+     */
+    public long insertExhibit(String name, String accession) throws SQLException {
+        update("INSERT INTO MUSEUM_EXHIBIT (name, accession) VALUES (?, ?)", name, accession);
+        return ((Number) queryValue("SELECT MAX(id) FROM MUSEUM_EXHIBIT")).longValue();
+    }
+
+    public void shutdown() throws SQLException {
+        update("SHUTDOWN");
+    }
+
+    private static void bind(PreparedStatement statement, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            statement.setObject(i + 1, parameters[i]);
+        }
+    }
+}
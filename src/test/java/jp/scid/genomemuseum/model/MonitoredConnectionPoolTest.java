@@ -0,0 +1,123 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import jp.scid.genomemuseum.model.MonitoredConnectionPool.Snapshot;
+
+import org.h2.jdbcx.JdbcConnectionPool;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MonitoredConnectionPoolTest {
+    private final static AtomicInteger databaseCount = new AtomicInteger();
+
+    MonitoredConnectionPool pool;
+    ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        // closed when the pool closes the connections
+        String url = "jdbc:h2:mem:pool" + databaseCount.incrementAndGet() + MonitoredConnectionPool.LOCK_SETTINGS;
+        pool = new MonitoredConnectionPool(JdbcConnectionPool.create(url, "", ""));
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        pool.dispose();
+    }
+
+    @Test
+    public void borrowedConnectionsAreCounted() throws Exception {
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+
+        Snapshot lent = pool.snapshot();
+        assertEquals(2, lent.getActive());
+        assertEquals(0, lent.getIdle());
+        assertEquals(2, lent.getBorrowCount());
+
+        first.close();
+        second.close();
+
+        Snapshot returned = pool.snapshot();
+        assertEquals(0, returned.getActive());
+        assertEquals(2, returned.getIdle());
+        assertEquals(2, returned.getBorrowCount());
+    }
+
+    @Test
+    public void waitForReturnedConnectionIsMeasured() throws Exception {
+        pool.getPool().setMaxConnections(1);
+        final Connection lent = pool.getConnection();
+        executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Thread.sleep(500);
+                lent.close();
+                return null;
+            }
+        });
+
+        Connection connection = pool.getConnection();
+        connection.close();
+
+        Snapshot snapshot = pool.snapshot();
+        assertEquals(2, snapshot.getBorrowCount());
+        assertEquals(1, snapshot.getMaxConnections());
+        assertTrue("max wait " + snapshot.getMaxWaitMillis(), snapshot.getMaxWaitMillis() >= 400);
+        assertTrue(snapshot.getAverageWaitMillis() >= 200);
+    }
+
+    @Test
+    public void readWaitsForLongWrite() throws Exception {
+        final Connection writer = pool.getConnection();
+        try {
+            writer.createStatement().execute("CREATE TABLE T (id int)");
+            writer.setAutoCommit(false);
+            writer.createStatement().execute("INSERT INTO T VALUES (1)");
+        }
+        catch (Exception e) {
+            writer.close();
+            throw e;
+        }
+        // longer than the default lock timeout of H2
+        Future<Void> commit = executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    Thread.sleep(3000);
+                    writer.commit();
+                }
+                finally {
+                    writer.close();
+                }
+                return null;
+            }
+        });
+
+        Connection reader = pool.getConnection();
+        try {
+            Statement statement = reader.createStatement();
+            ResultSet result = statement.executeQuery("SELECT COUNT(*) FROM T");
+            assertTrue(result.next());
+            assertEquals(1, result.getInt(1));
+        }
+        finally {
+            reader.close();
+        }
+        commit.get(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,134 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SchemaMigratorTest {
+    MemoryDatabase database;
+    SchemaMigrator migrator;
+
+    @Before
+    public void setUp() throws Exception {
+        database = new MemoryDatabase();
+        migrator = new SchemaMigrator(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void migrateEmptyDatabase() throws Exception {
+        assertEquals(0, migrator.getCurrentVersion());
+
+        assertEquals(9, migrator.migrate());
+
+        assertEquals(migrator.getLatestVersion(), migrator.getCurrentVersion());
+        assertTableExists("MUSEUM_EXHIBIT");
+        assertTableExists("SEQUENCE_FILE_DIGEST");
+        assertColumnExists("MUSEUM_EXHIBIT", "FILE_OFFSET");
+        assertColumnExists("SEQUENCE_FILE_DIGEST", "CONTENT_DIGEST");
+        assertEquals(0L, ((Number) database.queryValue(
+                SchemaMigrator.COLUMN_EXISTS_SQL, "TABLE_VIEW_PROPERTY", "BOX_ID")).longValue());
+
+        assertEquals(0, migrator.migrate());
+    }
+
+    @Test
+    public void migrateLibraryOfFirstVersion() throws Exception {
+        // the tables which the sequence library made
+        Connection connection = database.getDataSource().getConnection();
+        try {
+            SqlScript.fromResource(SchemaMigrator.class, "sql/schema.sql").execute(connection);
+            SqlScript.fromResource(SchemaMigrator.class, "sql/sequences.sql").execute(connection);
+        }
+        finally {
+            connection.close();
+        }
+        long exhibitId = database.insertExhibit("NC_000001", "NC_000001");
+
+        migrator.migrate();
+
+        assertEquals(migrator.getLatestVersion(), migrator.getCurrentVersion());
+        assertEquals(1, database.count("MUSEUM_EXHIBIT"));
+        assertEquals(0L, ((Number) database.queryValue(
+                "SELECT file_offset FROM MUSEUM_EXHIBIT WHERE id = ?", exhibitId)).longValue());
+        assertColumnExists("SEQUENCE_FILE_DIGEST", "MISSING");
+    }
+
+    @Test
+    public void migrateAgainAfterUpgradeLeftHalfDone() throws Exception {
+        migrator.migrate();
+        // as if the upgrade stopped after version 1
+        database.update("DELETE FROM SCHEMA_VERSION WHERE version > 1");
+
+        assertEquals(8, migrator.migrate());
+        assertEquals(migrator.getLatestVersion(), migrator.getCurrentVersion());
+    }
+
+    @Test
+    public void tableViewPropertiesAreReferredByBoxes() throws Exception {
+        new SchemaMigrator(database.getDataSource(), SchemaMigrator.defaultMigrations().subList(0, 7)).migrate();
+        long boxId = database.insertBox("box", 1, null);
+        String insert = "INSERT INTO TABLE_VIEW_PROPERTY "
+                + "(box_id, visibled_columns, order_statement, selected_rows) VALUES (?, ?, '', '')";
+        database.update(insert, TableViewPropertyStore.LIBRARY_BOX_ID, "library");
+        database.update(insert, boxId, "box");
+        // of a box deleted
+        database.update(insert, boxId + 1, "deleted");
+
+        migrator.migrate();
+
+        assertEquals(2, database.count("TABLE_VIEW_PROPERTY"));
+        assertEquals("library", database.queryValue(
+                "SELECT visibled_columns FROM TABLE_VIEW_PROPERTY WHERE id = 0"));
+        assertEquals("box", database.queryValue("SELECT P.visibled_columns FROM BOX_TREE_NODE B "
+                + "JOIN TABLE_VIEW_PROPERTY P ON P.id = B.table_property_id WHERE B.id = ?", boxId));
+    }
+
+    @Test
+    public void failedMigrationIsNotRecorded() throws Exception {
+        SchemaMigrator.Migration failing = new SchemaMigrator.Migration(2, "failing") {
+            @Override
+            void apply(Connection connection) throws SQLException {
+                throw new SQLException("failed");
+            }
+        };
+        migrator = new SchemaMigrator(database.getDataSource(), Arrays.asList(
+                SchemaMigrator.script(1, "tables", "sql/schema.sql"), failing));
+
+        try {
+            migrator.migrate();
+            fail("the failure must be thrown");
+        }
+        catch (SQLException expected) {
+            // version 1 is kept
+        }
+        assertEquals(1, migrator.getCurrentVersion());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void migrationsMustBeAscending() {
+        new SchemaMigrator(database.getDataSource(), Arrays.asList(
+                SchemaMigrator.script(2, "second", "sql/sequences.sql"),
+                SchemaMigrator.script(1, "first", "sql/sequences.sql")));
+    }
+
+    private void assertTableExists(String table) throws SQLException {
+        assertEquals(table, 1L, ((Number) database.queryValue(
+                SchemaMigrator.TABLE_EXISTS_SQL, table)).longValue());
+    }
+
+    private void assertColumnExists(String table, String column) throws SQLException {
+        assertEquals(table + "." + column, 1L, ((Number) database.queryValue(
+                SchemaMigrator.COLUMN_EXISTS_SQL, table, column)).longValue());
+    }
+}
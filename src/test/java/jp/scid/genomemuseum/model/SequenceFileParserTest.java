@@ -0,0 +1,191 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SequenceFileParserTest {
+    SequenceFileParser parser;
+
+    @Before
+    public void setUp() throws Exception {
+        parser = new SequenceFileParser();
+    }
+
+    @Test
+    public void parseGenBank() throws Exception {
+        ExhibitRecord record = parser.parse(resourceFile("/jp/scid/bio/NC_009347.gbk"));
+
+        assertEquals(SequenceFileFormat.GENBANK, record.getFileType());
+        assertEquals("NC_009347", record.getName());
+        assertEquals(2101, record.getSequenceLength());
+        assertEquals("NC_009347", record.getAccession());
+        assertEquals(1, record.getVersion());
+        assertEquals("Shigella sonnei Ss046 plasmid pSS046_spC, complete sequence.", record.getDefinition());
+        assertEquals("Shigella sonnei Ss046", record.getSourceText());
+        assertEquals("Shigella sonnei Ss046", record.getOrganism());
+        assertEquals("DNA", record.getMoleculeType());
+        assertEquals(ExhibitRecord.SEQUENCE_UNIT_BASE, record.getSequenceUnit());
+        assertNotNull(record.getDate());
+    }
+
+    @Test
+    public void parseFasta() throws Exception {
+        ExhibitRecord record = parser.parse(resourceFile("/jp/scid/bio/NC_009473.fna"));
+
+        assertEquals(SequenceFileFormat.FASTA, record.getFileType());
+        assertEquals("NC_009473", record.getAccession());
+        assertEquals(1, record.getVersion());
+        assertEquals("Acidiphilium cryptum JF-5 plasmid pACRY07, complete sequence", record.getDefinition());
+        assertEquals(5629, record.getSequenceLength());
+    }
+
+    @Test
+    public void parseUniProtFastaHeader() throws Exception {
+        ExhibitRecord record = parser.parse(resourceFile("/jp/scid/bio/fasta_example_1.fasta"));
+
+        assertEquals("OVAX_CHICK", record.getName());
+        assertEquals("P01013", record.getAccession());
+    }
+
+    @Test
+    public void readConcatenatedRecords() throws Exception {
+        File file = resourceFile("/jp/scid/bio/NC_009473.faa");
+        SequenceRecordReader reader = parser.open(file);
+        List<ExhibitRecord> records = new ArrayList<ExhibitRecord>();
+        try {
+            ExhibitRecord record;
+            while ((record = reader.next()) != null) {
+                assertNotNull(reader.getRecordDigest());
+                records.add(record);
+            }
+        }
+        finally {
+            reader.close();
+        }
+
+        assertEquals(5, records.size());
+        assertEquals(0, records.get(0).getFileOffset());
+        ExhibitRecord last = records.get(4);
+        assertEquals(file.length(), last.getFileOffset() + last.getFileLength());
+
+        InputStream source = SequenceRecordReader.openRecord(file, last.getFileOffset(), last.getFileLength());
+        try {
+            ExhibitRecord reread = parser.parse(source);
+            assertEquals(last.getName(), reread.getName());
+            assertEquals(last.getSequenceLength(), reread.getSequenceLength());
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void headerScan() throws Exception {
+        File file = resourceFile("/jp/scid/bio/NC_001773.gbk");
+        ExhibitRecord expected = parser.parse(file);
+
+        SequenceRecordReader reader = parser.openHeaderScan(file);
+        try {
+            ExhibitRecord record = reader.next();
+            assertEquals(expected.getName(), record.getName());
+            assertEquals(expected.getSequenceLength(), record.getSequenceLength());
+            assertEquals(expected.getOrganism(), record.getOrganism());
+            assertEquals(file.length(), record.getFileLength());
+            assertTrue(reader.getLineNumber() < 50);
+            assertNull(reader.next());
+        }
+        finally {
+            reader.close();
+        }
+
+        InputStream source = SequenceRecordReader.openRecord(file, 0, file.length());
+        try {
+            assertEquals(3444, parser.readSequence(source).length());
+        }
+        finally {
+            source.close();
+        }
+    }
+
+    @Test
+    public void headerScanDigestCoversSequence() throws Exception {
+        String header = "LOCUS       TEST                      12 bp    DNA     linear   SYN 01-JAN-2000\n"
+                + "DEFINITION  test.\n"
+                + "ORIGIN      \n";
+        String text = header + "        1 aaacccgggt tt\n//\n" + header + "        1 aaacccgggt ta\n//\n";
+        File file = File.createTempFile("headerScan", ".gbk");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(text.getBytes("ISO-8859-1"));
+        }
+        finally {
+            out.close();
+        }
+
+        List<String> scanned = readDigests(parser.openHeaderScan(file));
+        assertEquals(2, scanned.size());
+        assertFalse(scanned.get(0).equals(scanned.get(1)));
+        assertEquals(readDigests(parser.open(file)), scanned);
+    }
+
+    private static List<String> readDigests(SequenceRecordReader reader) throws Exception {
+        List<String> digests = new ArrayList<String>();
+        try {
+            while (reader.next() != null) {
+                digests.add(reader.getRecordDigest());
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return digests;
+    }
+
+    @Test
+    public void parseEmbl() throws Exception {
+        String text = "ID   X56734; SV 1; linear; mRNA; STD; PLN; 12 BP.\n"
+                + "XX\n"
+                + "AC   X56734; S46826;\n"
+                + "DT   12-SEP-1991 (Rel. 29, Created)\n"
+                + "DE   Trifolium repens mRNA for\n"
+                + "DE   non-cyanogenic beta-glucosidase\n"
+                + "OS   Trifolium repens (white clover)\n"
+                + "SQ   Sequence 12 BP; 3 A; 3 C; 3 G; 3 T; 0 other;\n"
+                + "     aaacccgggt tt                                                       12\n"
+                + "//\n";
+        ExhibitRecord record = parser.parse(new ByteArrayInputStream(text.getBytes("ISO-8859-1")));
+
+        assertEquals(SequenceFileFormat.EMBL, record.getFileType());
+        assertEquals("X56734", record.getName());
+        assertEquals("X56734", record.getAccession());
+        assertEquals(1, record.getVersion());
+        assertEquals("mRNA", record.getMoleculeType());
+        assertEquals(12, record.getSequenceLength());
+        assertEquals(ExhibitRecord.SEQUENCE_UNIT_BASE, record.getSequenceUnit());
+        assertEquals("Trifolium repens mRNA for non-cyanogenic beta-glucosidase", record.getDefinition());
+        assertEquals("Trifolium repens (white clover)", record.getOrganism());
+        assertNotNull(record.getDate());
+    }
+
+    @Test(expected = ParseException.class)
+    public void parseInvalidFile() throws Exception {
+        parser.parse(resourceFile("/jp/scid/genomemuseum/model/invalid.data"));
+    }
+
+    static File resourceFile(String name) throws URISyntaxException {
+        return new File(SequenceFileParserTest.class.getResource(name).toURI());
+    }
+}
@@ -0,0 +1,56 @@
+package jp.scid.genomemuseum.model;
+
+import static jp.scid.genomemuseum.model.SequenceFileParserTest.*;
+import static org.junit.Assert.*;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPOutputStream;
+
+import jp.scid.genomemuseum.model.SequenceFileSniffer.Type;
+
+import org.junit.Test;
+
+public class SequenceFileSnifferTest {
+    @Test
+    public void sniffSequenceFiles() throws Exception {
+        assertEquals(Type.GENBANK, SequenceFileSniffer.sniff(resourceFile("/jp/scid/bio/NC_009347.gbk")));
+        assertEquals(Type.FASTA, SequenceFileSniffer.sniff(resourceFile("/jp/scid/bio/NC_009473.faa")));
+        assertEquals(Type.EMBL, sniff("ID   X56734; SV 1; linear; mRNA; STD; PLN; 1859 BP.\n"));
+        assertEquals(Type.FASTA, sniff("\n\n>seq1 leading empty lines\nACGT\n"));
+    }
+
+    @Test
+    public void sniffUnknownFile() throws Exception {
+        assertEquals(Type.UNKNOWN, SequenceFileSniffer.sniff(resourceFile("/jp/scid/genomemuseum/model/invalid.data")));
+        assertEquals(Type.UNKNOWN, sniff(""));
+    }
+
+    @Test
+    public void sniffCompressed() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(">seq1\nACGT\n".getBytes("ISO-8859-1"));
+        gzip.close();
+
+        assertEquals(Type.GZIP, SequenceFileSniffer.sniff(ByteBuffer.wrap(bytes.toByteArray())));
+        assertEquals(Type.BZIP2, sniff("BZh91AY&SY"));
+        assertEquals(Type.ZIP, sniff("PK\003\004"));
+    }
+
+    @Test
+    public void streamIsReadAgainFromHead() throws Exception {
+        InputStream source = new BufferedInputStream(
+                new ByteArrayInputStream("LOCUS       NC_009347\n".getBytes("ISO-8859-1")));
+
+        assertEquals(Type.GENBANK, SequenceFileSniffer.sniff(source));
+        assertEquals('L', source.read());
+    }
+
+    static Type sniff(String text) throws Exception {
+        return SequenceFileSniffer.sniff(ByteBuffer.wrap(text.getBytes("ISO-8859-1")));
+    }
+}
@@ -0,0 +1,111 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import jp.scid.genomemuseum.model.SequenceFileWalker.FileHandler;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SequenceFileWalkerTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    final List<File> found = new ArrayList<File>();
+    final FileHandler collector = new FileHandler() {
+        @Override
+        public void fileFound(File file) {
+            found.add(file);
+        }
+    };
+
+    @After
+    public void tearDown() {
+        // clears the interruption of the tests
+        Thread.interrupted();
+    }
+
+    @Test
+    public void filesOfTreesAreFound() throws Exception {
+        File a = newFile("a.gbk");
+        File b = newFile("dir/b.fasta");
+        File c = newFile("dir/sub/c.gbk");
+        File single = newFile("other/single.gbk");
+
+        int count = new SequenceFileWalker(Arrays.asList(new File(folder.getRoot(), "dir"), single), collector).call();
+
+        assertEquals(3, count);
+        assertEquals(new HashSet<File>(Arrays.asList(b, c, single)), new HashSet<File>(found));
+        assertFalse(found.contains(a));
+    }
+
+    @Test
+    public void hiddenFilesAreSkipped() throws Exception {
+        File shown = newFile("shown.gbk");
+        newFile(".hidden.gbk");
+        newFile(".hiddenDir/in.gbk");
+
+        int count = new SequenceFileWalker(Collections.singleton(folder.getRoot()), collector).call();
+
+        assertEquals(1, count);
+        assertEquals(Collections.singletonList(shown), found);
+    }
+
+    @Test
+    public void hiddenRootIsWalked() throws Exception {
+        File file = newFile(".root/in.gbk");
+
+        new SequenceFileWalker(Collections.singleton(file.getParentFile()), collector).call();
+
+        assertEquals(Collections.singletonList(file), found);
+    }
+
+    @Test
+    public void filesArePassedWhileWalking() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            newFile("dir" + i + "/" + i + ".gbk");
+        }
+        // stops the walk from the handler, which is not possible if the files are passed at the end
+        FileHandler stopping = new FileHandler() {
+            @Override
+            public void fileFound(File file) {
+                found.add(file);
+                if (found.size() == 3) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+
+        int count = new SequenceFileWalker(Collections.singleton(folder.getRoot()), stopping).call();
+
+        assertEquals(3, count);
+        assertEquals(3, found.size());
+    }
+
+    @Test
+    public void interruptedWalkFindsNothing() throws Exception {
+        newFile("a.gbk");
+        Thread.currentThread().interrupt();
+
+        int count = new SequenceFileWalker(Collections.singleton(folder.getRoot()), collector).call();
+
+        assertEquals(0, count);
+        assertTrue(found.isEmpty());
+    }
+
+    private File newFile(String path) throws Exception {
+        File file = new File(folder.getRoot(), path);
+        file.getParentFile().mkdirs();
+        assertTrue(file.createNewFile());
+        return file;
+    }
+}
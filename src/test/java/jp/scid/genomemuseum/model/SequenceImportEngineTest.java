@@ -0,0 +1,286 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import jp.scid.genomemuseum.model.ImportMetrics.FileTime;
+import jp.scid.genomemuseum.model.SequenceImportEngine.ImportTask;
+import jp.scid.genomemuseum.model.SequenceImportEngine.Priority;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class SequenceImportEngineTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    MemoryDatabase database;
+    ExhibitRecordStore store;
+    SequenceImportEngine engine;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new ExhibitRecordStore(database.getDataSource());
+        engine = newEngine(SequenceImportEngine.newParseExecutor(2));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        engine.shutdownNow();
+        database.shutdown();
+    }
+
+    SequenceImportEngine newEngine(ExecutorService parseExecutor) {
+        SequenceImportEngine engine =
+                new SequenceImportEngine(parseExecutor, Executors.newSingleThreadScheduledExecutor());
+        engine.setRecordStore(store);
+        engine.setFlushInterval(0);
+        return engine;
+    }
+
+    @Test
+    public void fileTimeDoesNotIncludeWaitInQueue() throws Exception {
+        engine.shutdownNow();
+        ExecutorService parseExecutor = SequenceImportEngine.newParseExecutor(1);
+        engine = newEngine(parseExecutor);
+        CountDownLatch release = occupy(parseExecutor);
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+
+        ImportTask task = engine.submit(file, null, Priority.INTERACTIVE);
+        Thread.sleep(1000);
+        release.countDown();
+        assertEquals(Integer.valueOf(1), task.get(30, TimeUnit.SECONDS));
+        awaitFilesFinished(1);
+
+        List<FileTime> slowest = engine.getMetrics().snapshot(0).getSlowestFiles();
+        assertEquals(1, slowest.size());
+        assertTrue("time " + slowest.get(0).getMillis(), slowest.get(0).getMillis() < 1000);
+    }
+
+    @Test
+    public void interactiveFilesAreParsedBeforeWaitingBulkFiles() throws Exception {
+        engine.shutdownNow();
+        ExecutorService parseExecutor = SequenceImportEngine.newParseExecutor(1);
+        engine = newEngine(parseExecutor);
+        CountDownLatch release = occupy(parseExecutor);
+        File bulk1 = copyResource("/jp/scid/bio/NC_009347.gbk", "bulk1.gbk");
+        File bulk2 = copyResource("/jp/scid/bio/NC_001773.gbk", "bulk2.gbk");
+        File interactive = copyResource("/jp/scid/bio/NC_009473.fna", "interactive.fna");
+
+        List<ImportTask> tasks = new ArrayList<ImportTask>();
+        tasks.add(engine.submit(bulk1, null));
+        tasks.add(engine.submit(bulk2, null));
+        tasks.add(engine.submit(interactive, null, Priority.INTERACTIVE));
+        release.countDown();
+        for (ImportTask task: tasks) {
+            task.get(30, TimeUnit.SECONDS);
+        }
+
+        // the exhibits are written in the order of the parsing
+        List<Object> fileUris = database.queryColumn("SELECT file_uri FROM SEQUENCE_FILE_DIGEST ORDER BY exhibit_id");
+        assertEquals(Arrays.<Object>asList(interactive.toURI().toString(), bulk1.toURI().toString(),
+                bulk2.toURI().toString()), fileUris);
+    }
+
+    @Test
+    public void bulkSubmitWaitsWhileQueueIsFull() throws Exception {
+        engine.shutdownNow();
+        ExecutorService parseExecutor = SequenceImportEngine.newParseExecutor(1);
+        engine = newEngine(parseExecutor);
+        CountDownLatch release = occupy(parseExecutor);
+        final File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+
+        List<ImportTask> tasks = new ArrayList<ImportTask>();
+        for (int i = 0; i < SequenceImportEngine.DEFAULT_QUEUE_CAPACITY; i++) {
+            tasks.add(engine.submit(file, null));
+        }
+        ExecutorService submitter = Executors.newSingleThreadExecutor();
+        try {
+            Future<ImportTask> blocked = submitter.submit(new Callable<ImportTask>() {
+                @Override
+                public ImportTask call() {
+                    return engine.submit(file, null);
+                }
+            });
+            Thread.sleep(300);
+            assertFalse("bulk submit must wait", blocked.isDone());
+            // files added by the user do not wait
+            tasks.add(engine.submit(file, null, Priority.INTERACTIVE));
+
+            // the waiting files are taken by the parsing thread
+            for (ImportTask task: tasks) {
+                task.cancel(false);
+            }
+            release.countDown();
+            ImportTask task = blocked.get(30, TimeUnit.SECONDS);
+            assertEquals(Integer.valueOf(1), task.get(30, TimeUnit.SECONDS));
+        }
+        finally {
+            submitter.shutdownNow();
+        }
+    }
+
+    @Test
+    public void copyAtAnotherLocationIsSkipped() throws Exception {
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+        assertEquals(Integer.valueOf(1), engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS));
+        File copy = copyResource("/jp/scid/bio/NC_009347.gbk", "copy/renamed.gbk");
+        copy.setLastModified(file.lastModified() - 60000);
+
+        ImportTask task = engine.submit(copy, null, Priority.INTERACTIVE);
+
+        assertEquals(Integer.valueOf(0), task.get(30, TimeUnit.SECONDS));
+        assertTrue(task.isDuplicate());
+        assertEquals(1, database.count("MUSEUM_EXHIBIT"));
+        assertNotNull(database.queryValue("SELECT content_digest FROM SEQUENCE_FILE_DIGEST"));
+    }
+
+    @Test
+    public void otherContentOfSameSizeIsImported() throws Exception {
+        File file = copyResource("/jp/scid/bio/NC_009347.gbk", "seq.gbk");
+        assertEquals(Integer.valueOf(1), engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS));
+        // the same size and another accession
+        File other = copyResource("/jp/scid/bio/NC_009347.gbk", "other.gbk");
+        String content = new String(Files.readAllBytes(other.toPath()), "ISO-8859-1");
+        Files.write(other.toPath(), content.replace("NC_009347", "NC_009348").getBytes("ISO-8859-1"));
+        assertEquals(file.length(), other.length());
+
+        ImportTask task = engine.submit(other, null, Priority.INTERACTIVE);
+
+        assertEquals(Integer.valueOf(1), task.get(30, TimeUnit.SECONDS));
+        assertEquals(2, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    @Test
+    public void gzipFileIsImported() throws Exception {
+        File file = new File(folder.getRoot(), "seq.gbk.gz");
+        OutputStream out = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            Files.copy(SequenceFileParserTest.resourceFile("/jp/scid/bio/NC_009347.gbk").toPath(), out);
+        }
+        finally {
+            out.close();
+        }
+
+        assertEquals(Integer.valueOf(1), engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS));
+        assertEquals("NC_009347", database.queryValue("SELECT accession FROM MUSEUM_EXHIBIT"));
+    }
+
+    @Test
+    public void zipMembersAreImported() throws Exception {
+        File file = new File(folder.getRoot(), "seqs.zip");
+        ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            // the hidden member is not imported
+            String[][] members = {{"NC_009347.gbk", "NC_009347.gbk"}, {"dir/NC_001773.gbk", "NC_001773.gbk"},
+                    {".hidden.fna", "NC_009473.fna"}};
+            for (String[] member: members) {
+                out.putNextEntry(new ZipEntry(member[0]));
+                Files.copy(SequenceFileParserTest.resourceFile("/jp/scid/bio/" + member[1]).toPath(), out);
+                out.closeEntry();
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        assertEquals(Integer.valueOf(2), engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS));
+        awaitExhibits(2);
+        assertEquals(SequenceFileArchives.entryUri(file, "dir/NC_001773.gbk").toString(), database.queryValue(
+                "SELECT D.file_uri FROM SEQUENCE_FILE_DIGEST D JOIN MUSEUM_EXHIBIT E ON E.id = D.exhibit_id "
+                + "WHERE E.accession = 'NC_001773'"));
+
+        // the members are stored already
+        engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS);
+        Thread.sleep(500);
+        assertEquals(2, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    @Test
+    public void tarGzipMembersAreImported() throws Exception {
+        File file = new File(folder.getRoot(), "seqs.tar.gz");
+        TarArchiveOutputStream out = new TarArchiveOutputStream(new GZIPOutputStream(new FileOutputStream(file)));
+        try {
+            for (String name: new String[] {"NC_009347.gbk", "NC_001773.gbk"}) {
+                File member = SequenceFileParserTest.resourceFile("/jp/scid/bio/" + name);
+                out.putArchiveEntry(new TarArchiveEntry(member, name));
+                Files.copy(member.toPath(), out);
+                out.closeArchiveEntry();
+            }
+        }
+        finally {
+            out.close();
+        }
+
+        assertEquals(Integer.valueOf(2), engine.submit(file, null, Priority.INTERACTIVE).get(30, TimeUnit.SECONDS));
+        awaitExhibits(2);
+    }
+
+    /**
+     * Occupies the only parsing thread until the latch is released, so submitted files wait in the queue.
+     */
+    static CountDownLatch occupy(ExecutorService parseExecutor) {
+        final CountDownLatch release = new CountDownLatch(1);
+        parseExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        return release;
+    }
+
+    /**
+     * Waits for the exhibits of the members, whose tasks complete after the task of the archive.
+     */
+    void awaitExhibits(int count) throws Exception {
+        for (int i = 0; i < 100 && database.count("MUSEUM_EXHIBIT") < count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, database.count("MUSEUM_EXHIBIT"));
+    }
+
+    /**
+     * Waits for the tasks to be measured, which is after their results are got.
+     */
+    void awaitFilesFinished(long count) throws InterruptedException {
+        for (int i = 0; i < 100 && engine.getMetrics().getFilesFinished() < count; i++) {
+            Thread.sleep(50);
+        }
+        assertEquals(count, engine.getMetrics().getFilesFinished());
+    }
+
+    File copyResource(String name, String fileName) throws Exception {
+        File file = new File(folder.getRoot(), fileName);
+        file.getParentFile().mkdirs();
+        Files.copy(SequenceFileParserTest.resourceFile(name).toPath(), file.toPath());
+        return file;
+    }
+}
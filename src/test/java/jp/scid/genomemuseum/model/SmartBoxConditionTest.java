@@ -0,0 +1,156 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import jp.scid.genomemuseum.model.SmartBoxCondition.Field;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Operator;
+import jp.scid.genomemuseum.model.SmartBoxCondition.Rule;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SmartBoxConditionTest {
+    MemoryDatabase database;
+    long coli;
+    long coliLike;
+    long subtilis;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        coli = insertExhibit("NC_000913", "Escherichia coli_1% strain", 1000, "2011-12-31");
+        // matched by the wildcards if they are not escaped
+        coliLike = insertExhibit("NCX000964", "Escherichia coliX1 Strain", 5000, "2012-02-01");
+        subtilis = insertExhibit("NZ_000964", "Bacillus subtilis", 3000, "2012-01-31");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        database.shutdown();
+    }
+
+    @Test
+    public void compileAllRules() {
+        SmartBoxCondition condition = new SmartBoxCondition(true, Arrays.asList(
+                new Rule(Field.ORGANISM, Operator.CONTAINS, "Coli_1%"),
+                new Rule(Field.SEQUENCE_LENGTH, Operator.GREATER_THAN, " 1000 ")));
+        List<Object> parameters = new ArrayList<Object>();
+
+        assertEquals("(LOWER(ORGANISM) LIKE ? ESCAPE '\\') AND (SEQUENCE_LENGTH > ?)",
+                condition.compile(parameters));
+        assertEquals(Arrays.<Object>asList("%coli\\_1\\%%", 1000), parameters);
+    }
+
+    @Test
+    public void compileAnyRules() {
+        SmartBoxCondition condition = new SmartBoxCondition(false, Arrays.asList(
+                new Rule(Field.ACCESSION, Operator.STARTS_WITH, "NC_"),
+                new Rule(Field.DATE, Operator.LESS_THAN, "2012-01-31")));
+        List<Object> parameters = new ArrayList<Object>();
+
+        assertEquals("(ACCESSION LIKE ? ESCAPE '\\') OR (DATE < ?)", condition.compile(parameters));
+        assertEquals(Arrays.<Object>asList("NC\\_%", Date.valueOf("2012-01-31")), parameters);
+    }
+
+    @Test
+    public void emptyConditionMatchesAll() {
+        List<Object> parameters = new ArrayList<Object>();
+
+        assertEquals("TRUE", new SmartBoxCondition().compile(parameters));
+        assertTrue(parameters.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void textOperatorCannotCompareNumber() {
+        new Rule(Field.SEQUENCE_LENGTH, Operator.CONTAINS, "10");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void numberMustBeParsed() {
+        new Rule(Field.VERSION, Operator.EQUALS, "one");
+    }
+
+    @Test
+    public void identifiers() {
+        assertEquals(Field.SOURCE_TEXT, Field.fromIdentifier("sourceText"));
+        assertEquals(Operator.NOT_CONTAINS, Operator.fromIdentifier("notContains"));
+    }
+
+    @Test
+    public void textRulesSelectExhibits() throws Exception {
+        assertEquals(ids(coli), select(Field.ORGANISM, Operator.CONTAINS, "COLI_1%"));
+        assertEquals(ids(coli, coliLike), select(Field.ORGANISM, Operator.CONTAINS, "coli"));
+        assertEquals(ids(subtilis), select(Field.ORGANISM, Operator.NOT_CONTAINS, "Coli"));
+        assertEquals(ids(coliLike, subtilis), select(Field.ORGANISM, Operator.NOT_CONTAINS, "_1%"));
+        assertEquals(ids(), select(Field.ACCESSION, Operator.STARTS_WITH, "N%"));
+        assertEquals(ids(coli), select(Field.ACCESSION, Operator.STARTS_WITH, "NC_"));
+        // compares the head as it is for the index
+        assertEquals(ids(), select(Field.ACCESSION, Operator.STARTS_WITH, "nc_"));
+        assertEquals(ids(coli), select(Field.ORGANISM, Operator.ENDS_WITH, "1% STRAIN"));
+        assertEquals(ids(coli, coliLike), select(Field.ORGANISM, Operator.ENDS_WITH, "strain"));
+        assertEquals(ids(coli), select(Field.ACCESSION, Operator.EQUALS, "NC_000913"));
+        assertEquals(ids(coliLike, subtilis), select(Field.ACCESSION, Operator.NOT_EQUALS, "NC_000913"));
+    }
+
+    @Test
+    public void numberRulesSelectExhibits() throws Exception {
+        assertEquals(ids(subtilis), select(Field.SEQUENCE_LENGTH, Operator.EQUALS, "3000"));
+        assertEquals(ids(coli, coliLike), select(Field.SEQUENCE_LENGTH, Operator.NOT_EQUALS, "3000"));
+        assertEquals(ids(coliLike), select(Field.SEQUENCE_LENGTH, Operator.GREATER_THAN, "3000"));
+        assertEquals(ids(coli), select(Field.SEQUENCE_LENGTH, Operator.LESS_THAN, "3000"));
+    }
+
+    @Test
+    public void dateRulesSelectExhibits() throws Exception {
+        assertEquals(ids(subtilis), select(Field.DATE, Operator.EQUALS, "2012-01-31"));
+        assertEquals(ids(coli, coliLike), select(Field.DATE, Operator.NOT_EQUALS, "2012-01-31"));
+        assertEquals(ids(coliLike), select(Field.DATE, Operator.GREATER_THAN, "2012-01-31"));
+        assertEquals(ids(coli), select(Field.DATE, Operator.LESS_THAN, "2012-01-31"));
+        assertEquals(ids(coli, subtilis, coliLike), select(Field.DATE, Operator.GREATER_THAN, "1999-01-01"));
+    }
+
+    @Test
+    public void allOrAnyRulesSelectExhibits() throws Exception {
+        List<Rule> rules = Arrays.asList(
+                new Rule(Field.ORGANISM, Operator.CONTAINS, "coli"),
+                new Rule(Field.DATE, Operator.GREATER_THAN, "2012-01-01"));
+
+        assertEquals(ids(coliLike), select(new SmartBoxCondition(true, rules)));
+        assertEquals(ids(coli, coliLike, subtilis), select(new SmartBoxCondition(false, rules)));
+        assertEquals(ids(coli, coliLike, subtilis), select(new SmartBoxCondition()));
+    }
+
+    private Set<Long> select(Field field, Operator operator, String value) throws Exception {
+        return select(new SmartBoxCondition(true, Arrays.asList(new Rule(field, operator, value))));
+    }
+
+    private Set<Long> select(SmartBoxCondition condition) throws Exception {
+        List<Object> parameters = new ArrayList<Object>();
+        String sql = "SELECT id FROM MUSEUM_EXHIBIT WHERE " + condition.compile(parameters);
+        Set<Long> ids = new HashSet<Long>();
+        for (Object id: database.queryColumn(sql, parameters.toArray())) {
+            ids.add(((Number) id).longValue());
+        }
+        return ids;
+    }
+
+    private long insertExhibit(String accession, String organism, int sequenceLength, String date)
+            throws Exception {
+        long id = database.insertExhibit(accession, accession);
+        database.update("UPDATE MUSEUM_EXHIBIT SET organism = ?, sequence_length = ?, date = ? WHERE id = ?",
+                organism, sequenceLength, Date.valueOf(date), id);
+        return id;
+    }
+
+    private static Set<Long> ids(Long... ids) {
+        return new HashSet<Long>(Arrays.asList(ids));
+    }
+}
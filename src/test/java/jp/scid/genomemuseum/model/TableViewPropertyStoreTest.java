@@ -0,0 +1,125 @@
+package jp.scid.genomemuseum.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import jp.scid.genomemuseum.model.TableViewPropertyStore.Property;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TableViewPropertyStoreTest {
+    MemoryDatabase database;
+    TableViewPropertyStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        database = MemoryDatabase.migrated();
+        store = new TableViewPropertyStore(database.getDataSource());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        store.shutdown();
+        database.shutdown();
+    }
+
+    @Test
+    public void findNotSaved() throws Exception {
+        assertNull(store.find(TableViewPropertyStore.LIBRARY_BOX_ID));
+    }
+
+    @Test
+    public void saveIsWrittenByFlush() throws Exception {
+        Property property = property("name descending", "0-4,9", "name", "accession");
+        store.save(TableViewPropertyStore.LIBRARY_BOX_ID, property);
+
+        assertSame(property, store.find(TableViewPropertyStore.LIBRARY_BOX_ID));
+        assertEquals(0, database.count("TABLE_VIEW_PROPERTY"));
+
+        store.flush();
+
+        assertEquals(1, database.count("TABLE_VIEW_PROPERTY"));
+        assertEquals(property, newStore().find(TableViewPropertyStore.LIBRARY_BOX_ID));
+    }
+
+    @Test
+    public void saveAgainMergesRow() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        store.save(boxId, property("", "", "name"));
+        store.flush();
+
+        Property property = property("accession", "3", "name", "accession");
+        store.save(boxId, property);
+        store.save(TableViewPropertyStore.LIBRARY_BOX_ID, property("", "", "name"));
+        store.flush();
+
+        assertEquals(2, database.count("TABLE_VIEW_PROPERTY"));
+        assertEquals(property, newStore().find(boxId));
+    }
+
+    @Test
+    public void boxRefersToProperty() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        Property property = property("name", "", "name");
+        store.save(boxId, property);
+        store.flush();
+
+        Object propertyId = database.queryValue("SELECT table_property_id FROM BOX_TREE_NODE WHERE id = ?", boxId);
+        assertNotNull(propertyId);
+        assertEquals("name", database.queryValue(
+                "SELECT order_statement FROM TABLE_VIEW_PROPERTY WHERE id = ?", propertyId));
+        assertNull(newStore().find(TableViewPropertyStore.LIBRARY_BOX_ID));
+    }
+
+    @Test
+    public void propertiesOfDeletedBoxesAreDeleted() throws Exception {
+        long boxId = database.insertBox("box", 1, null);
+        long deletedBoxId = database.insertBox("deleted", 1, null);
+        store.save(boxId, property("", "", "name"));
+        store.save(deletedBoxId, property("", "", "name"));
+        store.flush();
+        database.update("DELETE FROM BOX_TREE_NODE WHERE id = ?", deletedBoxId);
+
+        store.save(boxId, property("name", "", "name"));
+        store.save(deletedBoxId, property("name", "", "name"));
+        store.flush();
+
+        assertEquals(1, database.count("TABLE_VIEW_PROPERTY"));
+        assertEquals(1, database.count("BOX_TREE_NODE"));
+        assertNull(newStore().find(deletedBoxId));
+    }
+
+    @Test
+    public void shutdownWritesPendingProperties() throws Exception {
+        Property property = property("name", "", "name");
+        store.save(TableViewPropertyStore.LIBRARY_BOX_ID, property);
+
+        store.shutdown();
+
+        assertEquals(property, newStore().find(TableViewPropertyStore.LIBRARY_BOX_ID));
+    }
+
+    @Test
+    public void propertyOrder() {
+        Property descending = property("name descending", "", "name");
+        assertEquals("name", descending.getOrderColumn());
+        assertTrue(descending.isDescending());
+
+        Property notSorted = property("", "", "name");
+        assertNull(notSorted.getOrderColumn());
+        assertFalse(notSorted.isDescending());
+    }
+
+    private TableViewPropertyStore newStore() {
+        TableViewPropertyStore newStore = new TableViewPropertyStore(database.getDataSource());
+        newStore.shutdown();
+        return newStore;
+    }
+
+    static Property property(String orderStatement, String selectedRows, String... columns) {
+        return new Property(Arrays.asList(columns), orderStatement, selectedRows);
+    }
+}